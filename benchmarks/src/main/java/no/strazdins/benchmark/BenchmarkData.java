@@ -0,0 +1,103 @@
+package no.strazdins.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import no.strazdins.data.ExtraInfo;
+import no.strazdins.data.RawAccountChange;
+import no.strazdins.file.TransactionFileReader;
+import no.strazdins.process.ExtraInfoHandler;
+import no.strazdins.process.ReportLogic;
+import no.strazdins.tool.TransactionExportGenerator;
+import no.strazdins.transaction.Transaction;
+
+/**
+ * Input data for the benchmarks: a synthetic Binance transaction export with the default
+ * operation mix of TransactionExportGenerator.
+ */
+public class BenchmarkData {
+  private static final long SEED = 1;
+
+  private final Path transactionFile;
+  private final Path extraInfoFile;
+  private final ExtraInfo extraInfo;
+
+  private BenchmarkData(Path transactionFile, Path extraInfoFile, ExtraInfo extraInfo) {
+    this.transactionFile = transactionFile;
+    this.extraInfoFile = extraInfoFile;
+    this.extraInfo = extraInfo;
+  }
+
+  /**
+   * Create a temporary transaction file with approximately the given number of rows.
+   *
+   * @param rowCount The number of rows to generate
+   * @return The generated benchmark data
+   * @throws IOException When the file can't be written
+   */
+  public static BenchmarkData create(int rowCount) throws IOException {
+    Path transactionFile = Files.createTempFile("pnl-benchmark", ".csv");
+    Path extraInfoFile = Files.createTempFile("pnl-benchmark-extra", ".csv");
+    transactionFile.toFile().deleteOnExit();
+    extraInfoFile.toFile().deleteOnExit();
+    new TransactionExportGenerator(SEED).generate(transactionFile.toString(),
+        extraInfoFile.toString(), rowCount);
+    ExtraInfoHandler extraInfoHandler = new ExtraInfoHandler(extraInfoFile.toString(),
+        TransactionExportGenerator.HOME_CURRENCY);
+    return new BenchmarkData(transactionFile, extraInfoFile,
+        extraInfoHandler.getUserProvidedInfo());
+  }
+
+  /**
+   * Get path to the generated transaction file.
+   *
+   * @return Path to the CSV file
+   */
+  public String getTransactionFilePath() {
+    return transactionFile.toString();
+  }
+
+  /**
+   * Get path to the generated extra info file.
+   *
+   * @return Path to the CSV file
+   */
+  public String getExtraInfoFilePath() {
+    return extraInfoFile.toString();
+  }
+
+  /**
+   * Get the extra info necessary for processing the generated transactions.
+   *
+   * @return The extra info
+   */
+  public ExtraInfo getExtraInfo() {
+    return extraInfo;
+  }
+
+  /**
+   * Read the generated file and group the changes in raw (not classified) transactions.
+   *
+   * @return The raw transactions
+   * @throws IOException When the file can't be read
+   */
+  public List<Transaction> readRawTransactions() throws IOException {
+    List<RawAccountChange> changes = TransactionFileReader.readAccountChanges(
+        getTransactionFilePath());
+    ReportLogic logic = new ReportLogic();
+    logic.updateLendingAssets(changes);
+    return logic.groupTransactionsByTimestamp(changes);
+  }
+
+  /**
+   * Read the generated file and convert it to classified transactions.
+   *
+   * @return The transactions, ready for processing
+   * @throws IOException When the file can't be read
+   */
+  public List<Transaction> readTransactions() throws IOException {
+    return new ArrayList<>(new ReportLogic().clarifyTransactionTypes(readRawTransactions()));
+  }
+}
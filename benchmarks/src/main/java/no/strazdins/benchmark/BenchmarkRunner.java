@@ -0,0 +1,38 @@
+package no.strazdins.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks. Accepts the standard JMH command-line options, the GC profiler is always
+ * enabled so that the allocation rate is reported alongside the throughput.
+ */
+public class BenchmarkRunner {
+  /**
+   * Not allowed to create instances of this class.
+   */
+  private BenchmarkRunner() {
+
+  }
+
+  /**
+   * Run the benchmarks.
+   *
+   * @param args JMH command-line options, for example, a regular expression selecting
+   *             the benchmarks to run
+   * @throws CommandLineOptionException When the options are invalid
+   * @throws RunnerException            When a benchmark fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,162 @@
+package no.strazdins.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import no.strazdins.tool.TransactionExportGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start of the command-line tool, launching a new JVM with Runner.main on a small export:
+ * the time until the first output file appears (the report is generated and the writing has
+ * started), and the total time until the output files are written and the JVM exits. Includes
+ * the JVM startup, log4j initialisation and class loading, which dominate the wall time for
+ * small exports. All the prices are found in the extra info file, no network access is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColdStartBenchmark {
+  private static final String OUTPUT_FILE = "profits.csv";
+  private static final List<String> FIRST_OUTPUT_FILES = List.of("transactions.csv",
+      "balances.csv", OUTPUT_FILE);
+
+  @Param({"100", "2000"})
+  public int rows;
+
+  private BenchmarkData data;
+  private Path workDirectory;
+  private String classPath;
+  // The JVM started by timeToFirstOutput(), it finishes after the measurement
+  private Process runningProcess;
+
+  /**
+   * Generate the input files.
+   *
+   * @throws IOException When the data can't be generated
+   */
+  @Setup
+  public void setup() throws IOException {
+    data = BenchmarkData.create(rows);
+    workDirectory = Files.createTempDirectory("pnl-cold-start");
+    // The tool runs in another working directory
+    classPath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+        .map(entry -> Path.of(entry).toAbsolutePath().toString())
+        .collect(Collectors.joining(File.pathSeparator));
+  }
+
+  /**
+   * Restore the extra info file and remove the output files of the previous run.
+   *
+   * @throws IOException When the files can't be copied or deleted
+   */
+  @Setup(Level.Invocation)
+  public void prepareRun() throws IOException {
+    deleteOutputFiles();
+    Files.copy(Path.of(data.getExtraInfoFilePath()), workDirectory.resolve("extra.csv"),
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Wait for the JVM started by timeToFirstOutput() to exit, outside the measured time.
+   *
+   * @throws InterruptedException When interrupted while waiting for the JVM
+   */
+  @TearDown(Level.Invocation)
+  public void finishRun() throws InterruptedException {
+    if (runningProcess != null) {
+      runningProcess.waitFor();
+      runningProcess = null;
+    }
+  }
+
+  /**
+   * Delete the working directory.
+   *
+   * @throws IOException When the files can't be deleted
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    deleteOutputFiles();
+    Files.delete(workDirectory);
+  }
+
+  private void deleteOutputFiles() throws IOException {
+    try (var files = Files.list(workDirectory)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Run the tool in a new JVM, with the same class path as the benchmark.
+   *
+   * @return The exit code of the JVM
+   * @throws IOException          When the JVM can't be started or no output was written
+   * @throws InterruptedException When interrupted while waiting for the JVM
+   */
+  @Benchmark
+  public int runnerMain() throws IOException, InterruptedException {
+    int exitCode = startRunner().waitFor();
+    if (!new File(workDirectory.toFile(), OUTPUT_FILE).exists()) {
+      throw new IOException("The report was not generated");
+    }
+    return exitCode;
+  }
+
+  /**
+   * Run the tool in a new JVM, stop the measurement when the first output file appears. The
+   * JVM finishes in finishRun().
+   *
+   * @return The name of the first output file
+   * @throws IOException          When the JVM can't be started or exits without any output
+   * @throws InterruptedException When interrupted while waiting for the output
+   */
+  @Benchmark
+  public String timeToFirstOutput() throws IOException, InterruptedException {
+    runningProcess = startRunner();
+    while (true) {
+      for (String file : FIRST_OUTPUT_FILES) {
+        if (Files.exists(workDirectory.resolve(file))) {
+          return file;
+        }
+      }
+      if (runningProcess.waitFor(1, TimeUnit.MILLISECONDS)) {
+        throw new IOException("The report was not generated");
+      }
+    }
+  }
+
+  private Process startRunner() throws IOException {
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    return new ProcessBuilder(List.of(java,
+        "-cp", classPath, "no.strazdins.Runner",
+        data.getTransactionFilePath(), TransactionExportGenerator.HOME_CURRENCY, "extra.csv"))
+        .directory(workDirectory.toFile())
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(ProcessBuilder.Redirect.DISCARD)
+        .start();
+  }
+}
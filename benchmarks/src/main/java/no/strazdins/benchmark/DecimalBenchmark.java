@@ -0,0 +1,89 @@
+package no.strazdins.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import no.strazdins.data.Decimal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decimal arithmetic on amounts and prices of typical magnitude. Run with
+ * -jvmArgsAppend -Dpnl.decimal.engine=long to measure the long-based engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecimalBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private Decimal[] amounts;
+  private Decimal[] prices;
+  private String[] strings;
+
+  /**
+   * Generate the numbers.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    amounts = new Decimal[size];
+    prices = new Decimal[size];
+    strings = new String[size];
+    for (int i = 0; i < size; ++i) {
+      strings[i] = String.format("%.8f", random.nextDouble() * 10);
+      amounts[i] = new Decimal(strings[i]);
+      prices[i] = new Decimal(String.format("%.2f", 1 + random.nextDouble() * 50000));
+    }
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) {
+    for (String s : strings) {
+      blackhole.consume(new Decimal(s));
+    }
+  }
+
+  @Benchmark
+  public Decimal add() {
+    Decimal sum = Decimal.ZERO;
+    for (Decimal amount : amounts) {
+      sum = sum.add(amount);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public void multiply(Blackhole blackhole) {
+    for (int i = 0; i < size; ++i) {
+      blackhole.consume(amounts[i].multiply(prices[i]));
+    }
+  }
+
+  @Benchmark
+  public void divide(Blackhole blackhole) {
+    for (int i = 0; i < size; ++i) {
+      blackhole.consume(prices[i].divide(amounts[i]));
+    }
+  }
+
+  @Benchmark
+  public void niceString(Blackhole blackhole) {
+    for (Decimal amount : amounts) {
+      blackhole.consume(amount.getNiceString());
+    }
+  }
+}
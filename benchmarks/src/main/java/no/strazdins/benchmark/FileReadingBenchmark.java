@@ -0,0 +1,57 @@
+package no.strazdins.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import no.strazdins.data.RawAccountChange;
+import no.strazdins.file.CsvFileParser;
+import no.strazdins.file.TransactionFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading the Binance transaction file: CSV tokenizing alone, and conversion to raw account
+ * changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileReadingBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int rows;
+
+  private String filePath;
+
+  @Setup
+  public void setup() throws IOException {
+    filePath = BenchmarkData.create(rows).getTransactionFilePath();
+  }
+
+  @Benchmark
+  public void readNextRow(Blackhole blackhole) throws IOException {
+    CsvFileParser parser = new CsvFileParser(filePath);
+    try (parser) {
+      while (parser.hasMoreRows()) {
+        blackhole.consume(parser.readNextRow());
+      }
+    }
+  }
+
+  @Benchmark
+  public List<RawAccountChange> readAccountChanges() throws IOException {
+    return TransactionFileReader.readAccountChanges(filePath);
+  }
+}
@@ -0,0 +1,77 @@
+package no.strazdins.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.Report;
+import no.strazdins.transaction.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Transaction classification and processing: the steps after the file has been read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessingBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int rows;
+
+  private BenchmarkData data;
+  private List<Transaction> rawTransactions;
+  private List<Transaction> transactions;
+
+  /**
+   * Generate the transactions.
+   *
+   * @throws IOException When the data can't be generated
+   */
+  @Setup
+  public void setup() throws IOException {
+    data = BenchmarkData.create(rows);
+    rawTransactions = data.readRawTransactions();
+    transactions = data.readTransactions();
+  }
+
+  @Benchmark
+  public void clarifyTransactionType(Blackhole blackhole) {
+    for (Transaction rawTransaction : rawTransactions) {
+      blackhole.consume(rawTransaction.clarifyTransactionType());
+    }
+  }
+
+  @Benchmark
+  public void prepareForTransaction(Blackhole blackhole) {
+    WalletSnapshot snapshot = WalletSnapshot.createEmpty();
+    snapshot.addAsset("USDT", new Decimal("1000"), Decimal.ONE);
+    snapshot.addAsset("BTC", new Decimal("0.1"), new Decimal("20000"));
+    for (Transaction transaction : transactions) {
+      blackhole.consume(snapshot.prepareForTransaction(transaction));
+    }
+  }
+
+  @Benchmark
+  public Report process() {
+    Report report = new Report(data.getExtraInfo());
+    for (Transaction transaction : transactions) {
+      report.process(transaction);
+    }
+    return report;
+  }
+}
@@ -0,0 +1,82 @@
+package no.strazdins.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import no.strazdins.file.ReportFileWriter;
+import no.strazdins.process.Report;
+import no.strazdins.transaction.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing the output files of a processed report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportWritingBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int rows;
+
+  private Report report;
+  private Path outputDirectory;
+
+  /**
+   * Generate and process the transactions.
+   *
+   * @throws IOException When the data can't be generated
+   */
+  @Setup
+  public void setup() throws IOException {
+    BenchmarkData data = BenchmarkData.create(rows);
+    List<Transaction> transactions = data.readTransactions();
+    report = new Report(data.getExtraInfo());
+    for (Transaction transaction : transactions) {
+      report.process(transaction);
+    }
+    outputDirectory = Files.createTempDirectory("pnl-benchmark");
+  }
+
+  /**
+   * Delete the output files.
+   *
+   * @throws IOException When the files can't be deleted
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    try (var files = Files.list(outputDirectory)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(outputDirectory);
+  }
+
+  @Benchmark
+  public void writeTransactionLog() throws IOException {
+    ReportFileWriter.writeTransactionLogToFile(report,
+        outputDirectory.resolve("transactions.csv").toString());
+  }
+
+  @Benchmark
+  public void writeBalanceLog() throws IOException {
+    ReportFileWriter.writeBalanceLogToFile(report,
+        outputDirectory.resolve("balances.csv").toString());
+  }
+}
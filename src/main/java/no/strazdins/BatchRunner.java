@@ -0,0 +1,266 @@
+package no.strazdins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import no.strazdins.file.CsvFileParser;
+import no.strazdins.file.CsvFileWriter;
+import no.strazdins.process.ReportGenerator;
+import no.strazdins.tool.BinanceApiClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Generates reports for many users in one run. Each job (input file, extra info file and home
+ * currency) is processed as by Runner, the output files of each job are written to a separate
+ * directory. The jobs run concurrently on a bounded worker pool, they share the Binance API
+ * client and its price cache. A failed job does not stop the other jobs, the result of each
+ * job is written to a summary file.
+ *
+ * <p>The jobs are listed in a manifest CSV file, with the columns: input file, extra info file,
+ * home currency, output directory (no header row, the lines starting with # are ignored).
+ * Relative paths are resolved against the directory of the manifest. Alternatively, a directory
+ * can be given: each of its subdirectories which contains the file input.csv is a job, with the
+ * extra info file extra.csv, the output files are written to the same subdirectory.</p>
+ */
+public class BatchRunner {
+  private static final Logger logger = LogManager.getLogger(BatchRunner.class);
+
+  /**
+   * The number of jobs processed concurrently. Default: the number of available processors.
+   */
+  public static final String THREADS_PROPERTY = "pnl.batchThreads";
+  static final String JOB_INPUT_FILE = "input.csv";
+  static final String JOB_EXTRA_FILE = "extra.csv";
+  static final String SUMMARY_CSV_FILE = "batch-summary.csv";
+  private static final String[] SUMMARY_HEADER = new String[]{
+      "Job", "Status", "Duration (s)", "Error"
+  };
+  private static final String CHECKPOINT_PROPERTY = "pnl.checkpoint";
+
+  /**
+   * One report to generate.
+   *
+   * @param name            The name of the job, used in the summary
+   * @param inputFilePath   Path to the input file (Binance export)
+   * @param extraFilePath   Path to the extra info file
+   * @param homeCurrency    The home currency of the user
+   * @param outputDirectory The directory where the output files are written
+   */
+  public record Job(String name, String inputFilePath, String extraFilePath,
+                    String homeCurrency, Path outputDirectory) {
+  }
+
+  /**
+   * The outcome of a job.
+   *
+   * @param job            The job
+   * @param error          The error message, null when the job succeeded
+   * @param durationMillis Wall time of the job, in milliseconds
+   */
+  public record JobResult(Job job, String error, long durationMillis) {
+    /**
+     * Check whether the job succeeded.
+     *
+     * @return True if the report was generated and written, false otherwise
+     */
+    public boolean isSuccessful() {
+      return error == null;
+    }
+  }
+
+  /**
+   * Not allowed to create instances of this class.
+   */
+  private BatchRunner() {
+
+  }
+
+  /**
+   * The entrypoint of the batch mode.
+   *
+   * @param args Command line arguments: path to the manifest file or the job directory, and
+   *             the home currency (required for a job directory only)
+   */
+  public static void main(String[] args) {
+    try {
+      if (args.length < 1) {
+        throw new IOException("The first command-line argument must contain path to the"
+            + " manifest file or the job directory");
+      }
+      Path source = Path.of(args[0]);
+      List<Job> jobs;
+      Path summaryDirectory;
+      if (Files.isDirectory(source)) {
+        if (args.length < 2) {
+          throw new IOException("The second command-line argument must contain the accounting"
+              + " currency (example: NOK)");
+        }
+        jobs = findJobs(source, args[1]);
+        summaryDirectory = source;
+      } else {
+        jobs = readManifest(args[0]);
+        summaryDirectory = getParentDirectory(source);
+      }
+      if (System.getProperty(CHECKPOINT_PROPERTY) != null) {
+        logger.warn("Checkpoints are not supported in batch mode, {} ignored",
+            CHECKPOINT_PROPERTY);
+      }
+
+      ReportGenerator reportGenerator = new ReportGenerator(new BinanceApiClient());
+      List<JobResult> results = runJobs(jobs, reportGenerator, getThreadCount());
+      String summaryFilePath = summaryDirectory.resolve(SUMMARY_CSV_FILE).toString();
+      writeSummary(results, summaryFilePath);
+      long failedCount = results.stream().filter(r -> !r.isSuccessful()).count();
+      logger.info("{} jobs finished, {} failed, summary written to file {}", results.size(),
+          failedCount, summaryFilePath);
+    } catch (IOException e) {
+      logger.error("Batch run failed: {}", e.getMessage());
+    }
+  }
+
+  private static int getThreadCount() {
+    int defaultCount = Runtime.getRuntime().availableProcessors();
+    int threadCount = Integer.getInteger(THREADS_PROPERTY, defaultCount);
+    if (threadCount < 1) {
+      logger.warn("Invalid {}: {}, using {}", THREADS_PROPERTY, threadCount, defaultCount);
+      threadCount = defaultCount;
+    }
+    return threadCount;
+  }
+
+  /**
+   * Read the jobs from a manifest file.
+   *
+   * @param manifestFilePath Path to the manifest CSV file
+   * @return The jobs, in the order of the manifest
+   * @throws IOException When the file can't be read or has an invalid format
+   */
+  static List<Job> readManifest(String manifestFilePath) throws IOException {
+    Path baseDirectory = getParentDirectory(Path.of(manifestFilePath));
+    List<Job> jobs = new ArrayList<>();
+    try (CsvFileParser parser = new CsvFileParser(manifestFilePath)) {
+      while (parser.hasMoreRows()) {
+        String[] row = parser.readNextRow();
+        if (row.length != 4) {
+          throw new IOException("Invalid manifest row: " + String.join(",", row));
+        }
+        Path outputDirectory = baseDirectory.resolve(row[3].trim());
+        jobs.add(new Job(row[3].trim(), baseDirectory.resolve(row[0].trim()).toString(),
+            baseDirectory.resolve(row[1].trim()).toString(), row[2].trim(), outputDirectory));
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Find the jobs in a directory: each subdirectory containing the input file is a job.
+   *
+   * @param directory    The directory to look in
+   * @param homeCurrency The home currency of all the jobs
+   * @return The jobs, sorted by the name of the subdirectory
+   * @throws IOException When the directory can't be read
+   */
+  static List<Job> findJobs(Path directory, String homeCurrency) throws IOException {
+    try (Stream<Path> subdirectories = Files.list(directory)) {
+      return subdirectories
+          .filter(d -> Files.isRegularFile(d.resolve(JOB_INPUT_FILE)))
+          .sorted()
+          .map(d -> new Job(d.getFileName().toString(), d.resolve(JOB_INPUT_FILE).toString(),
+              d.resolve(JOB_EXTRA_FILE).toString(), homeCurrency, d))
+          .toList();
+    }
+  }
+
+  private static Path getParentDirectory(Path file) {
+    Path parent = file.toAbsolutePath().getParent();
+    return parent != null ? parent : Path.of("");
+  }
+
+  /**
+   * Run the jobs concurrently, wait for all of them to finish.
+   *
+   * @param jobs            The jobs to run
+   * @param reportGenerator The report generator, shared by all the jobs
+   * @param threadCount     The maximum number of jobs running at the same time
+   * @return The result of each job, in the same order as the jobs
+   */
+  static List<JobResult> runJobs(List<Job> jobs, ReportGenerator reportGenerator,
+                                 int threadCount) {
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threadCount, jobs.size())));
+    try {
+      List<Future<JobResult>> futures = new ArrayList<>();
+      for (Job job : jobs) {
+        futures.add(executor.submit(() -> runJob(job, reportGenerator)));
+      }
+      List<JobResult> results = new ArrayList<>();
+      for (int i = 0; i < jobs.size(); ++i) {
+        results.add(getResult(jobs.get(i), futures.get(i)));
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static JobResult getResult(Job job, Future<JobResult> future) {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      return new JobResult(job, String.valueOf(e.getCause()), 0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new JobResult(job, "Interrupted", 0);
+    }
+  }
+
+  private static JobResult runJob(Job job, ReportGenerator reportGenerator) {
+    logger.info("Job {} started", job.name());
+    long startTime = System.currentTimeMillis();
+    String error = null;
+    try {
+      Files.createDirectories(job.outputDirectory());
+      Runner.createAndWriteReport(reportGenerator, job.inputFilePath(), job.homeCurrency(),
+          job.extraFilePath(), job.outputDirectory(), null);
+    } catch (IOException | RuntimeException e) {
+      error = e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+    long duration = System.currentTimeMillis() - startTime;
+    if (error == null) {
+      logger.info("Job {} finished in {} ms", job.name(), duration);
+    } else {
+      logger.error("Job {} failed: {}", job.name(), error);
+    }
+    return new JobResult(job, error, duration);
+  }
+
+  /**
+   * Write the results of the jobs to a CSV file.
+   *
+   * @param results        The job results
+   * @param outputFilePath Path to the summary file
+   * @throws IOException When the file can't be written
+   */
+  static void writeSummary(List<JobResult> results, String outputFilePath) throws IOException {
+    CsvFileWriter writer = new CsvFileWriter(outputFilePath, SUMMARY_HEADER);
+    for (JobResult result : results) {
+      writer.writeRow(new String[]{
+          result.job().name(),
+          result.isSuccessful() ? "OK" : "FAILED",
+          String.format(Locale.ROOT, "%.3f", result.durationMillis() / 1000.0),
+          // The CSV cells are not quoted
+          result.isSuccessful() ? "" : result.error().replace(',', ';')
+      });
+    }
+    writer.close();
+  }
+}
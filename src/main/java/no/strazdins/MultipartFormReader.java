@@ -0,0 +1,248 @@
+package no.strazdins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a multipart/form-data request body as a stream, storing the content of each field in
+ * a separate file. Only a small buffer is kept in memory, however large the uploaded files are.
+ * The delimiters between the parts are found with the Boyer-Moore-Horspool search, which skips
+ * most of the content bytes without comparing them.
+ */
+class MultipartFormReader {
+  // RFC 2046 limits the boundary to 70 characters
+  private static final int MAX_BOUNDARY_LENGTH = 70;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_HEADER_LINE_LENGTH = 8 * 1024;
+  private static final int MAX_PART_COUNT = 100;
+  private static final int ALPHABET_SIZE = 256;
+
+  private final InputStream in;
+  private final long maxSize;
+  private final byte[] delimiter;
+  // How far the search can move when the last compared byte does not match
+  private final int[] skip = new int[ALPHABET_SIZE];
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  // The unprocessed bytes are buffer[start, end)
+  private int start;
+  private int end;
+  private long totalSize;
+
+  /**
+   * Create a form reader.
+   *
+   * @param in       The request body
+   * @param boundary The boundary between the parts
+   * @param maxSize  The maximum size of the request body, in bytes
+   * @throws IllegalArgumentException When the boundary is empty or too long
+   */
+  MultipartFormReader(InputStream in, String boundary, long maxSize)
+      throws IllegalArgumentException {
+    if (boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH) {
+      throw new IllegalArgumentException("Invalid multipart boundary");
+    }
+    this.in = in;
+    this.maxSize = maxSize;
+    // The delimiters are preceded by a line break, which is not part of the content
+    delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    for (int i = 0; i < ALPHABET_SIZE; ++i) {
+      skip[i] = delimiter.length;
+    }
+    for (int i = 0; i < delimiter.length - 1; ++i) {
+      skip[delimiter[i] & 0xFF] = delimiter.length - 1 - i;
+    }
+    // The first delimiter may be at the very start of the body, without the line break
+    buffer[end++] = '\r';
+    buffer[end++] = '\n';
+  }
+
+  /**
+   * Read the whole form. The fields without a name are skipped, the content of a repeated
+   * field replaces the previous content.
+   *
+   * @param directory The directory where the field files are created
+   * @return The file with the content of each field, by field name
+   * @throws IOException              When the request can't be read or a file can't be written
+   * @throws IllegalArgumentException When the body has an invalid format, or
+   *                                  RequestTooLargeException when it is too large
+   */
+  Map<String, Path> readFields(Path directory) throws IOException, IllegalArgumentException {
+    Map<String, Path> fields = new HashMap<>();
+    if (!copyUntilDelimiter(OutputStream.nullOutputStream())) {
+      throw new IllegalArgumentException("Multipart boundary not found");
+    }
+    int partCount = 0;
+    while (!isLastDelimiter()) {
+      if (++partCount > MAX_PART_COUNT) {
+        throw new IllegalArgumentException("Too many multipart fields");
+      }
+      String name = readFieldName();
+      // The field names come from the client, they are not used in the file names
+      Path file = directory.resolve("field-" + partCount);
+      boolean terminated;
+      try (OutputStream out = name != null ? Files.newOutputStream(file)
+          : OutputStream.nullOutputStream()) {
+        terminated = copyUntilDelimiter(out);
+      }
+      if (!terminated) {
+        throw new IllegalArgumentException("Multipart body not terminated");
+      }
+      if (name != null) {
+        fields.put(name, file);
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Check whether the delimiter just skipped closes the body, otherwise skip the rest of its
+   * line.
+   *
+   * @return True when it is the closing delimiter
+   */
+  private boolean isLastDelimiter() throws IOException, IllegalArgumentException {
+    while (end - start < 2) {
+      if (!fill()) {
+        throw new IllegalArgumentException("Multipart body not terminated");
+      }
+    }
+    if (buffer[start] == '-' && buffer[start + 1] == '-') {
+      return true;
+    }
+    readLine();
+    return false;
+  }
+
+  /**
+   * Read the headers of a part, up to the empty line before the content.
+   *
+   * @return The field name from the Content-Disposition header, null if there is none
+   */
+  private String readFieldName() throws IOException, IllegalArgumentException {
+    String name = null;
+    String header;
+    while (!(header = readLine()).isEmpty()) {
+      if (header.toLowerCase(Locale.ROOT).startsWith("content-disposition:")) {
+        for (String parameter : header.split(";")) {
+          parameter = parameter.trim();
+          if (parameter.startsWith("name=")) {
+            name = parameter.substring("name=".length()).replace("\"", "");
+          }
+        }
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Read one line of the part headers.
+   *
+   * @return The line, without the line break
+   * @throws IllegalArgumentException When the line is too long or not terminated
+   */
+  private String readLine() throws IOException, IllegalArgumentException {
+    // The number of bytes already searched, the buffer is compacted when filled
+    int searched = 0;
+    while (true) {
+      for (int i = start + searched; i < end - 1; ++i) {
+        if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+          String line = new String(buffer, start, i - start, StandardCharsets.UTF_8);
+          start = i + 2;
+          return line;
+        }
+      }
+      if (end - start > MAX_HEADER_LINE_LENGTH) {
+        throw new IllegalArgumentException("Invalid multipart headers");
+      }
+      searched = Math.max(end - start - 1, 0);
+      if (!fill()) {
+        throw new IllegalArgumentException("Invalid multipart headers");
+      }
+    }
+  }
+
+  /**
+   * Copy the content up to the next delimiter, skip the delimiter.
+   *
+   * @param out The stream where the content is written
+   * @return True when the delimiter was found, false when the body ended before it
+   */
+  private boolean copyUntilDelimiter(OutputStream out) throws IOException {
+    while (true) {
+      int position = findDelimiter();
+      if (position != -1) {
+        out.write(buffer, start, position - start);
+        start = position + delimiter.length;
+        return true;
+      }
+      // The last bytes may be the beginning of a delimiter
+      int safeEnd = Math.max(start, end - delimiter.length + 1);
+      out.write(buffer, start, safeEnd - start);
+      start = safeEnd;
+      if (!fill()) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Find the delimiter in the unprocessed part of the buffer.
+   *
+   * @return The index of the delimiter in the buffer, -1 if not found
+   */
+  private int findDelimiter() {
+    int last = delimiter.length - 1;
+    int position = start;
+    while (position + last < end) {
+      int i = last;
+      while (i >= 0 && buffer[position + i] == delimiter[i]) {
+        i--;
+      }
+      if (i < 0) {
+        return position;
+      }
+      position += skip[buffer[position + last] & 0xFF];
+    }
+    return -1;
+  }
+
+  /**
+   * Move the unprocessed bytes to the start of the buffer and read more bytes after them.
+   *
+   * @return True when some bytes were read, false at the end of the body
+   * @throws RequestTooLargeException When the body is larger than allowed
+   */
+  private boolean fill() throws IOException, RequestTooLargeException {
+    if (start > 0) {
+      System.arraycopy(buffer, start, buffer, 0, end - start);
+      end -= start;
+      start = 0;
+    }
+    int count = in.read(buffer, end, buffer.length - end);
+    if (count <= 0) {
+      return false;
+    }
+    end += count;
+    totalSize += count;
+    if (totalSize > maxSize) {
+      throw new RequestTooLargeException(maxSize);
+    }
+    return true;
+  }
+
+  /**
+   * The request body is larger than allowed.
+   */
+  static class RequestTooLargeException extends IllegalArgumentException {
+    RequestTooLargeException(long maxSize) {
+      super("The request is too large, the limit is " + maxSize + " bytes");
+    }
+  }
+}
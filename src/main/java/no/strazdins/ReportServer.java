@@ -0,0 +1,371 @@
+package no.strazdins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import no.strazdins.file.FileWriteException;
+import no.strazdins.process.MissingExtraInfoException;
+import no.strazdins.process.ReportGenerator;
+import no.strazdins.tool.BinanceApiClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A long-running report service, built on the HTTP server of the JDK. The JVM, the loaded
+ * classes and the Binance price cache stay warm between the requests, therefore a typical
+ * report is generated in milliseconds.
+ *
+ * <p>A report is requested with POST /report, the request body is multipart/form-data with
+ * the fields: transactions (the Binance-exported CSV file), extra (the extra info CSV file,
+ * optional) and currency (the home currency). The report is generated as by Runner, the
+ * response is a ZIP archive with transactions.csv, balances.csv, profits.csv (and the monthly
+ * and quarterly reports, when enabled) and extra.csv (the extra info, updated with the prices
+ * fetched from the Binance API). Invalid input is reported with status 400 and the error
+ * message in the body, missing extra info with status 422 and the extra info lines which the
+ * user must provide, a too large request with status 413. Failures on the server side are
+ * logged and reported with status 500 and a generic message.</p>
+ *
+ * <p>The uploaded files are streamed to temporary files, not kept in memory. The size of the
+ * request body is limited, see {@link #MAX_REQUEST_SIZE_PROPERTY}.</p>
+ */
+public class ReportServer {
+  private static final Logger logger = LogManager.getLogger(ReportServer.class);
+
+  /**
+   * The maximum number of reports generated at the same time, the other requests wait.
+   * Default: the number of available processors.
+   */
+  public static final String THREADS_PROPERTY = "pnl.server.threads";
+  /**
+   * The maximum size of a request body, in megabytes. Default: 256.
+   */
+  public static final String MAX_REQUEST_SIZE_PROPERTY = "pnl.server.maxRequestMb";
+  private static final int DEFAULT_PORT = 8080;
+  static final String REPORT_PATH = "/report";
+  private static final long DEFAULT_MAX_REQUEST_MB = 256;
+  private static final long BYTES_PER_MB = 1024 * 1024;
+  private static final String TRANSACTIONS_FIELD = "transactions";
+  private static final String EXTRA_FIELD = "extra";
+  private static final String CURRENCY_FIELD = "currency";
+  private static final String INPUT_FILE = "input.csv";
+  private static final String EXTRA_FILE = "extra.csv";
+  private static final String FORM_DIRECTORY = "form";
+  private static final long MAX_CURRENCY_SIZE = 64;
+  private static final List<String> OUTPUT_FILES = List.of(
+      "transactions.csv", "balances.csv", "profits.csv"
+  );
+  // Written only when enabled with a system property
+  private static final List<String> OPTIONAL_OUTPUT_FILES = List.of(
+      "quarterly-profits.csv", "monthly-profits.csv"
+  );
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ReportGenerator reportGenerator;
+  private final long maxRequestSize;
+
+  /**
+   * Create a report server with the default request size limit. The server is not started.
+   *
+   * @param port            The port to listen on, 0 for any free port
+   * @param threadCount     The maximum number of requests handled at the same time
+   * @param reportGenerator The report generator, shared by all the requests
+   * @throws IOException When the server socket can't be opened
+   */
+  public ReportServer(int port, int threadCount, ReportGenerator reportGenerator)
+      throws IOException {
+    this(port, threadCount, DEFAULT_MAX_REQUEST_MB * BYTES_PER_MB, reportGenerator);
+  }
+
+  /**
+   * Create a report server. The server is not started.
+   *
+   * @param port            The port to listen on, 0 for any free port
+   * @param threadCount     The maximum number of requests handled at the same time
+   * @param maxRequestSize  The maximum size of a request body, in bytes
+   * @param reportGenerator The report generator, shared by all the requests
+   * @throws IOException When the server socket can't be opened
+   */
+  public ReportServer(int port, int threadCount, long maxRequestSize,
+                      ReportGenerator reportGenerator) throws IOException {
+    this.reportGenerator = reportGenerator;
+    this.maxRequestSize = maxRequestSize;
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    executor = Executors.newFixedThreadPool(threadCount);
+    server.setExecutor(executor);
+    server.createContext(REPORT_PATH, this::handleReportRequest);
+  }
+
+  /**
+   * The entrypoint of the service mode.
+   *
+   * @param args Command line arguments: the port to listen on (optional, 8080 by default)
+   */
+  public static void main(String[] args) {
+    try {
+      int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+      ReportServer server = new ReportServer(port, getThreadCount(), getMaxRequestSize(),
+          new ReportGenerator(new BinanceApiClient()));
+      server.start();
+      logger.info("Report server listening on port {}", server.getPort());
+    } catch (NumberFormatException e) {
+      logger.error("Invalid port: {}", args[0]);
+    } catch (IOException e) {
+      logger.error("Could not start the report server: {}", e.getMessage());
+    }
+  }
+
+  private static int getThreadCount() {
+    int defaultCount = Runtime.getRuntime().availableProcessors();
+    int threadCount = Integer.getInteger(THREADS_PROPERTY, defaultCount);
+    if (threadCount < 1) {
+      logger.warn("Invalid {}: {}, using {}", THREADS_PROPERTY, threadCount, defaultCount);
+      threadCount = defaultCount;
+    }
+    return threadCount;
+  }
+
+  private static long getMaxRequestSize() {
+    long maxMb = Long.getLong(MAX_REQUEST_SIZE_PROPERTY, DEFAULT_MAX_REQUEST_MB);
+    if (maxMb < 1) {
+      logger.warn("Invalid {}: {}, using {}", MAX_REQUEST_SIZE_PROPERTY, maxMb,
+          DEFAULT_MAX_REQUEST_MB);
+      maxMb = DEFAULT_MAX_REQUEST_MB;
+    }
+    return maxMb * BYTES_PER_MB;
+  }
+
+  /**
+   * Start accepting the requests.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stop the server, wait for the active requests to finish.
+   *
+   * @param delaySeconds The maximum time to wait for the active requests, in seconds
+   */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    executor.shutdown();
+  }
+
+  /**
+   * Get the port the server is listening on.
+   *
+   * @return The port number
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handleReportRequest(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        sendError(exchange, 405, "Only POST is supported");
+        return;
+      }
+      Path workDirectory = Files.createTempDirectory("pnl-report");
+      try {
+        generateReport(exchange, workDirectory);
+      } finally {
+        deleteRecursively(workDirectory);
+      }
+    }
+  }
+
+  private void generateReport(HttpExchange exchange, Path workDirectory) throws IOException {
+    long startTime = System.currentTimeMillis();
+    Map<String, Path> fields;
+    try {
+      fields = readForm(exchange, Files.createDirectory(workDirectory.resolve(FORM_DIRECTORY)),
+          maxRequestSize);
+    } catch (MultipartFormReader.RequestTooLargeException e) {
+      sendError(exchange, 413, e.getMessage());
+      return;
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, e.getMessage());
+      return;
+    } catch (IOException e) {
+      logger.error("Reading the request failed: {}", e.getMessage());
+      sendError(exchange, 500, "Reading the request failed");
+      return;
+    }
+    Path transactions = fields.get(TRANSACTIONS_FIELD);
+    Path currency = fields.get(CURRENCY_FIELD);
+    if (transactions == null || currency == null) {
+      sendError(exchange, 400, "The fields " + TRANSACTIONS_FIELD + " and " + CURRENCY_FIELD
+          + " are required");
+      return;
+    }
+    if (Files.size(currency) > MAX_CURRENCY_SIZE) {
+      sendError(exchange, 400, "Invalid " + CURRENCY_FIELD);
+      return;
+    }
+    Path inputFile = Files.move(transactions, workDirectory.resolve(INPUT_FILE));
+    Path extraFile = workDirectory.resolve(EXTRA_FILE);
+    if (fields.containsKey(EXTRA_FIELD)) {
+      Files.move(fields.get(EXTRA_FIELD), extraFile);
+    } else {
+      Files.createFile(extraFile);
+    }
+    String homeCurrency = Files.readString(currency, StandardCharsets.UTF_8).trim();
+
+    try {
+      Runner.createAndWriteReport(reportGenerator, inputFile.toString(), homeCurrency,
+          extraFile.toString(), workDirectory, null);
+    } catch (MissingExtraInfoException e) {
+      sendError(exchange, 422, e.getMessage() + ", add these lines to the " + EXTRA_FIELD
+          + " file, with the described values:\n"
+          + String.join("\n", e.getRequiredLines()));
+      return;
+    } catch (FileWriteException e) {
+      // The paths of the temporary files are not shown to the client
+      logger.error("Writing the report failed: {}", e.getMessage());
+      sendError(exchange, 500, "Writing the report failed");
+      return;
+    } catch (IOException e) {
+      sendError(exchange, 400, "Report generation failed: "
+          + hidePath(e.getMessage(), workDirectory));
+      return;
+    } catch (RuntimeException e) {
+      logger.error("Report generation failed", e);
+      sendError(exchange, 500, "Report generation failed");
+      return;
+    }
+
+    exchange.getResponseHeaders().set("Content-Type", "application/zip");
+    exchange.getResponseHeaders().set("Content-Disposition",
+        "attachment; filename=\"report.zip\"");
+    exchange.sendResponseHeaders(200, 0);
+    try (ZipOutputStream zip = new ZipOutputStream(exchange.getResponseBody())) {
+      for (String file : OUTPUT_FILES) {
+        addZipEntry(zip, workDirectory.resolve(file), file);
+      }
+      for (String file : OPTIONAL_OUTPUT_FILES) {
+        if (Files.exists(workDirectory.resolve(file))) {
+          addZipEntry(zip, workDirectory.resolve(file), file);
+        }
+      }
+      addZipEntry(zip, extraFile, EXTRA_FILE);
+    }
+    logger.info("Report generated in {} ms", System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Remove the path of the temporary directory from a message, leaving only the file names.
+   *
+   * @param message   The message, may be null
+   * @param directory The temporary directory of the request
+   * @return The message without the directory path
+   */
+  private static String hidePath(String message, Path directory) {
+    return message != null ? message.replace(directory + File.separator, "") : null;
+  }
+
+  private static void addZipEntry(ZipOutputStream zip, Path file, String name)
+      throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    Files.copy(file, zip);
+    zip.closeEntry();
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String message)
+      throws IOException {
+    byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static void deleteRecursively(Path directory) {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    } catch (IOException e) {
+      logger.warn("Could not delete the temporary directory {}: {}", directory, e.getMessage());
+    }
+  }
+
+  /**
+   * Read the fields of a multipart/form-data request, the content of each field is streamed
+   * to a file.
+   *
+   * @param exchange       The HTTP exchange
+   * @param directory      The directory where the field files are created
+   * @param maxRequestSize The maximum size of the request body, in bytes
+   * @return The file with the content of each field, by field name
+   * @throws IOException              When the request can't be read or a file can't be written
+   * @throws IllegalArgumentException When the request is not a valid multipart form or is
+   *                                  too large
+   */
+  private static Map<String, Path> readForm(HttpExchange exchange, Path directory,
+                                            long maxRequestSize)
+      throws IOException, IllegalArgumentException {
+    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    String boundary = getBoundary(contentType);
+    String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+    try {
+      if (contentLength != null && Long.parseLong(contentLength.trim()) > maxRequestSize) {
+        // Rejected before reading the body
+        throw new MultipartFormReader.RequestTooLargeException(maxRequestSize);
+      }
+    } catch (NumberFormatException e) {
+      // The size is checked while reading the body
+    }
+    try (InputStream in = exchange.getRequestBody()) {
+      return parseMultipartForm(in, boundary, directory, maxRequestSize);
+    }
+  }
+
+  private static String getBoundary(String contentType) throws IllegalArgumentException {
+    if (contentType == null || !contentType.startsWith("multipart/form-data")) {
+      throw new IllegalArgumentException("Expected a multipart/form-data request");
+    }
+    for (String parameter : contentType.split(";")) {
+      parameter = parameter.trim();
+      if (parameter.startsWith("boundary=")) {
+        return parameter.substring("boundary=".length()).replace("\"", "");
+      }
+    }
+    throw new IllegalArgumentException("Multipart boundary missing");
+  }
+
+  /**
+   * Parse the body of a multipart/form-data request.
+   *
+   * @param body      The request body
+   * @param boundary  The boundary between the parts
+   * @param directory The directory where the field files are created
+   * @param maxSize   The maximum size of the body, in bytes
+   * @return The file with the content of each field, by field name
+   * @throws IOException              When the body can't be read or a file can't be written
+   * @throws IllegalArgumentException When the body has an invalid format or is too large
+   */
+  static Map<String, Path> parseMultipartForm(InputStream body, String boundary, Path directory,
+                                              long maxSize)
+      throws IOException, IllegalArgumentException {
+    return new MultipartFormReader(body, boundary, maxSize).readFields(directory);
+  }
+}
@@ -1,9 +1,21 @@
 package no.strazdins;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import no.strazdins.file.CheckpointFile;
+import no.strazdins.file.ColumnarReportWriter;
+import no.strazdins.file.ConcurrentFileWriter;
+import no.strazdins.file.FileWriteException;
 import no.strazdins.file.ReportFileWriter;
+import no.strazdins.process.Checkpoint;
 import no.strazdins.process.Report;
 import no.strazdins.process.ReportGenerator;
+import no.strazdins.process.SnapshotSink;
+import no.strazdins.tool.ReportPeriod;
+import no.strazdins.tool.RunMetrics;
+import no.strazdins.tool.RunMetrics.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -14,6 +26,15 @@ public class Runner {
   private static final String TRANSACTION_LOG_CSV_FILE = "transactions.csv";
   private static final String BALANCE_LOG_CSV_FILE = "balances.csv";
   private static final String ANNUAL_REPORT_CSV_FILE = "profits.csv";
+  private static final String QUARTERLY_REPORT_CSV_FILE = "quarterly-profits.csv";
+  private static final String MONTHLY_REPORT_CSV_FILE = "monthly-profits.csv";
+  private static final String RUN_SUMMARY_JSON_FILE = "run-summary.json";
+  private static final String COLUMNAR_REPORT_FILE = "report.pnlc";
+  private static final String STREAMING_PROPERTY = "pnl.streaming";
+  private static final String CHECKPOINT_PROPERTY = "pnl.checkpoint";
+  private static final String COLUMNAR_PROPERTY = "pnl.columnar";
+  private static final String BOUNDED_MEMORY_PROPERTY = "pnl.boundedMemory";
+  private static final String PERIOD_REPORTS_PROPERTY = "pnl.periodReports";
   private static final Logger logger = LogManager.getLogger(Runner.class);
 
   /**
@@ -24,26 +45,242 @@ public class Runner {
    *             will be written.
    */
   public static void main(String[] args) {
+    RunMetrics metrics = new RunMetrics();
     try {
       String inputFilePath = getInputFilePath(args);
       String homeCurrency = getCurrency(args);
       String extraFilePath = getExtraFilePath(args);
-      ReportGenerator reportGenerator = new ReportGenerator();
-      Report report = reportGenerator.createReport(inputFilePath, extraFilePath, homeCurrency);
-      ReportFileWriter.writeTransactionLogToFile(report, TRANSACTION_LOG_CSV_FILE);
-      logger.info("Transaction log written to file {}", TRANSACTION_LOG_CSV_FILE);
-      ReportFileWriter.writeBalanceLogToFile(report, BALANCE_LOG_CSV_FILE);
-      logger.info("Wallet balance log written to file {}", BALANCE_LOG_CSV_FILE);
-      ReportFileWriter.writeAnnualReportsToFile(
-          report.createAnnualReports(), ANNUAL_REPORT_CSV_FILE, homeCurrency);
-      logger.info("Annual PNL reports written to file {}", ANNUAL_REPORT_CSV_FILE);
+      createAndWriteReport(new ReportGenerator(null, metrics), inputFilePath, homeCurrency,
+          extraFilePath, Path.of(""), System.getProperty(CHECKPOINT_PROPERTY));
+      metrics.writeSummary(RUN_SUMMARY_JSON_FILE);
+      logger.info("Run summary written to file {}", RUN_SUMMARY_JSON_FILE);
+    } catch (IOException e) {
+      logger.error("Report generation failed: {}", e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Generate the report and write the output files. The report mode is selected by the
+   * system properties, see README. The written files are recorded in the metrics of the
+   * report generator.
+   *
+   * @param reportGenerator    The report generator
+   * @param inputFilePath      Path to the input file (Binance export)
+   * @param homeCurrency       The home currency of the user
+   * @param extraFilePath      Path to the extra info file, updated with the fetched prices
+   * @param outputDirectory    The directory where the output files are written
+   * @param checkpointFilePath Path to the checkpoint file, null when not continuing from
+   *                           a checkpoint
+   * @throws IOException When something goes wrong with file reading or writing
+   */
+  static void createAndWriteReport(ReportGenerator reportGenerator, String inputFilePath,
+                                   String homeCurrency, String extraFilePath,
+                                   Path outputDirectory, String checkpointFilePath)
+      throws IOException {
+    OutputFiles files = OutputFiles.in(outputDirectory);
+    Report report;
+    ConcurrentFileWriter fileWriter = new ConcurrentFileWriter();
+    long[] logPositions = new long[2];
+    if (checkpointFilePath != null) {
+      report = reportGenerator.createReportFromCheckpoint(inputFilePath, extraFilePath,
+          homeCurrency, CheckpointFile.read(checkpointFilePath));
+      addLogAppendJobs(fileWriter, report, files, logPositions);
+      if (Boolean.getBoolean(COLUMNAR_PROPERTY)) {
+        logger.warn("The columnar report can't be appended, not written in checkpoint mode");
+      }
+    } else if (Boolean.getBoolean(BOUNDED_MEMORY_PROPERTY)) {
+      report = createBoundedMemoryReport(reportGenerator, inputFilePath, extraFilePath,
+          homeCurrency, files);
+      if (Boolean.getBoolean(COLUMNAR_PROPERTY)) {
+        logger.warn("The columnar report needs all the wallet snapshots, not written in"
+            + " bounded-memory mode");
+      }
+    } else {
+      report = Boolean.getBoolean(STREAMING_PROPERTY)
+          ? reportGenerator.createReportStreaming(inputFilePath, extraFilePath, homeCurrency)
+          : reportGenerator.createReport(inputFilePath, extraFilePath, homeCurrency);
+      addLogWriteJobs(fileWriter, report, files);
+      if (Boolean.getBoolean(COLUMNAR_PROPERTY)) {
+        fileWriter.add(files.columnarReport(), () -> {
+          ColumnarReportWriter.writeToFile(report, files.columnarReport());
+          logger.info("Columnar report written to file {}", files.columnarReport());
+        });
+      }
+    }
+    fileWriter.add(files.annualReport(), () -> {
+      ReportFileWriter.writePeriodReportsToFile(
+          report.createAnnualReports(), files.annualReport(), homeCurrency);
+      logger.info("Annual PNL reports written to file {}", files.annualReport());
+    });
+    String lastPeriodReport = files.annualReport();
+    if (Boolean.getBoolean(PERIOD_REPORTS_PROPERTY)) {
+      if (checkpointFilePath != null) {
+        logger.warn("The monthly and quarterly reports need the whole history, not written in"
+            + " checkpoint mode");
+      } else {
+        lastPeriodReport = addPeriodReportJobs(fileWriter, report, homeCurrency, files);
+      }
+    }
+    // The missing period-end prices are fetched while creating the period reports
+    fileWriter.addAfter(extraFilePath, lastPeriodReport, () -> {
       if (report.isExtraInfoUpdated()) {
         ReportFileWriter.writeExtraInfoToFile(report.getExtras(), extraFilePath);
-        logger.info("Extra info file {} updated with asset prices from Binance API", extraFilePath);
+        logger.info("Extra info file {} updated with asset prices from Binance API",
+            extraFilePath);
       }
+    });
+    RunMetrics metrics = reportGenerator.getMetrics();
+    List<String> writtenFiles = fileWriter.getFilePaths();
+    long startTime = metrics.startTimer();
+    fileWriter.writeAll();
+    metrics.addStageTime(Stage.WRITE, startTime);
+    if (metrics.isEnabled()) {
+      if (!report.isExtraInfoUpdated()) {
+        writtenFiles.remove(extraFilePath);
+      }
+      recordWrittenFiles(metrics, writtenFiles);
+    }
+    if (checkpointFilePath != null) {
+      Checkpoint checkpoint = report.getCheckpoint()
+          .withLogPositions(logPositions[0], logPositions[1]);
+      CheckpointFile.write(checkpoint, checkpointFilePath);
+      logger.info("Checkpoint written to file {}", checkpointFilePath);
+    }
+  }
+
+  /**
+   * Create a bounded-memory report, write the transaction log and the balance log while
+   * the transactions are processed.
+   *
+   * @param reportGenerator The report generator
+   * @param inputFilePath   Path to the input file (Binance export)
+   * @param extraFilePath   Path to the extra info file
+   * @param homeCurrency    The home currency of the user
+   * @param files           The output files
+   * @return The report, containing only the month-end snapshots
+   * @throws IOException When something goes wrong with file reading or writing
+   */
+  private static Report createBoundedMemoryReport(ReportGenerator reportGenerator,
+                                                  String inputFilePath, String extraFilePath,
+                                                  String homeCurrency, OutputFiles files)
+      throws IOException {
+    List<SnapshotSink> sinks;
+    try {
+      sinks = List.of(ReportFileWriter.createTransactionLogSink(files.transactionLog()),
+          ReportFileWriter.createBalanceLogSink(files.balanceLog()));
     } catch (IOException e) {
-      logger.error("Report generation failed: {}", e.getMessage());
-      e.printStackTrace();
+      throw new FileWriteException("Failed to create the output files: " + e.getMessage(), e);
+    }
+    Report report = reportGenerator.createReportStreaming(inputFilePath, extraFilePath,
+        homeCurrency, sinks);
+    logger.info("Transaction log written to file {}", files.transactionLog());
+    logger.info("Wallet balance log written to file {}", files.balanceLog());
+    if (reportGenerator.getMetrics().isEnabled()) {
+      recordWrittenFiles(reportGenerator.getMetrics(),
+          List.of(files.transactionLog(), files.balanceLog()));
+    }
+    return report;
+  }
+
+  private static void recordWrittenFiles(RunMetrics metrics, List<String> filePaths)
+      throws IOException {
+    for (String filePath : filePaths) {
+      metrics.addWrittenFile(filePath, Files.size(Path.of(filePath)));
+    }
+  }
+
+  /**
+   * Add the jobs which write the monthly and the quarterly reports. The jobs run one after
+   * another, after the annual report, because each of them may add fetched prices to the
+   * extra info.
+   *
+   * @param fileWriter   The writer which will run the jobs
+   * @param report       The report to write
+   * @param homeCurrency The home currency of the user
+   * @param files        The output files
+   * @return Path to the file written by the last of the jobs
+   */
+  private static String addPeriodReportJobs(ConcurrentFileWriter fileWriter, Report report,
+                                            String homeCurrency, OutputFiles files) {
+    fileWriter.addAfter(files.monthlyReport(), files.annualReport(), () -> {
+      ReportFileWriter.writePeriodReportsToFile(report.createPeriodReports(ReportPeriod.MONTH),
+          files.monthlyReport(), homeCurrency);
+      logger.info("Monthly PNL reports written to file {}", files.monthlyReport());
+    });
+    fileWriter.addAfter(files.quarterlyReport(), files.monthlyReport(), () -> {
+      ReportFileWriter.writePeriodReportsToFile(
+          report.createPeriodReports(ReportPeriod.QUARTER), files.quarterlyReport(),
+          homeCurrency);
+      logger.info("Quarterly PNL reports written to file {}", files.quarterlyReport());
+    });
+    return files.quarterlyReport();
+  }
+
+  /**
+   * Add the jobs which write the transaction log and the balance log.
+   *
+   * @param fileWriter The writer which will run the jobs
+   * @param report     The report to write
+   * @param files      The output files
+   */
+  private static void addLogWriteJobs(ConcurrentFileWriter fileWriter, Report report,
+                                      OutputFiles files) {
+    fileWriter.add(files.transactionLog(), () -> {
+      ReportFileWriter.writeTransactionLogToFile(report, files.transactionLog());
+      logger.info("Transaction log written to file {}", files.transactionLog());
+    });
+    fileWriter.add(files.balanceLog(), () -> {
+      ReportFileWriter.writeBalanceLogToFile(report, files.balanceLog());
+      logger.info("Wallet balance log written to file {}", files.balanceLog());
+    });
+  }
+
+  /**
+   * Add the jobs which append the new transactions to the log files written in the previous run.
+   *
+   * @param fileWriter   The writer which will run the jobs
+   * @param report       The report created from a checkpoint
+   * @param files        The output files
+   * @param logPositions The new positions of the transaction log and the balance log will be
+   *                     stored here, when the jobs are finished
+   */
+  private static void addLogAppendJobs(ConcurrentFileWriter fileWriter, Report report,
+                                       OutputFiles files, long[] logPositions) {
+    Checkpoint start = report.getStartCheckpoint();
+    long resumeTime = report.getCheckpoint().resumeTime();
+    fileWriter.add(files.transactionLog(), () -> {
+      logPositions[0] = ReportFileWriter.appendTransactionLogToFile(report,
+          files.transactionLog(), start.transactionLogPosition(), resumeTime);
+      logger.info("Transaction log appended to file {}", files.transactionLog());
+    });
+    fileWriter.add(files.balanceLog(), () -> {
+      logPositions[1] = ReportFileWriter.appendBalanceLogToFile(report,
+          files.balanceLog(), start.balanceLogPosition(), resumeTime);
+      logger.info("Wallet balance log appended to file {}", files.balanceLog());
+    });
+  }
+
+  /**
+   * Paths to the output files of a report.
+   *
+   * @param transactionLog  The transaction log (CSV)
+   * @param balanceLog      The wallet balance log (CSV)
+   * @param annualReport    The annual PNL reports (CSV)
+   * @param quarterlyReport The quarterly PNL reports (CSV)
+   * @param monthlyReport   The monthly PNL reports (CSV)
+   * @param columnarReport  The columnar binary report
+   */
+  private record OutputFiles(String transactionLog, String balanceLog, String annualReport,
+                             String quarterlyReport, String monthlyReport,
+                             String columnarReport) {
+    static OutputFiles in(Path directory) {
+      return new OutputFiles(directory.resolve(TRANSACTION_LOG_CSV_FILE).toString(),
+          directory.resolve(BALANCE_LOG_CSV_FILE).toString(),
+          directory.resolve(ANNUAL_REPORT_CSV_FILE).toString(),
+          directory.resolve(QUARTERLY_REPORT_CSV_FILE).toString(),
+          directory.resolve(MONTHLY_REPORT_CSV_FILE).toString(),
+          directory.resolve(COLUMNAR_REPORT_FILE).toString());
     }
   }
 
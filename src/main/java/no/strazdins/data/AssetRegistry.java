@@ -0,0 +1,91 @@
+package no.strazdins.data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A symbol table for the assets of one report. Each asset name gets a dense integer id when it
+ * is added to a wallet for the first time. The ids are used as indices in the balance storage of
+ * Wallet. A registry is shared by a wallet and all the copies made from it, therefore the ids
+ * follow the order in which the assets first appear in that report - the same for every run on
+ * the same input. The registry is garbage-collected together with the wallets of the report.
+ *
+ * <p>The registry is thread-safe: the wallet snapshots may be read by several writer threads
+ * while the ids are assigned.</p>
+ */
+public class AssetRegistry {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  // The names are stored before the id is published in the map, hence a thread which got an
+  // id from the map always sees the name
+  private volatile String[] names = new String[INITIAL_CAPACITY];
+  private int assetCount = 0;
+
+  /**
+   * Get the id of an asset, register the asset if it is not known yet.
+   *
+   * @param asset The asset name
+   * @return The id of the asset
+   * @throws IllegalArgumentException When the asset is null
+   */
+  public int getId(String asset) throws IllegalArgumentException {
+    if (asset == null) {
+      throw new IllegalArgumentException("Asset can't be null");
+    }
+    Integer id = ids.get(asset);
+    return id != null ? id : register(asset);
+  }
+
+  private synchronized int register(String asset) {
+    Integer id = ids.get(asset);
+    if (id != null) {
+      return id;
+    }
+    String[] registeredNames = names;
+    if (assetCount == registeredNames.length) {
+      registeredNames = Arrays.copyOf(registeredNames, assetCount * 2);
+    }
+    registeredNames[assetCount] = asset;
+    names = registeredNames;
+    ids.put(asset, assetCount);
+    return assetCount++;
+  }
+
+  /**
+   * Find the id of an asset, without registering it.
+   *
+   * @param asset The asset name
+   * @return The id of the asset, or -1 if the asset is not registered
+   */
+  public int findId(String asset) {
+    Integer id = asset != null ? ids.get(asset) : null;
+    return id != null ? id : -1;
+  }
+
+  /**
+   * Get the name of an asset.
+   *
+   * @param id The id of the asset, as returned by getId()
+   * @return The asset name
+   * @throws IllegalArgumentException When no asset has the given id
+   */
+  public String getName(int id) throws IllegalArgumentException {
+    String[] registeredNames = names;
+    String name = id >= 0 && id < registeredNames.length ? registeredNames[id] : null;
+    if (name == null) {
+      throw new IllegalArgumentException("Unknown asset id: " + id);
+    }
+    return name;
+  }
+
+  /**
+   * Get the number of registered assets. All the ids are lower than this number.
+   *
+   * @return The number of registered assets
+   */
+  public int getAssetCount() {
+    return ids.size();
+  }
+}
@@ -8,6 +8,16 @@ import java.util.Objects;
 /**
  * Use this class for storing prices and other decimal numbers without losing
  * precision.
+ *
+ * <p>Two calculation engines are available, selected with the system property
+ * {@value #ENGINE_PROPERTY}:</p>
+ * <ul>
+ *   <li>bigdecimal (default) - all values are stored as BigDecimal</li>
+ *   <li>long - values are stored as a scaled long (the number of 1e-8 units). BigDecimal is
+ *   used only for values (and intermediate results) which do not fit in a long.</li>
+ * </ul>
+ * <p>Both engines produce identical results, including HALF_UP rounding and the nice-string
+ * representation.</p>
  */
 public class Decimal implements Comparable<Decimal> {
 
@@ -19,9 +29,27 @@ public class Decimal implements Comparable<Decimal> {
   private static final MathContext DIV_PRECISION
       = new MathContext(DEFAULT_SCALE * 4, DEFAULT_ROUNDING);
 
+  /**
+   * The system property used to select the calculation engine: "long" or "bigdecimal".
+   */
+  public static final String ENGINE_PROPERTY = "pnl.decimal.engine";
+  private static final boolean LONG_ENGINE = "long".equals(System.getProperty(ENGINE_PROPERTY));
+  // The number of compact units in 1.0
+  private static final long UNITS_PER_ONE = 100_000_000L;
+  // Marks that a value can't be stored in the compact (long) form
+  private static final long NOT_COMPACT = Long.MIN_VALUE;
+  // Larger dividends would overflow when scaled up for a long-division
+  private static final long MAX_COMPACT_DIVIDEND = Long.MAX_VALUE / UNITS_PER_ONE;
+  // Strings with more integer digits are parsed by BigDecimal
+  private static final int MAX_COMPACT_INT_DIGITS = 10;
+  private static final long[] POWERS_OF_TEN = createPowersOfTen();
+
   public static final Decimal ZERO = new Decimal("0");
   public static final Decimal ONE = new Decimal("1");
 
+  // The value, in 1e-8 units. Used only when number is null
+  private final long units;
+  // The value as a BigDecimal, null when the value is stored in the compact form (units)
   private final BigDecimal number;
 
   /**
@@ -31,11 +59,26 @@ public class Decimal implements Comparable<Decimal> {
    * @throws NumberFormatException when the provided string is not a valid number
    */
   public Decimal(String number) throws NumberFormatException {
-    this.number = new BigDecimal(number).setScale(DEFAULT_SCALE, DEFAULT_ROUNDING);
+    long compactUnits = LONG_ENGINE ? parseUnits(number) : NOT_COMPACT;
+    if (compactUnits != NOT_COMPACT) {
+      this.units = compactUnits;
+      this.number = null;
+    } else {
+      BigDecimal bd = new BigDecimal(number).setScale(DEFAULT_SCALE, DEFAULT_ROUNDING);
+      this.units = getCompactUnits(bd);
+      this.number = this.units == NOT_COMPACT ? bd : null;
+    }
   }
 
+  /**
+   * Initialize the number from a BigDecimal.
+   *
+   * @param bd The value
+   */
   public Decimal(BigDecimal bd) {
-    this.number = bd.setScale(DEFAULT_SCALE, DEFAULT_ROUNDING);
+    BigDecimal scaled = bd.setScale(DEFAULT_SCALE, DEFAULT_ROUNDING);
+    this.units = getCompactUnits(scaled);
+    this.number = this.units == NOT_COMPACT ? scaled : null;
   }
 
   /**
@@ -44,9 +87,221 @@ public class Decimal implements Comparable<Decimal> {
    * @param d The number to copy
    */
   public Decimal(Decimal d) {
+    this.units = d.units;
     this.number = d.number;
   }
 
+  private Decimal(long units) {
+    this.units = units;
+    this.number = null;
+  }
+
+  private static long[] createPowersOfTen() {
+    long[] powers = new long[19];
+    powers[0] = 1;
+    for (int i = 1; i < powers.length; ++i) {
+      powers[i] = powers[i - 1] * 10;
+    }
+    return powers;
+  }
+
+  /**
+   * Get the compact representation of a value (the number of 1e-8 units).
+   *
+   * @param scaled The value, with the default scale
+   * @return The number of 1e-8 units, or NOT_COMPACT if the long engine is not used or the
+   *     value does not fit in a long
+   */
+  private static long getCompactUnits(BigDecimal scaled) {
+    if (!LONG_ENGINE || scaled.unscaledValue().bitLength() > 63) {
+      return NOT_COMPACT;
+    }
+    return scaled.unscaledValue().longValue();
+  }
+
+  /**
+   * Parse a plain decimal string (such as "-12.345") into 1e-8 units, without allocations.
+   * Rounds the value using HALF_UP rounding.
+   *
+   * @param s The string to parse
+   * @return The number of 1e-8 units, or NOT_COMPACT if the string is not a plain decimal
+   *     or the value is too large. Such strings must be handled by BigDecimal.
+   */
+  private static long parseUnits(String s) {
+    final int length = s.length();
+    int i = 0;
+    boolean negative = false;
+    if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+      negative = s.charAt(0) == '-';
+      i++;
+    }
+    long integerPart = 0;
+    int integerDigits = 0;
+    int digitCount = 0;
+    char c;
+    while (i < length && (c = s.charAt(i)) >= '0' && c <= '9') {
+      integerPart = integerPart * 10 + (c - '0');
+      if (integerPart > 0 && ++integerDigits > MAX_COMPACT_INT_DIGITS) {
+        return NOT_COMPACT;
+      }
+      digitCount++;
+      i++;
+    }
+    long fraction = 0;
+    int fractionDigits = 0;
+    boolean roundUp = false;
+    if (i < length && s.charAt(i) == '.') {
+      i++;
+      while (i < length && (c = s.charAt(i)) >= '0' && c <= '9') {
+        if (fractionDigits < DEFAULT_SCALE) {
+          fraction = fraction * 10 + (c - '0');
+          fractionDigits++;
+        } else if (fractionDigits == DEFAULT_SCALE) {
+          // HALF_UP: only the first discarded digit matters
+          roundUp = c >= '5';
+          fractionDigits++;
+        }
+        digitCount++;
+        i++;
+      }
+    }
+    if (i != length || digitCount == 0) {
+      return NOT_COMPACT;
+    }
+    for (int d = Math.min(fractionDigits, DEFAULT_SCALE); d < DEFAULT_SCALE; ++d) {
+      fraction *= 10;
+    }
+    long magnitude = integerPart * UNITS_PER_ONE + fraction + (roundUp ? 1 : 0);
+    return negative ? -magnitude : magnitude;
+  }
+
+  private static boolean isAdditionOverflow(long a, long b, long sum) {
+    return ((a ^ sum) & (b ^ sum)) < 0 || sum == NOT_COMPACT;
+  }
+
+  /**
+   * Multiply two compact values, round the result (HALF_UP) to the default scale.
+   *
+   * @param a The first value, in 1e-8 units
+   * @param b The second value, in 1e-8 units
+   * @return The product, in 1e-8 units, or NOT_COMPACT when it does not fit in a long
+   */
+  private static long multiplyUnits(long a, long b) {
+    long x = Math.abs(a);
+    long y = Math.abs(b);
+    long xi = x / UNITS_PER_ONE;
+    long xf = x % UNITS_PER_ONE;
+    long yi = y / UNITS_PER_ONE;
+    long yf = y % UNITS_PER_ONE;
+    // x * y / 1e8 = xi * yi * 1e8 + xi * yf + xf * yi + xf * yf / 1e8,
+    // only the last term has a fractional part
+    long lowProduct = xf * yf;
+    long lowUnits = lowProduct / UNITS_PER_ONE;
+    if (lowProduct % UNITS_PER_ONE >= UNITS_PER_ONE / 2) {
+      lowUnits++;
+    }
+    long magnitude;
+    try {
+      magnitude = Math.addExact(
+          Math.addExact(Math.multiplyExact(Math.multiplyExact(xi, yi), UNITS_PER_ONE),
+              Math.multiplyExact(xi, yf)),
+          Math.addExact(Math.multiplyExact(xf, yi), lowUnits));
+    } catch (ArithmeticException e) {
+      return NOT_COMPACT;
+    }
+    return (a < 0) != (b < 0) ? -magnitude : magnitude;
+  }
+
+  /**
+   * Divide two compact values with the same rounding as the BigDecimal engine: the quotient is
+   * first rounded to DIV_PRECISION significant digits, then to the default scale.
+   *
+   * @param a The dividend, in 1e-8 units
+   * @param b The divisor, in 1e-8 units, must not be zero
+   * @return The quotient, in 1e-8 units, or NOT_COMPACT when the result can't be calculated
+   *     exactly with long arithmetic
+   */
+  private static long divideUnits(long a, long b) {
+    long x = Math.abs(a);
+    long y = Math.abs(b);
+    if (x > MAX_COMPACT_DIVIDEND) {
+      return NOT_COMPACT;
+    }
+    long scaledDividend = x * UNITS_PER_ONE;
+    long quotient = scaledDividend / y;
+    long remainder = scaledDividend % y;
+    // The intermediate rounding to DIV_PRECISION digits can change the final result only when
+    // the divisor has at least as many digits as there are digits left for the fraction
+    int fractionDigits = DIV_PRECISION.getPrecision() - getDigitCount(quotient);
+    if (fractionDigits < POWERS_OF_TEN.length && y >= POWERS_OF_TEN[fractionDigits]) {
+      return NOT_COMPACT;
+    }
+    if (remainder >= y - remainder) {
+      quotient++;
+    }
+    return (a < 0) != (b < 0) ? -quotient : quotient;
+  }
+
+  private static int getDigitCount(long value) {
+    int digits = 0;
+    while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+      digits++;
+    }
+    return digits;
+  }
+
+  private boolean isCompact() {
+    return number == null;
+  }
+
+  /**
+   * Get the value as a BigDecimal, with the default scale.
+   *
+   * @return The value as a BigDecimal
+   */
+  private BigDecimal toBigDecimal() {
+    return number != null ? number : BigDecimal.valueOf(units, DEFAULT_SCALE);
+  }
+
+  /**
+   * Get the value as the number of 1e-8 units - the fixed-width representation used in
+   * binary files. Lossless, because all the values have eight decimal digits.
+   *
+   * @return The number of 1e-8 units
+   * @throws ArithmeticException When the value does not fit in a long
+   */
+  public long toUnits() throws ArithmeticException {
+    return isCompact() ? units : number.unscaledValue().longValueExact();
+  }
+
+  /**
+   * Create a decimal from the number of 1e-8 units.
+   *
+   * @param units The number of 1e-8 units, as returned by toUnits()
+   * @return The decimal value
+   */
+  public static Decimal fromUnits(long units) {
+    return LONG_ENGINE && units != NOT_COMPACT
+        ? new Decimal(units) : new Decimal(BigDecimal.valueOf(units, DEFAULT_SCALE));
+  }
+
+  /**
+   * Get a copy of this value, stored in the compact (long) form when the value fits in a long.
+   * Used to compare both calculation engines within the same run.
+   *
+   * @return A copy of this value, stored in the compact form if possible
+   */
+  Decimal toCompactForm() {
+    if (isCompact()) {
+      return this;
+    }
+    if (number.unscaledValue().bitLength() > 63) {
+      return this;
+    }
+    long compactUnits = number.unscaledValue().longValue();
+    return compactUnits != NOT_COMPACT ? new Decimal(compactUnits) : this;
+  }
+
   /**
    * Get number of integer digits (the digits before the decimal separator '.')
    *
@@ -96,7 +351,13 @@ public class Decimal implements Comparable<Decimal> {
    * @return A new decimal where the value is original + d
    */
   public Decimal add(Decimal d) {
-    return new Decimal(this.number.add(d.number));
+    if (isCompact() && d.isCompact()) {
+      long sum = units + d.units;
+      if (!isAdditionOverflow(units, d.units, sum)) {
+        return new Decimal(sum);
+      }
+    }
+    return new Decimal(toBigDecimal().add(d.toBigDecimal()));
   }
 
   /**
@@ -117,7 +378,13 @@ public class Decimal implements Comparable<Decimal> {
    * @return A new decimal: original - d
    */
   public Decimal subtract(Decimal d) {
-    return new Decimal(this.number.subtract(d.number));
+    if (isCompact() && d.isCompact()) {
+      long difference = units - d.units;
+      if (!isAdditionOverflow(units, -d.units, difference)) {
+        return new Decimal(difference);
+      }
+    }
+    return new Decimal(toBigDecimal().subtract(d.toBigDecimal()));
   }
 
   /**
@@ -138,7 +405,13 @@ public class Decimal implements Comparable<Decimal> {
    * @return A new decimal: original * d
    */
   public Decimal multiply(Decimal d) {
-    return new Decimal(number.multiply(d.number));
+    if (isCompact() && d.isCompact()) {
+      long product = multiplyUnits(units, d.units);
+      if (product != NOT_COMPACT) {
+        return new Decimal(product);
+      }
+    }
+    return new Decimal(toBigDecimal().multiply(d.toBigDecimal()));
   }
 
   /**
@@ -159,7 +432,13 @@ public class Decimal implements Comparable<Decimal> {
    * @return A new decimal: original / d
    */
   public Decimal divide(Decimal d) {
-    return new Decimal(number.divide(d.number, DIV_PRECISION));
+    if (isCompact() && d.isCompact() && d.units != 0) {
+      long quotient = divideUnits(units, d.units);
+      if (quotient != NOT_COMPACT) {
+        return new Decimal(quotient);
+      }
+    }
+    return new Decimal(toBigDecimal().divide(d.toBigDecimal(), DIV_PRECISION));
   }
 
   /**
@@ -179,7 +458,7 @@ public class Decimal implements Comparable<Decimal> {
    * @return A new decimal: -original
    */
   public Decimal negate() {
-    return new Decimal(number.negate());
+    return isCompact() ? new Decimal(-units) : new Decimal(number.negate());
   }
 
   /**
@@ -188,7 +467,7 @@ public class Decimal implements Comparable<Decimal> {
    * @return True if the number is greater than zero
    */
   public boolean isPositive() {
-    return number.compareTo(BigDecimal.ZERO) > 0;
+    return isCompact() ? units > 0 : number.signum() > 0;
   }
 
   /**
@@ -197,7 +476,7 @@ public class Decimal implements Comparable<Decimal> {
    * @return True if the number is less than zero
    */
   public boolean isNegative() {
-    return number.compareTo(BigDecimal.ZERO) < 0;
+    return isCompact() ? units < 0 : number.signum() < 0;
   }
 
   /**
@@ -206,7 +485,7 @@ public class Decimal implements Comparable<Decimal> {
    * @return True if the value is equal to zero
    */
   public boolean isZero() {
-    return equals(Decimal.ZERO);
+    return isCompact() ? units == 0 : number.signum() == 0;
   }
 
   /**
@@ -234,7 +513,10 @@ public class Decimal implements Comparable<Decimal> {
     if (d == null) {
       return 1;
     }
-    return this.number.compareTo(d.number);
+    if (isCompact() && d.isCompact()) {
+      return Long.compare(units, d.units);
+    }
+    return toBigDecimal().compareTo(d.toBigDecimal());
   }
 
   /**
@@ -249,17 +531,18 @@ public class Decimal implements Comparable<Decimal> {
       return false;
     }
     Decimal d = (Decimal) o;
-    return d.number.compareTo(this.number) == 0;
+    return compareTo(d) == 0;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(number);
+    Decimal compact = toCompactForm();
+    return compact.isCompact() ? Long.hashCode(compact.units) : Objects.hash(number);
   }
 
   @Override
   public String toString() {
-    return number.toString();
+    return toBigDecimal().toString();
   }
 
   /**
@@ -271,6 +554,9 @@ public class Decimal implements Comparable<Decimal> {
     if (isZero()) {
       return "0";
     }
+    if (isCompact()) {
+      return getCompactNiceString();
+    }
     String s = number.toPlainString();
     if (s.indexOf('.') < 0) {
       // When not a decimal, don't strip off anything
@@ -291,6 +577,29 @@ public class Decimal implements Comparable<Decimal> {
     }
   }
 
+  private String getCompactNiceString() {
+    long magnitude = Math.abs(units);
+    long fraction = magnitude % UNITS_PER_ONE;
+    StringBuilder sb = new StringBuilder(24);
+    if (units < 0) {
+      sb.append('-');
+    }
+    sb.append(magnitude / UNITS_PER_ONE);
+    if (fraction != 0) {
+      int fractionDigits = DEFAULT_SCALE;
+      while (fraction % 10 == 0) {
+        fraction /= 10;
+        fractionDigits--;
+      }
+      sb.append('.');
+      for (int i = getDigitCount(fraction); i < fractionDigits; ++i) {
+        sb.append('0');
+      }
+      sb.append(fraction);
+    }
+    return sb.toString();
+  }
+
   /**
    * Create an array of Decimals from an array of Strings.
    *
@@ -1,20 +1,34 @@
 package no.strazdins.data;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import no.strazdins.tool.TimeConverter;
 
 /**
- * Extra user-provided information.
+ * Extra user-provided information. Lookups by timestamp, type and asset use hashed indexes.
  */
 public class ExtraInfo implements Iterable<ExtraInfoEntry> {
   // Mapping timestamp to a list of extra info entries
   private final Map<Long, List<ExtraInfoEntry>> entries = new TreeMap<>();
-  // Copy of all the entries
-  private final List<ExtraInfoEntry> allEntries = new LinkedList<>();
+  // Copy of all the entries, in the order they were added
+  private final List<ExtraInfoEntry> allEntries = new ArrayList<>();
+  // Index of all (timestamp, type) combinations
+  private final Set<TypeKey> typeIndex = new HashSet<>();
+  // Entries indexed by (timestamp, type, asset)
+  private final Map<AssetKey, List<ExtraInfoEntry>> assetIndex = new HashMap<>();
+
+  private record TypeKey(long utcTimestamp, ExtraInfoType type) {
+  }
+
+  private record AssetKey(long utcTimestamp, ExtraInfoType type, String asset) {
+  }
 
   /**
    * Add an entry to the info storage.
@@ -29,6 +43,11 @@ public class ExtraInfo implements Iterable<ExtraInfoEntry> {
     }
     entryList.add(infoEntry);
     allEntries.add(infoEntry);
+    typeIndex.add(new TypeKey(infoEntry.utcTimestamp(), infoEntry.type()));
+    assetIndex.computeIfAbsent(
+        new AssetKey(infoEntry.utcTimestamp(), infoEntry.type(), infoEntry.asset()),
+        k -> new LinkedList<>()
+    ).add(infoEntry);
   }
 
   /**
@@ -43,27 +62,21 @@ public class ExtraInfo implements Iterable<ExtraInfoEntry> {
   /**
    * Get all entries stored here.
    *
-   * @return All the extra info entries, ordered by timestamp.
+   * @return All the extra info entries, in the order they were added
    */
   public List<ExtraInfoEntry> getAllEntries() {
     return allEntries;
   }
 
   /**
-   * Check if this information storage contains the provided entry.
+   * Check if this information storage contains the provided entry. Only the timestamp and the
+   * type of the entry is compared, the asset and the value are ignored.
    *
    * @param e The entry to check
    * @return True if this info storage contains the requested info entry, false otherwise
    */
   public boolean contains(ExtraInfoEntry e) {
-    boolean found = false;
-    Iterator<ExtraInfoEntry> it = getAllEntries().iterator();
-    while (!found && it.hasNext()) {
-      ExtraInfoEntry existingEntry = it.next();
-      found = existingEntry.utcTimestamp() == e.utcTimestamp()
-          && existingEntry.type().equals(e.type());
-    }
-    return found;
+    return typeIndex.contains(new TypeKey(e.utcTimestamp(), e.type()));
   }
 
   /**
@@ -86,15 +99,16 @@ public class ExtraInfo implements Iterable<ExtraInfoEntry> {
    * @throws IllegalStateException When there is more than one price of the asset at that moment
    */
   public Decimal getAssetPriceAtTime(long timestamp, String asset) throws IllegalStateException {
-    List<ExtraInfoEntry> entriesAtTime = entries.get(timestamp);
-    List<ExtraInfoEntry> assetPrices = entriesAtTime.stream().filter(
-        entry -> entry.asset().equals(asset) && entry.type().equals(ExtraInfoType.ASSET_PRICE)
-    ).toList();
+    List<ExtraInfoEntry> assetPrices = assetIndex.get(
+        new AssetKey(timestamp, ExtraInfoType.ASSET_PRICE, asset));
+    if (assetPrices == null) {
+      return null;
+    }
     if (assetPrices.size() > 1) {
       throw new IllegalStateException("Multiple " + asset + " prices at " + timestamp + "("
           + TimeConverter.utcTimeToString(timestamp) + ")");
     }
-    return assetPrices.size() == 1 ? new Decimal(assetPrices.get(0).value()) : null;
+    return new Decimal(assetPrices.get(0).value());
   }
 
   @Override
@@ -1,30 +1,73 @@
 package no.strazdins.data;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * A wallet that holds a list of assets in it, keeps track of the amount and average purchase
  * price for each asset.
+ *
+ * <p>The balances are keyed by the asset id. The ids come from an AssetRegistry shared by the
+ * wallet and all its copies, hence the assets are iterated in the order in which they first
+ * appeared in the report.</p>
+ *
+ * <p>The balances are stored in a persistent trie: each node holds up to 32 children, indexed by
+ * five bits of the asset id, the leaf nodes hold the balances. A copy of a wallet shares the
+ * whole trie with the original. Modifying a wallet copies only the nodes on the path to the
+ * modified balance (path copying), the rest of the trie stays shared between all the wallet
+ * snapshots. The nodes created after the last copy belong to the wallet and are modified in
+ * place, therefore a transaction which touches the same asset several times copies the path
+ * once. The AssetBalance objects are never modified in place - an updated balance is stored as a
+ * new object.</p>
  */
 public class Wallet implements Iterable<String> {
-  private final Map<String, AssetBalance> assets = new HashMap<>();
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+  private static final int INITIAL_JOURNAL_CAPACITY = 4;
 
-  public Wallet() {
+  // Asset ids of this wallet and all the copies made from it
+  private final AssetRegistry registry;
+  // The root of the balance trie, null for a wallet which never held any assets
+  private Node root;
+  // The lowest id bit used to index the root node, zero when the root is a leaf
+  private int rootShift;
+  // The nodes with this owner were created by this wallet after it was last copied
+  private Object owner;
+  private int assetCount;
+  // Journal of the assets modified since startJournal(): the ids and the amounts before the
+  // first modification. Null when the changes are not recorded.
+  private int[] journalIds;
+  private Decimal[] journalAmounts;
+  private int journalSize;
 
+  /**
+   * Create an empty wallet, with its own asset registry.
+   */
+  public Wallet() {
+    registry = new AssetRegistry();
+    owner = new Object();
+    assetCount = 0;
   }
 
   /**
-   * A copy-constructor - creates a deep-copy of w.
+   * A copy-constructor - creates a copy of w. The copy is cheap: the whole balance trie is shared
+   * with w, both wallets copy the nodes they modify afterwards. The journal is not copied.
    *
    * @param w The original wallet to be copied
    */
   public Wallet(Wallet w) {
-    for (Map.Entry<String, AssetBalance> entry : w.assets.entrySet()) {
-      assets.put(entry.getKey(), new AssetBalance(entry.getValue()));
-    }
+    registry = w.registry;
+    root = w.root;
+    rootShift = w.rootShift;
+    assetCount = w.assetCount;
+    owner = new Object();
+    // The nodes of w are shared now, w must not modify them either
+    w.owner = new Object();
   }
 
   /**
@@ -35,11 +78,16 @@ public class Wallet implements Iterable<String> {
    * @param obtainPrice The price at which the asset was obtained (in Home Currency)
    */
   public void addAsset(String asset, Decimal amount, Decimal obtainPrice) {
-    AssetBalance assetBalance = assets.get(asset);
+    int assetId = registry.getId(asset);
+    recordChange(assetId);
+    AssetBalance assetBalance = getBalance(assetId);
     if (assetBalance != null) {
-      assetBalance.add(amount, obtainPrice);
+      AssetBalance updatedBalance = new AssetBalance(assetBalance);
+      updatedBalance.add(amount, obtainPrice);
+      setBalance(assetId, updatedBalance);
     } else {
-      assets.put(asset, new AssetBalance(amount, obtainPrice));
+      setBalance(assetId, new AssetBalance(amount, obtainPrice));
+      assetCount++;
     }
   }
 
@@ -51,7 +99,8 @@ public class Wallet implements Iterable<String> {
    * @throws IllegalStateException If there is no enough asset in the wallet
    */
   public void decreaseAsset(String asset, Decimal amount) throws IllegalStateException {
-    AssetBalance assetBalance = assets.get(asset);
+    int assetId = registry.findId(asset);
+    AssetBalance assetBalance = getBalance(assetId);
     if (assetBalance == null) {
       throw new IllegalStateException("Can't decrease asset " + asset
           + " - no asset in the wallet");
@@ -60,12 +109,191 @@ public class Wallet implements Iterable<String> {
           + " units, only " + assetBalance.getAmount() + " units in the wallet");
     }
 
-    assetBalance.decrease(amount);
-    if (assetBalance.getAmount().isZero()) {
-      assets.remove(asset);
+    recordChange(assetId);
+    AssetBalance updatedBalance = new AssetBalance(assetBalance);
+    updatedBalance.decrease(amount);
+    if (updatedBalance.getAmount().isZero()) {
+      setBalance(assetId, null);
+      assetCount--;
+    } else {
+      setBalance(assetId, updatedBalance);
+    }
+  }
+
+  /**
+   * Start recording the modified assets. Any previous journal is discarded.
+   */
+  public void startJournal() {
+    journalIds = new int[INITIAL_JOURNAL_CAPACITY];
+    journalAmounts = new Decimal[INITIAL_JOURNAL_CAPACITY];
+    journalSize = 0;
+  }
+
+  /**
+   * Check whether the modified assets are being recorded.
+   *
+   * @return True if startJournal() has been called and the journal has not been ended
+   */
+  public boolean hasJournal() {
+    return journalIds != null;
+  }
+
+  /**
+   * Get the difference between this wallet and the wallet at the time when the journal was
+   * started. Only the recorded assets are checked.
+   *
+   * @return The wallet difference: the change of amount for each modified asset
+   * @throws IllegalStateException When the journal has not been started
+   */
+  public WalletDiff getJournalDiff() throws IllegalStateException {
+    if (journalIds == null) {
+      throw new IllegalStateException("Wallet changes are not recorded");
+    }
+    WalletDiff diff = new WalletDiff();
+    for (int i = 0; i < journalSize; ++i) {
+      Decimal change = getAssetAmount(journalIds[i]).subtract(journalAmounts[i]);
+      diff.add(registry.getName(journalIds[i]), change);
+    }
+    return diff;
+  }
+
+  /**
+   * Stop recording the modified assets, discard the journal.
+   */
+  public void endJournal() {
+    journalIds = null;
+    journalAmounts = null;
+    journalSize = 0;
+  }
+
+  private void recordChange(int assetId) {
+    if (journalIds == null) {
+      return;
+    }
+    for (int i = 0; i < journalSize; ++i) {
+      if (journalIds[i] == assetId) {
+        return;
+      }
+    }
+    if (journalSize == journalIds.length) {
+      journalIds = Arrays.copyOf(journalIds, journalSize * 2);
+      journalAmounts = Arrays.copyOf(journalAmounts, journalSize * 2);
+    }
+    journalIds[journalSize] = assetId;
+    journalAmounts[journalSize] = getAssetAmount(assetId);
+    journalSize++;
+  }
+
+  private AssetBalance getBalance(int assetId) {
+    if (root == null || assetId < 0 || (assetId >>> rootShift) >= WIDTH) {
+      return null;
+    }
+    Node node = root;
+    for (int shift = rootShift; shift > 0; shift -= BITS) {
+      node = (Node) node.getSlot((assetId >>> shift) & MASK);
+      if (node == null) {
+        return null;
+      }
     }
+    return (AssetBalance) node.getSlot(assetId & MASK);
   }
 
+  /**
+   * Get the balance of an asset, for checking which balances are shared between wallets.
+   *
+   * @param asset The asset to look for
+   * @return The balance of the asset, or null if it is not in the wallet
+   */
+  AssetBalance getBalance(String asset) {
+    return getBalance(registry.findId(asset));
+  }
+
+  /**
+   * Store the balance of an asset, copy the shared nodes on the path to it.
+   *
+   * @param assetId The id of the asset
+   * @param balance The new balance, null when the asset is removed
+   */
+  private void setBalance(int assetId, AssetBalance balance) {
+    if (root == null) {
+      root = new Node(owner, new Object[0]);
+      rootShift = 0;
+    }
+    while ((assetId >>> rootShift) >= WIDTH) {
+      root = new Node(owner, new Object[] {root});
+      rootShift += BITS;
+    }
+    Node node = root = getWritable(root, (assetId >>> rootShift) & MASK);
+    for (int shift = rootShift; shift > 0; shift -= BITS) {
+      int index = (assetId >>> shift) & MASK;
+      int childIndex = (assetId >>> (shift - BITS)) & MASK;
+      Node child = (Node) node.slots[index];
+      child = child != null ? getWritable(child, childIndex)
+          : new Node(owner, new Object[childIndex + 1]);
+      node.slots[index] = child;
+      node = child;
+    }
+    node.slots[assetId & MASK] = balance;
+  }
+
+  /**
+   * Get a version of the node which this wallet may modify, with a slot for the given index.
+   *
+   * @param node  The node, possibly shared with other wallets
+   * @param index The index of the slot which will be modified
+   * @return The same node when it is owned by this wallet, a copy otherwise
+   */
+  private Node getWritable(Node node, int index) {
+    int length = Math.max(node.slots.length, index + 1);
+    if (node.owner != owner) {
+      return new Node(owner, Arrays.copyOf(node.slots, length));
+    }
+    if (length > node.slots.length) {
+      node.slots = Arrays.copyOf(node.slots, length);
+    }
+    return node;
+  }
+
+  /**
+   * Get the root of the trie, extended with single-child nodes to the given depth.
+   *
+   * @param shift The lowest id bit used to index the root node, not lower than rootShift
+   * @return The root node for the requested depth, null when the wallet is empty
+   */
+  private Node getRoot(int shift) {
+    Node node = root;
+    for (int s = rootShift; s < shift && node != null; s += BITS) {
+      node = new Node(null, new Object[] {node});
+    }
+    return node;
+  }
+
+  /**
+   * Find the lowest id of an asset held in the wallet, starting from the given id.
+   *
+   * @param fromId The lowest id to consider
+   * @return The id of the asset, or -1 if there are no more assets
+   */
+  private int findNextId(int fromId) {
+    return root != null ? findNextId(root, rootShift, 0, fromId) : -1;
+  }
+
+  private static int findNextId(Node node, int shift, int base, int fromId) {
+    int start = fromId > base ? (fromId - base) >>> shift : 0;
+    for (int i = start; i < node.slots.length; ++i) {
+      Object slot = node.slots[i];
+      if (slot != null) {
+        int id = base + (i << shift);
+        if (shift > 0) {
+          id = findNextId((Node) slot, shift - BITS, id, fromId);
+        }
+        if (id >= 0) {
+          return id;
+        }
+      }
+    }
+    return -1;
+  }
 
   /**
    * Get the number of assets held in the wallet.
@@ -73,7 +301,7 @@ public class Wallet implements Iterable<String> {
    * @return The number of assets in the wallet
    */
   public int getAssetCount() {
-    return assets.size();
+    return assetCount;
   }
 
   @Override
@@ -85,12 +313,64 @@ public class Wallet implements Iterable<String> {
       return false;
     }
     Wallet wallet = (Wallet) o;
-    return assets.equals(wallet.assets);
+    if (assetCount != wallet.assetCount) {
+      return false;
+    }
+    if (registry != wallet.registry) {
+      return hasSameBalancesAs(wallet);
+    }
+    int shift = Math.max(rootShift, wallet.rootShift);
+    return haveSameBalances(getRoot(shift), wallet.getRoot(shift), shift);
+  }
+
+  /**
+   * Compare two subtrees of the same depth. The subtrees shared between the wallets are skipped.
+   */
+  private static boolean haveSameBalances(Node node, Node other, int shift) {
+    if (node == other) {
+      return true;
+    }
+    int length = Math.max(Node.getLength(node), Node.getLength(other));
+    for (int i = 0; i < length; ++i) {
+      Object slot = Node.getSlot(node, i);
+      Object otherSlot = Node.getSlot(other, i);
+      if (slot == otherSlot) {
+        continue;
+      }
+      if (shift > 0) {
+        if (!haveSameBalances((Node) slot, (Node) otherSlot, shift - BITS)) {
+          return false;
+        }
+      } else if (slot == null || !slot.equals(otherSlot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compare the balances by asset names, for wallets with different asset registries.
+   *
+   * @param wallet The wallet to compare against, holding the same number of assets
+   * @return True when each asset of this wallet has the same balance in the other wallet
+   */
+  private boolean hasSameBalancesAs(Wallet wallet) {
+    for (int id = findNextId(0); id >= 0; id = findNextId(id + 1)) {
+      if (!getBalance(id).equals(wallet.getBalance(registry.getName(id)))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(assets);
+    // Based on the asset names, because the ids differ between wallets of different reports
+    int hash = 0;
+    for (int id = findNextId(0); id >= 0; id = findNextId(id + 1)) {
+      hash += registry.getName(id).hashCode() ^ getBalance(id).hashCode();
+    }
+    return hash;
   }
 
   /**
@@ -100,8 +380,11 @@ public class Wallet implements Iterable<String> {
    * @return The amount of asset or Decimal.ZERO if it is not found
    */
   public Decimal getAssetAmount(String asset) {
-    AssetBalance b = assets.get(asset);
-    return b != null ? b.getAmount() : Decimal.ZERO;
+    return getAssetAmount(registry.findId(asset));
+  }
+
+  private Decimal getAssetAmount(int assetId) {
+    return getAmount(getBalance(assetId));
   }
 
   /**
@@ -111,13 +394,23 @@ public class Wallet implements Iterable<String> {
    * @return The average obtain price of asset or Decimal.ZERO if it is not found
    */
   public Decimal getAvgObtainPrice(String asset) {
-    AssetBalance b = assets.get(asset);
+    AssetBalance b = getBalance(registry.findId(asset));
     return b != null ? b.getObtainPrice() : Decimal.ZERO;
   }
 
+  /**
+   * Check whether the wallet holds an asset.
+   *
+   * @param asset The asset to look for
+   * @return True when the asset is in the wallet, even with zero amount
+   */
+  public boolean containsAsset(String asset) {
+    return getBalance(registry.findId(asset)) != null;
+  }
+
   @Override
   public Iterator<String> iterator() {
-    return assets.keySet().iterator();
+    return new AssetIterator(this);
   }
 
   /**
@@ -127,8 +420,150 @@ public class Wallet implements Iterable<String> {
    * @return The wallet difference: the change of amount for each asset
    */
   public WalletDiff getDiffFrom(Wallet previous) {
-    return new WalletDiff()
-        .addAll(this)
-        .removeAll(previous);
+    WalletDiff diff = new WalletDiff();
+    if (registry != previous.registry) {
+      return diff.addAll(this).removeAll(previous);
+    }
+    int shift = Math.max(rootShift, previous.rootShift);
+    addDiff(diff, getRoot(shift), previous.getRoot(shift), shift, 0);
+    return diff;
+  }
+
+  /**
+   * Add the differences between two subtrees of the same depth to the diff. The subtrees shared
+   * between the wallets are skipped.
+   */
+  private void addDiff(WalletDiff diff, Node node, Node previous, int shift, int base) {
+    if (node == previous) {
+      return;
+    }
+    int length = Math.max(Node.getLength(node), Node.getLength(previous));
+    for (int i = 0; i < length; ++i) {
+      Object slot = Node.getSlot(node, i);
+      Object previousSlot = Node.getSlot(previous, i);
+      if (slot == previousSlot) {
+        continue;
+      }
+      int id = base + (i << shift);
+      if (shift > 0) {
+        addDiff(diff, (Node) slot, (Node) previousSlot, shift - BITS, id);
+      } else {
+        diff.add(registry.getName(id), getAmount((AssetBalance) slot)
+            .subtract(getAmount((AssetBalance) previousSlot)));
+      }
+    }
+  }
+
+  /**
+   * Get the assets whose balance (amount or obtain price) differs between this and another
+   * wallet: the changed, the added and the removed assets. For copies of the same wallet only
+   * the paths of the trie which are not shared between them are visited.
+   *
+   * @param previous The previous wallet to compare against
+   * @return The names of the assets with a different balance
+   */
+  public List<String> getChangedAssets(Wallet previous) {
+    List<String> assets = new ArrayList<>();
+    if (registry != previous.registry) {
+      for (String asset : this) {
+        if (!getBalance(asset).equals(previous.getBalance(asset))) {
+          assets.add(asset);
+        }
+      }
+      for (String asset : previous) {
+        if (!containsAsset(asset)) {
+          assets.add(asset);
+        }
+      }
+      return assets;
+    }
+    int shift = Math.max(rootShift, previous.rootShift);
+    addChangedAssets(assets, getRoot(shift), previous.getRoot(shift), shift, 0);
+    return assets;
+  }
+
+  /**
+   * Add the assets with different balances in two subtrees of the same depth to the list. The
+   * subtrees shared between the wallets are skipped.
+   */
+  private void addChangedAssets(List<String> assets, Node node, Node previous, int shift,
+                                int base) {
+    if (node == previous) {
+      return;
+    }
+    int length = Math.max(Node.getLength(node), Node.getLength(previous));
+    for (int i = 0; i < length; ++i) {
+      Object slot = Node.getSlot(node, i);
+      Object previousSlot = Node.getSlot(previous, i);
+      if (slot == previousSlot) {
+        continue;
+      }
+      int id = base + (i << shift);
+      if (shift > 0) {
+        addChangedAssets(assets, (Node) slot, (Node) previousSlot, shift - BITS, id);
+      } else if (!Objects.equals(slot, previousSlot)) {
+        assets.add(registry.getName(id));
+      }
+    }
+  }
+
+  private static Decimal getAmount(AssetBalance balance) {
+    return balance != null ? balance.getAmount() : Decimal.ZERO;
+  }
+
+  /**
+   * A node of the balance trie. The slots hold child nodes on the inner levels and AssetBalance
+   * objects on the leaf level, null for the empty slots. The array is only as long as needed
+   * for the highest used slot.
+   */
+  private static class Node {
+    private final Object owner;
+    private Object[] slots;
+
+    Node(Object owner, Object[] slots) {
+      this.owner = owner;
+      this.slots = slots;
+    }
+
+    Object getSlot(int index) {
+      return index < slots.length ? slots[index] : null;
+    }
+
+    static Object getSlot(Node node, int index) {
+      return node != null ? node.getSlot(index) : null;
+    }
+
+    static int getLength(Node node) {
+      return node != null ? node.slots.length : 0;
+    }
+  }
+
+  /**
+   * Iterates over the names of the assets held in the wallet, in the order of asset ids. The
+   * wallet must not be modified during the iteration.
+   */
+  private static class AssetIterator implements Iterator<String> {
+    private final Wallet wallet;
+    private int nextId;
+
+    AssetIterator(Wallet wallet) {
+      this.wallet = wallet;
+      nextId = wallet.findNextId(0);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextId >= 0;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String asset = wallet.registry.getName(nextId);
+      nextId = wallet.findNextId(nextId + 1);
+      return asset;
+    }
   }
 }
@@ -1,14 +1,20 @@
 package no.strazdins.data;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.StringJoiner;
 
 /**
  * Difference between two wallet snapshots - the changes made by a single transaction.
+ * A transaction changes only a few assets, therefore the changes are stored in small arrays,
+ * in the order in which the assets were added, and looked up with a linear search.
  */
 public class WalletDiff {
-  private final Map<String, Decimal> assetDiffs = new HashMap<>();
+  private static final int INITIAL_CAPACITY = 4;
+
+  // The changed assets and the change of each, the first assetCount elements are used
+  private String[] assets = new String[INITIAL_CAPACITY];
+  private Decimal[] assetDiffs = new Decimal[INITIAL_CAPACITY];
+  private int assetCount = 0;
 
   /**
    * Add the given amount of asset in the diff.
@@ -18,15 +24,50 @@ public class WalletDiff {
    * @return This same object, for method chaining
    */
   public WalletDiff add(String asset, Decimal amount) {
-    Decimal newAmount = assetDiffs.getOrDefault(asset, Decimal.ZERO).add(amount);
-    if (newAmount.isZero()) {
-      assetDiffs.remove(asset);
+    int index = indexOf(asset);
+    if (index < 0) {
+      if (!amount.isZero()) {
+        append(asset, amount);
+      }
     } else {
-      assetDiffs.put(asset, newAmount);
+      Decimal newAmount = assetDiffs[index].add(amount);
+      if (newAmount.isZero()) {
+        remove(index);
+      } else {
+        assetDiffs[index] = newAmount;
+      }
     }
     return this;
   }
 
+  private int indexOf(String asset) {
+    for (int i = 0; i < assetCount; ++i) {
+      if (assets[i].equals(asset)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void append(String asset, Decimal amount) {
+    if (assetCount == assets.length) {
+      assets = Arrays.copyOf(assets, assetCount * 2);
+      assetDiffs = Arrays.copyOf(assetDiffs, assetCount * 2);
+    }
+    assets[assetCount] = asset;
+    assetDiffs[assetCount] = amount;
+    assetCount++;
+  }
+
+  private void remove(int index) {
+    int tailLength = assetCount - index - 1;
+    System.arraycopy(assets, index + 1, assets, index, tailLength);
+    System.arraycopy(assetDiffs, index + 1, assetDiffs, index, tailLength);
+    assetCount--;
+    assets[assetCount] = null;
+    assetDiffs[assetCount] = null;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -36,12 +77,25 @@ public class WalletDiff {
       return false;
     }
     WalletDiff that = (WalletDiff) o;
-    return Objects.equals(assetDiffs, that.assetDiffs);
+    if (assetCount != that.assetCount) {
+      return false;
+    }
+    for (int i = 0; i < assetCount; ++i) {
+      int index = that.indexOf(assets[i]);
+      if (index < 0 || !assetDiffs[i].equals(that.assetDiffs[index])) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(assetDiffs);
+    int hash = 0;
+    for (int i = 0; i < assetCount; ++i) {
+      hash += assets[i].hashCode() ^ assetDiffs[i].hashCode();
+    }
+    return hash;
   }
 
   /**
@@ -51,12 +105,17 @@ public class WalletDiff {
    * @return The amount of asset in the diff or Decimal.ZERO if not found
    */
   public Decimal getAmount(String asset) {
-    return assetDiffs.getOrDefault(asset, Decimal.ZERO);
+    int index = indexOf(asset);
+    return index >= 0 ? assetDiffs[index] : Decimal.ZERO;
   }
 
   @Override
   public String toString() {
-    return assetDiffs.toString();
+    StringJoiner joiner = new StringJoiner(", ", "{", "}");
+    for (int i = 0; i < assetCount; ++i) {
+      joiner.add(assets[i] + "=" + assetDiffs[i]);
+    }
+    return joiner.toString();
   }
 
   /**
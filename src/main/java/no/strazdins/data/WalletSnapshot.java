@@ -35,7 +35,8 @@ public class WalletSnapshot {
 
   /**
    * Create a new wallet transaction which has the same data as this, and is ready to be
-   * used as a template for "snapshot after transaction t".
+   * used as a template for "snapshot after transaction t". The new snapshot records the
+   * assets modified by the transaction, see getTransactionDiff().
    *
    * @param transaction The transaction for which the new snapshot will be created
    * @return A snapshot - copy of the current one, with the given transaction
@@ -43,6 +44,7 @@ public class WalletSnapshot {
   public WalletSnapshot prepareForTransaction(Transaction transaction) {
     WalletSnapshot ws = new WalletSnapshot(transaction, new Decimal(pnl));
     ws.wallet = new Wallet(this.wallet);
+    ws.wallet.startJournal();
     return ws;
   }
 
@@ -161,6 +163,33 @@ public class WalletSnapshot {
     return Objects.hash(transaction, wallet, pnl);
   }
 
+  /**
+   * Check whether the assets modified since prepareForTransaction() are recorded.
+   *
+   * @return True if the transaction diff is available, false otherwise
+   */
+  public boolean hasTransactionDiff() {
+    return wallet.hasJournal();
+  }
+
+  /**
+   * Get the changes made to the wallet since the snapshot was created by
+   * prepareForTransaction(). Only the modified assets are checked.
+   *
+   * @return The wallet difference: the change of amount for each asset
+   * @throws IllegalStateException When the modified assets are not recorded
+   */
+  public WalletDiff getTransactionDiff() throws IllegalStateException {
+    return wallet.getJournalDiff();
+  }
+
+  /**
+   * Stop recording the modified assets, after the transaction has been processed.
+   */
+  public void endTransaction() {
+    wallet.endJournal();
+  }
+
   /**
    * Get wallet difference between this and the old snapshot.
    *
@@ -0,0 +1,131 @@
+package no.strazdins.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the keyframe rows in a delta-encoded balance log. The index is stored next to the
+ * log, in a file with the ".idx" suffix. Each row of the index file contains the timestamp of
+ * a keyframe and its position in the log file (in bytes): timestamp,position.
+ */
+class BalanceLogIndex {
+  static final String FILE_SUFFIX = ".idx";
+
+  private final Path indexFilePath;
+  private final List<Long> timestamps = new ArrayList<>();
+  private final List<Long> positions = new ArrayList<>();
+
+  private BalanceLogIndex(String logFilePath) {
+    this.indexFilePath = Path.of(logFilePath + FILE_SUFFIX);
+  }
+
+  /**
+   * Read the index of a balance log.
+   *
+   * @param logFilePath Path to the balance log file (not the index file)
+   * @return The index, empty if the index file does not exist
+   * @throws IOException When the index file can't be read or has an invalid format
+   */
+  static BalanceLogIndex read(String logFilePath) throws IOException {
+    BalanceLogIndex index = new BalanceLogIndex(logFilePath);
+    if (!Files.exists(index.indexFilePath)) {
+      return index;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(index.indexFilePath,
+        StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = line.split(",");
+        if (columns.length != 2) {
+          throw new IOException("Invalid balance log index row: " + line);
+        }
+        try {
+          index.add(Long.parseLong(columns[0]), Long.parseLong(columns[1]));
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid balance log index row: " + line);
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Check whether the index is empty.
+   *
+   * @return True when there are no keyframes in the index
+   */
+  boolean isEmpty() {
+    return positions.isEmpty();
+  }
+
+  /**
+   * Register a keyframe. The keyframes must be added in the order of the log file.
+   *
+   * @param timestamp Timestamp of the keyframe row
+   * @param position  Position of the keyframe row in the log file, in bytes
+   */
+  void add(long timestamp, long position) {
+    timestamps.add(timestamp);
+    positions.add(position);
+  }
+
+  /**
+   * Remove the keyframes at the given position in the log file and after it.
+   *
+   * @param position The position in the log file, in bytes
+   */
+  void truncate(long position) {
+    int size = positions.size();
+    while (size > 0 && positions.get(size - 1) >= position) {
+      size--;
+    }
+    timestamps.subList(size, timestamps.size()).clear();
+    positions.subList(size, positions.size()).clear();
+  }
+
+  /**
+   * Find the last keyframe which is not later than the given time.
+   *
+   * @param timestamp The time of interest
+   * @return Position of the keyframe row in the log file, or -1 if all the keyframes are later
+   */
+  long findKeyframe(long timestamp) {
+    int low = 0;
+    int high = timestamps.size() - 1;
+    int found = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps.get(middle) <= timestamp) {
+        found = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return found >= 0 ? positions.get(found) : -1;
+  }
+
+  /**
+   * Write the index to the index file. The file is replaced atomically.
+   *
+   * @throws IOException When the file can't be written
+   */
+  void write() throws IOException {
+    Path tempPath = Path.of(indexFilePath + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < positions.size(); ++i) {
+        writer.write(timestamps.get(i) + "," + positions.get(i));
+        writer.newLine();
+      }
+    }
+    Files.move(tempPath, indexFilePath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
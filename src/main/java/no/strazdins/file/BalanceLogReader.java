@@ -0,0 +1,120 @@
+package no.strazdins.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.Wallet;
+
+/**
+ * Reads the wallet balances from a delta-encoded balance log, written by
+ * ReportFileWriter.writeBalanceDeltaLogToFile(). The reading starts at the nearest keyframe
+ * (found in the index file written together with the log), only the delta rows after the
+ * keyframe are read.
+ */
+public class BalanceLogReader {
+  private static final int TIMESTAMP_COLUMN = 0;
+  private static final int ROW_TYPE_COLUMN = 3;
+  private static final int FIRST_ASSET_COLUMN = 4;
+  private static final int COLUMNS_PER_ASSET = 4;
+
+  private final Path path;
+  private final BalanceLogIndex index;
+  private final Pattern separator;
+  private final boolean decimalComma;
+  private final long dataStart;
+
+  /**
+   * Open a delta-encoded balance log.
+   *
+   * @param filePath Path to the balance log file
+   * @throws IOException When the log or its index can't be read or has an invalid format
+   */
+  public BalanceLogReader(String filePath) throws IOException {
+    path = Path.of(filePath);
+    index = BalanceLogIndex.read(filePath);
+    String header;
+    try (BufferedReader reader = Files.newBufferedReader(path, Charset.defaultCharset())) {
+      header = reader.readLine();
+    }
+    if (header == null || !header.startsWith(ReportFileWriter.BALANCE_DELTA_LOG_HEADER[0])
+        || header.length() <= ReportFileWriter.BALANCE_DELTA_LOG_HEADER[0].length()) {
+      throw new IOException("Not a delta-encoded balance log: " + filePath);
+    }
+    char separatorChar = header.charAt(ReportFileWriter.BALANCE_DELTA_LOG_HEADER[0].length());
+    separator = Pattern.compile(Pattern.quote(String.valueOf(separatorChar)));
+    decimalComma = separatorChar == ';';
+    dataStart = header.getBytes(Charset.defaultCharset()).length + 1;
+  }
+
+  /**
+   * Get the wallet balances after the last transaction which is not later than the given time.
+   *
+   * @param timestamp The time of interest
+   * @return The wallet at that time, empty if the log starts later
+   * @throws IOException When the log can't be read or has an invalid format
+   */
+  public Wallet getBalancesAt(long timestamp) throws IOException {
+    Wallet wallet = new Wallet();
+    long position = index.isEmpty() ? dataStart : index.findKeyframe(timestamp);
+    if (position < 0) {
+      return wallet;
+    }
+    try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+      channel.position(position);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          Channels.newInputStream(channel), Charset.defaultCharset()));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = separator.split(line, -1);
+        if (columns.length < FIRST_ASSET_COLUMN
+            || (columns.length - FIRST_ASSET_COLUMN) % COLUMNS_PER_ASSET != 0) {
+          throw new IOException("Invalid balance log row: " + line);
+        }
+        if (parseTimestamp(columns[TIMESTAMP_COLUMN]) > timestamp) {
+          break;
+        }
+        if (columns[ROW_TYPE_COLUMN].equals(ReportFileWriter.KEYFRAME_ROW)) {
+          wallet = new Wallet();
+        }
+        for (int i = FIRST_ASSET_COLUMN; i < columns.length; i += COLUMNS_PER_ASSET) {
+          setAsset(wallet, columns[i + 1], parseDecimal(columns[i]),
+              parseDecimal(columns[i + 2]));
+        }
+      }
+    }
+    return wallet;
+  }
+
+  private static void setAsset(Wallet wallet, String asset, Decimal amount, Decimal price) {
+    Decimal oldAmount = wallet.getAssetAmount(asset);
+    if (!oldAmount.isZero()) {
+      wallet.decreaseAsset(asset, oldAmount);
+    }
+    if (!amount.isZero()) {
+      wallet.addAsset(asset, amount, price);
+    }
+  }
+
+  private static long parseTimestamp(String value) throws IOException {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid timestamp in the balance log: " + value);
+    }
+  }
+
+  private Decimal parseDecimal(String value) throws IOException {
+    try {
+      return new Decimal(decimalComma ? value.replace(',', '.') : value);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid number in the balance log: " + value);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package no.strazdins.file;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.Wallet;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.AutoInvestSubscription;
+import no.strazdins.process.Checkpoint;
+import no.strazdins.transaction.Transaction;
+
+/**
+ * Reads and writes report checkpoints. The checkpoint is stored as a CSV file where the first
+ * column of each row specifies the type of the row:
+ * - checkpoint,version
+ * - timestamp,[timestamp of the last final transaction]
+ * - pnl,[running PNL]
+ * - asset,[asset],[amount],[avg obtain price] - for each asset in the wallet
+ * - yearEnd,[timestamp],[running PNL] - for each year
+ * - yearEndAsset,[asset],[amount],[avg obtain price] - for each asset in the year-end wallet
+ * - resumeTime,[timestamp of the last auto-invest spending]
+ * - subscription,[timestamp],[investment amount] - the active auto-invest subscription
+ * - proportion,[asset],[proportion] - for each asset of the subscription
+ * - acquired,[asset] - for each asset acquired with the subscription
+ * - previousCoin,[coin] - for each coin of the previous auto-invest round
+ * - transactionLogPosition,[file size]
+ * - balanceLogPosition,[file size]
+ */
+public class CheckpointFile {
+  private static final String VERSION = "1";
+
+  /**
+   * Not allowed to create instances of this class.
+   */
+  private CheckpointFile() {
+
+  }
+
+  /**
+   * Read a checkpoint from a file.
+   *
+   * @param filePath Path to the checkpoint file
+   * @return The checkpoint stored in the file, or an empty checkpoint if the file does not exist
+   * @throws IOException When the file can't be read or has an invalid format
+   */
+  public static Checkpoint read(String filePath) throws IOException {
+    if (!Files.exists(Path.of(filePath))) {
+      return Checkpoint.empty();
+    }
+    CheckpointBuilder builder = new CheckpointBuilder();
+    CsvFileParser parser = new CsvFileParser(filePath);
+    try (parser) {
+      while (parser.hasMoreRows()) {
+        String[] row = parser.readNextRow();
+        try {
+          builder.addRow(row);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+          throw new IOException("Invalid checkpoint row: " + String.join(",", row));
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Write a checkpoint to a file. The file is replaced atomically: the previous checkpoint stays
+   * intact if the writing fails.
+   *
+   * @param checkpoint The checkpoint to write
+   * @param filePath   Path to the checkpoint file
+   * @throws IOException When the file can't be written
+   */
+  public static void write(Checkpoint checkpoint, String filePath) throws IOException {
+    Path path = Path.of(filePath);
+    Path tempPath = Path.of(filePath + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+      writeRow(writer, "checkpoint", VERSION);
+      writeRow(writer, "timestamp", String.valueOf(checkpoint.timestamp()));
+      writeRow(writer, "pnl", checkpoint.walletSnapshot().getPnl().getNiceString());
+      writeWallet(writer, "asset", checkpoint.walletSnapshot().getWallet());
+      for (WalletSnapshot snapshot : checkpoint.yearEndSnapshots()) {
+        writeRow(writer, "yearEnd", String.valueOf(snapshot.getTimestamp()),
+            snapshot.getPnl().getNiceString());
+        writeWallet(writer, "yearEndAsset", snapshot.getWallet());
+      }
+      writeRow(writer, "resumeTime", String.valueOf(checkpoint.resumeTime()));
+      AutoInvestSubscription subscription = checkpoint.autoInvestSubscription();
+      if (subscription != null) {
+        writeRow(writer, "subscription", String.valueOf(subscription.getUtcTime()),
+            subscription.getInvestmentAmount().getNiceString());
+        for (Map.Entry<String, Decimal> entry : subscription.getAssetProportions().entrySet()) {
+          writeRow(writer, "proportion", entry.getKey(), entry.getValue().getNiceString());
+        }
+        for (String asset : subscription.getAcquiredAssets()) {
+          writeRow(writer, "acquired", asset);
+        }
+      }
+      for (String coin : checkpoint.previousAutoInvestCoins()) {
+        writeRow(writer, "previousCoin", coin);
+      }
+      writeRow(writer, "transactionLogPosition",
+          String.valueOf(checkpoint.transactionLogPosition()));
+      writeRow(writer, "balanceLogPosition", String.valueOf(checkpoint.balanceLogPosition()));
+    }
+    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeWallet(BufferedWriter writer, String rowType, Wallet wallet)
+      throws IOException {
+    for (String asset : wallet) {
+      writeRow(writer, rowType, asset, wallet.getAssetAmount(asset).getNiceString(),
+          wallet.getAvgObtainPrice(asset).getNiceString());
+    }
+  }
+
+  private static void writeRow(BufferedWriter writer, String... columns) throws IOException {
+    writer.write(String.join(",", columns));
+    writer.newLine();
+  }
+
+  /**
+   * Collects the checkpoint data while reading the rows of the checkpoint file.
+   */
+  private static class CheckpointBuilder {
+    private boolean versionFound = false;
+    private long timestamp = Checkpoint.NO_TIMESTAMP;
+    private Decimal pnl = Decimal.ZERO;
+    private final Wallet wallet = new Wallet();
+    private final List<WalletSnapshot> yearEndSnapshots = new ArrayList<>();
+    private long resumeTime = Checkpoint.NO_TIMESTAMP;
+    private AutoInvestSubscription subscription;
+    private final Set<String> previousCoins = new HashSet<>();
+    private long transactionLogPosition = -1;
+    private long balanceLogPosition = -1;
+
+    /**
+     * Add one row of the checkpoint file.
+     *
+     * @param row The columns of the row
+     * @throws IllegalArgumentException When the row has an invalid format
+     * @throws IllegalStateException    When the row is not allowed at this place
+     */
+    void addRow(String[] row) {
+      if (!versionFound) {
+        requireColumns(row, 2);
+        if (!row[0].equals("checkpoint") || !row[1].equals(VERSION)) {
+          throw new IllegalArgumentException("Unsupported checkpoint format");
+        }
+        versionFound = true;
+        return;
+      }
+      switch (row[0]) {
+        case "timestamp" -> timestamp = parseLong(row, 2);
+        case "pnl" -> pnl = parseDecimal(row, 2, 1);
+        case "asset" -> addAsset(wallet, row);
+        case "yearEnd" -> yearEndSnapshots.add(
+            createSnapshot(parseLong(row, 3), parseDecimal(row, 3, 2)));
+        case "yearEndAsset" -> addAsset(getLastYearEndSnapshot(), row);
+        case "resumeTime" -> resumeTime = parseLong(row, 2);
+        case "subscription" -> subscription = new AutoInvestSubscription(
+            parseLong(row, 3), parseDecimal(row, 3, 2));
+        case "proportion" -> {
+          Decimal proportion = parseDecimal(row, 3, 2);
+          getSubscription().addAssetProportion(row[1], proportion);
+        }
+        case "acquired" -> {
+          requireColumns(row, 2);
+          getSubscription().registerAcquiredAsset(row[1]);
+        }
+        case "previousCoin" -> {
+          requireColumns(row, 2);
+          previousCoins.add(row[1]);
+        }
+        case "transactionLogPosition" -> transactionLogPosition = parseLong(row, 2);
+        case "balanceLogPosition" -> balanceLogPosition = parseLong(row, 2);
+        default -> throw new IllegalArgumentException("Unknown row type: " + row[0]);
+      }
+    }
+
+    private WalletSnapshot getLastYearEndSnapshot() {
+      if (yearEndSnapshots.isEmpty()) {
+        throw new IllegalStateException("Year-end asset without a year-end");
+      }
+      return yearEndSnapshots.get(yearEndSnapshots.size() - 1);
+    }
+
+    private AutoInvestSubscription getSubscription() {
+      if (subscription == null) {
+        throw new IllegalStateException("Subscription details without a subscription");
+      }
+      return subscription;
+    }
+
+    private static void addAsset(Wallet wallet, String[] row) {
+      requireColumns(row, 4);
+      wallet.addAsset(row[1], new Decimal(row[2]), new Decimal(row[3]));
+    }
+
+    private static void addAsset(WalletSnapshot snapshot, String[] row) {
+      requireColumns(row, 4);
+      snapshot.addAsset(row[1], new Decimal(row[2]), new Decimal(row[3]));
+    }
+
+    private static void requireColumns(String[] row, int columnCount) {
+      if (row.length != columnCount) {
+        throw new IllegalArgumentException("Invalid column count");
+      }
+    }
+
+    private static long parseLong(String[] row, int columnCount) {
+      requireColumns(row, columnCount);
+      return Long.parseLong(row[1]);
+    }
+
+    private static Decimal parseDecimal(String[] row, int columnCount, int column) {
+      requireColumns(row, columnCount);
+      return new Decimal(row[column]);
+    }
+
+    private static WalletSnapshot createSnapshot(long timestamp, Decimal pnl) {
+      Transaction transaction = timestamp != Checkpoint.NO_TIMESTAMP
+          ? new Transaction(timestamp) : null;
+      return new WalletSnapshot(transaction, pnl);
+    }
+
+    /**
+     * Create the checkpoint from the collected data.
+     *
+     * @return The checkpoint
+     * @throws IOException When the data is not complete
+     */
+    Checkpoint build() throws IOException {
+      if (!versionFound) {
+        throw new IOException("The checkpoint file is empty");
+      }
+      if (resumeTime != Checkpoint.NO_TIMESTAMP && subscription == null) {
+        throw new IOException("The checkpoint has a resume time but no auto-invest subscription");
+      }
+      WalletSnapshot snapshot = createSnapshot(timestamp, pnl);
+      for (String asset : wallet) {
+        snapshot.addAsset(asset, wallet.getAssetAmount(asset), wallet.getAvgObtainPrice(asset));
+      }
+      return new Checkpoint(timestamp, snapshot, yearEndSnapshots, resumeTime, subscription,
+          previousCoins, transactionLogPosition, balanceLogPosition);
+    }
+  }
+}
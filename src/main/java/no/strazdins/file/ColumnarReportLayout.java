@@ -0,0 +1,121 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of the columnar report file. All the numbers are little-endian.
+ *
+ * <p>The header: magic "PNLC", version (int), row count (int), keyframe interval (int),
+ * wallet entry count (long), the asset names and the transaction type names (each: int count,
+ * then for each name: short length and UTF-8 bytes). The header is padded with zeros to a
+ * multiple of 8 bytes.</p>
+ *
+ * <p>The header is followed by the columns, each column holds one value per row:
+ * timestamp, amount, price (in USDT), transaction PNL, running PNL (long each), the start of
+ * the wallet entries of the row (long, one extra value at the end), the transaction type id
+ * and the asset id (int each). The wallet after the transaction is delta-encoded, as in the
+ * delta balance log: every keyframe-interval-th row (starting with the first one) is a
+ * keyframe with one entry per asset in the wallet, the other rows have one entry per asset
+ * changed since the previous row. The entries are stored in the columns wallet amount, wallet
+ * average obtain price (long each) and wallet asset id (int); a removed asset has the
+ * bitwise complement of its id (a negative number) and zero amount and price.
+ * The decimal values are stored as the number of 1e-8 units. The ids are indices in the
+ * asset name and transaction type name lists.</p>
+ */
+class ColumnarReportLayout {
+  static final byte[] MAGIC = {'P', 'N', 'L', 'C'};
+  static final int VERSION = 2;
+  static final int DEFAULT_KEYFRAME_INTERVAL = 1000;
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private static final int LONG_COLUMNS_PER_ROW = 5;
+  private static final int LONG_SIZE = Long.BYTES;
+  private static final int INT_SIZE = Integer.BYTES;
+
+  final int rowCount;
+  final int keyframeInterval;
+  final long walletEntryCount;
+  final long timestampOffset;
+  final long amountOffset;
+  final long priceOffset;
+  final long pnlOffset;
+  final long runningPnlOffset;
+  final long walletStartOffset;
+  final long walletAmountOffset;
+  final long walletPriceOffset;
+  final long typeOffset;
+  final long assetOffset;
+  final long walletAssetOffset;
+  final long fileSize;
+
+  /**
+   * Calculate the positions of the columns.
+   *
+   * @param headerSize       The size of the header, in bytes, without the padding
+   * @param rowCount         The number of rows
+   * @param keyframeInterval The number of rows between two keyframe wallets
+   * @param walletEntryCount The total number of wallet entries, in all the rows
+   */
+  ColumnarReportLayout(long headerSize, int rowCount, int keyframeInterval,
+                       long walletEntryCount) {
+    this.rowCount = rowCount;
+    this.keyframeInterval = keyframeInterval;
+    this.walletEntryCount = walletEntryCount;
+    timestampOffset = getPaddedSize(headerSize);
+    amountOffset = timestampOffset + (long) rowCount * LONG_SIZE;
+    priceOffset = amountOffset + (long) rowCount * LONG_SIZE;
+    pnlOffset = priceOffset + (long) rowCount * LONG_SIZE;
+    runningPnlOffset = pnlOffset + (long) rowCount * LONG_SIZE;
+    walletStartOffset = timestampOffset + (long) rowCount * LONG_SIZE * LONG_COLUMNS_PER_ROW;
+    walletAmountOffset = walletStartOffset + (rowCount + 1L) * LONG_SIZE;
+    walletPriceOffset = walletAmountOffset + walletEntryCount * LONG_SIZE;
+    typeOffset = walletPriceOffset + walletEntryCount * LONG_SIZE;
+    assetOffset = typeOffset + (long) rowCount * INT_SIZE;
+    walletAssetOffset = assetOffset + (long) rowCount * INT_SIZE;
+    fileSize = walletAssetOffset + walletEntryCount * INT_SIZE;
+  }
+
+  /**
+   * Get the size of the header, including the padding.
+   *
+   * @param headerSize The size of the header without the padding
+   * @return The size, rounded up to a multiple of 8 bytes
+   */
+  static long getPaddedSize(long headerSize) {
+    return (headerSize + LONG_SIZE - 1) / LONG_SIZE * LONG_SIZE;
+  }
+
+  /**
+   * Map a column of long values.
+   *
+   * @param channel The file channel
+   * @param mode    The mapping mode
+   * @param offset  Position of the column in the file
+   * @param count   The number of values in the column
+   * @return The column
+   * @throws IOException When the column can't be mapped
+   */
+  static MappedColumn mapLongs(FileChannel channel, FileChannel.MapMode mode, long offset,
+                               long count) throws IOException {
+    return new MappedColumn(channel, mode, offset, count, LONG_SIZE,
+        MappedColumn.DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Map a column of int values.
+   *
+   * @param channel The file channel
+   * @param mode    The mapping mode
+   * @param offset  Position of the column in the file
+   * @param count   The number of values in the column
+   * @return The column
+   * @throws IOException When the column can't be mapped
+   */
+  static MappedColumn mapInts(FileChannel channel, FileChannel.MapMode mode, long offset,
+                              long count) throws IOException {
+    return new MappedColumn(channel, mode, offset, count, INT_SIZE,
+        MappedColumn.DEFAULT_WINDOW_SIZE);
+  }
+}
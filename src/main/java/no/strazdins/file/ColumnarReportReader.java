@@ -0,0 +1,276 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.Wallet;
+
+/**
+ * Reads a columnar report file, written by ColumnarReportWriter. The columns are
+ * memory-mapped, only the accessed values are read from the disk. The rows are sorted by
+ * timestamp, the row at a given time is found with a binary search. The wallet of a row is
+ * reconstructed from the nearest keyframe before it.
+ */
+public class ColumnarReportReader {
+  private final int rowCount;
+  private final int keyframeInterval;
+  private final String[] assetNames;
+  private final String[] typeNames;
+  private final MappedColumn timestamps;
+  private final MappedColumn amounts;
+  private final MappedColumn prices;
+  private final MappedColumn pnls;
+  private final MappedColumn runningPnls;
+  private final MappedColumn walletStarts;
+  private final MappedColumn walletAmounts;
+  private final MappedColumn walletPrices;
+  private final MappedColumn types;
+  private final MappedColumn assets;
+  private final MappedColumn walletAssets;
+
+  /**
+   * Open a columnar report file.
+   *
+   * @param filePath Path to the file
+   * @throws IOException When the file can't be read or has an invalid format
+   */
+  public ColumnarReportReader(String filePath) throws IOException {
+    try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          Math.min(fileSize, Integer.MAX_VALUE)).order(ColumnarReportLayout.BYTE_ORDER);
+      ColumnarReportLayout layout;
+      try {
+        byte[] magic = new byte[ColumnarReportLayout.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, ColumnarReportLayout.MAGIC)) {
+          throw new IOException("Not a columnar report file: " + filePath);
+        }
+        int version = header.getInt();
+        if (version != ColumnarReportLayout.VERSION) {
+          throw new IOException("Unsupported columnar report version: " + version);
+        }
+        rowCount = header.getInt();
+        keyframeInterval = header.getInt();
+        long walletEntryCount = header.getLong();
+        assetNames = readNames(header);
+        typeNames = readNames(header);
+        layout = new ColumnarReportLayout(header.position(), rowCount, keyframeInterval,
+            walletEntryCount);
+      } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+        throw new IOException("Truncated columnar report file: " + filePath);
+      }
+      if (layout.fileSize != fileSize || keyframeInterval < 1) {
+        throw new IOException("Invalid size of the columnar report file: " + filePath);
+      }
+
+      FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+      long entries = layout.walletEntryCount;
+      timestamps = ColumnarReportLayout.mapLongs(channel, mode, layout.timestampOffset, rowCount);
+      amounts = ColumnarReportLayout.mapLongs(channel, mode, layout.amountOffset, rowCount);
+      prices = ColumnarReportLayout.mapLongs(channel, mode, layout.priceOffset, rowCount);
+      pnls = ColumnarReportLayout.mapLongs(channel, mode, layout.pnlOffset, rowCount);
+      runningPnls = ColumnarReportLayout.mapLongs(channel, mode, layout.runningPnlOffset,
+          rowCount);
+      walletStarts = ColumnarReportLayout.mapLongs(channel, mode, layout.walletStartOffset,
+          rowCount + 1L);
+      walletAmounts = ColumnarReportLayout.mapLongs(channel, mode, layout.walletAmountOffset,
+          entries);
+      walletPrices = ColumnarReportLayout.mapLongs(channel, mode, layout.walletPriceOffset,
+          entries);
+      types = ColumnarReportLayout.mapInts(channel, mode, layout.typeOffset, rowCount);
+      assets = ColumnarReportLayout.mapInts(channel, mode, layout.assetOffset, rowCount);
+      walletAssets = ColumnarReportLayout.mapInts(channel, mode, layout.walletAssetOffset,
+          entries);
+    }
+  }
+
+  private static String[] readNames(ByteBuffer header) {
+    String[] names = new String[header.getInt()];
+    for (int i = 0; i < names.length; ++i) {
+      byte[] bytes = new byte[header.getShort()];
+      header.get(bytes);
+      names[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return names;
+  }
+
+  /**
+   * Get the number of rows (transactions) in the report.
+   *
+   * @return The row count
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Find the last row which is not later than the given time.
+   *
+   * @param timestamp The time of interest, including milliseconds
+   * @return Index of the row, or -1 if all the rows are later
+   */
+  public int findRow(long timestamp) {
+    int low = 0;
+    int high = rowCount - 1;
+    int found = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps.getLong(middle) <= timestamp) {
+        found = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Get the timestamp of a row.
+   *
+   * @param row Index of the row
+   * @return The timestamp of the transaction, including milliseconds
+   */
+  public long getTimestamp(int row) {
+    return timestamps.getLong(row);
+  }
+
+  /**
+   * Get the transaction type of a row.
+   *
+   * @param row Index of the row
+   * @return The type of the transaction
+   */
+  public String getTransactionType(int row) {
+    return typeNames[types.getInt(row)];
+  }
+
+  /**
+   * Get the base asset of a row.
+   *
+   * @param row Index of the row
+   * @return The base asset of the transaction
+   */
+  public String getAsset(int row) {
+    return assetNames[assets.getInt(row)];
+  }
+
+  /**
+   * Get the base asset amount of a row.
+   *
+   * @param row Index of the row
+   * @return The amount of the base asset changed by the transaction
+   */
+  public Decimal getAmount(int row) {
+    return Decimal.fromUnits(amounts.getLong(row));
+  }
+
+  /**
+   * Get the price of a row.
+   *
+   * @param row Index of the row
+   * @return The average price of the base asset in the transaction, in USDT
+   */
+  public Decimal getPrice(int row) {
+    return Decimal.fromUnits(prices.getLong(row));
+  }
+
+  /**
+   * Get the profit/loss of a row.
+   *
+   * @param row Index of the row
+   * @return The PNL of the transaction, in USDT
+   */
+  public Decimal getPnl(int row) {
+    return Decimal.fromUnits(pnls.getLong(row));
+  }
+
+  /**
+   * Get the running profit/loss after the transaction of a row.
+   *
+   * @param row Index of the row
+   * @return The total PNL so far, in USDT
+   */
+  public Decimal getRunningPnl(int row) {
+    return Decimal.fromUnits(runningPnls.getLong(row));
+  }
+
+  /**
+   * Get the wallet after the transaction of a row.
+   *
+   * @param row Index of the row
+   * @return The wallet
+   */
+  public Wallet getWallet(int row) {
+    // The wallet entry of each asset, from the keyframe up to the row
+    Map<Integer, Long> entries = new LinkedHashMap<>();
+    for (int r = row - row % keyframeInterval; r <= row; ++r) {
+      long end = walletStarts.getLong(r + 1);
+      for (long i = walletStarts.getLong(r); i < end; ++i) {
+        int assetId = walletAssets.getInt(i);
+        if (assetId < 0) {
+          entries.remove(~assetId);
+        } else {
+          entries.put(assetId, i);
+        }
+      }
+    }
+    Wallet wallet = new Wallet();
+    for (Map.Entry<Integer, Long> entry : entries.entrySet()) {
+      long i = entry.getValue();
+      wallet.addAsset(assetNames[entry.getKey()], Decimal.fromUnits(walletAmounts.getLong(i)),
+          Decimal.fromUnits(walletPrices.getLong(i)));
+    }
+    return wallet;
+  }
+
+  /**
+   * Get the wallet balances after the last transaction which is not later than the given time.
+   *
+   * @param timestamp The time of interest, including milliseconds
+   * @return The wallet at that time, empty if the report starts later
+   */
+  public Wallet getBalancesAt(long timestamp) {
+    int row = findRow(timestamp);
+    return row >= 0 ? getWallet(row) : new Wallet();
+  }
+
+  /**
+   * Get the amount of one asset after the last transaction which is not later than the given
+   * time.
+   *
+   * @param asset     The asset
+   * @param timestamp The time of interest, including milliseconds
+   * @return The amount of the asset in the wallet at that time
+   */
+  public Decimal getBalanceAt(String asset, long timestamp) {
+    int row = findRow(timestamp);
+    int assetId = Arrays.asList(assetNames).indexOf(asset);
+    if (row < 0 || assetId < 0) {
+      return Decimal.ZERO;
+    }
+    // The latest entry of the asset, back to the keyframe
+    int keyframe = row - row % keyframeInterval;
+    for (int r = row; r >= keyframe; --r) {
+      long start = walletStarts.getLong(r);
+      for (long i = walletStarts.getLong(r + 1) - 1; i >= start; --i) {
+        int entryAssetId = walletAssets.getInt(i);
+        if (entryAssetId == assetId) {
+          return Decimal.fromUnits(walletAmounts.getLong(i));
+        } else if (entryAssetId == ~assetId) {
+          return Decimal.ZERO;
+        }
+      }
+    }
+    return Decimal.ZERO;
+  }
+}
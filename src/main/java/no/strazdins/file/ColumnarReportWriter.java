@@ -0,0 +1,235 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.Wallet;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.Report;
+import no.strazdins.transaction.Transaction;
+
+/**
+ * Writes the report to a columnar binary file, which can be read with ColumnarReportReader.
+ * The file layout is described in ColumnarReportLayout. The report is iterated twice: first
+ * to collect the asset names and the column sizes, then to fill the memory-mapped columns.
+ * The wallets are delta-encoded, with a full keyframe wallet at regular intervals.
+ */
+public class ColumnarReportWriter {
+  /**
+   * Not allowed to create instances of this class.
+   */
+  private ColumnarReportWriter() {
+
+  }
+
+  /**
+   * Write the report to a columnar binary file, with the default keyframe interval.
+   *
+   * @param report         The report content
+   * @param outputFilePath Path to the file where to store the result
+   * @throws IOException When something went wrong while writing data to the file, or when a
+   *                     value does not fit in the fixed-width columns
+   */
+  public static void writeToFile(Report report, String outputFilePath) throws IOException {
+    writeToFile(report, outputFilePath, ColumnarReportLayout.DEFAULT_KEYFRAME_INTERVAL);
+  }
+
+  /**
+   * Write the report to a columnar binary file.
+   *
+   * @param report           The report content
+   * @param outputFilePath   Path to the file where to store the result
+   * @param keyframeInterval The number of rows between two keyframe wallets
+   * @throws IOException When something went wrong while writing data to the file, or when a
+   *                     value does not fit in the fixed-width columns
+   */
+  public static void writeToFile(Report report, String outputFilePath, int keyframeInterval)
+      throws IOException {
+    if (keyframeInterval < 1) {
+      throw new IOException("Invalid keyframe interval: " + keyframeInterval);
+    }
+    Map<String, Integer> assetIds = new LinkedHashMap<>();
+    Map<String, Integer> typeIds = new LinkedHashMap<>();
+    int rowCount = 0;
+    long walletEntryCount = 0;
+    Wallet previousWallet = null;
+    for (WalletSnapshot snapshot : report) {
+      Transaction t = snapshot.getTransaction();
+      typeIds.putIfAbsent(t.getType(), typeIds.size());
+      assetIds.putIfAbsent(t.getBaseCurrency(), assetIds.size());
+      Wallet wallet = snapshot.getWallet();
+      for (String asset : wallet) {
+        assetIds.putIfAbsent(asset, assetIds.size());
+      }
+      boolean keyframe = rowCount % keyframeInterval == 0;
+      walletEntryCount += writeWalletEntries(wallet, keyframe ? null : previousWallet, null,
+          walletEntryCount, assetIds);
+      previousWallet = wallet;
+      rowCount++;
+    }
+
+    ByteBuffer header = createHeader(rowCount, keyframeInterval, walletEntryCount, assetIds,
+        typeIds);
+    ColumnarReportLayout layout = new ColumnarReportLayout(header.limit(), rowCount,
+        keyframeInterval, walletEntryCount);
+    try (FileChannel channel = FileChannel.open(Path.of(outputFilePath),
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      writeColumns(report, channel, layout, assetIds, typeIds);
+    }
+  }
+
+  private static ByteBuffer createHeader(int rowCount, int keyframeInterval,
+                                         long walletEntryCount, Map<String, Integer> assetIds,
+                                         Map<String, Integer> typeIds) throws IOException {
+    List<byte[]> assetNames = encodeNames(assetIds);
+    List<byte[]> typeNames = encodeNames(typeIds);
+    int size = ColumnarReportLayout.MAGIC.length + Integer.BYTES * 3 + Long.BYTES
+        + getNameListSize(assetNames) + getNameListSize(typeNames);
+    ByteBuffer header = ByteBuffer.allocate(size).order(ColumnarReportLayout.BYTE_ORDER);
+    header.put(ColumnarReportLayout.MAGIC);
+    header.putInt(ColumnarReportLayout.VERSION);
+    header.putInt(rowCount);
+    header.putInt(keyframeInterval);
+    header.putLong(walletEntryCount);
+    putNames(header, assetNames);
+    putNames(header, typeNames);
+    return header.flip();
+  }
+
+  private static List<byte[]> encodeNames(Map<String, Integer> ids) throws IOException {
+    List<byte[]> names = new ArrayList<>(ids.size());
+    for (String name : ids.keySet()) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > Short.MAX_VALUE) {
+        throw new IOException("Name too long for the columnar report: " + name);
+      }
+      names.add(bytes);
+    }
+    return names;
+  }
+
+  private static int getNameListSize(List<byte[]> names) {
+    int size = Integer.BYTES;
+    for (byte[] name : names) {
+      size += Short.BYTES + name.length;
+    }
+    return size;
+  }
+
+  private static void putNames(ByteBuffer buffer, List<byte[]> names) {
+    buffer.putInt(names.size());
+    for (byte[] name : names) {
+      buffer.putShort((short) name.length);
+      buffer.put(name);
+    }
+  }
+
+  private static void writeColumns(Report report, FileChannel channel,
+                                   ColumnarReportLayout layout, Map<String, Integer> assetIds,
+                                   Map<String, Integer> typeIds) throws IOException {
+    FileChannel.MapMode mode = FileChannel.MapMode.READ_WRITE;
+    int rows = layout.rowCount;
+    long entries = layout.walletEntryCount;
+    MappedColumn timestamps = ColumnarReportLayout.mapLongs(channel, mode,
+        layout.timestampOffset, rows);
+    MappedColumn amounts = ColumnarReportLayout.mapLongs(channel, mode, layout.amountOffset,
+        rows);
+    MappedColumn prices = ColumnarReportLayout.mapLongs(channel, mode, layout.priceOffset, rows);
+    MappedColumn pnls = ColumnarReportLayout.mapLongs(channel, mode, layout.pnlOffset, rows);
+    MappedColumn runningPnls = ColumnarReportLayout.mapLongs(channel, mode,
+        layout.runningPnlOffset, rows);
+    MappedColumn walletStarts = ColumnarReportLayout.mapLongs(channel, mode,
+        layout.walletStartOffset, rows + 1L);
+    MappedColumn types = ColumnarReportLayout.mapInts(channel, mode, layout.typeOffset, rows);
+    MappedColumn assets = ColumnarReportLayout.mapInts(channel, mode, layout.assetOffset, rows);
+    WalletColumns walletColumns = new WalletColumns(
+        ColumnarReportLayout.mapLongs(channel, mode, layout.walletAmountOffset, entries),
+        ColumnarReportLayout.mapLongs(channel, mode, layout.walletPriceOffset, entries),
+        ColumnarReportLayout.mapInts(channel, mode, layout.walletAssetOffset, entries));
+
+    int row = 0;
+    long walletStart = 0;
+    Wallet previousWallet = null;
+    for (WalletSnapshot snapshot : report) {
+      Transaction t = snapshot.getTransaction();
+      timestamps.putLong(row, snapshot.getTimestamp());
+      amounts.putLong(row, toUnits(t.getBaseCurrencyAmount()));
+      prices.putLong(row, toUnits(t.getAvgPriceInUsdt()));
+      pnls.putLong(row, toUnits(t.getPnl()));
+      runningPnls.putLong(row, toUnits(snapshot.getPnl()));
+      types.putInt(row, typeIds.get(t.getType()));
+      assets.putInt(row, assetIds.get(t.getBaseCurrency()));
+      walletStarts.putLong(row, walletStart);
+      boolean keyframe = row % layout.keyframeInterval == 0;
+      Wallet wallet = snapshot.getWallet();
+      walletStart += writeWalletEntries(wallet, keyframe ? null : previousWallet, walletColumns,
+          walletStart, assetIds);
+      previousWallet = wallet;
+      row++;
+    }
+    walletStarts.putLong(row, walletStart);
+  }
+
+  /**
+   * The columns of the wallet entries.
+   */
+  private record WalletColumns(MappedColumn amounts, MappedColumn prices,
+                               MappedColumn assets) {
+  }
+
+  /**
+   * Write the wallet entries of one row: all the assets for a keyframe, the changed and
+   * removed assets otherwise.
+   *
+   * @param wallet         The wallet after the transaction
+   * @param previousWallet The wallet of the previous row, null for a keyframe
+   * @param columns        The wallet columns, null when only counting the entries
+   * @param firstEntry     Index of the first entry of the row
+   * @param assetIds       The asset ids
+   * @return The number of entries of the row
+   */
+  private static int writeWalletEntries(Wallet wallet, Wallet previousWallet,
+                                        WalletColumns columns, long firstEntry,
+                                        Map<String, Integer> assetIds) throws IOException {
+    int count = 0;
+    // A delta row visits only the assets changed since the previous wallet
+    Iterable<String> assets = previousWallet != null
+        ? wallet.getChangedAssets(previousWallet) : wallet;
+    for (String asset : assets) {
+      if (columns != null) {
+        int assetId = assetIds.get(asset);
+        if (wallet.containsAsset(asset)) {
+          columns.amounts.putLong(firstEntry + count, toUnits(wallet.getAssetAmount(asset)));
+          columns.prices.putLong(firstEntry + count, toUnits(wallet.getAvgObtainPrice(asset)));
+          columns.assets.putInt(firstEntry + count, assetId);
+        } else {
+          columns.amounts.putLong(firstEntry + count, 0);
+          columns.prices.putLong(firstEntry + count, 0);
+          columns.assets.putInt(firstEntry + count, ~assetId);
+        }
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private static long toUnits(Decimal value) throws IOException {
+    try {
+      return value.toUnits();
+    } catch (ArithmeticException e) {
+      throw new IOException("Value too large for the columnar report: " + value.getNiceString());
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes several output files concurrently. Each file is written by one job, in a single
+ * thread, hence the file content is the same as when the files are written one after another.
+ * A job may depend on another job - then it is started only after the other job has finished
+ * successfully. Failure of one job does not stop the other (independent) jobs, all the
+ * failures are reported together at the end.
+ */
+public class ConcurrentFileWriter {
+  /**
+   * The number of threads used for writing the output files.
+   */
+  public static final String THREADS_PROPERTY = "pnl.writerThreads";
+  private static final int DEFAULT_THREAD_COUNT = 4;
+  private static final Logger logger = LogManager.getLogger(ConcurrentFileWriter.class);
+
+  private final int threadCount;
+  private final Map<String, FileJob> jobs = new LinkedHashMap<>();
+  private final Map<String, String> prerequisites = new HashMap<>();
+
+  /**
+   * A job which writes one file.
+   */
+  @FunctionalInterface
+  public interface FileJob {
+    /**
+     * Write the file.
+     *
+     * @throws IOException When file writing fails
+     */
+    void write() throws IOException;
+  }
+
+  /**
+   * Create a concurrent file writer, with the number of threads specified by the
+   * pnl.writerThreads system property.
+   */
+  public ConcurrentFileWriter() {
+    this(Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREAD_COUNT));
+  }
+
+  /**
+   * Create a concurrent file writer.
+   *
+   * @param threadCount The maximum number of files written at the same time. With one thread
+   *                    the files are written in the order in which the jobs are added.
+   */
+  public ConcurrentFileWriter(int threadCount) {
+    this.threadCount = Math.max(1, threadCount);
+  }
+
+  /**
+   * Add a file writing job.
+   *
+   * @param filePath Path to the file written by the job, used in the error messages
+   * @param job      The job
+   * @throws IllegalArgumentException When a job for the same file has already been added
+   */
+  public void add(String filePath, FileJob job) throws IllegalArgumentException {
+    if (jobs.containsKey(filePath)) {
+      throw new IllegalArgumentException("File " + filePath + " is already written by another job");
+    }
+    jobs.put(filePath, job);
+  }
+
+  /**
+   * Add a file writing job which must be started only after another job has finished.
+   *
+   * @param filePath     Path to the file written by the job, used in the error messages
+   * @param prerequisite Path to the file written by the job which must finish first
+   * @param job          The job
+   * @throws IllegalArgumentException When a job for the same file has already been added or
+   *                                  when there is no job for the prerequisite file
+   */
+  public void addAfter(String filePath, String prerequisite, FileJob job)
+      throws IllegalArgumentException {
+    if (!jobs.containsKey(prerequisite)) {
+      throw new IllegalArgumentException("No job for the prerequisite file " + prerequisite);
+    }
+    add(filePath, job);
+    prerequisites.put(filePath, prerequisite);
+  }
+
+  /**
+   * Get the files for which jobs have been added.
+   *
+   * @return Paths to the files, in the order in which the jobs were added
+   */
+  public List<String> getFilePaths() {
+    return new ArrayList<>(jobs.keySet());
+  }
+
+  /**
+   * Run all the added jobs and wait for them to finish. The jobs are removed afterwards.
+   *
+   * @throws FileWriteException When writing of any of the files failed. The message lists
+   *                            all the failed files.
+   */
+  public void writeAll() throws FileWriteException {
+    Map<String, Exception> errors = new ConcurrentHashMap<>();
+    Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threadCount, jobs.size())));
+    try {
+      for (Map.Entry<String, FileJob> entry : jobs.entrySet()) {
+        String filePath = entry.getKey();
+        Runnable task = () -> runJob(filePath, entry.getValue(), errors);
+        String prerequisite = prerequisites.get(filePath);
+        futures.put(filePath, prerequisite != null
+            ? futures.get(prerequisite).thenRunAsync(task, executor)
+            : CompletableFuture.runAsync(task, executor));
+      }
+      List<String> failedFiles = new ArrayList<>();
+      for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+        String filePath = entry.getKey();
+        try {
+          entry.getValue().join();
+        } catch (CompletionException e) {
+          logFailure(filePath, errors.get(filePath));
+          failedFiles.add(filePath);
+        }
+      }
+      if (!failedFiles.isEmpty()) {
+        throw new FileWriteException("Failed to write files: "
+            + String.join(", ", failedFiles));
+      }
+    } finally {
+      executor.shutdown();
+      jobs.clear();
+      prerequisites.clear();
+    }
+  }
+
+  private static void runJob(String filePath, FileJob job, Map<String, Exception> errors) {
+    try {
+      job.write();
+    } catch (IOException | RuntimeException e) {
+      errors.put(filePath, e);
+      throw new CompletionException(e);
+    }
+  }
+
+  private void logFailure(String filePath, Exception error) {
+    if (error != null) {
+      logger.error("Writing file {} failed: {}", filePath, error.getMessage());
+    } else {
+      logger.error("File {} not written, because writing of {} failed", filePath,
+          prerequisites.get(filePath));
+    }
+  }
+}
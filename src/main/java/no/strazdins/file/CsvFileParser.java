@@ -5,14 +5,19 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Parses standard CSV files.
+ * Parses standard CSV files. Cells in double quotes may contain commas and escaped ("") double
+ * quotes - the same rules as in MappedCsvFileParser, hence both parsers return the same cells.
  */
-public class CsvFileParser {
+public class CsvFileParser implements CsvRowReader {
   private static final String COMMENT_CHARACTER = "#";
+  private static final char QUOTE = '"';
+  private static final char SEPARATOR = ',';
   private static final Logger log = LogManager.getLogger(CsvFileParser.class);
   private final BufferedReader reader;
 
@@ -39,6 +44,7 @@ public class CsvFileParser {
    *
    * @return True if there are more rows to read, false otherwise
    */
+  @Override
   public boolean hasMoreRows() {
     if (isEndReached) {
       return true;
@@ -86,22 +92,54 @@ public class CsvFileParser {
 
     String[] result = null;
     if (nextRow != null) {
-      result = removeDoubleQuotes(nextRow.split(","));
+      result = splitRow(nextRow);
       nextRow = null; // Clear the cached row
     }
     return result;
   }
 
+  @Override
+  public CsvRow readNextCsvRow() {
+    String[] values = readNextRow();
+    return values != null ? CsvRow.of(values) : null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
   /**
-   * Go through all values, remove the double quotes.
+   * Split a CSV row in cell values, remove the double quotes. The separators inside double
+   * quotes are part of the value.
    *
-   * @param values The CSV-values to check
-   * @return The same values, where double quotes are removed
+   * @param row The CSV row, without the line break
+   * @return The values of the cells, including the empty ones
    */
-  private String[] removeDoubleQuotes(String[] values) {
-    for (int i = 0; i < values.length; ++i) {
-      values[i] = values[i].replace("\"", "");
+  static String[] splitRow(String row) {
+    if (row.indexOf(QUOTE) < 0) {
+      return row.split(String.valueOf(SEPARATOR), -1);
+    }
+    List<String> values = new ArrayList<>();
+    StringBuilder value = new StringBuilder();
+    boolean inQuotes = false;
+    for (int i = 0; i < row.length(); ++i) {
+      char c = row.charAt(i);
+      if (c == QUOTE) {
+        if (inQuotes && i + 1 < row.length() && row.charAt(i + 1) == QUOTE) {
+          value.append(QUOTE);
+          i++;
+        } else {
+          inQuotes = !inQuotes;
+        }
+      } else if (c == SEPARATOR && !inQuotes) {
+        values.add(value.toString());
+        value.setLength(0);
+      } else {
+        value.append(c);
+      }
     }
-    return values;
+    values.add(value.toString());
+    return values.toArray(new String[0]);
   }
 }
@@ -2,20 +2,35 @@ package no.strazdins.file;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormatSymbols;
 
 /**
  * Writes output to CSV files.
  * Note: it detects the decimal separator used in the OS and writes the CSV file accordingly:
  * - If '.' is the decimal separator, separate columns with comma: ','
- * - If ',' is the decimal separator, separate columns with semicolon: ';'
+ * - If ',' is the decimal separator, separate columns with semicolon: ';' and use comma as the
+ * decimal separator in the numeric cells. Other cells are written as they are.
+ *
+ * <p>The cells are copied to an internal buffer which is written to the file when it is full,
+ * no intermediate strings are created for the rows. A row can be written either at once, with
+ * writeRow(), or cell by cell, with writeCell() and endRow().</p>
  */
 public class CsvFileWriter {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   final FileWriter writer;
+  final Path path;
   final int columnCount;
   final boolean useCommaForDecimalSeparator;
-  final String columnSeparator;
+  final char columnSeparator;
 
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int bufferPosition = 0;
+  private int cellsInRow = 0;
   private boolean checkColumnCount;
 
   /**
@@ -26,12 +41,7 @@ public class CsvFileWriter {
    * @throws IOException When file writing fails
    */
   public CsvFileWriter(String filePath, String[] headerRow) throws IOException {
-    writer = new FileWriter(filePath);
-    columnCount = headerRow.length;
-    useCommaForDecimalSeparator = isOsDecimalSeparatorComma();
-    columnSeparator = useCommaForDecimalSeparator ? ";" : ",";
-    writeRow(headerRow);
-    checkColumnCount = true;
+    this(filePath, headerRow, -1, isOsDecimalSeparatorComma());
   }
 
   /**
@@ -41,11 +51,71 @@ public class CsvFileWriter {
    * @throws IOException When file writing fails
    */
   public CsvFileWriter(String filePath) throws IOException {
-    writer = new FileWriter(filePath);
-    columnCount = -1;
-    checkColumnCount = false;
-    useCommaForDecimalSeparator = isOsDecimalSeparatorComma();
-    columnSeparator = useCommaForDecimalSeparator ? ";" : ",";
+    this(filePath, null, -1, isOsDecimalSeparatorComma());
+  }
+
+  /**
+   * Create a CSV file writer which appends rows to an existing file. The file is truncated to
+   * the given position first - everything after it is discarded. If the position is negative,
+   * a new file is created and the header row is written to it.
+   *
+   * @param filePath  Path to the CSV file
+   * @param headerRow The strings that will be used as the header row - the colum names
+   * @param position  The size of the file (in bytes) to keep, or -1 to create a new file
+   * @throws IOException When the file is shorter than the position or when file writing fails
+   */
+  public CsvFileWriter(String filePath, String[] headerRow, long position) throws IOException {
+    this(filePath, headerRow, position, isOsDecimalSeparatorComma());
+  }
+
+  /**
+   * Create a CSV file writer with the given decimal separator.
+   *
+   * @param filePath                    Path to the CSV file
+   * @param headerRow                   The header row, or null when the file has no header and
+   *                                    the column count is not checked
+   * @param position                    The size of the file (in bytes) to keep, or -1 to
+   *                                    create a new file
+   * @param useCommaForDecimalSeparator When true, comma is used as the decimal separator
+   * @throws IOException When the file is shorter than the position or when file writing fails
+   */
+  CsvFileWriter(String filePath, String[] headerRow, long position,
+                boolean useCommaForDecimalSeparator) throws IOException {
+    path = Path.of(filePath);
+    boolean append = position >= 0;
+    if (append) {
+      truncate(path, position);
+    }
+    writer = new FileWriter(filePath, append);
+    columnCount = headerRow != null ? headerRow.length : -1;
+    this.useCommaForDecimalSeparator = useCommaForDecimalSeparator;
+    columnSeparator = useCommaForDecimalSeparator ? ';' : ',';
+    if (headerRow != null && !append) {
+      writeRow(headerRow);
+    }
+    checkColumnCount = headerRow != null;
+  }
+
+  private static void truncate(Path path, long position) throws IOException {
+    if (!Files.exists(path) || Files.size(path) < position) {
+      throw new IOException("Can't append to " + path + ", the file is shorter than "
+          + position + " bytes");
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(position);
+    }
+  }
+
+  /**
+   * Get the current size of the file, including all the rows written so far.
+   *
+   * @return The size of the file, in bytes
+   * @throws IOException When file writing fails
+   */
+  public long getPosition() throws IOException {
+    flushBuffer();
+    writer.flush();
+    return Files.size(path);
   }
 
   /**
@@ -53,7 +123,7 @@ public class CsvFileWriter {
    *
    * @return True when comma is used as a decimal separator, false otherwise
    */
-  private boolean isOsDecimalSeparatorComma() {
+  private static boolean isOsDecimalSeparatorComma() {
     DecimalFormatSymbols dfs = new DecimalFormatSymbols();
     char decimalSeparator = dfs.getDecimalSeparator();
     return decimalSeparator == ',';
@@ -65,6 +135,7 @@ public class CsvFileWriter {
    * @throws IOException When the file-closing operation fails
    */
   public void close() throws IOException {
+    flushBuffer();
     writer.close();
   }
 
@@ -77,15 +148,108 @@ public class CsvFileWriter {
    *                                  the number of columns in the first row (header)
    */
   public void writeRow(String[] columns) throws IOException, IllegalArgumentException {
-    if (columns.length != columnCount && checkColumnCount) {
-      throw new IllegalArgumentException("Invalid column count: " + columns.length
+    checkColumnCount(columns.length);
+    for (String column : columns) {
+      writeCell(column);
+    }
+    endRow();
+  }
+
+  /**
+   * Write the next cell of the current row.
+   *
+   * @param value The value of the cell. If it is a decimal number, the decimal separator of the
+   *              OS is used.
+   * @throws IOException When file writing fails
+   */
+  public void writeCell(String value) throws IOException {
+    startCell();
+    int length = value.length();
+    boolean replaceDot = useCommaForDecimalSeparator && isDecimalNumber(value);
+    int start = 0;
+    while (start < length) {
+      if (bufferPosition == buffer.length) {
+        flushBuffer();
+      }
+      int end = Math.min(length, start + buffer.length - bufferPosition);
+      value.getChars(start, end, buffer, bufferPosition);
+      if (replaceDot) {
+        for (int i = bufferPosition; i < bufferPosition + end - start; ++i) {
+          if (buffer[i] == '.') {
+            buffer[i] = ',';
+          }
+        }
+      }
+      bufferPosition += end - start;
+      start = end;
+    }
+  }
+
+  /**
+   * Write the next cell of the current row.
+   *
+   * @param value The value of the cell
+   * @throws IOException When file writing fails
+   */
+  public void writeCell(long value) throws IOException {
+    startCell();
+    // 20 characters is enough for any long value, including the sign
+    if (buffer.length - bufferPosition < 20) {
+      flushBuffer();
+    }
+    if (value < 0) {
+      buffer[bufferPosition++] = '-';
+    }
+    int digitCount = 1;
+    for (long rest = value / 10; rest != 0; rest /= 10) {
+      digitCount++;
+    }
+    long rest = value;
+    for (int i = bufferPosition + digitCount - 1; i >= bufferPosition; --i) {
+      buffer[i] = (char) ('0' + Math.abs(rest % 10));
+      rest /= 10;
+    }
+    bufferPosition += digitCount;
+  }
+
+  /**
+   * Finish the current row, started with writeCell().
+   *
+   * @throws IOException              When file writing fails
+   * @throws IllegalArgumentException If the number of cells in the row does not correspond to
+   *                                  the number of columns in the first row (header)
+   */
+  public void endRow() throws IOException, IllegalArgumentException {
+    checkColumnCount(cellsInRow);
+    if (bufferPosition == buffer.length) {
+      flushBuffer();
+    }
+    buffer[bufferPosition++] = '\n';
+    cellsInRow = 0;
+  }
+
+  private void checkColumnCount(int cellCount) throws IllegalArgumentException {
+    if (cellCount != columnCount && checkColumnCount) {
+      throw new IllegalArgumentException("Invalid column count: " + cellCount
           + ", must be " + columnCount + " columns");
     }
-    String row = String.join(columnSeparator, columns);
-    if (useCommaForDecimalSeparator) {
-      row = replaceDecimalDotsWithCommas(row);
+  }
+
+  private void startCell() throws IOException {
+    if (cellsInRow > 0) {
+      if (bufferPosition == buffer.length) {
+        flushBuffer();
+      }
+      buffer[bufferPosition++] = columnSeparator;
+    }
+    cellsInRow++;
+  }
+
+  private void flushBuffer() throws IOException {
+    if (bufferPosition > 0) {
+      writer.write(buffer, 0, bufferPosition);
+      bufferPosition = 0;
     }
-    writer.write(row + "\n");
   }
 
   /**
@@ -95,7 +259,28 @@ public class CsvFileWriter {
     checkColumnCount = false;
   }
 
-  private String replaceDecimalDotsWithCommas(String row) {
-    return row.replace(".", ",");
+  /**
+   * Check whether the string is a decimal number: digits, optionally with a minus sign and
+   * a decimal point.
+   *
+   * @param s The string to check
+   * @return True when the string is a decimal number
+   */
+  static boolean isDecimalNumber(String s) {
+    int length = s.length();
+    int i = length > 0 && s.charAt(0) == '-' ? 1 : 0;
+    boolean digitFound = false;
+    boolean pointFound = false;
+    for (; i < length; ++i) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digitFound = true;
+      } else if (c == '.' && !pointFound) {
+        pointFound = true;
+      } else {
+        return false;
+      }
+    }
+    return digitFound;
   }
 }
@@ -0,0 +1,74 @@
+package no.strazdins.file;
+
+/**
+ * One row of a CSV file. The cell values may be stored in the original (raw) format and converted
+ * to strings only when requested.
+ */
+public interface CsvRow {
+  /**
+   * Get the number of cells in the row.
+   *
+   * @return The number of cells
+   */
+  int size();
+
+  /**
+   * Get the value of a cell, with double quotes removed.
+   *
+   * @param index Index of the cell, starting from zero
+   * @return The value of the cell
+   * @throws IndexOutOfBoundsException When the index is outside the row
+   */
+  String get(int index);
+
+  /**
+   * Get the value of a cell which is expected to have few distinct values in the whole file
+   * (such as asset or operation). The implementation may return the same String instance for
+   * equal values, instead of creating a new String every time.
+   *
+   * @param index Index of the cell, starting from zero
+   * @return The value of the cell
+   * @throws IndexOutOfBoundsException When the index is outside the row
+   */
+  default String getPooled(int index) {
+    return get(index);
+  }
+
+  /**
+   * Get all the cell values as strings.
+   *
+   * @return Values of all the cells
+   */
+  default String[] toArray() {
+    String[] values = new String[size()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = get(i);
+    }
+    return values;
+  }
+
+  /**
+   * Wrap already parsed cell values in a row.
+   *
+   * @param values The cell values
+   * @return A row containing the given values
+   */
+  static CsvRow of(String[] values) {
+    return new CsvRow() {
+      @Override
+      public int size() {
+        return values.length;
+      }
+
+      @Override
+      public String get(int index) {
+        return values[index];
+      }
+
+      @Override
+      public String[] toArray() {
+        return values;
+      }
+    };
+  }
+}
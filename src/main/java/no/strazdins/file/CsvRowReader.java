@@ -0,0 +1,26 @@
+package no.strazdins.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of CSV rows, read one at a time.
+ */
+public interface CsvRowReader extends Closeable {
+  /**
+   * Check if there are unread rows left in the CSV file.
+   *
+   * @return True if there are more rows to read, false otherwise
+   * @throws IOException When the file could not be read
+   */
+  boolean hasMoreRows() throws IOException;
+
+  /**
+   * Read the next row from the CSV file.
+   *
+   * @return The next row, or null when there are no more rows. The returned row may be valid
+   *     only until the next call of this method
+   * @throws IOException When the file could not be read
+   */
+  CsvRow readNextCsvRow() throws IOException;
+}
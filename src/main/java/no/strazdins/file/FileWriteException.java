@@ -0,0 +1,29 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+
+/**
+ * Writing of the output files failed. Unlike the other I/O errors of the report generation,
+ * the cause is on the side of the output storage (a full disk, missing permissions), not in
+ * the input.
+ */
+public class FileWriteException extends IOException {
+  /**
+   * Create the exception.
+   *
+   * @param message The error message, may contain the paths of the failed files
+   */
+  public FileWriteException(String message) {
+    super(message);
+  }
+
+  /**
+   * Create the exception.
+   *
+   * @param message The error message, may contain the paths of the failed files
+   * @param cause   The exception which caused the failure
+   */
+  public FileWriteException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,65 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A column of fixed-width values in a file, memory-mapped in windows. A single mapping is
+ * limited to 2 GB, the windows make columns of any size possible. The window size is a
+ * multiple of the value size, therefore a value never spans two windows.
+ */
+class MappedColumn {
+  static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+  private final ByteBuffer[] windows;
+  private final int windowShift;
+  private final int windowMask;
+  private final int valueShift;
+
+  /**
+   * Map a column. The mapping stays valid after the channel is closed.
+   *
+   * @param channel    The file channel
+   * @param mode       The mapping mode
+   * @param offset     Position of the column in the file
+   * @param count      The number of values in the column
+   * @param valueSize  The size of one value in bytes: 4 or 8
+   * @param windowSize The size of one mapped window in bytes, a power of two, not smaller
+   *                   than valueSize
+   * @throws IOException When the column can't be mapped
+   */
+  MappedColumn(FileChannel channel, FileChannel.MapMode mode, long offset, long count,
+               int valueSize, int windowSize) throws IOException {
+    windowShift = Integer.numberOfTrailingZeros(windowSize);
+    windowMask = windowSize - 1;
+    valueShift = Integer.numberOfTrailingZeros(valueSize);
+    long size = count << valueShift;
+    windows = new ByteBuffer[(int) ((size + windowMask) >>> windowShift)];
+    for (int i = 0; i < windows.length; ++i) {
+      long windowOffset = (long) i << windowShift;
+      windows[i] = channel.map(mode, offset + windowOffset, Math.min(windowSize,
+          size - windowOffset)).order(ColumnarReportLayout.BYTE_ORDER);
+    }
+  }
+
+  long getLong(long index) {
+    long position = index << valueShift;
+    return windows[(int) (position >>> windowShift)].getLong((int) position & windowMask);
+  }
+
+  int getInt(long index) {
+    long position = index << valueShift;
+    return windows[(int) (position >>> windowShift)].getInt((int) position & windowMask);
+  }
+
+  void putLong(long index, long value) {
+    long position = index << valueShift;
+    windows[(int) (position >>> windowShift)].putLong((int) position & windowMask, value);
+  }
+
+  void putInt(long index, int value) {
+    long position = index << valueShift;
+    windows[(int) (position >>> windowShift)].putInt((int) position & windowMask, value);
+  }
+}
@@ -0,0 +1,332 @@
+package no.strazdins.file;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Parses CSV files by mapping them into memory. The rows are tokenized directly in the mapped
+ * bytes: a row only stores positions of its cells, the cell values are converted to strings
+ * when requested. Cells in double quotes may contain commas and escaped ("") double quotes.
+ * Commented-out lines are skipped, the same way as in CsvFileParser.
+ * Large files are mapped in windows, a single row must fit in one window.
+ */
+public class MappedCsvFileParser implements CsvRowReader {
+  private static final Logger log = LogManager.getLogger(MappedCsvFileParser.class);
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+  private static final byte COMMENT_CHARACTER = '#';
+  private static final byte QUOTE = '"';
+  private static final byte SEPARATOR = ',';
+  private static final int POOL_CAPACITY = 8192;
+  private static final int MAX_POOLED_VALUES = POOL_CAPACITY / 2;
+
+  private final FileChannel channel;
+  // The parsing stops at this position (normally - the end of the file)
+  private final long endPosition;
+  private final int windowSize;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private int windowLength;
+
+  // File position where the next unread row starts
+  private long position;
+  private boolean isRowBuffered = false;
+  private final MappedRow row = new MappedRow();
+
+  private byte[] scratch = new byte[256];
+  private final byte[][] poolKeys = new byte[POOL_CAPACITY][];
+  private final String[] poolValues = new String[POOL_CAPACITY];
+  private int pooledValueCount = 0;
+
+  /**
+   * Create a new CSV file parser, map the CSV file into memory.
+   *
+   * @param inputFilePath Path to the CSV file to process
+   * @throws IOException When the file is not found or could not be read
+   */
+  public MappedCsvFileParser(String inputFilePath) throws IOException {
+    this(inputFilePath, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Create a new CSV file parser with a custom size of the mapped window.
+   *
+   * @param inputFilePath Path to the CSV file to process
+   * @param windowSize    Maximum number of bytes mapped at once
+   * @throws IOException When the file is not found or could not be read
+   */
+  MappedCsvFileParser(String inputFilePath, int windowSize) throws IOException {
+    this(inputFilePath, 0, Long.MAX_VALUE, windowSize);
+  }
+
+  /**
+   * Create a new CSV file parser which reads only a part of the file.
+   *
+   * @param inputFilePath Path to the CSV file to process
+   * @param start         Position where the first row starts
+   * @param end           Position after the end of the last row (limited to the file size)
+   * @param windowSize    Maximum number of bytes mapped at once
+   * @throws IOException When the file is not found or could not be read
+   */
+  MappedCsvFileParser(String inputFilePath, long start, long end, int windowSize)
+      throws IOException {
+    try {
+      channel = FileChannel.open(Path.of(inputFilePath), StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      throw new IOException("File not found: " + inputFilePath);
+    }
+    this.windowSize = windowSize;
+    endPosition = Math.min(end, channel.size());
+    position = start;
+    if (start == 0) {
+      skipByteOrderMark();
+    }
+  }
+
+  /**
+   * Get the position in the file where the next unread row starts. Valid right after
+   * readNextCsvRow(), before hasMoreRows() is called.
+   *
+   * @return The file position, in bytes
+   */
+  long getNextRowPosition() {
+    return position;
+  }
+
+  private void skipByteOrderMark() throws IOException {
+    if (endPosition >= 3) {
+      mapWindowAt(0);
+      if (window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB
+          && window.get(2) == (byte) 0xBF) {
+        position = 3;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasMoreRows() throws IOException {
+    if (!isRowBuffered) {
+      isRowBuffered = bufferNextRow();
+    }
+    return isRowBuffered;
+  }
+
+  /**
+   * Read the next row from the CSV file. The returned object is reused: it is valid only until
+   * the next call of this method.
+   *
+   * @return The next row, or null when there are no more rows
+   * @throws IOException When the file could not be read, or a row is longer than the window
+   */
+  @Override
+  public CsvRow readNextCsvRow() throws IOException {
+    if (!hasMoreRows()) {
+      return null;
+    }
+    isRowBuffered = false;
+    return row;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  /**
+   * Find the next non-comment row, store the positions of its cells.
+   *
+   * @return True if a row was found, false if the end of the file is reached
+   * @throws IOException When mapping fails or when a row does not fit in a window
+   */
+  private boolean bufferNextRow() throws IOException {
+    while (position < endPosition) {
+      if (window == null || position < windowStart || position >= windowStart + windowLength) {
+        mapWindowAt(position);
+      }
+      int start = (int) (position - windowStart);
+      if (!row.tokenize(start)) {
+        if (start == 0) {
+          throw new IOException("CSV row longer than " + windowSize + " bytes at position "
+              + position);
+        }
+        mapWindowAt(position);
+        continue;
+      }
+      position = windowStart + row.nextRowStart;
+      if (window.get(start) != COMMENT_CHARACTER) {
+        return true;
+      }
+      log.error("Commented out row: {}", row);
+    }
+    return false;
+  }
+
+  private void mapWindowAt(long filePosition) throws IOException {
+    windowStart = filePosition;
+    windowLength = (int) Math.min(windowSize, endPosition - filePosition);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+  }
+
+  private boolean isLastWindow() {
+    return windowStart + windowLength >= endPosition;
+  }
+
+  /**
+   * Copy the cell bytes to the scratch buffer, remove the double quotes.
+   *
+   * @param start     Start offset of the cell within the window
+   * @param end       End offset (exclusive) of the cell within the window
+   * @param hasQuotes True if the cell contains double quotes
+   * @return The number of bytes in the scratch buffer
+   */
+  private int copyUnquoted(int start, int end, boolean hasQuotes) {
+    int length = end - start;
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    window.get(start, scratch, 0, length);
+    if (!hasQuotes) {
+      return length;
+    }
+    int n = 0;
+    boolean inQuotes = false;
+    for (int i = 0; i < length; ++i) {
+      byte b = scratch[i];
+      if (b == QUOTE) {
+        if (inQuotes && i + 1 < length && scratch[i + 1] == QUOTE) {
+          scratch[n++] = QUOTE;
+          i++;
+        } else {
+          inQuotes = !inQuotes;
+        }
+      } else {
+        scratch[n++] = b;
+      }
+    }
+    return n;
+  }
+
+  private String getPooledString(int length) {
+    int hash = 1;
+    for (int i = 0; i < length; ++i) {
+      hash = 31 * hash + scratch[i];
+    }
+    int mask = POOL_CAPACITY - 1;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    while (poolKeys[slot] != null) {
+      byte[] key = poolKeys[slot];
+      if (Arrays.equals(key, 0, key.length, scratch, 0, length)) {
+        return poolValues[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+    if (pooledValueCount < MAX_POOLED_VALUES) {
+      poolKeys[slot] = Arrays.copyOf(scratch, length);
+      poolValues[slot] = value;
+      pooledValueCount++;
+    }
+    return value;
+  }
+
+  /**
+   * A row which stores only the positions of the cells within the current window.
+   */
+  private class MappedRow implements CsvRow {
+    private int cellCount;
+    private int[] cellStarts = new int[8];
+    private int[] cellEnds = new int[8];
+    private boolean[] cellQuoted = new boolean[8];
+    private int nextRowStart;
+
+    /**
+     * Find the cells of the row starting at the given position in the window.
+     *
+     * @param start Offset within the window where the row starts
+     * @return True if the whole row was found, false if the row continues beyond the window
+     */
+    boolean tokenize(int start) {
+      cellCount = 0;
+      int cellStart = start;
+      boolean quoted = false;
+      boolean inQuotes = false;
+      int i = start;
+      while (i < windowLength) {
+        byte b = window.get(i);
+        if (b == QUOTE) {
+          quoted = true;
+          inQuotes = !inQuotes;
+        } else if (!inQuotes) {
+          if (b == SEPARATOR) {
+            addCell(cellStart, i, quoted);
+            cellStart = i + 1;
+            quoted = false;
+          } else if (b == '\n') {
+            int end = i > cellStart && window.get(i - 1) == '\r' ? i - 1 : i;
+            addCell(cellStart, end, quoted);
+            nextRowStart = i + 1;
+            return true;
+          }
+        }
+        i++;
+      }
+      if (!isLastWindow()) {
+        return false;
+      }
+      // The last row without a line break
+      int end = i > cellStart && window.get(i - 1) == '\r' ? i - 1 : i;
+      addCell(cellStart, end, quoted);
+      nextRowStart = i;
+      return true;
+    }
+
+    private void addCell(int start, int end, boolean quoted) {
+      if (cellCount == cellStarts.length) {
+        int newSize = cellCount * 2;
+        cellStarts = Arrays.copyOf(cellStarts, newSize);
+        cellEnds = Arrays.copyOf(cellEnds, newSize);
+        cellQuoted = Arrays.copyOf(cellQuoted, newSize);
+      }
+      cellStarts[cellCount] = start;
+      cellEnds[cellCount] = end;
+      cellQuoted[cellCount] = quoted;
+      cellCount++;
+    }
+
+    @Override
+    public int size() {
+      return cellCount;
+    }
+
+    @Override
+    public String get(int index) {
+      int length = copyCell(index);
+      return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getPooled(int index) {
+      return getPooledString(copyCell(index));
+    }
+
+    private int copyCell(int index) {
+      if (index < 0 || index >= cellCount) {
+        throw new IndexOutOfBoundsException("Cell " + index + " of " + cellCount);
+      }
+      return copyUnquoted(cellStarts[index], cellEnds[index], cellQuoted[index]);
+    }
+
+    @Override
+    public String toString() {
+      return String.join(",", toArray());
+    }
+  }
+}
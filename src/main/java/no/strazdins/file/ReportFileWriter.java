@@ -2,12 +2,15 @@ package no.strazdins.file;
 
 import java.io.IOException;
 import java.util.List;
+import no.strazdins.data.Decimal;
 import no.strazdins.data.ExtraInfo;
 import no.strazdins.data.ExtraInfoEntry;
 import no.strazdins.data.Wallet;
 import no.strazdins.data.WalletSnapshot;
-import no.strazdins.process.AnnualReport;
+import no.strazdins.process.Checkpoint;
+import no.strazdins.process.PeriodReport;
 import no.strazdins.process.Report;
+import no.strazdins.process.SnapshotSink;
 import no.strazdins.tool.TimeConverter;
 import no.strazdins.transaction.Transaction;
 
@@ -15,6 +18,46 @@ import no.strazdins.transaction.Transaction;
  * Writes report to a CSV file.
  */
 public class ReportFileWriter {
+  private static final String[] TRANSACTION_LOG_HEADER = new String[]{
+      "Unix timestamp", "UTC time",
+      "Transaction", "Asset",
+      "Amount", "Price",
+      "Quote currency", "Quote amount",
+      "Fee", "Fee currency",
+      "Fee in USDT", "Obtain price in USDT",
+      "Transaction PNL in USDT", "Amount in Wallet",
+      "Avg obtain price in USDT", "Running PNL in USDT"
+  };
+
+  private static final String[] BALANCE_LOG_HEADER = new String[]{
+      "Unix timestamp",
+      "UTC time",
+      "Transaction",
+      "Balances: amount & asset & average obtain price (for each asset)"
+  };
+
+  static final String[] BALANCE_DELTA_LOG_HEADER = new String[]{
+      "Unix timestamp",
+      "UTC time",
+      "Transaction",
+      "Row type",
+      "Balances: amount & asset & average obtain price (for each asset in a keyframe row,"
+          + " for each changed asset in a delta row; zero amount for removed assets)"
+  };
+  static final String KEYFRAME_ROW = "keyframe";
+  static final String DELTA_ROW = "delta";
+
+  /**
+   * Format of the balance log: "full" (default) - all the assets on each row, or "delta" - only
+   * the changed assets on each row, with full keyframe rows at regular intervals.
+   */
+  public static final String BALANCE_LOG_FORMAT_PROPERTY = "pnl.balanceLog";
+  /**
+   * The number of rows between two keyframe rows in the delta-encoded balance log.
+   */
+  public static final String KEYFRAME_INTERVAL_PROPERTY = "pnl.balanceLog.keyframeInterval";
+  private static final int DEFAULT_KEYFRAME_INTERVAL = 1000;
+
   /**
    * Not allowed to create instances of this class.
    */
@@ -30,33 +73,57 @@ public class ReportFileWriter {
    */
   public static void writeTransactionLogToFile(Report report, String outputFilePath)
       throws IOException {
-    String[] header = new String[]{
-        "Unix timestamp", "UTC time",
-        "Transaction", "Asset",
-        "Amount", "Price",
-        "Quote currency", "Quote amount",
-        "Fee", "Fee currency",
-        "Fee in USDT", "Obtain price in USDT",
-        "Transaction PNL in USDT", "Amount in Wallet",
-        "Avg obtain price in USDT", "Running PNL in USDT"
-    };
-    CsvFileWriter writer = new CsvFileWriter(outputFilePath, header);
+    writeSnapshots(report, new TransactionLogSink(outputFilePath, -1, Checkpoint.NO_TIMESTAMP));
+  }
+
+  /**
+   * Append the transactions of the report to a transaction log file written in an earlier run.
+   *
+   * @param report         The report content
+   * @param outputFilePath Path to a CSV file where to store the result
+   * @param position       The size of the existing file to keep (the rest is overwritten),
+   *                       or -1 to create a new file
+   * @param resumeTime     Timestamp of the first non-final transaction, or
+   *                       Checkpoint.NO_TIMESTAMP
+   * @return The size of the file without the non-final transactions, in bytes
+   * @throws IOException When something went wrong while writing data to the file
+   */
+  public static long appendTransactionLogToFile(Report report, String outputFilePath,
+                                                long position, long resumeTime)
+      throws IOException {
+    return writeSnapshots(report, new TransactionLogSink(outputFilePath, position, resumeTime));
+  }
+
+  /**
+   * Create a sink which writes the transaction log while the transactions are processed.
+   *
+   * @param outputFilePath Path to a CSV file where to store the result
+   * @return The sink, the file is complete when the sink is closed
+   * @throws IOException When the file can't be created
+   */
+  public static SnapshotSink createTransactionLogSink(String outputFilePath) throws IOException {
+    return new TransactionLogSink(outputFilePath, -1, Checkpoint.NO_TIMESTAMP);
+  }
+
+  /**
+   * Pass all the wallet snapshots of the report to a log sink, close it.
+   *
+   * @param report The report content
+   * @param sink   The sink writing the log
+   * @return The file position before the first non-final transaction (end of the file when
+   *     all the transactions are final)
+   * @throws IOException When something went wrong while writing data to the file
+   */
+  private static long writeSnapshots(Report report, LogSink sink) throws IOException {
     for (WalletSnapshot snapshot : report) {
-      long timestamp = snapshot.getTimestamp();
-      Transaction t = snapshot.getTransaction();
-      writer.writeRow(new String[]{
-          "" + timestamp, TimeConverter.utcTimeToString(timestamp),
-          t.getType(), t.getBaseCurrency(),
-          t.getBaseCurrencyAmount().getNiceString(), t.getAvgPriceInUsdt().getNiceString(),
-          t.getQuoteCurrency(), t.getQuoteAmount().getNiceString(),
-          t.getFee().getNiceString(), t.getFeeCurrency(),
-          t.getFeeInUsdt().getNiceString(), t.getObtainPrice().getNiceString(),
-          t.getPnl().getNiceString(),
-          snapshot.getBaseCurrencyAmountInWallet().getNiceString(),
-          snapshot.getAvgBaseObtainPrice().getNiceString(), snapshot.getPnl().getNiceString()
-      });
+      sink.accept(snapshot);
     }
-    writer.close();
+    sink.close();
+    return sink.getEndPosition();
+  }
+
+  private static boolean isNonFinal(long timestamp, long resumeTime) {
+    return resumeTime != Checkpoint.NO_TIMESTAMP && timestamp >= resumeTime;
   }
 
   /**
@@ -68,43 +135,265 @@ public class ReportFileWriter {
    */
   public static void writeBalanceLogToFile(Report report, String outputFilePath)
       throws IOException {
-    String[] header = new String[]{
-        "Unix timestamp",
-        "UTC time",
-        "Transaction",
-        "Balances: amount & asset & average obtain price (for each asset)"
-    };
-    CsvFileWriter writer = new CsvFileWriter(outputFilePath, header);
-    writer.disableColumnCountChecking();
-    for (WalletSnapshot snapshot : report) {
+    writeSnapshots(report, createBalanceLogSink(outputFilePath, -1, Checkpoint.NO_TIMESTAMP));
+  }
+
+  /**
+   * Append wallet balances of the report to a balance log file written in an earlier run.
+   *
+   * @param report         The report containing the wallet snapshots
+   * @param outputFilePath Path to the CSV file
+   * @param position       The size of the existing file to keep (the rest is overwritten),
+   *                       or -1 to create a new file
+   * @param resumeTime     Timestamp of the first non-final transaction, or
+   *                       Checkpoint.NO_TIMESTAMP
+   * @return The size of the file without the non-final transactions, in bytes
+   * @throws IOException When something went wrong while writing data to the file
+   */
+  public static long appendBalanceLogToFile(Report report, String outputFilePath,
+                                            long position, long resumeTime)
+      throws IOException {
+    return writeSnapshots(report, createBalanceLogSink(outputFilePath, position, resumeTime));
+  }
+
+  /**
+   * Create a sink which writes the balance log while the transactions are processed. The
+   * format of the log is selected by the pnl.balanceLog system property.
+   *
+   * @param outputFilePath Path to the CSV file
+   * @return The sink, the file is complete when the sink is closed
+   * @throws IOException When the file can't be created
+   */
+  public static SnapshotSink createBalanceLogSink(String outputFilePath) throws IOException {
+    return createBalanceLogSink(outputFilePath, -1, Checkpoint.NO_TIMESTAMP);
+  }
+
+  private static LogSink createBalanceLogSink(String outputFilePath, long position,
+                                              long resumeTime) throws IOException {
+    return isDeltaBalanceLogEnabled()
+        ? new BalanceDeltaLogSink(outputFilePath, position, resumeTime, getKeyframeInterval())
+        : new BalanceLogSink(outputFilePath, position, resumeTime);
+  }
+
+  private static boolean isDeltaBalanceLogEnabled() {
+    return "delta".equals(System.getProperty(BALANCE_LOG_FORMAT_PROPERTY));
+  }
+
+  private static int getKeyframeInterval() {
+    return Integer.getInteger(KEYFRAME_INTERVAL_PROPERTY, DEFAULT_KEYFRAME_INTERVAL);
+  }
+
+  /**
+   * Write wallet balances to a CSV file in the delta-encoded format: each row contains only the
+   * assets which have changed since the previous row. Every keyframeInterval-th row (and the
+   * first one) is a keyframe containing all the assets in the wallet. The positions of the
+   * keyframes are stored in an index file next to the log, see BalanceLogReader.
+   *
+   * @param report           The report containing the wallet snapshots
+   * @param outputFilePath   Path to the CSV file
+   * @param keyframeInterval The number of rows between two keyframes
+   * @throws IOException When something went wrong while writing data to the file
+   */
+  public static void writeBalanceDeltaLogToFile(Report report, String outputFilePath,
+                                                int keyframeInterval) throws IOException {
+    appendBalanceDeltaLogToFile(report, outputFilePath, -1, Checkpoint.NO_TIMESTAMP,
+        keyframeInterval);
+  }
+
+  /**
+   * Append wallet balances of the report to a delta-encoded balance log file written in an
+   * earlier run. The first appended row is a keyframe.
+   *
+   * @param report           The report containing the wallet snapshots
+   * @param outputFilePath   Path to the CSV file
+   * @param position         The size of the existing file to keep (the rest is overwritten),
+   *                         or -1 to create a new file
+   * @param resumeTime       Timestamp of the first non-final transaction, or
+   *                         Checkpoint.NO_TIMESTAMP
+   * @param keyframeInterval The number of rows between two keyframes
+   * @return The size of the file without the non-final transactions, in bytes
+   * @throws IOException When something went wrong while writing data to the file
+   */
+  public static long appendBalanceDeltaLogToFile(Report report, String outputFilePath,
+                                                 long position, long resumeTime,
+                                                 int keyframeInterval) throws IOException {
+    return writeSnapshots(report, new BalanceDeltaLogSink(outputFilePath, position, resumeTime,
+        keyframeInterval));
+  }
+
+  /**
+   * A sink writing one row per wallet snapshot to a CSV log file. Remembers the position of
+   * the first non-final transaction, for the checkpoint.
+   */
+  private abstract static class LogSink implements SnapshotSink {
+    final CsvFileWriter writer;
+    private final long resumeTime;
+    private long resumePosition = -1;
+    private long endPosition = -1;
+
+    LogSink(CsvFileWriter writer, long resumeTime) {
+      this.writer = writer;
+      this.resumeTime = resumeTime;
+    }
+
+    @Override
+    public void accept(WalletSnapshot snapshot) throws IOException {
+      if (resumePosition < 0 && isNonFinal(snapshot.getTimestamp(), resumeTime)) {
+        resumePosition = writer.getPosition();
+      }
+      writeRow(snapshot);
+    }
+
+    abstract void writeRow(WalletSnapshot snapshot) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+      endPosition = resumePosition >= 0 ? resumePosition : writer.getPosition();
+      writer.close();
+    }
+
+    /**
+     * Get the file position before the first non-final transaction.
+     *
+     * @return The position, end of the file when all the transactions are final
+     */
+    long getEndPosition() {
+      return endPosition;
+    }
+  }
+
+  private static class TransactionLogSink extends LogSink {
+    TransactionLogSink(String outputFilePath, long position, long resumeTime)
+        throws IOException {
+      super(new CsvFileWriter(outputFilePath, TRANSACTION_LOG_HEADER, position), resumeTime);
+    }
+
+    @Override
+    void writeRow(WalletSnapshot snapshot) throws IOException {
       long timestamp = snapshot.getTimestamp();
-      int assetCount = snapshot.getWallet().getAssetCount();
-      String[] columns = new String[3 + assetCount * 4];
-      columns[0] = String.valueOf(timestamp);
-      columns[1] = TimeConverter.utcTimeToString(timestamp);
-      columns[2] = snapshot.getTransaction().getType();
-      int i = 3;
+      Transaction t = snapshot.getTransaction();
+      writer.writeCell(timestamp);
+      writer.writeCell(TimeConverter.utcTimeToString(timestamp));
+      writer.writeCell(t.getType());
+      writer.writeCell(t.getBaseCurrency());
+      writer.writeCell(t.getBaseCurrencyAmount().getNiceString());
+      writer.writeCell(t.getAvgPriceInUsdt().getNiceString());
+      writer.writeCell(t.getQuoteCurrency());
+      writer.writeCell(t.getQuoteAmount().getNiceString());
+      writer.writeCell(t.getFee().getNiceString());
+      writer.writeCell(t.getFeeCurrency());
+      writer.writeCell(t.getFeeInUsdt().getNiceString());
+      writer.writeCell(t.getObtainPrice().getNiceString());
+      writer.writeCell(t.getPnl().getNiceString());
+      writer.writeCell(snapshot.getBaseCurrencyAmountInWallet().getNiceString());
+      writer.writeCell(snapshot.getAvgBaseObtainPrice().getNiceString());
+      writer.writeCell(snapshot.getPnl().getNiceString());
+      writer.endRow();
+    }
+  }
+
+  private static class BalanceLogSink extends LogSink {
+    BalanceLogSink(String outputFilePath, long position, long resumeTime) throws IOException {
+      super(new CsvFileWriter(outputFilePath, BALANCE_LOG_HEADER, position), resumeTime);
+      writer.disableColumnCountChecking();
+    }
+
+    @Override
+    void writeRow(WalletSnapshot snapshot) throws IOException {
+      long timestamp = snapshot.getTimestamp();
+      writer.writeCell(timestamp);
+      writer.writeCell(TimeConverter.utcTimeToString(timestamp));
+      writer.writeCell(snapshot.getTransaction().getType());
       Wallet wallet = snapshot.getWallet();
       for (String asset : wallet) {
-        columns[i++] = wallet.getAssetAmount(asset).getNiceString();
-        columns[i++] = asset;
-        columns[i++] = wallet.getAvgObtainPrice(asset).getNiceString();
-        columns[i++] = "";
+        writeAssetBalance(writer, asset, wallet.getAssetAmount(asset),
+            wallet.getAvgObtainPrice(asset));
       }
-      writer.writeRow(columns);
+      writer.endRow();
     }
-    writer.close();
+  }
+
+  private static class BalanceDeltaLogSink extends LogSink {
+    private final BalanceLogIndex index;
+    private final int keyframeInterval;
+    private Wallet previousWallet = null;
+    private int rowsSinceKeyframe = 0;
+
+    BalanceDeltaLogSink(String outputFilePath, long position, long resumeTime,
+                        int keyframeInterval) throws IOException {
+      super(createDeltaLogWriter(outputFilePath, position, keyframeInterval), resumeTime);
+      writer.disableColumnCountChecking();
+      this.keyframeInterval = keyframeInterval;
+      index = BalanceLogIndex.read(outputFilePath);
+      index.truncate(Math.max(position, 0));
+    }
+
+    private static CsvFileWriter createDeltaLogWriter(String outputFilePath, long position,
+                                                      int keyframeInterval)
+        throws IOException {
+      if (keyframeInterval < 1) {
+        throw new IOException("Invalid keyframe interval: " + keyframeInterval);
+      }
+      return new CsvFileWriter(outputFilePath, BALANCE_DELTA_LOG_HEADER, position);
+    }
+
+    @Override
+    void writeRow(WalletSnapshot snapshot) throws IOException {
+      long timestamp = snapshot.getTimestamp();
+      boolean keyframe = previousWallet == null || rowsSinceKeyframe >= keyframeInterval;
+      if (keyframe) {
+        index.add(timestamp, writer.getPosition());
+        rowsSinceKeyframe = 0;
+      }
+      writer.writeCell(timestamp);
+      writer.writeCell(TimeConverter.utcTimeToString(timestamp));
+      writer.writeCell(snapshot.getTransaction().getType());
+      writer.writeCell(keyframe ? KEYFRAME_ROW : DELTA_ROW);
+      Wallet wallet = snapshot.getWallet();
+      for (String asset : wallet) {
+        Decimal amount = wallet.getAssetAmount(asset);
+        Decimal price = wallet.getAvgObtainPrice(asset);
+        if (keyframe || !amount.equals(previousWallet.getAssetAmount(asset))
+            || !price.equals(previousWallet.getAvgObtainPrice(asset))) {
+          writeAssetBalance(writer, asset, amount, price);
+        }
+      }
+      if (!keyframe) {
+        for (String asset : previousWallet) {
+          if (wallet.getAssetAmount(asset).isZero()) {
+            writeAssetBalance(writer, asset, Decimal.ZERO, Decimal.ZERO);
+          }
+        }
+      }
+      writer.endRow();
+      previousWallet = wallet;
+      rowsSinceKeyframe++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      index.write();
+    }
+  }
+
+  private static void writeAssetBalance(CsvFileWriter writer, String asset, Decimal amount,
+                                        Decimal price) throws IOException {
+    writer.writeCell(amount.getNiceString());
+    writer.writeCell(asset);
+    writer.writeCell(price.getNiceString());
+    writer.writeCell("");
   }
 
   /**
-   * Write annual reports to a CSV file.
+   * Write periodic (annual, quarterly or monthly) reports to a CSV file.
    *
-   * @param annualReports  List of annual reports, ordered chronologically
+   * @param periodReports  List of period reports, ordered chronologically
    * @param outputFilePath Path to the CSV file where to write the report
    * @param homeCurrency   Home currency of the user
    * @throws IOException When something goes wrong with writing the file
    */
-  public static void writeAnnualReportsToFile(List<AnnualReport> annualReports,
+  public static void writePeriodReportsToFile(List<PeriodReport> periodReports,
                                               String outputFilePath,
                                               String homeCurrency) throws IOException {
     String[] header = new String[]{
@@ -116,7 +405,7 @@ public class ReportFileWriter {
         "Held asset value in " + homeCurrency
     };
     CsvFileWriter writer = new CsvFileWriter(outputFilePath, header);
-    for (AnnualReport report : annualReports) {
+    for (PeriodReport report : periodReports) {
       writer.writeRow(new String[]{
           TimeConverter.utcTimeToDateString(report.timestamp()),
           report.pnlUsd().getNiceString(),
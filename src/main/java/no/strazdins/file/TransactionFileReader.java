@@ -1,8 +1,19 @@
 package no.strazdins.file;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import no.strazdins.data.AccountType;
 import no.strazdins.data.Decimal;
 import no.strazdins.data.Operation;
@@ -18,6 +29,21 @@ import org.apache.logging.log4j.Logger;
 public class TransactionFileReader {
   private static final Logger log = LogManager.getLogger(TransactionFileReader.class);
 
+  /**
+   * When this system property is "true", the input file is memory-mapped and tokenized in place.
+   */
+  public static final String MAPPED_PARSER_PROPERTY = "pnl.csv.mapped";
+
+  /**
+   * The number of threads used for parsing the input file. When more than one, the file is
+   * split in chunks which are parsed in parallel.
+   */
+  public static final String PARSER_THREADS_PROPERTY = "pnl.parserThreads";
+
+  // At most this many chunks per thread are parsed ahead of the consumer
+  private static final int PENDING_CHUNKS_PER_THREAD = 2;
+  private static final long CHUNK_SIZE = 4 * 1024 * 1024;
+
   /**
    * Not allowed to create instances of the class.
    */
@@ -34,52 +60,212 @@ public class TransactionFileReader {
    */
   public static List<RawAccountChange> readAccountChanges(String inputFilePath)
       throws IOException {
-    CsvFileParser csvParser = new CsvFileParser(inputFilePath);
+    List<RawAccountChange> accountChanges = new LinkedList<>();
+    readAccountChanges(inputFilePath, accountChanges::add);
+    return accountChanges;
+  }
 
-    String[] headerRow = csvParser.readNextRow();
-    checkHeaderRowFormat(headerRow);
+  /**
+   * Read CSV input file, pass each raw account change to the consumer as soon as it is read.
+   * No account changes are retained in memory.
+   *
+   * @param inputFilePath Path to the CSV input file
+   * @param consumer      The consumer which will receive the account changes, in file order
+   * @throws IOException When something goes wrong with file reading
+   */
+  public static void readAccountChanges(String inputFilePath,
+                                        Consumer<RawAccountChange> consumer)
+      throws IOException {
+    int threadCount = Integer.getInteger(PARSER_THREADS_PROPERTY, 1);
+    if (threadCount > 1) {
+      readAccountChanges(inputFilePath, threadCount, CHUNK_SIZE, consumer);
+      return;
+    }
+    try (CsvRowReader csvParser = createParser(inputFilePath)) {
+      CsvRow headerRow = csvParser.readNextCsvRow();
+      checkHeaderRowFormat(headerRow);
 
-    List<RawAccountChange> accountChanges = new LinkedList<>();
-    RawAccountChange previousChange = null;
-    while (csvParser.hasMoreRows()) {
-      String[] row = csvParser.readNextRow();
-      RawAccountChange change = createAccountChangeFromCsvRow(row);
-      if (previousChange != null && previousChange.getUtcTime() > change.getUtcTime()) {
-        throw new IOException("Decreasing timestamp detected: " + previousChange + " -> " + change);
+      RawAccountChange previousChange = null;
+      while (csvParser.hasMoreRows()) {
+        CsvRow row = csvParser.readNextCsvRow();
+        RawAccountChange change = createAccountChangeFromCsvRow(row);
+        if (previousChange != null) {
+          checkTimestampOrder(previousChange, change);
+        }
+        consumer.accept(change);
+        previousChange = change;
       }
-      accountChanges.add(change);
-      previousChange = change;
     }
+  }
 
-    return accountChanges;
+  /**
+   * Read CSV input file in parallel: split the file in chunks at line boundaries, parse the
+   * chunks on a fork-join pool, pass the account changes to the consumer in file order.
+   * Only a few chunks per thread are parsed ahead of the consumer, therefore the parsing overlaps
+   * with the processing and the memory use does not depend on the file size.
+   * The result is the same as for the sequential reading, including the errors: the error
+   * which comes first in the file is reported. Note: the cells must not contain line breaks.
+   *
+   * @param inputFilePath Path to the CSV input file
+   * @param threadCount   The number of parsing threads
+   * @param chunkSize     Approximate size of a chunk, in bytes
+   * @param consumer      The consumer which will receive the account changes, in file order
+   * @throws IOException When something goes wrong with file reading
+   */
+  static void readAccountChanges(String inputFilePath, int threadCount, long chunkSize,
+                                 Consumer<RawAccountChange> consumer) throws IOException {
+    long dataStart;
+    try (MappedCsvFileParser headerParser = new MappedCsvFileParser(inputFilePath)) {
+      checkHeaderRowFormat(headerParser.readNextCsvRow());
+      dataStart = headerParser.getNextRowPosition();
+    }
+    int maxPendingChunks = threadCount * PENDING_CHUNKS_PER_THREAD;
+    Deque<Future<ParsedChunk>> pendingChunks = new ArrayDeque<>();
+    ForkJoinPool pool = new ForkJoinPool(threadCount);
+    try (FileChannel channel = FileChannel.open(Path.of(inputFilePath),
+        StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long chunkStart = dataStart;
+      RawAccountChange previousChange = null;
+      while (chunkStart < fileSize || !pendingChunks.isEmpty()) {
+        while (chunkStart < fileSize && pendingChunks.size() < maxPendingChunks) {
+          long start = chunkStart;
+          long end = findNextLineStart(channel, start + chunkSize, fileSize);
+          pendingChunks.add(pool.submit(() -> parseChunk(inputFilePath, start, end)));
+          chunkStart = end;
+        }
+        ParsedChunk chunk = pendingChunks.remove().get();
+        if (previousChange != null && chunk.changes.length > 0) {
+          checkTimestampOrder(previousChange, chunk.changes[0]);
+        }
+        for (RawAccountChange change : chunk.changes) {
+          consumer.accept(change);
+        }
+        chunk.rethrowError();
+        if (chunk.changes.length > 0) {
+          previousChange = chunk.changes[chunk.changes.length - 1];
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing " + inputFilePath);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to parse " + inputFilePath, e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
   }
 
-  private static void checkHeaderRowFormat(String[] headerRow) throws IOException {
-    if (headerRow.length != 7 || !"User_ID".equals(headerRow[0])
-        || !"UTC_Time".equals(headerRow[1])
-        || !"Account".equals(headerRow[2])
-        || !"Operation".equals(headerRow[3])
-        || !"Coin".equals(headerRow[4])
-        || !"Change".equals(headerRow[5])
-        || !"Remark".equals(headerRow[6])) {
-      throw new IOException("Invalid header row format: " + String.join(",", headerRow));
+  /**
+   * Find the start of the line which follows the first line break at or after the position.
+   *
+   * @return The position of the line start, or the file size if there are no more lines
+   */
+  private static long findNextLineStart(FileChannel channel, long position, long fileSize)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long p = position;
+    while (p < fileSize) {
+      buffer.clear();
+      int n = channel.read(buffer, p);
+      if (n <= 0) {
+        break;
+      }
+      for (int i = 0; i < n; ++i) {
+        if (buffer.get(i) == '\n') {
+          return p + i + 1;
+        }
+      }
+      p += n;
+    }
+    return fileSize;
+  }
+
+  /**
+   * Parse one chunk of the file. Errors are not thrown, but stored in the result, so that the
+   * error which comes first in the file can be reported.
+   */
+  private static ParsedChunk parseChunk(String inputFilePath, long start, long end)
+      throws IOException {
+    List<RawAccountChange> changes = new ArrayList<>();
+    Exception error = null;
+    try (MappedCsvFileParser parser = new MappedCsvFileParser(inputFilePath, start, end,
+        MappedCsvFileParser.DEFAULT_WINDOW_SIZE)) {
+      RawAccountChange previousChange = null;
+      while (parser.hasMoreRows()) {
+        RawAccountChange change = createAccountChangeFromCsvRow(parser.readNextCsvRow());
+        if (previousChange != null) {
+          checkTimestampOrder(previousChange, change);
+        }
+        changes.add(change);
+        previousChange = change;
+      }
+    } catch (IOException | RuntimeException e) {
+      error = e;
+    }
+    return new ParsedChunk(changes.toArray(new RawAccountChange[0]), error);
+  }
+
+  private static void checkTimestampOrder(RawAccountChange previousChange,
+                                          RawAccountChange change) throws IOException {
+    if (previousChange.getUtcTime() > change.getUtcTime()) {
+      throw new IOException("Decreasing timestamp detected: " + previousChange + " -> "
+          + change);
+    }
+  }
+
+  /**
+   * Account changes parsed from one chunk of the file.
+   *
+   * @param changes The changes parsed before an error (or all the changes in the chunk)
+   * @param error   The error which stopped the parsing, null if the whole chunk was parsed
+   */
+  private record ParsedChunk(RawAccountChange[] changes, Exception error) {
+    void rethrowError() throws IOException {
+      if (error instanceof IOException e) {
+        throw e;
+      } else if (error instanceof RuntimeException e) {
+        throw e;
+      }
+    }
+  }
+
+  private static CsvRowReader createParser(String inputFilePath) throws IOException {
+    return Boolean.getBoolean(MAPPED_PARSER_PROPERTY)
+        ? new MappedCsvFileParser(inputFilePath)
+        : new CsvFileParser(inputFilePath);
+  }
+
+  private static void checkHeaderRowFormat(CsvRow headerRow) throws IOException {
+    if (headerRow == null) {
+      throw new IOException("The input file is empty");
+    }
+    if (headerRow.size() != 7 || !"User_ID".equals(headerRow.get(0))
+        || !"UTC_Time".equals(headerRow.get(1))
+        || !"Account".equals(headerRow.get(2))
+        || !"Operation".equals(headerRow.get(3))
+        || !"Coin".equals(headerRow.get(4))
+        || !"Change".equals(headerRow.get(5))
+        || !"Remark".equals(headerRow.get(6))) {
+      throw new IOException("Invalid header row format: "
+          + String.join(",", headerRow.toArray()));
     }
   }
 
-  private static RawAccountChange createAccountChangeFromCsvRow(String[] row) throws IOException {
-    if (row.length != 7) {
-      throw new IOException("Invalid row format: " + String.join(",", row));
+  private static RawAccountChange createAccountChangeFromCsvRow(CsvRow row) throws IOException {
+    if (row.size() != 7) {
+      throw new IOException("Invalid row format: " + String.join(",", row.toArray()));
     }
     try {
-      long utcTimestamp = TimeConverter.stringToUtcTimestamp(row[1]);
-      AccountType accountType = AccountType.fromString(row[2]);
-      Operation operation = Operation.fromString(row[3]);
-      String asset = row[4];
-      Decimal change = new Decimal(TimeConverter.parseDecimalString(row[5]));
-      String remark = row[6];
+      long utcTimestamp = TimeConverter.stringToUtcTimestamp(row.get(1));
+      AccountType accountType = AccountType.fromString(row.getPooled(2));
+      Operation operation = Operation.fromString(row.getPooled(3));
+      String asset = row.getPooled(4);
+      Decimal change = new Decimal(TimeConverter.parseDecimalString(row.get(5)));
+      String remark = row.getPooled(6);
       return new RawAccountChange(utcTimestamp, accountType, operation, asset, change, remark);
     } catch (IOException e) {
-      log.error("Invalid row: {}", String.join(",", row));
+      log.error("Invalid row: {}", String.join(",", row.toArray()));
       log.error(e.getMessage());
       throw e;
     }
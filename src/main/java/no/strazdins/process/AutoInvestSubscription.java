@@ -1,5 +1,6 @@
 package no.strazdins.process;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -80,6 +81,24 @@ public class AutoInvestSubscription {
     return utcTime;
   }
 
+  /**
+   * Get the configured proportions of the investment for each asset.
+   *
+   * @return Proportion of the investment, for each asset. Empty when not configured yet
+   */
+  public Map<String, Decimal> getAssetProportions() {
+    return Collections.unmodifiableMap(assetProportions);
+  }
+
+  /**
+   * Get the assets acquired in the auto-invest transactions of this subscription so far.
+   *
+   * @return The acquired assets
+   */
+  public Set<String> getAcquiredAssets() {
+    return Collections.unmodifiableSet(acquiredAssets);
+  }
+
   private boolean allProportionsSumUpToOne() {
     Decimal proportionSum = Decimal.ZERO;
     for (Decimal proportion : assetProportions.values()) {
@@ -0,0 +1,76 @@
+package no.strazdins.process;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import no.strazdins.data.WalletSnapshot;
+
+/**
+ * The state of the report after processing the transactions up to a certain time moment. A
+ * later run can continue from the checkpoint, processing only the new transactions.
+ *
+ * <p>The transactions starting with the last auto-invest spending are not final - the
+ * subscription change is detected only at the next spending and assigned retroactively.
+ * Therefore, the checkpoint contains the state before the last auto-invest spending
+ * (resumeTime), and those transactions are processed again in the next run.</p>
+ *
+ * @param timestamp               Timestamp of the last final transaction (including
+ *                                milliseconds), or NO_TIMESTAMP when no transactions have been
+ *                                processed
+ * @param walletSnapshot          The wallet snapshot after the last final transaction
+ * @param yearEndSnapshots        The last final wallet snapshot for each year, ordered
+ *                                chronologically
+ * @param resumeTime              Timestamp of the last auto-invest spending, from which the
+ *                                transactions must be processed again, or NO_TIMESTAMP
+ * @param autoInvestSubscription  The auto-invest subscription active at resumeTime, or null
+ * @param previousAutoInvestCoins Coins of the auto-invest round before resumeTime
+ * @param transactionLogPosition  Size of the transaction log file (in bytes) without the
+ *                                non-final transactions, or -1 when unknown
+ * @param balanceLogPosition      Size of the balance log file (in bytes) without the
+ *                                non-final transactions, or -1 when unknown
+ */
+public record Checkpoint(long timestamp, WalletSnapshot walletSnapshot,
+                         List<WalletSnapshot> yearEndSnapshots, long resumeTime,
+                         AutoInvestSubscription autoInvestSubscription,
+                         Set<String> previousAutoInvestCoins,
+                         long transactionLogPosition, long balanceLogPosition) {
+  /**
+   * Used in place of a timestamp when there is no time moment to refer to.
+   */
+  public static final long NO_TIMESTAMP = -1;
+
+  /**
+   * Create a checkpoint for the start of the transaction history: no transactions processed.
+   *
+   * @return An empty checkpoint
+   */
+  public static Checkpoint empty() {
+    return new Checkpoint(NO_TIMESTAMP, WalletSnapshot.createEmpty(), Collections.emptyList(),
+        NO_TIMESTAMP, null, Collections.emptySet(), -1, -1);
+  }
+
+  /**
+   * Check whether some transactions must be processed again when continuing from this
+   * checkpoint.
+   *
+   * @return True when the transactions starting at resumeTime must be processed again
+   */
+  public boolean hasPendingTransactions() {
+    return resumeTime != NO_TIMESTAMP;
+  }
+
+  /**
+   * Create a copy of this checkpoint with the given output file positions.
+   *
+   * @param transactionLogPosition Size of the transaction log file without the non-final
+   *                               transactions
+   * @param balanceLogPosition     Size of the balance log file without the non-final
+   *                               transactions
+   * @return The updated checkpoint
+   */
+  public Checkpoint withLogPositions(long transactionLogPosition, long balanceLogPosition) {
+    return new Checkpoint(timestamp, walletSnapshot, yearEndSnapshots, resumeTime,
+        autoInvestSubscription, previousAutoInvestCoins,
+        transactionLogPosition, balanceLogPosition);
+  }
+}
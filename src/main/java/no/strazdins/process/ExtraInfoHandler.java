@@ -1,13 +1,18 @@
 package no.strazdins.process;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import no.strazdins.data.ExtraInfo;
 import no.strazdins.data.ExtraInfoEntry;
 import no.strazdins.data.ExtraInfoType;
 import no.strazdins.file.CsvFileParser;
+import no.strazdins.tool.ReportPeriod;
 import no.strazdins.tool.TimeConverter;
 import no.strazdins.transaction.Transaction;
 
@@ -15,12 +20,23 @@ import no.strazdins.transaction.Transaction;
  * Handles extra information provided by the user (as an external CSV file).
  */
 public class ExtraInfoHandler {
+  // When set, the exchange rates at the end of each month and quarter are required as well
+  private static final String PERIOD_REPORTS_PROPERTY = "pnl.periodReports";
+
   private final String extraFilePath;
 
   private ExtraInfo userProvidedInfo;
 
   private final String homeCurrency;
 
+  // The periods for which the exchange rates at the period end are necessary
+  private final List<ReportPeriod> reportPeriods;
+
+  // Registered transactions for which the necessary extra info is not provided by the user
+  private final List<Transaction> transactionsMissingInfo = new LinkedList<>();
+  // Months covered by the registered transactions, see TimeConverter.getUtcMonthIndex()
+  private final Set<Integer> transactionMonths = new HashSet<>();
+
   /**
    * Create a new ExtraInfoHandler.
    *
@@ -31,6 +47,9 @@ public class ExtraInfoHandler {
   public ExtraInfoHandler(String extraFilePath, String homeCurrency) throws IOException {
     this.extraFilePath = extraFilePath;
     this.homeCurrency = homeCurrency;
+    this.reportPeriods = Boolean.getBoolean(PERIOD_REPORTS_PROPERTY)
+        ? List.of(ReportPeriod.values())
+        : List.of(ReportPeriod.YEAR);
     readUserProvidedExtraInfo();
   }
 
@@ -49,20 +68,82 @@ public class ExtraInfoHandler {
    * @return Necessary extra info which is missing - required to process the transactions
    */
   public ExtraInfo detectMissingInfo(List<Transaction> transactions) {
-    ExtraInfo necessaryInfo = detectNecessaryExtraInfo(transactions);
+    for (Transaction transaction : transactions) {
+      registerTransaction(transaction);
+    }
+    return getMissingInfo();
+  }
+
+  /**
+   * Incremental version of detectMissingInfo(): check whether the extra info necessary for one
+   * transaction has been provided by the user. Call getMissingInfo() after the last transaction
+   * has been registered.
+   *
+   * @param transaction The transaction to check
+   * @return True if all the necessary info for this transaction is available, false if
+   *     something is missing
+   */
+  public boolean registerTransaction(Transaction transaction) {
+    transactionMonths.add(TimeConverter.getUtcMonthIndex(transaction.getUtcTime()));
+    ExtraInfoEntry necessaryEntry = transaction.getNecessaryExtraInfo();
+    boolean available = necessaryEntry == null || userProvidedInfo.contains(necessaryEntry);
+    if (!available) {
+      transactionsMissingInfo.add(transaction);
+    }
+    return available;
+  }
+
+  /**
+   * Check whether any of the transactions registered so far are missing necessary extra info.
+   *
+   * @return True if some info is missing
+   */
+  public boolean isTransactionInfoMissing() {
+    return !transactionsMissingInfo.isEmpty();
+  }
+
+  /**
+   * Get the extra info which is missing for the registered transactions, including the
+   * year-end info for all the years the transactions cover (and the month-end and quarter-end
+   * info, when the monthly and quarterly reports are enabled).
+   *
+   * @return Necessary extra info which is missing - required to process the transactions
+   */
+  public ExtraInfo getMissingInfo() {
     ExtraInfo missingInfo = new ExtraInfo();
-    for (ExtraInfoEntry necessaryEntry : necessaryInfo.getAllEntries()) {
-      if (!userProvidedInfo.contains(necessaryEntry)) {
-        missingInfo.add(necessaryEntry);
+    // The entry is requested only now, it may depend on later transactions
+    // (for example, auto-invest subscription assets)
+    for (Transaction transaction : transactionsMissingInfo) {
+      missingInfo.add(transaction.getNecessaryExtraInfo());
+    }
+    for (ExtraInfoEntry periodEndEntry : getPeriodEndExchangeRateInfo()) {
+      if (!userProvidedInfo.contains(periodEndEntry)) {
+        missingInfo.add(periodEndEntry);
       }
     }
     return missingInfo;
   }
 
-  private ExtraInfo detectNecessaryExtraInfo(List<Transaction> transactions) {
-    ExtraInfo extraInfo = getNecessaryTransactionExtraInfo(transactions);
-    getNecessaryYearEndInfo(extraInfo, getTransactionYears(transactions));
-    return extraInfo;
+  /**
+   * Get the exchange rate info necessary for the periodic reports, one entry for the end of
+   * each period covered by the registered transactions.
+   *
+   * @return The entries, ordered by time
+   */
+  private Collection<ExtraInfoEntry> getPeriodEndExchangeRateInfo() {
+    // A year end is also a quarter end and a month end, the year-end entry is stored last
+    Map<Long, ExtraInfoEntry> entries = new TreeMap<>();
+    for (int month : transactionMonths) {
+      int year = month / 12;
+      long monthStart = TimeConverter.getMonthStartTimestamp(year, month % 12 + 1);
+      for (ReportPeriod period : reportPeriods) {
+        ExtraInfoEntry entry = period == ReportPeriod.YEAR
+            ? getYearEndExchangeRateInfo(year)
+            : getPeriodEndExchangeRateInfo(period.getEndTimestamp(period.getIndex(monthStart)));
+        entries.put(entry.utcTimestamp(), entry);
+      }
+    }
+    return entries.values();
   }
 
   /**
@@ -79,36 +160,18 @@ public class ExtraInfoHandler {
     return years;
   }
 
-  private static ExtraInfo getNecessaryTransactionExtraInfo(List<Transaction> transactions) {
-    ExtraInfo necessaryInfo = new ExtraInfo();
-    for (Transaction t : transactions) {
-      ExtraInfoEntry necessaryExtraInfo = t.getNecessaryExtraInfo();
-      if (necessaryExtraInfo != null) {
-        necessaryInfo.add(necessaryExtraInfo);
-      }
-    }
-    return necessaryInfo;
-  }
-
-  /**
-   * Get the necessary extra information for end of the year, covering the years of all the
-   * transactions (such as HC/USD exchange rate at the end of each year).
-   *
-   * @param extraInfo The necessary year-end info will be added to this extraInfo object
-   * @param years     The years covering the transactions as integers (for example [2019, 2020])
-   */
-  private void getNecessaryYearEndInfo(ExtraInfo extraInfo, Set<Integer> years) {
-    for (int year : years) {
-      extraInfo.add(getYearEndExchangeRateInfo(year));
-    }
-  }
-
   private ExtraInfoEntry getYearEndExchangeRateInfo(int year) {
     long yearEndTimestamp = TimeConverter.getYearEndTimestamp(year);
     return new ExtraInfoEntry(yearEndTimestamp, ExtraInfoType.ASSET_PRICE, homeCurrency,
         "<" + homeCurrency + "/USD exchange rate at the end of year " + year + ">");
   }
 
+  private ExtraInfoEntry getPeriodEndExchangeRateInfo(long periodEndTimestamp) {
+    return new ExtraInfoEntry(periodEndTimestamp, ExtraInfoType.ASSET_PRICE, homeCurrency,
+        "<" + homeCurrency + "/USD exchange rate at "
+            + TimeConverter.utcTimeToString(periodEndTimestamp) + ">");
+  }
+
   private ExtraInfoEntry createExtraInfoEntryFromCsvRow(String[] csvRow) throws IOException {
     String value = parseOneOrMultipleDecimalValues(csvRow[4]);
     return new ExtraInfoEntry(
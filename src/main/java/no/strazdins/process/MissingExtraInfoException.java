@@ -0,0 +1,48 @@
+package no.strazdins.process;
+
+import java.io.IOException;
+import java.util.List;
+import no.strazdins.data.ExtraInfo;
+import no.strazdins.tool.TimeConverter;
+
+/**
+ * The report can't be generated because the user must provide some extra information: the
+ * exchange rates or the prices of the assets which can't be found in the Binance export.
+ */
+public class MissingExtraInfoException extends IOException {
+  // Not serialized, the exception is not sent anywhere
+  private final transient ExtraInfo missingInfo;
+
+  /**
+   * Create the exception.
+   *
+   * @param missingInfo The missing entries, with a hint about the expected value in each
+   */
+  public MissingExtraInfoException(ExtraInfo missingInfo) {
+    super("Some information missing, can't generate the report");
+    this.missingInfo = missingInfo;
+  }
+
+  /**
+   * Get the missing extra information.
+   *
+   * @return The missing entries, with a hint about the expected value in each
+   */
+  public ExtraInfo getMissingInfo() {
+    return missingInfo;
+  }
+
+  /**
+   * Get the missing entries as the lines of the extra info file, the value of each line is
+   * a hint for the user.
+   *
+   * @return The lines: timestamp, UTC time, type, asset, value
+   */
+  public List<String> getRequiredLines() {
+    return missingInfo.getAllEntries().stream()
+        .map(entry -> entry.utcTimestamp() + ","
+            + TimeConverter.utcTimeToString(entry.utcTimestamp()) + "," + entry.type() + ","
+            + entry.asset() + "," + entry.value())
+        .toList();
+  }
+}
@@ -0,0 +1,108 @@
+package no.strazdins.process;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import no.strazdins.data.Decimal;
+import no.strazdins.tool.BinanceApiClient;
+
+/**
+ * Fetches asset prices for several time moments concurrently. Prices of different assets are
+ * fetched in parallel. Prices of the same asset are fetched sequentially, in increasing time
+ * order, because one (bulk) request usually returns the prices for several time moments.
+ * The request rate is limited by the API client.
+ */
+public class PriceResolver {
+  /**
+   * The number of threads used for fetching prices.
+   */
+  public static final String THREADS_PROPERTY = "pnl.priceThreads";
+  private static final int DEFAULT_THREAD_COUNT = 8;
+
+  private final BinanceApiClient apiClient;
+  private final int threadCount;
+
+  /**
+   * A price of interest.
+   *
+   * @param asset     The asset
+   * @param timestamp The time moment, including milliseconds
+   */
+  public record PriceRequest(String asset, long timestamp) {
+  }
+
+  /**
+   * Create a price resolver, with the number of threads specified by the pnl.priceThreads
+   * system property.
+   *
+   * @param apiClient The API client used for fetching the prices
+   */
+  public PriceResolver(BinanceApiClient apiClient) {
+    this(apiClient, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREAD_COUNT));
+  }
+
+  /**
+   * Create a price resolver.
+   *
+   * @param apiClient   The API client used for fetching the prices
+   * @param threadCount The maximum number of concurrent requests
+   */
+  public PriceResolver(BinanceApiClient apiClient, int threadCount) {
+    this.apiClient = apiClient;
+    this.threadCount = Math.max(1, threadCount);
+  }
+
+  /**
+   * Fetch the requested prices.
+   *
+   * @param requests The prices of interest
+   * @return The fetched prices, for each of the requests
+   * @throws IllegalStateException When fetching is interrupted or fails
+   */
+  public Map<PriceRequest, Decimal> fetchPrices(Collection<PriceRequest> requests) {
+    Map<String, List<Long>> timestampsByAsset = new LinkedHashMap<>();
+    for (PriceRequest request : requests) {
+      timestampsByAsset.computeIfAbsent(request.asset(), a -> new ArrayList<>())
+          .add(request.timestamp());
+    }
+
+    List<Callable<Map<PriceRequest, Decimal>>> tasks = new ArrayList<>();
+    for (Map.Entry<String, List<Long>> entry : timestampsByAsset.entrySet()) {
+      tasks.add(() -> fetchAssetPrices(entry.getKey(), entry.getValue()));
+    }
+
+    Map<PriceRequest, Decimal> prices = new HashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threadCount, tasks.size())));
+    try {
+      for (Future<Map<PriceRequest, Decimal>> future : executor.invokeAll(tasks)) {
+        prices.putAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while fetching prices");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to fetch prices: " + e.getCause().getMessage(),
+          e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+    return prices;
+  }
+
+  private Map<PriceRequest, Decimal> fetchAssetPrices(String asset, List<Long> timestamps) {
+    Map<PriceRequest, Decimal> prices = new HashMap<>();
+    timestamps.stream().sorted().forEach(timestamp ->
+        prices.put(new PriceRequest(asset, timestamp),
+            apiClient.getDailyClosePrice(asset, timestamp)));
+    return prices;
+  }
+}
@@ -1,8 +1,14 @@
 package no.strazdins.process;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import no.strazdins.data.Decimal;
 import no.strazdins.data.ExtraInfo;
 import no.strazdins.data.ExtraInfoEntry;
@@ -10,8 +16,13 @@ import no.strazdins.data.ExtraInfoType;
 import no.strazdins.data.Wallet;
 import no.strazdins.data.WalletDiff;
 import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.PriceResolver.PriceRequest;
 import no.strazdins.tool.BinanceApiClient;
+import no.strazdins.tool.PeriodEndTracker;
 import no.strazdins.tool.ReportHelper;
+import no.strazdins.tool.ReportPeriod;
+import no.strazdins.tool.RunMetrics;
+import no.strazdins.tool.RunMetrics.Stage;
 import no.strazdins.tool.TimeConverter;
 import no.strazdins.transaction.AutoInvestTransaction;
 import no.strazdins.transaction.SavingsRedemptionTransaction;
@@ -30,23 +41,100 @@ public class Report implements Iterable<WalletSnapshot> {
   private boolean extraInfoUpdated = false;
   private final List<WalletSnapshot> walletSnapshots = new LinkedList<>();
   private WalletSnapshot currentWalletSnapshot;
+  // When false, only the current snapshot and the month-end snapshots are kept
+  private final boolean retainSnapshots;
+  // The last snapshot of each month, tracked while processing. The quarter-end and year-end
+  // snapshots are taken from these.
+  private final PeriodEndTracker monthEndSnapshots = new PeriodEndTracker(ReportPeriod.MONTH);
+  private final List<SnapshotSink> sinks;
+  // The checkpoint from which this report continues
+  private final Checkpoint startCheckpoint;
+  // The checkpoint after processing the transactions, null when not created
+  private Checkpoint checkpoint;
 
-  private final BinanceApiClient apiClient = new BinanceApiClient();
+  // Created when the first price is fetched, unless set with setApiClient()
+  private BinanceApiClient apiClient;
+  private RunMetrics metrics = RunMetrics.disabled();
 
   public Report(ExtraInfo extraInfo) {
+    this(extraInfo, Checkpoint.empty());
+  }
+
+  /**
+   * Create a report which continues from a checkpoint. Only the transactions processed after
+   * the checkpoint are included in the wallet snapshots of this report, the year-end snapshots
+   * of the checkpoint are used for the annual reports. The monthly and quarterly reports cover
+   * only the periods of the new transactions.
+   *
+   * @param extraInfo  Extra user-provided information
+   * @param checkpoint The checkpoint to continue from
+   */
+  public Report(ExtraInfo extraInfo, Checkpoint checkpoint) {
+    this.extraInfo = extraInfo;
+    this.startCheckpoint = checkpoint;
+    this.currentWalletSnapshot = checkpoint.walletSnapshot();
+    this.retainSnapshots = true;
+    this.sinks = List.of();
+  }
+
+  /**
+   * Create a bounded-memory report: each wallet snapshot is passed to the sinks as soon as it
+   * is created, only the current snapshot and the last snapshot of each month are kept. Such a
+   * report can't be iterated, the periodic reports can be created.
+   *
+   * @param extraInfo Extra user-provided information
+   * @param sinks     The sinks which will receive the wallet snapshots. They must be closed
+   *                  with closeSinks() after the last transaction.
+   */
+  public Report(ExtraInfo extraInfo, List<SnapshotSink> sinks) {
     this.extraInfo = extraInfo;
-    this.currentWalletSnapshot = WalletSnapshot.createEmpty();
+    this.startCheckpoint = Checkpoint.empty();
+    this.currentWalletSnapshot = startCheckpoint.walletSnapshot();
+    this.retainSnapshots = false;
+    this.sinks = List.copyOf(sinks);
+  }
+
+  /**
+   * Set the client used for fetching the missing asset prices. By default, each report creates
+   * its own client, when the first price is fetched.
+   *
+   * @param apiClient The Binance API client, may be shared with other reports
+   */
+  public void setApiClient(BinanceApiClient apiClient) {
+    this.apiClient = apiClient;
+  }
+
+  /**
+   * Set the metrics where the processed transactions and the fetched prices are recorded.
+   *
+   * @param metrics The metrics of the run
+   */
+  public void setMetrics(RunMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  private BinanceApiClient getApiClient() {
+    if (apiClient == null) {
+      apiClient = new BinanceApiClient();
+      apiClient.setMetrics(metrics);
+    }
+    return apiClient;
   }
 
   /**
    * Process the transaction, generate a new wallet snapshot.
    *
    * @param transaction The transaction to process
+   * @throws UncheckedIOException When a snapshot sink fails
    */
   public void process(Transaction transaction) {
+    metrics.countTransaction(transaction.getClass().getSimpleName());
     WalletSnapshot newSnapshot = transaction.process(currentWalletSnapshot,
         getExtraInfo(transaction));
-    WalletDiff snapshotDiff = newSnapshot.getDiffFrom(currentWalletSnapshot);
+    WalletDiff snapshotDiff = newSnapshot.hasTransactionDiff()
+        ? newSnapshot.getTransactionDiff()
+        : newSnapshot.getDiffFrom(currentWalletSnapshot);
+    newSnapshot.endTransaction();
     WalletDiff rawOperationDiff = transaction.getOperationDiff();
     if (!snapshotDiff.equals(rawOperationDiff) && !isDiffDiscrepancyAllowed(transaction)) {
       if (transaction instanceof AutoInvestTransaction) {
@@ -59,8 +147,47 @@ public class Report implements Iterable<WalletSnapshot> {
         logger.warn("   Snapshot  diff: {}", snapshotDiff);
       }
     }
-    walletSnapshots.add(newSnapshot);
+    if (retainSnapshots) {
+      walletSnapshots.add(newSnapshot);
+    }
+    monthEndSnapshots.add(newSnapshot);
     currentWalletSnapshot = newSnapshot;
+    if (!sinks.isEmpty()) {
+      passToSinks(newSnapshot);
+    }
+  }
+
+  private void passToSinks(WalletSnapshot snapshot) {
+    try {
+      for (SnapshotSink sink : sinks) {
+        sink.accept(snapshot);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Close all the snapshot sinks. All the sinks are closed even when some of them fail.
+   *
+   * @throws IOException When closing of a sink fails
+   */
+  public void closeSinks() throws IOException {
+    IOException error = null;
+    for (SnapshotSink sink : sinks) {
+      try {
+        sink.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        } else {
+          error.addSuppressed(e);
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
   }
 
   /**
@@ -81,28 +208,169 @@ public class Report implements Iterable<WalletSnapshot> {
     return extraInfo.getAtTime(transaction.getUtcTime());
   }
 
+  /**
+   * Iterate over the wallet snapshots of the report.
+   *
+   * @return Iterator over the snapshots, in transaction order
+   * @throws IllegalStateException When the snapshots are not retained (a bounded-memory report)
+   */
   @Override
-  public Iterator<WalletSnapshot> iterator() {
+  public Iterator<WalletSnapshot> iterator() throws IllegalStateException {
+    if (!retainSnapshots) {
+      throw new IllegalStateException("The wallet snapshots of a bounded-memory report are not"
+          + " retained, use snapshot sinks");
+    }
     return walletSnapshots.iterator();
   }
 
-  public List<AnnualReport> createAnnualReports() {
-    List<WalletSnapshot> yearEndSnapshots = getYearEndSnapshots();
-    return yearEndSnapshots.stream().map(this::createYearEndReport).toList();
+  /**
+   * Create the annual PNL reports, one for each year of the transactions.
+   *
+   * @return The annual reports, ordered chronologically
+   * @throws IllegalStateException When an exchange rate or an asset price at a year end is
+   *                               missing
+   */
+  public List<PeriodReport> createAnnualReports() throws IllegalStateException {
+    return createPeriodReports(ReportPeriod.YEAR);
+  }
+
+  /**
+   * Create the PNL reports for each period of the transactions: the running PNL and the wallet
+   * value at the end of the period. The period-end snapshots are tracked while the transactions
+   * are processed, hence this takes time proportional to the number of periods.
+   *
+   * @param period The period length
+   * @return The reports, ordered chronologically
+   * @throws IllegalStateException When an exchange rate or an asset price at a period end is
+   *                               missing
+   */
+  public List<PeriodReport> createPeriodReports(ReportPeriod period)
+      throws IllegalStateException {
+    List<WalletSnapshot> snapshots = getPeriodEndSnapshots(period);
+    List<Long> endTimestamps = snapshots.stream()
+        .map(snapshot -> period.getEndTimestamp(period.getIndex(snapshot.getTimestamp())))
+        .toList();
+    checkExchangeRates(endTimestamps);
+    fetchMissingPrices(snapshots, endTimestamps);
+    List<PeriodReport> reports = new ArrayList<>(snapshots.size());
+    for (int i = 0; i < snapshots.size(); ++i) {
+      reports.add(createPeriodEndReport(snapshots.get(i), endTimestamps.get(i)));
+    }
+    return reports;
+  }
+
+  private void checkExchangeRates(List<Long> timestamps) throws IllegalStateException {
+    List<String> missingTimes = timestamps.stream()
+        .filter(timestamp -> extraInfo.getAtTime(timestamp) == null)
+        .map(TimeConverter::utcTimeToString)
+        .toList();
+    if (!missingTimes.isEmpty()) {
+      throw new IllegalStateException("Did not find exchange rate at "
+          + String.join(", ", missingTimes));
+    }
+  }
+
+  /**
+   * Find all the asset prices necessary for the period-end wallet valuation which are not in
+   * the extra info, fetch them concurrently from Binance API. The fetched prices are added to
+   * the extra info in the same order as they would be added when fetched one by one.
+   *
+   * @param snapshots     The period-end snapshots to be valuated
+   * @param endTimestamps The valuation time of each snapshot
+   */
+  private void fetchMissingPrices(List<WalletSnapshot> snapshots, List<Long> endTimestamps) {
+    Set<PriceRequest> missingPrices = new LinkedHashSet<>();
+    for (int i = 0; i < snapshots.size(); ++i) {
+      long endTimestamp = endTimestamps.get(i);
+      for (String asset : snapshots.get(i).getWallet()) {
+        if (!asset.equals("USDT")
+            && extraInfo.getAssetPriceAtTime(endTimestamp, asset) == null) {
+          missingPrices.add(new PriceRequest(asset, endTimestamp));
+        }
+      }
+    }
+    if (missingPrices.isEmpty()) {
+      return;
+    }
+
+    logger.info("Fetching {} missing prices from Binance REST API", missingPrices.size());
+    long startTime = metrics.startTimer();
+    Map<PriceRequest, Decimal> prices = new PriceResolver(getApiClient())
+        .fetchPrices(missingPrices);
+    metrics.addStageTime(Stage.PRICES, startTime);
+    metrics.addStageItems(Stage.PRICES, missingPrices.size());
+    for (PriceRequest request : missingPrices) {
+      appendPriceToExtraInfo(request.timestamp(), request.asset(), prices.get(request));
+    }
+  }
+
+  private List<WalletSnapshot> getPeriodEndSnapshots(ReportPeriod period) {
+    List<WalletSnapshot> monthEnds = monthEndSnapshots.getSnapshots();
+    if (period == ReportPeriod.YEAR && !startCheckpoint.yearEndSnapshots().isEmpty()) {
+      // The last year of the checkpoint may continue in the new transactions
+      List<WalletSnapshot> snapshots = new ArrayList<>(startCheckpoint.yearEndSnapshots());
+      snapshots.addAll(monthEnds);
+      return ReportHelper.filterPeriodEndSnapshots(snapshots, period);
+    }
+    return period == ReportPeriod.MONTH
+        ? new ArrayList<>(monthEnds)
+        : ReportHelper.filterPeriodEndSnapshots(monthEnds, period);
   }
 
-  private List<WalletSnapshot> getYearEndSnapshots() {
-    return ReportHelper.filterYearEndSnapshots(walletSnapshots);
+  /**
+   * Create a checkpoint of the current report state: the transactions starting with the
+   * resume time of the logic are excluded from the checkpoint, those must be processed again
+   * in the next run.
+   *
+   * @param logic The logic used for processing the transactions of this report
+   */
+  void createCheckpoint(ReportLogic logic) {
+    long resumeTime = logic.getResumeTime();
+    long timestamp = startCheckpoint.timestamp();
+    WalletSnapshot lastFinalSnapshot = startCheckpoint.walletSnapshot();
+    PeriodEndTracker yearEndSnapshots = new PeriodEndTracker(ReportPeriod.YEAR);
+    for (WalletSnapshot snapshot : startCheckpoint.yearEndSnapshots()) {
+      yearEndSnapshots.add(snapshot);
+    }
+    for (WalletSnapshot snapshot : walletSnapshots) {
+      if (resumeTime != Checkpoint.NO_TIMESTAMP && snapshot.getTimestamp() >= resumeTime) {
+        break;
+      }
+      timestamp = snapshot.getTimestamp();
+      lastFinalSnapshot = snapshot;
+      yearEndSnapshots.add(snapshot);
+    }
+    checkpoint = new Checkpoint(timestamp, lastFinalSnapshot,
+        new ArrayList<>(yearEndSnapshots.getSnapshots()), resumeTime,
+        logic.getAutoInvestSubscription(), logic.getPreviousAutoInvestCoins(),
+        startCheckpoint.transactionLogPosition(), startCheckpoint.balanceLogPosition());
+  }
+
+  /**
+   * Get the checkpoint created after processing the transactions of this report.
+   *
+   * @return The checkpoint, or null if it was not created
+   */
+  public Checkpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Get the checkpoint from which this report continues.
+   *
+   * @return The start checkpoint, empty when the report starts from the beginning
+   */
+  public Checkpoint getStartCheckpoint() {
+    return startCheckpoint;
   }
 
-  private AnnualReport createYearEndReport(WalletSnapshot snapshot) {
-    long yearEndTimestamp = TimeConverter.getYearEndTimestamp(snapshot.getYear());
-    Decimal exchangeRate = getExchangeRateAt(yearEndTimestamp);
+  private PeriodReport createPeriodEndReport(WalletSnapshot snapshot, long endTimestamp) {
+    Decimal exchangeRate = getExchangeRateAt(endTimestamp);
     Decimal pnlUsd = snapshot.getPnl();
     Decimal pnlHc = pnlUsd.multiply(exchangeRate);
-    Decimal walletValueUsd = getTotalWalletValueAt(snapshot.getWallet(), yearEndTimestamp);
+    Decimal walletValueUsd = getTotalWalletValueAt(snapshot.getWallet(), endTimestamp);
     Decimal walletValueHc = walletValueUsd.multiply(exchangeRate);
-    return new AnnualReport(yearEndTimestamp, pnlUsd, exchangeRate, pnlHc,
+    return new PeriodReport(endTimestamp, pnlUsd, exchangeRate, pnlHc,
         walletValueUsd, walletValueHc);
   }
 
@@ -133,7 +401,7 @@ public class Report implements Iterable<WalletSnapshot> {
 
     if (assetPrice == null) {
       logger.info("No {} price found in extra info, checking Binance REST API", asset);
-      assetPrice = apiClient.getDailyClosePrice(asset, timestamp);
+      assetPrice = getApiClient().getDailyClosePrice(asset, timestamp);
       if (assetPrice != null) {
         appendPriceToExtraInfo(timestamp, asset, assetPrice);
       }
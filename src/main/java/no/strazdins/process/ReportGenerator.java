@@ -1,11 +1,16 @@
 package no.strazdins.process;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.function.Consumer;
 import no.strazdins.data.ExtraInfo;
-import no.strazdins.data.ExtraInfoEntry;
 import no.strazdins.data.RawAccountChange;
+import no.strazdins.file.FileWriteException;
 import no.strazdins.file.TransactionFileReader;
+import no.strazdins.tool.BinanceApiClient;
+import no.strazdins.tool.RunMetrics;
+import no.strazdins.tool.RunMetrics.Stage;
 import no.strazdins.tool.TimeConverter;
 import no.strazdins.transaction.Transaction;
 import org.apache.logging.log4j.Level;
@@ -19,47 +24,284 @@ import org.apache.logging.log4j.Logger;
 public class ReportGenerator {
   private static final Logger logger = LogManager.getLogger(ReportGenerator.class);
 
+  // Shared by all the generated reports, null when each report creates its own client
+  private final BinanceApiClient apiClient;
+  private final RunMetrics metrics;
+
+  /**
+   * Create a report generator, each generated report uses its own Binance API client.
+   */
+  public ReportGenerator() {
+    this(null);
+  }
+
+  /**
+   * Create a report generator where all the generated reports share the same Binance API
+   * client (and its price cache).
+   *
+   * @param apiClient The client used for fetching the missing asset prices, null when each
+   *                  report creates its own client
+   */
+  public ReportGenerator(BinanceApiClient apiClient) {
+    this(apiClient, RunMetrics.disabled());
+  }
+
+  /**
+   * Create a report generator which collects the performance metrics of the generated
+   * reports. Use a separate generator for each run which needs its own metrics.
+   *
+   * @param apiClient The client used for fetching the missing asset prices, null when each
+   *                  report creates its own client
+   * @param metrics   The metrics where the stages of the generated reports are recorded
+   */
+  public ReportGenerator(BinanceApiClient apiClient, RunMetrics metrics) {
+    this.apiClient = apiClient;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Get the metrics where the stages of the generated reports are recorded.
+   *
+   * @return The metrics, disabled when the generator does not collect metrics
+   */
+  public RunMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * Analyze Transaction CSV file exported from Binance, generate a report, write it in
    * the output file.
    *
    * @param inputFilePath Path to the CVS input file (exported from Binance)
    * @param extraFilePath Path to a CSV file where necessary extra information is stored
+   * @throws MissingExtraInfoException When some extra info is missing
+   * @throws IOException               When something goes wrong with file reading
    */
   public Report createReport(String inputFilePath, String extraFilePath, String homeCurrency)
       throws IOException {
     List<Transaction> transactions = readTransactions(inputFilePath);
+    long startTime = metrics.startTimer();
     ExtraInfoHandler extraInfoHandler = new ExtraInfoHandler(extraFilePath, homeCurrency);
     ExtraInfo missingInfo = extraInfoHandler.detectMissingInfo(transactions);
+    recordExtraInfoStage(startTime, extraInfoHandler);
     if (!missingInfo.isEmpty()) {
-      printMissingInfoRequirement(missingInfo, extraFilePath);
-      throw new IOException("Some information missing, can't generate the report");
+      MissingExtraInfoException exception = new MissingExtraInfoException(missingInfo);
+      printMissingInfoRequirement(exception, extraFilePath);
+      throw exception;
     }
     return generateReport(transactions, extraInfoHandler.getUserProvidedInfo());
   }
 
+  /**
+   * Same as createReport(), but processes the input file in a single pass: each CSV row is
+   * converted to a raw account change, grouped into a transaction, and the transaction is
+   * processed as soon as it is complete. No intermediate lists are stored, only the
+   * transactions which may still be affected by auto-invest subscription changes are held
+   * back.
+   *
+   * @param inputFilePath Path to the CVS input file (exported from Binance)
+   * @param extraFilePath Path to a CSV file where necessary extra information is stored
+   * @param homeCurrency  The home currency in which the report will be generated
+   * @return The generated report
+   * @throws IOException When something goes wrong with file reading or some extra info is missing
+   */
+  public Report createReportStreaming(String inputFilePath, String extraFilePath,
+                                      String homeCurrency) throws IOException {
+    return createReportFromCheckpoint(inputFilePath, extraFilePath, homeCurrency,
+        Checkpoint.empty());
+  }
+
+  /**
+   * Same as createReportStreaming(), but continues from a checkpoint: the rows of the input
+   * file up to the checkpoint are skipped, the processing starts with the wallet state stored
+   * in the checkpoint. The report contains only the wallet snapshots created after the
+   * checkpoint. A new checkpoint is created after the processing, see Report.getCheckpoint().
+   *
+   * @param inputFilePath Path to the CVS input file (exported from Binance)
+   * @param extraFilePath Path to a CSV file where necessary extra information is stored
+   * @param homeCurrency  The home currency in which the report will be generated
+   * @param checkpoint    The checkpoint to continue from
+   * @return The generated report
+   * @throws IOException When something goes wrong with file reading, some extra info is missing
+   *                     or the input file does not contain the transactions following the
+   *                     checkpoint
+   */
+  public Report createReportFromCheckpoint(String inputFilePath, String extraFilePath,
+                                           String homeCurrency, Checkpoint checkpoint)
+      throws IOException {
+    return createReportStreaming(inputFilePath, extraFilePath, homeCurrency, checkpoint, null);
+  }
+
+  /**
+   * Same as createReportStreaming(), but creates a bounded-memory report: each wallet snapshot
+   * is passed to the sinks as soon as it is created, only the last snapshot of each month is
+   * kept in memory. The sinks are closed at the end of the processing, also when it fails.
+   * No checkpoint is created.
+   *
+   * @param inputFilePath Path to the CVS input file (exported from Binance)
+   * @param extraFilePath Path to a CSV file where necessary extra information is stored
+   * @param homeCurrency  The home currency in which the report will be generated
+   * @param sinks         The sinks which will receive the wallet snapshots
+   * @return The generated report, which can't be iterated
+   * @throws MissingExtraInfoException When some extra info is missing
+   * @throws FileWriteException        When a sink fails to write the snapshots
+   * @throws IOException               When something goes wrong with file reading
+   */
+  public Report createReportStreaming(String inputFilePath, String extraFilePath,
+                                      String homeCurrency, List<SnapshotSink> sinks)
+      throws IOException {
+    return createReportStreaming(inputFilePath, extraFilePath, homeCurrency, Checkpoint.empty(),
+        sinks);
+  }
+
+  private Report createReportStreaming(String inputFilePath, String extraFilePath,
+                                       String homeCurrency, Checkpoint checkpoint,
+                                       List<SnapshotSink> sinks) throws IOException {
+    long startTime = metrics.startTimer();
+    ExtraInfoHandler extraInfoHandler = new ExtraInfoHandler(extraFilePath, homeCurrency);
+    recordExtraInfoStage(startTime, extraInfoHandler);
+    Report report = sinks != null
+        ? new Report(extraInfoHandler.getUserProvidedInfo(), sinks)
+        : new Report(extraInfoHandler.getUserProvidedInfo(), checkpoint);
+    configure(report);
+    ReportLogic logic = new ReportLogic(checkpoint);
+    startTime = metrics.startTimer();
+    try {
+      processStreaming(inputFilePath, checkpoint, extraInfoHandler, report, logic);
+    } catch (UncheckedIOException e) {
+      // Thrown by the snapshot sinks
+      throw new FileWriteException(e.getCause().getMessage(), e.getCause());
+    } finally {
+      if (sinks != null) {
+        closeSinks(report);
+      }
+      metrics.addStageTime(Stage.STREAM, startTime);
+    }
+
+    ExtraInfo missingInfo = extraInfoHandler.getMissingInfo();
+    if (!missingInfo.isEmpty()) {
+      MissingExtraInfoException exception = new MissingExtraInfoException(missingInfo);
+      printMissingInfoRequirement(exception, extraFilePath);
+      throw exception;
+    }
+    if (sinks == null) {
+      report.createCheckpoint(logic);
+    }
+    return report;
+  }
+
+  private static void closeSinks(Report report) throws FileWriteException {
+    try {
+      report.closeSinks();
+    } catch (IOException e) {
+      throw new FileWriteException(e.getMessage(), e);
+    }
+  }
+
+  private void processStreaming(String inputFilePath, Checkpoint checkpoint,
+                                ExtraInfoHandler extraInfoHandler, Report report,
+                                ReportLogic logic) throws IOException {
+    Consumer<Transaction> processor = rawTransaction -> {
+      Transaction transaction = logic.clarifyTransactionType(rawTransaction);
+      // When some info is missing, the rest of the file is only checked for missing info, so
+      // that the user gets the full list at once
+      if (extraInfoHandler.registerTransaction(transaction)
+          && !extraInfoHandler.isTransactionInfoMissing()) {
+        report.process(transaction);
+      }
+    };
+    long[] firstNewChangeTime = {Checkpoint.NO_TIMESTAMP};
+    long[] rowCount = {0};
+    TransactionFileReader.readAccountChanges(inputFilePath, change -> {
+      rowCount[0]++;
+      if (isCoveredByCheckpoint(change, checkpoint)) {
+        return;
+      }
+      if (firstNewChangeTime[0] == Checkpoint.NO_TIMESTAMP) {
+        firstNewChangeTime[0] = change.getUtcTime();
+      }
+      if (continuesCheckpoint(firstNewChangeTime[0], checkpoint)) {
+        logic.updateLendingAsset(change);
+        logic.groupTransactionsByTimestamp(change, processor);
+      }
+    });
+    metrics.addStageItems(Stage.STREAM, rowCount[0]);
+    if (!continuesCheckpoint(firstNewChangeTime[0], checkpoint)) {
+      throw new IOException("The input file does not contain the transactions following the "
+          + "checkpoint, expected a transaction at "
+          + TimeConverter.utcTimeToString(checkpoint.resumeTime()));
+    }
+    logic.flushTransactions(processor);
+  }
+
+  private static boolean isCoveredByCheckpoint(RawAccountChange change, Checkpoint checkpoint) {
+    return checkpoint.timestamp() != Checkpoint.NO_TIMESTAMP
+        && change.getUtcTime() <= checkpoint.timestamp();
+  }
+
+  /**
+   * Check whether the new input rows continue right after the checkpoint: the transactions
+   * which were not final at the checkpoint must be present in the input.
+   *
+   * @param firstNewChangeTime Timestamp of the first change after the checkpoint, or
+   *                           NO_TIMESTAMP when there are no new changes
+   * @param checkpoint         The checkpoint
+   * @return True when the input continues the checkpoint
+   */
+  private static boolean continuesCheckpoint(long firstNewChangeTime, Checkpoint checkpoint) {
+    return !checkpoint.hasPendingTransactions()
+        || firstNewChangeTime == checkpoint.resumeTime();
+  }
+
   private List<Transaction> readTransactions(String inputFilePath) throws IOException {
+    long startTime = metrics.startTimer();
     List<RawAccountChange> accountChanges = TransactionFileReader.readAccountChanges(inputFilePath);
+    metrics.addStageTime(Stage.READ, startTime);
+    metrics.addStageItems(Stage.READ, accountChanges.size());
+    startTime = metrics.startTimer();
     ReportLogic logic = new ReportLogic();
     logic.updateLendingAssets(accountChanges);
     List<Transaction> rawTransactions = logic.groupTransactionsByTimestamp(accountChanges);
-    return logic.clarifyTransactionTypes(rawTransactions);
+    metrics.addStageTime(Stage.GROUP, startTime);
+    metrics.addStageItems(Stage.GROUP, accountChanges.size());
+    startTime = metrics.startTimer();
+    List<Transaction> transactions = logic.clarifyTransactionTypes(rawTransactions);
+    metrics.addStageTime(Stage.CLARIFY, startTime);
+    metrics.addStageItems(Stage.CLARIFY, transactions.size());
+    return transactions;
   }
 
-  private static Report generateReport(List<Transaction> transactions, ExtraInfo extraUserInfo) {
+  private Report generateReport(List<Transaction> transactions, ExtraInfo extraUserInfo) {
+    long startTime = metrics.startTimer();
     Report report = new Report(extraUserInfo);
+    configure(report);
     for (Transaction transaction : transactions) {
       report.process(transaction);
     }
+    metrics.addStageTime(Stage.PROCESS, startTime);
+    metrics.addStageItems(Stage.PROCESS, transactions.size());
     return report;
   }
 
-  private static void printMissingInfoRequirement(ExtraInfo missingInfo, String extraFilePath) {
+  private void recordExtraInfoStage(long startTime, ExtraInfoHandler extraInfoHandler) {
+    metrics.addStageTime(Stage.EXTRAS, startTime);
+    metrics.addStageItems(Stage.EXTRAS,
+        extraInfoHandler.getUserProvidedInfo().getAllEntries().size());
+  }
+
+  private void configure(Report report) {
+    if (apiClient != null) {
+      report.setApiClient(apiClient);
+    }
+    report.setMetrics(metrics);
+  }
+
+  private static void printMissingInfoRequirement(MissingExtraInfoException exception,
+                                                  String extraFilePath) {
     logger.error("Provide the necessary information in the extra-info file `{}`:", extraFilePath);
     if (logger.isEnabled(Level.ERROR)) {
-      for (ExtraInfoEntry mi : missingInfo.getAllEntries()) {
-        logger.error("{},{},{},{},{}", mi.utcTimestamp(),
-            TimeConverter.utcTimeToString(mi.utcTimestamp()), mi.type(), mi.asset(), mi.value());
+      for (String line : exception.getRequiredLines()) {
+        logger.error("{}", line);
       }
     }
   }
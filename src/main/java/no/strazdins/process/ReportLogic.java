@@ -1,10 +1,14 @@
 package no.strazdins.process;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import no.strazdins.data.Operation;
 import no.strazdins.data.RawAccountChange;
 import no.strazdins.transaction.AutoInvestTransaction;
@@ -21,6 +25,39 @@ public class ReportLogic {
   private AutoInvestSubscription autoInvestSubscription;
   private final List<AutoInvestTransaction> autoInvestTransactions = new LinkedList<>();
   private final List<AutoInvestTransaction> previousAutoInvestTransactions = new LinkedList<>();
+  // Coins of the previous auto-invest round restored from a checkpoint, used while the
+  // transactions of that round are not available
+  private Set<String> restoredPreviousAutoInvestCoins = Set.of();
+  // Timestamp of the transaction containing the last auto-invest spending
+  private long lastSpendTime = Checkpoint.NO_TIMESTAMP;
+  // When true, the subscription for the next auto-invest spending is restored from a checkpoint
+  private boolean spendRestoredFromCheckpoint = false;
+
+  // The transaction currently being grouped - more changes with the same timestamp may follow
+  private Transaction currentTransaction;
+  // Complete transactions which may still get a different auto-invest subscription assigned
+  private final Deque<Transaction> heldTransactions = new ArrayDeque<>();
+
+  /**
+   * Create report logic for processing the transactions from the beginning.
+   */
+  public ReportLogic() {
+  }
+
+  /**
+   * Create report logic which continues from a checkpoint. The auto-invest subscription, which
+   * was active at the last auto-invest spending before the checkpoint, is restored. The
+   * transactions starting with that spending must be processed again: the first auto-invest
+   * spending gets the restored subscription.
+   *
+   * @param checkpoint The checkpoint to continue from
+   */
+  public ReportLogic(Checkpoint checkpoint) {
+    autoInvestSubscription = checkpoint.autoInvestSubscription();
+    restoredPreviousAutoInvestCoins = Set.copyOf(checkpoint.previousAutoInvestCoins());
+    lastSpendTime = checkpoint.resumeTime();
+    spendRestoredFromCheckpoint = autoInvestSubscription != null;
+  }
 
   /**
    * Check all the raw account changes, group those by timestamp, merge as transactions.
@@ -30,37 +67,88 @@ public class ReportLogic {
    * @return List of higher-level transactions, also ordered by timestamp
    */
   public List<Transaction> groupTransactionsByTimestamp(List<RawAccountChange> accountChanges) {
-    RawAccountChange lastChange = null;
-    Transaction transaction = null;
     List<Transaction> transactions = new ArrayList<>();
     for (RawAccountChange change : accountChanges) {
-      if (lastChange == null || lastChange.getUtcTime() != change.getUtcTime()) {
-        transaction = new Transaction(change.getUtcTime());
-        transactions.add(transaction);
-      }
-      if (AutoInvestTransaction.isAutoInvestOperation(change)) {
-        Transaction updatedTransaction = updateAutoInvest(change, transaction);
-        if (updatedTransaction != transaction) {
-          replaceLastTransactionWith(transactions, updatedTransaction);
-          transaction = updatedTransaction;
-        }
-      }
-      transaction.append(change);
-      lastChange = change;
+      groupTransactionsByTimestamp(change, transactions::add);
     }
+    flushTransactions(transactions::add);
     return transactions;
   }
 
+  /**
+   * Streaming version of the timestamp-grouping: add one raw account change to the transaction
+   * it belongs to. Transactions are passed to the consumer as soon as they are complete and
+   * no later change can affect them. Auto-invest transactions (and everything after them) are
+   * held back until the next auto-invest spending, because a change of the subscription is
+   * detected only then and is assigned retroactively. Call flushTransactions() after the last
+   * change.
+   *
+   * @param change   The next raw account change. Timestamps must be in increasing order
+   * @param consumer Receives the complete transactions, ordered by timestamp
+   */
+  public void groupTransactionsByTimestamp(RawAccountChange change,
+                                           Consumer<Transaction> consumer) {
+    if (currentTransaction == null || currentTransaction.getUtcTime() != change.getUtcTime()) {
+      holdCurrentTransaction();
+      currentTransaction = new Transaction(change.getUtcTime());
+    }
+    if (AutoInvestTransaction.isAutoInvestOperation(change)) {
+      currentTransaction = updateAutoInvest(change, currentTransaction);
+    }
+    currentTransaction.append(change);
+    releaseHeldTransactions(consumer);
+  }
+
+  /**
+   * Pass all the remaining transactions to the consumer. Must be called after the last change
+   * has been passed to groupTransactionsByTimestamp(change, consumer).
+   *
+   * @param consumer Receives the remaining transactions, ordered by timestamp
+   */
+  public void flushTransactions(Consumer<Transaction> consumer) {
+    holdCurrentTransaction();
+    while (!heldTransactions.isEmpty()) {
+      consumer.accept(heldTransactions.removeFirst());
+    }
+  }
+
+  private void holdCurrentTransaction() {
+    if (currentTransaction != null) {
+      heldTransactions.addLast(currentTransaction);
+      currentTransaction = null;
+    }
+  }
+
+  /**
+   * Release the held transactions which are older than all the cached auto-invest
+   * transactions - the subscription of those can't change anymore.
+   *
+   * @param consumer Receives the released transactions
+   */
+  private void releaseHeldTransactions(Consumer<Transaction> consumer) {
+    long firstCachedTime = getTimestampOfFirstCachedAutoInvestOrDefault(Long.MAX_VALUE);
+    while (!heldTransactions.isEmpty()
+        && heldTransactions.peekFirst().getUtcTime() < firstCachedTime) {
+      consumer.accept(heldTransactions.removeFirst());
+    }
+  }
+
   private Transaction updateAutoInvest(RawAccountChange change,
                                        Transaction transaction) {
     if (isAutoInvestSpendOperation(change)) {
-      if (isNewAutoInvestSubscription()) {
-        autoInvestSubscription = new AutoInvestSubscription(
-            getTimestampOfFirstCachedAutoInvestOrDefault(transaction.getUtcTime()),
-            change.getAmount().negate());
-        updateSubscriptionForCachedAutoInvestTransactions();
+      if (spendRestoredFromCheckpoint) {
+        // The subscription was detected before the checkpoint was saved
+        spendRestoredFromCheckpoint = false;
+      } else {
+        if (isNewAutoInvestSubscription()) {
+          autoInvestSubscription = new AutoInvestSubscription(
+              getTimestampOfFirstCachedAutoInvestOrDefault(transaction.getUtcTime()),
+              change.getAmount().negate());
+          updateSubscriptionForCachedAutoInvestTransactions();
+        }
+        rememberLastAutoInvestTransactions();
       }
-      rememberLastAutoInvestTransactions();
+      lastSpendTime = transaction.getUtcTime();
     } else if (!isAutoInvestAcquireOperation(change)) {
       throw new IllegalStateException("Auto-invest but neither invest, nor acquire: " + change);
     }
@@ -86,6 +174,7 @@ public class ReportLogic {
   private void rememberLastAutoInvestTransactions() {
     previousAutoInvestTransactions.clear();
     previousAutoInvestTransactions.addAll(autoInvestTransactions);
+    restoredPreviousAutoInvestCoins = Set.of();
     autoInvestTransactions.clear();
   }
 
@@ -105,12 +194,14 @@ public class ReportLogic {
     if (autoInvestSubscription == null) {
       return true;
     }
-    if (previousAutoInvestTransactions.isEmpty()) {
+    // The coins are found when needed: the previous transactions may have got more changes
+    // with the same timestamp after they were remembered
+    Set<String> previousCoins = getPreviousAutoInvestCoins();
+    if (previousCoins.isEmpty()) {
       return false;
     }
-    Set<String> prevCoins = getCoinsForComparison(previousAutoInvestTransactions);
     Set<String> currentCoins = getCoinsForComparison(autoInvestTransactions);
-    return !prevCoins.equals(currentCoins);
+    return !previousCoins.equals(currentCoins);
   }
 
   /**
@@ -134,6 +225,38 @@ public class ReportLogic {
     return coins;
   }
 
+  /**
+   * Get the time moment from which the transactions must be processed again when continuing
+   * from a checkpoint. The transactions starting with the last auto-invest spending may still
+   * get a different subscription assigned, therefore they are not final.
+   *
+   * @return Timestamp of the last auto-invest spending, or Checkpoint.NO_TIMESTAMP when all the
+   *     processed transactions are final
+   */
+  public long getResumeTime() {
+    return autoInvestSubscription != null ? lastSpendTime : Checkpoint.NO_TIMESTAMP;
+  }
+
+  /**
+   * Get the currently active auto-invest subscription.
+   *
+   * @return The subscription or null if no auto-invest transactions have been seen
+   */
+  public AutoInvestSubscription getAutoInvestSubscription() {
+    return autoInvestSubscription;
+  }
+
+  /**
+   * Get the coins of the previous auto-invest round, used for subscription change detection.
+   *
+   * @return The coins (and invested amounts) of the previous auto-invest round
+   */
+  public Set<String> getPreviousAutoInvestCoins() {
+    return previousAutoInvestTransactions.isEmpty()
+        ? restoredPreviousAutoInvestCoins
+        : Collections.unmodifiableSet(getCoinsForComparison(previousAutoInvestTransactions));
+  }
+
   private boolean isAutoInvestSpendOperation(RawAccountChange change) {
     return change.getOperation().equals(Operation.AUTO_INVEST)
         && "USDT".equals(change.getAsset())
@@ -146,12 +269,6 @@ public class ReportLogic {
         && change.getAmount().isPositive();
   }
 
-  private void replaceLastTransactionWith(List<Transaction> transactions,
-                                          Transaction newTransaction) {
-    transactions.remove(transactions.size() - 1);
-    transactions.add(newTransaction);
-  }
-
   /**
    * Go through a list of raw transactions, look at their atomic changes, decide the type of each
    * transaction: Deposit, Buy, Saving interest, etc.
@@ -162,18 +279,28 @@ public class ReportLogic {
   public List<Transaction> clarifyTransactionTypes(List<Transaction> rawTransactions) {
     List<Transaction> transactions = new LinkedList<>();
     for (Transaction rawTransaction : rawTransactions) {
-      Transaction transaction = rawTransaction.clarifyTransactionType();
-      if (transaction != null) {
-        transactions.add(transaction);
-      } else {
-        logger.error("Unknown transaction: {} {}", rawTransaction,
-            rawTransaction.getOperationMultiSet());
-        throw new IllegalStateException("Unknown transaction: " + rawTransaction);
-      }
+      transactions.add(clarifyTransactionType(rawTransaction));
     }
     return transactions;
   }
 
+  /**
+   * Look at the atomic changes of a raw transaction, decide its type.
+   *
+   * @param rawTransaction Raw transaction
+   * @return The same transaction, but with a specific type
+   * @throws IllegalStateException When the type of the transaction can't be detected
+   */
+  public Transaction clarifyTransactionType(Transaction rawTransaction) {
+    Transaction transaction = rawTransaction.clarifyTransactionType();
+    if (transaction == null) {
+      logger.error("Unknown transaction: {} {}", rawTransaction,
+          rawTransaction.getOperationMultiSet());
+      throw new IllegalStateException("Unknown transaction: " + rawTransaction);
+    }
+    return transaction;
+  }
+
   /**
    * Check all the assets, rename all the LDxxx assets to xxx
    * (example: LDUSDT -> USDT, LDBTC -> BTC).
@@ -182,10 +309,19 @@ public class ReportLogic {
    */
   public void updateLendingAssets(List<RawAccountChange> changes) {
     for (RawAccountChange change : changes) {
-      String asset = change.getAsset();
-      if (asset != null && asset.length() >= 3 && asset.startsWith("LD")) {
-        change.setAsset(asset.substring(2));
-      }
+      updateLendingAsset(change);
+    }
+  }
+
+  /**
+   * Rename the asset of the change if it is a LDxxx asset (example: LDUSDT -> USDT).
+   *
+   * @param change Raw account change to check and update in-place
+   */
+  public void updateLendingAsset(RawAccountChange change) {
+    String asset = change.getAsset();
+    if (asset != null && asset.length() >= 3 && asset.startsWith("LD")) {
+      change.setAsset(asset.substring(2));
     }
   }
 }
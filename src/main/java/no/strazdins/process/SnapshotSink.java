@@ -0,0 +1,26 @@
+package no.strazdins.process;
+
+import java.io.IOException;
+import no.strazdins.data.WalletSnapshot;
+
+/**
+ * Receives the wallet snapshots of a report as soon as they are created, in transaction order.
+ * Used for writing the output files while the transactions are processed, without keeping
+ * all the snapshots in memory.
+ */
+public interface SnapshotSink {
+  /**
+   * Handle the next wallet snapshot. The snapshot must not be modified.
+   *
+   * @param snapshot The snapshot created for the latest processed transaction
+   * @throws IOException When the snapshot can't be written
+   */
+  void accept(WalletSnapshot snapshot) throws IOException;
+
+  /**
+   * Finish the output, called after the last snapshot.
+   *
+   * @throws IOException When the output can't be finished
+   */
+  void close() throws IOException;
+}
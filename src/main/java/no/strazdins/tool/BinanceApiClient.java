@@ -1,60 +1,200 @@
 package no.strazdins.tool;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import no.strazdins.data.Decimal;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Handles Binance REST API.
+ * Handles Binance REST API. The daily candles are fetched in bulk (up to 1000 days in one
+ * request) and stored in a price cache, therefore prices for several year-ends of the same asset
+ * usually need a single request. The requests are limited by a rate limiter which follows the
+ * request weight reported by Binance. The REST client (and the JSON library) is created on the
+ * first price cache miss, runs which find all the prices in the cache don't load it. Thread-safe.
  */
 public class BinanceApiClient {
   private static final Logger logger = LogManager.getLogger(BinanceApiClient.class);
   private static final String API_BASE_URL = "https://api.binance.com/api/v3";
-  private static final long DELAY_AFTER_REQUEST_MS = 500;
+  // Binance allows 6000 per minute, stay well below it
+  private static final int DEFAULT_WEIGHT_PER_MINUTE = 1200;
+  private static final int KLINES_REQUEST_WEIGHT = 2;
+  private static final String USED_WEIGHT_HEADER = "X-MBX-USED-WEIGHT-1M";
   private static final String DEFAULT_QUOTE_CURR = "USDC";
+  private static final int MAX_CANDLES_PER_REQUEST = 1000;
+  private static final int CANDLE_FIELD_COUNT = 12;
+  private static final int OPEN_TIME_INDEX = 0;
+  private static final int CLOSE_PRICE_INDEX = 4;
+  private static final int CLOSE_TIME_INDEX = 6;
 
-  private final RestApiClient client = new RestApiClient(API_BASE_URL);
+  /**
+   * Path to the file where the fetched prices are cached across runs. When not set, the prices
+   * are cached in memory only.
+   */
+  public static final String PRICE_CACHE_PROPERTY = "pnl.priceCache";
+
+  private final String apiBaseUrl;
+  private final RateLimiter rateLimiter;
+  private final PriceCache priceCache;
+  // Created on the first request, see getClient()
+  private volatile RestApiClient client;
+  private volatile RunMetrics metrics = RunMetrics.disabled();
 
-  private final Gson gson = new Gson();
+  /**
+   * Create a client for the Binance API, with the price cache specified by the
+   * pnl.priceCache system property.
+   */
+  public BinanceApiClient() {
+    this(API_BASE_URL, new RateLimiter(DEFAULT_WEIGHT_PER_MINUTE), createDefaultPriceCache());
+  }
+
+  /**
+   * Create a client for a Binance-compatible API.
+   *
+   * @param apiBaseUrl  The base URL of the API
+   * @param rateLimiter The limiter for request weight, to avoid a rate-limit ban
+   * @param priceCache  The cache for the daily close prices
+   */
+  public BinanceApiClient(String apiBaseUrl, RateLimiter rateLimiter, PriceCache priceCache) {
+    this.apiBaseUrl = apiBaseUrl;
+    this.rateLimiter = rateLimiter;
+    this.priceCache = priceCache;
+  }
+
+  /**
+   * Set the metrics where the API calls and the price cache hits are counted.
+   *
+   * @param metrics The metrics of the run which uses this client
+   */
+  public void setMetrics(RunMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  private RestApiClient getClient() {
+    RestApiClient restClient = client;
+    if (restClient == null) {
+      synchronized (this) {
+        restClient = client;
+        if (restClient == null) {
+          restClient = new RestApiClient(apiBaseUrl);
+          client = restClient;
+        }
+      }
+    }
+    return restClient;
+  }
+
+  private static PriceCache createDefaultPriceCache() {
+    String cacheFilePath = System.getProperty(PRICE_CACHE_PROPERTY);
+    if (cacheFilePath != null) {
+      try {
+        return new PriceCache(cacheFilePath);
+      } catch (IOException e) {
+        logger.error("Could not load the price cache, using an empty one: {}", e.getMessage());
+      }
+    }
+    return new PriceCache();
+  }
 
   /**
-   * Get daily close price for a given asset, in the USDT market.
+   * Get daily close price for a given asset, in the USDC market.
    *
    * @param asset     The asset of interest
    * @param timestamp Timestamp of interest. Must be somewhere "inside the requested day"
-   * @return The daily close price of the requested price candle, or null if not found
+   * @return The daily close price of the requested price candle, zero if not found
    */
   public Decimal getDailyClosePrice(String asset, long timestamp) {
-    String requestUrl = "/klines?symbol=" + (asset + DEFAULT_QUOTE_CURR)
-        + "&limit=1&interval=1d&startTime=" + TimeConverter.getDayStart(timestamp);
-    List<List<Object>> rawResponse = client.get(requestUrl,
-        new TypeToken<List<List<Object>>>() {
-        }.getType());
-    sleepToAvoidRateLimitBan();
-    return getClosePriceFromSingleCandleArray(rawResponse);
+    String symbol = asset + DEFAULT_QUOTE_CURR;
+    long dayStart = TimeConverter.getDayStart(timestamp);
+    Decimal price = priceCache.get(symbol, dayStart);
+    if (price == null) {
+      metrics.increment(RunMetrics.PRICE_CACHE_MISSES);
+      price = fetchDailyClosePrices(symbol, dayStart);
+    } else {
+      metrics.increment(RunMetrics.PRICE_CACHE_HITS);
+    }
+    return price;
   }
 
-  private void sleepToAvoidRateLimitBan() {
+  /**
+   * Fetch daily candles starting at the given day, store the closed ones in the cache.
+   *
+   * @param symbol   The market symbol
+   * @param dayStart Start of the first day of interest
+   * @return Close price of the first day, zero if it was not found in the response
+   */
+  private Decimal fetchDailyClosePrices(String symbol, long dayStart) {
+    String requestUrl = "/klines?symbol=" + symbol + "&limit=" + MAX_CANDLES_PER_REQUEST
+        + "&interval=1d&startTime=" + dayStart;
     try {
-      Thread.sleep(DELAY_AFTER_REQUEST_MS);
+      rateLimiter.acquire(KLINES_REQUEST_WEIGHT);
     } catch (InterruptedException e) {
-      logger.error("Interrupted while sleeping between REST API calls");
+      logger.error("Interrupted while waiting for the API rate limit");
       Thread.currentThread().interrupt();
+      return Decimal.ZERO;
+    }
+    metrics.increment(RunMetrics.API_CALLS);
+    List<List<Object>> rawResponse = getClient().get(requestUrl,
+        new TypeToken<List<List<Object>>>() {
+        }.getType(), this::updateUsedWeight);
+
+    Decimal requestedPrice = null;
+    Map<Long, Decimal> closedCandlePrices = new HashMap<>();
+    if (isValidCandleArray(rawResponse)) {
+      long now = System.currentTimeMillis();
+      for (List<Object> candle : rawResponse) {
+        long openTime = getLong(candle.get(OPEN_TIME_INDEX));
+        Decimal closePrice = new Decimal((String) candle.get(CLOSE_PRICE_INDEX));
+        if (openTime == dayStart) {
+          requestedPrice = closePrice;
+        }
+        // The close price of the current day may still change
+        if (getLong(candle.get(CLOSE_TIME_INDEX)) < now) {
+          closedCandlePrices.put(openTime, closePrice);
+        }
+      }
+      priceCache.putAll(symbol, closedCandlePrices);
     }
-  }
 
-  private Decimal getClosePriceFromSingleCandleArray(List<List<Object>> rawResponse) {
-    if (rawResponse == null || rawResponse.size() != 1 || rawResponse.get(0).size() != 12
-        || !(rawResponse.get(0).get(4) instanceof String)) {
-      String json = gson.toJson(rawResponse);
-      logger.error("Unexpected response received from daily candle REST API: {}", json);
+    if (requestedPrice == null) {
+      logger.error("Unexpected response received from daily candle REST API: {}", rawResponse);
       logger.error("Assuming the coin price was zero (that is the best guess we can make)");
       logger.error("If you know a better price, specify it manually in the extra info file");
-      return Decimal.ZERO;
+      requestedPrice = Decimal.ZERO;
+    }
+    return requestedPrice;
+  }
+
+  private void updateUsedWeight(Map<String, List<String>> responseHeaders) {
+    List<String> usedWeight = responseHeaders.get(USED_WEIGHT_HEADER);
+    if (usedWeight != null && !usedWeight.isEmpty()) {
+      try {
+        rateLimiter.updateUsedWeight(Integer.parseInt(usedWeight.get(0).trim()));
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid {} header: {}", USED_WEIGHT_HEADER, usedWeight.get(0));
+      }
+    }
+  }
+
+  private static boolean isValidCandleArray(List<List<Object>> rawResponse) {
+    if (rawResponse == null || rawResponse.isEmpty()) {
+      return false;
+    }
+    for (List<Object> candle : rawResponse) {
+      if (candle == null || candle.size() != CANDLE_FIELD_COUNT
+          || !(candle.get(OPEN_TIME_INDEX) instanceof Number)
+          || !(candle.get(CLOSE_PRICE_INDEX) instanceof String)
+          || !(candle.get(CLOSE_TIME_INDEX) instanceof Number)) {
+        return false;
+      }
     }
-    return new Decimal((String) rawResponse.get(0).get(4));
+    return true;
+  }
+
+  private static long getLong(Object jsonNumber) {
+    return ((Number) jsonNumber).longValue();
   }
 }
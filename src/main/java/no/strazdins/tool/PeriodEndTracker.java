@@ -0,0 +1,55 @@
+package no.strazdins.tool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import no.strazdins.data.WalletSnapshot;
+
+/**
+ * Keeps the last wallet snapshot of each period, while the snapshots are added in chronological
+ * order. Only the bounds of the current period are checked for each snapshot, the calendar is
+ * consulted when a period boundary is crossed.
+ */
+public class PeriodEndTracker {
+  private final ReportPeriod period;
+  private final List<WalletSnapshot> periodEndSnapshots = new ArrayList<>();
+  // The period of the last kept snapshot is [periodStart, nextPeriodStart)
+  private long periodStart = Long.MAX_VALUE;
+  private long nextPeriodStart = Long.MIN_VALUE;
+
+  /**
+   * Create a tracker without any snapshots.
+   *
+   * @param period The period length
+   */
+  public PeriodEndTracker(ReportPeriod period) {
+    this.period = period;
+  }
+
+  /**
+   * Add the next snapshot. It replaces the previous snapshot when both are in the same period.
+   *
+   * @param snapshot The snapshot, not older than the previously added snapshot
+   */
+  public void add(WalletSnapshot snapshot) {
+    long timestamp = snapshot.getTimestamp();
+    if (timestamp >= periodStart && timestamp < nextPeriodStart) {
+      periodEndSnapshots.set(periodEndSnapshots.size() - 1, snapshot);
+    } else {
+      int index = period.getIndex(timestamp);
+      periodStart = period.getStartTimestamp(index);
+      nextPeriodStart = period.getStartTimestamp(index + 1);
+      periodEndSnapshots.add(snapshot);
+    }
+  }
+
+  /**
+   * Get the last snapshot of each period seen so far. The snapshot of the current period is
+   * replaced when more snapshots are added.
+   *
+   * @return The period-end snapshots, ordered chronologically, not modifiable
+   */
+  public List<WalletSnapshot> getSnapshots() {
+    return Collections.unmodifiableList(periodEndSnapshots);
+  }
+}
@@ -0,0 +1,114 @@
+package no.strazdins.tool;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import no.strazdins.data.Decimal;
+import no.strazdins.file.CsvFileParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Daily close prices of market symbols (such as BTCUSDC), keyed by the symbol and the day.
+ * The prices can be stored in a CSV file, then they survive across runs: new prices are appended
+ * to the file as soon as they are added to the cache. All methods are thread-safe.
+ */
+public class PriceCache {
+  private static final Logger logger = LogManager.getLogger(PriceCache.class);
+
+  private final Path filePath;
+  private final Map<String, Map<Long, Decimal>> prices = new HashMap<>();
+
+  /**
+   * Create a cache which is kept in memory only.
+   */
+  public PriceCache() {
+    this.filePath = null;
+  }
+
+  /**
+   * Create a cache stored in a CSV file. Loads the prices from the file, if it exists.
+   *
+   * @param filePath Path to the cache file
+   * @throws IOException When the existing file can't be read or has an invalid format
+   */
+  public PriceCache(String filePath) throws IOException {
+    this.filePath = Path.of(filePath);
+    if (Files.exists(this.filePath)) {
+      load();
+    }
+  }
+
+  private void load() throws IOException {
+    CsvFileParser parser = new CsvFileParser(filePath.toString());
+    try (parser) {
+      while (parser.hasMoreRows()) {
+        String[] row = parser.readNextRow();
+        if (row.length != 4) {
+          throw new IOException("Invalid price cache row: " + String.join(",", row));
+        }
+        try {
+          getSymbolPrices(row[0]).put(Long.parseLong(row[1]), new Decimal(row[3]));
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid price cache row: " + String.join(",", row));
+        }
+      }
+    }
+    logger.info("Loaded cached prices for {} symbols from {}", prices.size(), filePath);
+  }
+
+  private Map<Long, Decimal> getSymbolPrices(String symbol) {
+    return prices.computeIfAbsent(symbol, s -> new HashMap<>());
+  }
+
+  /**
+   * Get a cached daily close price.
+   *
+   * @param symbol   The market symbol, for example, BTCUSDC
+   * @param dayStart Timestamp of the start of the day (00:00:00 UTC), including milliseconds
+   * @return The close price of the day, or null if it is not in the cache
+   */
+  public synchronized Decimal get(String symbol, long dayStart) {
+    Map<Long, Decimal> symbolPrices = prices.get(symbol);
+    return symbolPrices != null ? symbolPrices.get(dayStart) : null;
+  }
+
+  /**
+   * Add daily close prices to the cache, store the new ones in the cache file.
+   *
+   * @param symbol      The market symbol, for example, BTCUSDC
+   * @param closePrices Close prices, keyed by the timestamp of the start of the day
+   */
+  public synchronized void putAll(String symbol, Map<Long, Decimal> closePrices) {
+    Map<Long, Decimal> symbolPrices = getSymbolPrices(symbol);
+    Map<Long, Decimal> newPrices = new TreeMap<>();
+    for (Map.Entry<Long, Decimal> entry : closePrices.entrySet()) {
+      if (symbolPrices.put(entry.getKey(), entry.getValue()) == null) {
+        newPrices.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (filePath != null && !newPrices.isEmpty()) {
+      append(symbol, newPrices);
+    }
+  }
+
+  private void append(String symbol, Map<Long, Decimal> newPrices) {
+    try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      for (Map.Entry<Long, Decimal> entry : newPrices.entrySet()) {
+        writer.write(symbol + "," + entry.getKey() + ","
+            + TimeConverter.utcTimeToDateString(entry.getKey()) + ","
+            + entry.getValue().getNiceString());
+        writer.newLine();
+      }
+    } catch (IOException e) {
+      logger.error("Could not write prices to the cache file {}: {}", filePath, e.getMessage());
+    }
+  }
+}
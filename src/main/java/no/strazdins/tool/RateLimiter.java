@@ -0,0 +1,64 @@
+package no.strazdins.tool;
+
+/**
+ * A token-bucket rate limiter for request weights (as used by Binance API). The bucket is
+ * refilled continuously, up to the full capacity per minute. The request weight reported by the
+ * server can be used to correct the number of available tokens. Thread-safe.
+ */
+public class RateLimiter {
+  private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+  private final int weightPerMinute;
+  private double availableWeight;
+  private long lastRefillTime;
+
+  /**
+   * Create a rate limiter, with a full bucket.
+   *
+   * @param weightPerMinute The maximum request weight allowed per minute
+   */
+  public RateLimiter(int weightPerMinute) {
+    if (weightPerMinute <= 0) {
+      throw new IllegalArgumentException("Weight per minute must be positive: " + weightPerMinute);
+    }
+    this.weightPerMinute = weightPerMinute;
+    this.availableWeight = weightPerMinute;
+    this.lastRefillTime = System.nanoTime();
+  }
+
+  /**
+   * Wait until the given request weight is available, take it from the bucket.
+   *
+   * @param weight The weight of the request
+   * @throws InterruptedException When interrupted while waiting
+   */
+  public synchronized void acquire(int weight) throws InterruptedException {
+    refill();
+    while (availableWeight < weight) {
+      double missingWeight = weight - availableWeight;
+      long waitMs = (long) Math.ceil(missingWeight * NANOS_PER_MINUTE / weightPerMinute
+          / 1_000_000);
+      wait(Math.max(1, waitMs));
+      refill();
+    }
+    availableWeight -= weight;
+  }
+
+  /**
+   * Correct the available weight according to the weight the server reports as used in the
+   * current minute (for Binance - the X-MBX-USED-WEIGHT-1M header).
+   *
+   * @param usedWeight The used weight, reported by the server
+   */
+  public synchronized void updateUsedWeight(int usedWeight) {
+    refill();
+    availableWeight = Math.min(availableWeight, weightPerMinute - usedWeight);
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    double refilledWeight = (double) (now - lastRefillTime) * weightPerMinute / NANOS_PER_MINUTE;
+    availableWeight = Math.min(weightPerMinute, availableWeight + refilledWeight);
+    lastRefillTime = now;
+  }
+}
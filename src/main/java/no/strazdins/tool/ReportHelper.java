@@ -1,8 +1,7 @@
 package no.strazdins.tool;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
 import no.strazdins.data.WalletSnapshot;
 
 /**
@@ -18,21 +17,28 @@ public class ReportHelper {
   /**
    * Go through the list of provided snapshots, leave only the "last snapshot each year".
    *
-   * @param snapshots Wallet snapshots which will be filtered
+   * @param snapshots Wallet snapshots which will be filtered, ordered chronologically
    * @return List of snapshots, only the last snapshot each year is kept
    */
   public static List<WalletSnapshot> filterYearEndSnapshots(List<WalletSnapshot> snapshots) {
-    List<WalletSnapshot> yearEndSnapshots = new LinkedList<>();
-    ListIterator<WalletSnapshot> reverseIterator = snapshots.listIterator(snapshots.size());
-    int yearOfNextSnapshot = -1;
-    while (reverseIterator.hasPrevious()) {
-      WalletSnapshot snapshot = reverseIterator.previous();
-      int snapshotYear = snapshot.getYear();
-      if (snapshotYear != yearOfNextSnapshot) {
-        yearEndSnapshots.add(0, snapshot);
-      }
-      yearOfNextSnapshot = snapshotYear;
+    return filterPeriodEndSnapshots(snapshots, ReportPeriod.YEAR);
+  }
+
+  /**
+   * Go through the list of provided snapshots, leave only the last snapshot of each period.
+   * The last snapshots of shorter periods can be filtered further, for example, the quarter-end
+   * snapshots from the month-end snapshots.
+   *
+   * @param snapshots Wallet snapshots which will be filtered, ordered chronologically
+   * @param period    The period length
+   * @return List of snapshots, only the last snapshot of each period is kept
+   */
+  public static List<WalletSnapshot> filterPeriodEndSnapshots(List<WalletSnapshot> snapshots,
+                                                              ReportPeriod period) {
+    PeriodEndTracker tracker = new PeriodEndTracker(period);
+    for (WalletSnapshot snapshot : snapshots) {
+      tracker.add(snapshot);
     }
-    return yearEndSnapshots;
+    return new ArrayList<>(tracker.getSnapshots());
   }
 }
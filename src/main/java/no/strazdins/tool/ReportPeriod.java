@@ -0,0 +1,53 @@
+package no.strazdins.tool;
+
+/**
+ * The granularity of the periodic PNL reports: calendar months, quarters or years, in the UTC
+ * timezone. Each period is identified by its index - the number of whole periods since the
+ * start of the year 0, hence consecutive periods have consecutive indices.
+ */
+public enum ReportPeriod {
+  MONTH(1),
+  QUARTER(3),
+  YEAR(12);
+
+  private static final int MONTHS_PER_YEAR = 12;
+  private static final long MS_PER_SECOND = 1000;
+
+  private final int monthCount;
+
+  ReportPeriod(int monthCount) {
+    this.monthCount = monthCount;
+  }
+
+  /**
+   * Get the index of the period containing the given time moment.
+   *
+   * @param utcTime The timestamp to consider, including milliseconds
+   * @return The index of the period
+   */
+  public int getIndex(long utcTime) {
+    return Math.floorDiv(TimeConverter.getUtcMonthIndex(utcTime), monthCount);
+  }
+
+  /**
+   * Get the start of a period.
+   *
+   * @param index The index of the period
+   * @return Timestamp of 00:00:00 on the first day of the period, including milliseconds
+   */
+  public long getStartTimestamp(int index) {
+    int monthIndex = index * monthCount;
+    return TimeConverter.getMonthStartTimestamp(Math.floorDiv(monthIndex, MONTHS_PER_YEAR),
+        Math.floorMod(monthIndex, MONTHS_PER_YEAR) + 1);
+  }
+
+  /**
+   * Get the end of a period, the moment at which the wallet is valuated in the reports.
+   *
+   * @param index The index of the period
+   * @return Timestamp of 23:59:59 on the last day of the period, including milliseconds
+   */
+  public long getEndTimestamp(int index) {
+    return getStartTimestamp(index + 1) - MS_PER_SECOND;
+  }
+}
@@ -9,6 +9,10 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -40,7 +44,22 @@ public class RestApiClient {
    * @return The response JSON will be parsed to an object of type T. Null returned on error
    */
   public <T> T get(String apiPath, Type responseClass) {
-    String responseJson = fetch("GET", apiPath);
+    return get(apiPath, responseClass, null);
+  }
+
+  /**
+   * Send an HTTP GET to a REST API endpoint, pass the response headers to the given consumer.
+   *
+   * @param apiPath        The relative API path (API BASE URL will be prepended)
+   * @param responseClass  The response will be parsed to an object of the given class
+   * @param headerConsumer Will receive the response headers (header names are case-insensitive),
+   *                       when a response is received. Can be null
+   * @param <T>            Generic return type
+   * @return The response JSON will be parsed to an object of type T. Null returned on error
+   */
+  public <T> T get(String apiPath, Type responseClass,
+                   Consumer<Map<String, List<String>>> headerConsumer) {
+    String responseJson = fetch("GET", apiPath, headerConsumer);
     if (responseJson == null) {
       return null;
     }
@@ -48,16 +67,31 @@ public class RestApiClient {
     return gson.fromJson(responseJson, responseClass);
   }
 
-  private String fetch(String method, String apiPath) {
+  private String fetch(String method, String apiPath,
+                       Consumer<Map<String, List<String>>> headerConsumer) {
     HttpURLConnection connection = establishConnection(method, apiPath);
     String response = null;
     if (connection != null) {
       response = readResponseBody(connection);
+      if (headerConsumer != null) {
+        headerConsumer.accept(getResponseHeaders(connection));
+      }
     }
 
     return response;
   }
 
+  private static Map<String, List<String>> getResponseHeaders(HttpURLConnection connection) {
+    Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+      // The status line is stored with a null key
+      if (header.getKey() != null) {
+        headers.put(header.getKey(), header.getValue());
+      }
+    }
+    return headers;
+  }
+
   private HttpURLConnection establishConnection(String method, String apiPath) {
     final String apiUrl = apiBaseUrl + apiPath;
     logger.info("HTTP {} {}", method, apiUrl);
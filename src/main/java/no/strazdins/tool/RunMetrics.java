@@ -0,0 +1,300 @@
+package no.strazdins.tool;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects performance metrics of one report run: wall time and throughput of each stage of the
+ * pipeline, the number of transactions of each type, Binance API calls, price cache hits and
+ * the written output files. The metrics are written as a JSON summary at the end of the run.
+ * The JSON is formatted here, without a JSON library, to keep the startup of the tool short.
+ *
+ * <p>Each stage is timed on the thread which runs it, at coarse boundaries: the caller takes
+ * startTimer() before the stage and calls addStageTime() after it, the items are counted
+ * separately. The durations are accumulated, a stage may be timed several times. The stages
+ * may overlap: the missing prices (PRICES) are fetched while the files are written (WRITE).
+ * All the methods are thread-safe.</p>
+ *
+ * <p>The metrics of a run are collected by its own instance, therefore concurrent runs don't
+ * mix their metrics. The disabled() instance ignores all the updates.</p>
+ */
+public class RunMetrics {
+  /**
+   * The stages of the report pipeline.
+   */
+  public enum Stage {
+    /** Reading and parsing the input files, counted in rows. */
+    READ,
+    /** Grouping the raw account changes into transactions, counted in rows. */
+    GROUP,
+    /** Detecting the transaction types, counted in transactions. */
+    CLARIFY,
+    /**
+     * Reading the extra info file and, outside the streaming modes, finding the missing extra
+     * info, counted in the entries of the extra info file.
+     */
+    EXTRAS,
+    /** Processing the transactions - calculating the wallet snapshots and PNL. */
+    PROCESS,
+    /**
+     * Reading, grouping, detecting and processing the transactions in a single pass (the
+     * streaming modes), counted in rows. In the bounded-memory mode, writing the logs is
+     * included.
+     */
+    STREAM,
+    /** Fetching the missing asset prices from Binance API, counted in prices. */
+    PRICES,
+    /** Writing the report files, counted in bytes. */
+    WRITE
+  }
+
+  public static final String API_CALLS = "apiCalls";
+  public static final String PRICE_CACHE_HITS = "priceCacheHits";
+  public static final String PRICE_CACHE_MISSES = "priceCacheMisses";
+
+  private static final RunMetrics DISABLED = new RunMetrics(false);
+
+  private final boolean enabled;
+  private final long runStartTime;
+  private final long runStartNanos;
+
+  private final LongAdder[] stageNanos = createAdders();
+  private final LongAdder[] stageItems = createAdders();
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> transactionCounts = new ConcurrentHashMap<>();
+  private final Map<String, Long> writtenFiles =
+      Collections.synchronizedMap(new LinkedHashMap<>());
+
+  /**
+   * Start collecting the metrics of a run, the run time is measured from now.
+   */
+  public RunMetrics() {
+    this(true);
+  }
+
+  private RunMetrics(boolean enabled) {
+    this.enabled = enabled;
+    this.runStartTime = System.currentTimeMillis();
+    this.runStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Get the instance which does not collect any metrics.
+   *
+   * @return The disabled metrics, shared by all the runs which don't collect metrics
+   */
+  public static RunMetrics disabled() {
+    return DISABLED;
+  }
+
+  private static LongAdder[] createAdders() {
+    LongAdder[] adders = new LongAdder[Stage.values().length];
+    for (int i = 0; i < adders.length; ++i) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  /**
+   * Check whether the metrics are being collected.
+   *
+   * @return True when the metrics are collected
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get the start time of a stage, pass it to addStageTime() when the stage is finished.
+   *
+   * @return The current time, in nanoseconds
+   */
+  public long startTimer() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Add the time since startTime to the total time of a stage.
+   *
+   * @param stage     The stage
+   * @param startTime The start time of the stage, as returned by startTimer()
+   */
+  public void addStageTime(Stage stage, long startTime) {
+    if (enabled) {
+      stageNanos[stage.ordinal()].add(System.nanoTime() - startTime);
+    }
+  }
+
+  /**
+   * Register the items (rows, transactions, prices) handled in a stage.
+   *
+   * @param stage The stage
+   * @param count The number of items
+   */
+  public void addStageItems(Stage stage, long count) {
+    if (enabled) {
+      stageItems[stage.ordinal()].add(count);
+    }
+  }
+
+  /**
+   * Increment a counter.
+   *
+   * @param counter Name of the counter, for example, API_CALLS
+   */
+  public void increment(String counter) {
+    if (enabled) {
+      counters.computeIfAbsent(counter, c -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Count a processed transaction.
+   *
+   * @param transactionType The type of the transaction (the name of its class)
+   */
+  public void countTransaction(String transactionType) {
+    if (enabled) {
+      transactionCounts.computeIfAbsent(transactionType, t -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Register a written output file. The size is counted as the items of the WRITE stage.
+   *
+   * @param filePath Path to the file
+   * @param bytes    The size of the file, in bytes
+   */
+  public void addWrittenFile(String filePath, long bytes) {
+    if (enabled) {
+      writtenFiles.merge(filePath, bytes, Long::sum);
+      addStageItems(Stage.WRITE, bytes);
+    }
+  }
+
+  /**
+   * Write the summary of the collected metrics to a JSON file.
+   *
+   * @param filePath Path to the JSON file
+   * @throws IOException When writing the file fails
+   */
+  public void writeSummary(String filePath) throws IOException {
+    StringBuilder json = new StringBuilder();
+    appendJson(json, createSummary(), "");
+    try (Writer writer = Files.newBufferedWriter(Path.of(filePath), StandardCharsets.UTF_8)) {
+      writer.write(json.toString());
+    }
+  }
+
+  /**
+   * Append a value of the summary as pretty-printed JSON.
+   *
+   * @param json   The JSON text where the value is appended
+   * @param value  The value: a map with string keys, a number or a string
+   * @param indent The indentation of the line where the value starts
+   */
+  private static void appendJson(StringBuilder json, Object value, String indent) {
+    if (value instanceof Map<?, ?> map) {
+      if (map.isEmpty()) {
+        json.append("{}");
+        return;
+      }
+      String innerIndent = indent + "  ";
+      json.append("{\n");
+      Iterator<? extends Map.Entry<?, ?>> entries = map.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<?, ?> entry = entries.next();
+        json.append(innerIndent);
+        appendJsonString(json, String.valueOf(entry.getKey()));
+        json.append(": ");
+        appendJson(json, entry.getValue(), innerIndent);
+        json.append(entries.hasNext() ? ",\n" : "\n");
+      }
+      json.append(indent).append('}');
+    } else if (value instanceof Number) {
+      json.append(value);
+    } else {
+      appendJsonString(json, String.valueOf(value));
+    }
+  }
+
+  private static void appendJsonString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < ' ') {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * Create the summary of the collected metrics. Only the stages which were timed or counted
+   * are included.
+   *
+   * @return The summary, as nested maps
+   */
+  public Map<String, Object> createSummary() {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("startTime", TimeConverter.utcTimeToString(runStartTime));
+    summary.put("totalSeconds", toSeconds(System.nanoTime() - runStartNanos));
+
+    Map<String, Object> stages = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      long nanos = stageNanos[stage.ordinal()].sum();
+      long items = stageItems[stage.ordinal()].sum();
+      if (nanos > 0 || items > 0) {
+        double seconds = toSeconds(nanos);
+        Map<String, Object> stageSummary = new LinkedHashMap<>();
+        stageSummary.put("seconds", seconds);
+        stageSummary.put("items", items);
+        stageSummary.put("itemsPerSecond", seconds > 0 ? Math.round(items / seconds) : 0);
+        stages.put(stage.name().toLowerCase(), stageSummary);
+      }
+    }
+    summary.put("stages", stages);
+
+    summary.put("transactions", toSortedMap(transactionCounts));
+    summary.put("counters", toSortedMap(counters));
+
+    Map<String, Object> files = new LinkedHashMap<>();
+    long totalBytes = 0;
+    synchronized (writtenFiles) {
+      for (Map.Entry<String, Long> entry : writtenFiles.entrySet()) {
+        files.put(entry.getKey(), Map.of("bytes", entry.getValue()));
+        totalBytes += entry.getValue();
+      }
+    }
+    summary.put("files", files);
+    summary.put("bytesWritten", totalBytes);
+    return summary;
+  }
+
+  private static Map<String, Long> toSortedMap(Map<String, LongAdder> adders) {
+    Map<String, Long> result = new TreeMap<>();
+    for (Map.Entry<String, LongAdder> entry : adders.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().sum());
+    }
+    return result;
+  }
+
+  private static double toSeconds(long nanos) {
+    return Math.round(nanos / 1000.0) / 1_000_000.0;
+  }
+}
@@ -4,24 +4,42 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.TimeZone;
 
 /**
  * Utility class for conversion between different date and time formats.
+ * All methods are thread-safe. Timestamps in the standard "yyyy-MM-dd HH:mm:ss" layout are
+ * parsed and formatted arithmetically, other strings are handled by SimpleDateFormat, giving
+ * the same results.
  */
 public class TimeConverter {
-  private static final SimpleDateFormat timestampFormat
-      = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-  private static final SimpleDateFormat dateFormat
-      = new SimpleDateFormat("yyyy-MM-dd");
+  private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+  private static final String DATE_PATTERN = "yyyy-MM-dd";
+  private static final int TIMESTAMP_LENGTH = TIMESTAMP_PATTERN.length();
+  private static final long MS_PER_SECOND = 1000;
+  private static final long MS_PER_DAY = 24 * 60 * 60 * MS_PER_SECOND;
+  // The arithmetic conversion is used only for the Gregorian calendar and four-digit years
+  private static final int MIN_FAST_YEAR = 1600;
+  private static final int MAX_FAST_YEAR = 9999;
 
-  // Need this to ensure that all time strings are parsed correctly in the UTC timezone
-  static {
-    timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+  private static final ThreadLocal<SimpleDateFormat> timestampFormat
+      = ThreadLocal.withInitial(() -> createUtcFormat(TIMESTAMP_PATTERN));
+  private static final ThreadLocal<SimpleDateFormat> dateFormat
+      = ThreadLocal.withInitial(() -> createUtcFormat(DATE_PATTERN));
+
+  // The date of the last formatted timestamp - consecutive timestamps are usually on the same day
+  private static volatile FormattedDay lastFormattedDay = new FormattedDay(Long.MIN_VALUE, null);
+
+  /**
+   * A day and its date formatted as yyyy-MM-dd.
+   *
+   * @param day  Number of days since the epoch
+   * @param date The formatted date
+   */
+  private record FormattedDay(long day, String date) {
   }
 
   /**
@@ -30,6 +48,13 @@ public class TimeConverter {
   private TimeConverter() {
   }
 
+  private static SimpleDateFormat createUtcFormat(String pattern) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    // Need this to ensure that all time strings are parsed correctly in the UTC timezone
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format;
+  }
+
   /**
    * Convert a timestamp string in the format "yyyy-MM-dd hh:mm:ss" (such as "2022-12-20 20:48:22")
    * to a unix timestamp in UTC timezone, with milliseconds.
@@ -39,14 +64,140 @@ public class TimeConverter {
    * @throws IllegalArgumentException When the time string format is incorrect
    */
   public static long stringToUtcTimestamp(String timeString) throws IllegalArgumentException {
+    long timestamp = parseStandardTimestamp(timeString);
+    if (timestamp != Long.MIN_VALUE) {
+      return timestamp;
+    }
     try {
-      Date parsedDate = timestampFormat.parse(timeString);
+      Date parsedDate = timestampFormat.get().parse(timeString);
       return parsedDate.getTime();
     } catch (ParseException e) {
       throw new IllegalArgumentException("Invalid time string: " + timeString);
     }
   }
 
+  /**
+   * Parse a timestamp with exactly the layout yyyy-MM-dd HH:mm:ss and valid field values.
+   *
+   * @param s The timestamp string
+   * @return Unix timestamp, with milliseconds, or Long.MIN_VALUE if the string does not have
+   *     the standard layout
+   */
+  private static long parseStandardTimestamp(String s) {
+    if (s == null || s.length() != TIMESTAMP_LENGTH
+        || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != ' '
+        || s.charAt(13) != ':' || s.charAt(16) != ':') {
+      return Long.MIN_VALUE;
+    }
+    int year = parseDigits(s, 0, 4);
+    int month = parseDigits(s, 5, 2);
+    int day = parseDigits(s, 8, 2);
+    int hour = parseDigits(s, 11, 2);
+    int minute = parseDigits(s, 14, 2);
+    int second = parseDigits(s, 17, 2);
+    if (year < MIN_FAST_YEAR || month < 1 || month > 12 || day < 1
+        || day > getDaysInMonth(year, month) || hour < 0 || hour > 23
+        || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return Long.MIN_VALUE;
+    }
+    return toEpochMillis(year, month, day, hour, minute, second);
+  }
+
+  /**
+   * Parse a fixed number of decimal digits.
+   *
+   * @return The parsed number, or -1 if some of the characters is not a digit
+   */
+  private static int parseDigits(String s, int offset, int count) {
+    int value = 0;
+    for (int i = offset; i < offset + count; ++i) {
+      int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+  }
+
+  private static int getDaysInMonth(int year, int month) {
+    return switch (month) {
+      case 2 -> isLeapYear(year) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  private static long toEpochMillis(int year, int month, int day, int hour, int minute,
+                                    int second) {
+    long seconds = ((long) hour * 60 + minute) * 60 + second;
+    return daysFromCivil(year, month, day) * MS_PER_DAY + seconds * MS_PER_SECOND;
+  }
+
+  /**
+   * Get the number of days since 1970-01-01 for a date in the (proleptic) Gregorian calendar.
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    int yearOfEra = (int) (y - era * 400);
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Format a day (number of days since 1970-01-01) as yyyy-MM-dd.
+   *
+   * @return The formatted date, or null if the year is outside the supported range
+   */
+  private static String formatDay(long epochDay) {
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR) {
+      return null;
+    }
+    char[] chars = new char[DATE_PATTERN.length()];
+    writeDigits(chars, 0, (int) year, 4);
+    chars[4] = '-';
+    writeDigits(chars, 5, month, 2);
+    chars[7] = '-';
+    writeDigits(chars, 8, day, 2);
+    return new String(chars);
+  }
+
+  private static void writeDigits(char[] chars, int offset, int value, int count) {
+    for (int i = offset + count - 1; i >= offset; --i) {
+      chars[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  /**
+   * Get the formatted date of the given day, reuse the last one when it is the same day.
+   *
+   * @return The formatted date, or null if the year is outside the supported range
+   */
+  private static String getFormattedDay(long epochDay) {
+    FormattedDay formattedDay = lastFormattedDay;
+    if (formattedDay.day() != epochDay) {
+      formattedDay = new FormattedDay(epochDay, formatDay(epochDay));
+      lastFormattedDay = formattedDay;
+    }
+    return formattedDay.date();
+  }
+
   /**
    * Format a UTC timestamp as a string in the format YYYY-MM-dd HH:mm:ss.
    *
@@ -54,7 +205,21 @@ public class TimeConverter {
    * @return Formatted string
    */
   public static String utcTimeToString(long utcTimestamp) {
-    return timestampFormat.format(new Date(utcTimestamp));
+    long epochDay = Math.floorDiv(utcTimestamp, MS_PER_DAY);
+    String date = getFormattedDay(epochDay);
+    if (date == null) {
+      return timestampFormat.get().format(new Date(utcTimestamp));
+    }
+    int secondOfDay = (int) (Math.floorMod(utcTimestamp, MS_PER_DAY) / MS_PER_SECOND);
+    char[] chars = new char[TIMESTAMP_LENGTH];
+    date.getChars(0, date.length(), chars, 0);
+    chars[10] = ' ';
+    writeDigits(chars, 11, secondOfDay / 3600, 2);
+    chars[13] = ':';
+    writeDigits(chars, 14, secondOfDay / 60 % 60, 2);
+    chars[16] = ':';
+    writeDigits(chars, 17, secondOfDay % 60, 2);
+    return new String(chars);
   }
 
   /**
@@ -64,7 +229,8 @@ public class TimeConverter {
    * @return Formatted string
    */
   public static String utcTimeToDateString(long utcTimestamp) {
-    return dateFormat.format(new Date(utcTimestamp));
+    String date = getFormattedDay(Math.floorDiv(utcTimestamp, MS_PER_DAY));
+    return date != null ? date : dateFormat.get().format(new Date(utcTimestamp));
   }
 
   /**
@@ -116,8 +282,36 @@ public class TimeConverter {
    * @return Timestamp of the last second of the year, including milliseconds
    */
   public static long getYearEndTimestamp(int year) {
-    String yearEnd = year + "-12-31 23:59:59";
-    return TimeConverter.stringToUtcTimestamp(yearEnd);
+    if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR) {
+      return TimeConverter.stringToUtcTimestamp(year + "-12-31 23:59:59");
+    }
+    return toEpochMillis(year, 12, 31, 23, 59, 59);
+  }
+
+  /**
+   * Get the month of a timestamp as a single number: year * 12 + month - 1, where month is 1-12.
+   *
+   * @param utcTime The timestamp to consider, including milliseconds
+   * @return The number of months since January of the year 0
+   */
+  public static int getUtcMonthIndex(long utcTime) {
+    ZonedDateTime time = Instant.ofEpochMilli(utcTime).atZone(ZoneOffset.UTC);
+    return time.getYear() * 12 + time.getMonthValue() - 1;
+  }
+
+  /**
+   * Get timestamp of the start of a month.
+   *
+   * @param year  The year to consider
+   * @param month The month, 1-12
+   * @return Timestamp of 00:00:00 on the first day of the month, including milliseconds
+   */
+  public static long getMonthStartTimestamp(int year, int month) {
+    if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR) {
+      return TimeConverter.stringToUtcTimestamp(
+          String.format("%d-%02d-01 00:00:00", year, month));
+    }
+    return toEpochMillis(year, month, 1, 0, 0, 0);
   }
 
   /**
@@ -126,13 +320,7 @@ public class TimeConverter {
    * @param utcTime The timestamp to consider, must fit somewhere within the given day
    * @return Timestamp of 00:00:00 of the given day
    */
-
   public static long getDayStart(long utcTime) {
-    // Code from ChatGPT Mar 23 version.
-    Instant instant = Instant.ofEpochMilli(utcTime);
-    LocalDateTime localDateTime = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
-    LocalDateTime startOfDay = localDateTime.withHour(0).withMinute(0).withSecond(0).withNano(0);
-    Instant startOfDayInstant = startOfDay.toInstant(ZoneOffset.UTC);
-    return startOfDayInstant.toEpochMilli();
+    return Math.floorDiv(utcTime, MS_PER_DAY) * MS_PER_DAY;
   }
 }
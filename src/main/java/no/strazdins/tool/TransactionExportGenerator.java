@@ -0,0 +1,649 @@
+package no.strazdins.tool;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import no.strazdins.data.ExtraInfoType;
+import no.strazdins.data.Operation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Generates synthetic Binance transaction exports for scale and load testing. The same seed,
+ * row count and operation mix always give exactly the same files.
+ *
+ * <p>The generator keeps track of the simulated wallet: nothing is sold, withdrawn or
+ * subscribed to savings without being in the wallet first. All the extra information necessary
+ * for the report (deposit and withdrawal prices, auto-invest proportions, year-end prices and
+ * USD/HC exchange rates, with HOME_CURRENCY as the home currency) is written to a separate
+ * extra info file, therefore the generated export can be processed without any Binance API
+ * calls.</p>
+ *
+ * <p>The share of the generated transactions is configured for each operation type, see
+ * setWeight(). When an operation is not possible at the moment (for example, there is nothing
+ * to sell), a USDT deposit is generated instead. The operations are mapped to transactions
+ * as follows:</p>
+ * <ul>
+ *   <li>BUY, SELL - a market trade with USDT, 1-3 fills, fee in USDT</li>
+ *   <li>FEE - a market trade where the fee is paid in BNB</li>
+ *   <li>SAVINGS_DISTRIBUTION - a savings subscription in the legacy format</li>
+ *   <li>EARN_SUBSCRIPTION, EARN_REDEMPTION, EARN_INTEREST - Simple Earn operations with the
+ *   LD-prefixed Earn assets</li>
+ *   <li>BUY_CRYPTO - a card purchase in EUR</li>
+ *   <li>AUTO_INVEST - one auto-invest round of a BTC/ETH subscription</li>
+ *   <li>CONVERT - a USDT to coin conversion. The weight is zero by default because
+ *   conversions are not supported by the report logic yet.</li>
+ * </ul>
+ */
+public class TransactionExportGenerator {
+  public static final String HOME_CURRENCY = "NOK";
+  public static final long DEFAULT_START_TIME = 1609459200000L; // 2021-01-01 00:00:00
+  private static final Logger logger = LogManager.getLogger(TransactionExportGenerator.class);
+  private static final String HEADER = "User_ID,UTC_Time,Account,Operation,Coin,Change,Remark";
+  private static final String USER_ID = "12345678";
+  private static final String SPOT = "Spot";
+  private static final String EARN = "Earn";
+  private static final long SECOND_MS = 1000;
+  // The time span of the generated export, unless there are so many transactions that it
+  // must be longer
+  private static final long TIME_SPAN_MS = 3L * 365 * 24 * 3600 * SECOND_MS;
+  // Average number of rows per transaction for the default mix, used to choose the time step
+  private static final double AVG_ROWS_PER_TRANSACTION = 3.2;
+  private static final long MIN_MEAN_STEP_MS = 4 * SECOND_MS;
+  private static final int SCALE = 8;
+  private static final String[] COINS = {"BTC", "ETH", "BNB", "DOGE"};
+  private static final String[] EARN_ASSETS = {"USDT", "BNB"};
+  private static final String[] DUST_COINS = {"DOGE", "ETH"};
+  private static final String FIAT = "EUR";
+  private static final String[] AUTO_INVEST_COINS = {"BTC", "ETH"};
+  private static final BigDecimal AUTO_INVEST_AMOUNT = new BigDecimal("20");
+  private static final BigDecimal TRADE_FEE = new BigDecimal("0.001");
+  private static final BigDecimal BNB_TRADE_FEE = new BigDecimal("0.00075");
+  private static final BigDecimal SMALLEST_AMOUNT = BigDecimal.ONE.movePointLeft(SCALE);
+
+  private final Random random;
+  private final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+  private final Map<String, BigDecimal> initialPrices = new HashMap<>();
+  private final Map<String, BigDecimal> prices = new HashMap<>();
+  private final Map<String, BigDecimal> spotBalances = new HashMap<>();
+  private final Map<String, BigDecimal> earnBalances = new HashMap<>();
+  private final StringBuilder row = new StringBuilder();
+  private long startTime = DEFAULT_START_TIME;
+
+  private BufferedWriter transactionWriter;
+  private BufferedWriter extraInfoWriter;
+  private long time;
+  private long meanStepMs;
+  private int year;
+  private long rowsWritten;
+  private boolean autoInvestStarted;
+
+  /**
+   * Create a generator with the default operation mix.
+   *
+   * @param seed The seed for the random generator
+   */
+  public TransactionExportGenerator(long seed) {
+    random = new Random(seed);
+    setDefaultWeights();
+  }
+
+  private void setDefaultWeights() {
+    weights.put(Operation.BUY, 30);
+    weights.put(Operation.SELL, 20);
+    weights.put(Operation.FEE, 5);
+    weights.put(Operation.DEPOSIT, 6);
+    weights.put(Operation.WITHDRAW, 2);
+    weights.put(Operation.DISTRIBUTION, 2);
+    weights.put(Operation.SAVINGS_DISTRIBUTION, 1);
+    weights.put(Operation.BNB_VAULT_REWARDS, 2);
+    weights.put(Operation.BUY_CRYPTO, 2);
+    weights.put(Operation.CASHBACK_VOUCHER, 1);
+    weights.put(Operation.COMMISSION_REBATE, 2);
+    weights.put(Operation.FIAT_DEPOSIT, 1);
+    weights.put(Operation.EARN_SUBSCRIPTION, 4);
+    weights.put(Operation.EARN_REDEMPTION, 3);
+    weights.put(Operation.EARN_INTEREST, 10);
+    weights.put(Operation.SMALL_ASSETS_EXCHANGE_BNB, 1);
+    weights.put(Operation.AUTO_INVEST, 8);
+    weights.put(Operation.CONVERT, 0);
+  }
+
+  /**
+   * Set the relative weight of an operation type in the generated transaction mix.
+   *
+   * @param operation The operation type
+   * @param weight    The weight, zero disables the operation
+   * @throws IllegalArgumentException When the weight is negative
+   */
+  public void setWeight(Operation operation, int weight) throws IllegalArgumentException {
+    if (weight < 0) {
+      throw new IllegalArgumentException("Negative weight for " + operation + ": " + weight);
+    }
+    weights.put(operation, weight);
+  }
+
+  /**
+   * Set the weights of several operation types.
+   *
+   * @param mix Comma-separated list of operation weights, for example "BUY=10,SELL=5"
+   * @throws IllegalArgumentException When the mix has an invalid format
+   */
+  public void setWeights(String mix) throws IllegalArgumentException {
+    for (String item : mix.split(",")) {
+      String[] parts = item.split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid operation weight: " + item);
+      }
+      setWeight(Operation.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+  }
+
+  /**
+   * Set the time of the first generated transaction.
+   *
+   * @param startTime UTC timestamp of the first transaction, including milliseconds
+   */
+  public void setStartTime(long startTime) {
+    this.startTime = startTime;
+  }
+
+  /**
+   * Generate a transaction export and the extra information necessary for it.
+   *
+   * @param transactionFilePath Path to the CSV file where the transactions will be written
+   * @param extraInfoFilePath   Path to the CSV file where the extra info will be written
+   * @param rowCount            The number of transaction rows to generate. A few more rows may
+   *                            be generated to complete the last transaction.
+   * @return The number of generated transaction rows (not including the header)
+   * @throws IOException              When writing the files fails
+   * @throws IllegalArgumentException When all the operation weights are zero
+   */
+  public long generate(String transactionFilePath, String extraInfoFilePath, long rowCount)
+      throws IOException, IllegalArgumentException {
+    List<Operation> operations = new ArrayList<>();
+    List<Integer> cumulativeWeights = new ArrayList<>();
+    int totalWeight = 0;
+    for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+      if (entry.getValue() > 0) {
+        totalWeight += entry.getValue();
+        operations.add(entry.getKey());
+        cumulativeWeights.add(totalWeight);
+      }
+    }
+    if (totalWeight == 0) {
+      throw new IllegalArgumentException("At least one operation must have a positive weight");
+    }
+
+    initState(rowCount);
+    try (BufferedWriter tw = Files.newBufferedWriter(Path.of(transactionFilePath),
+        StandardCharsets.UTF_8);
+         BufferedWriter ew = Files.newBufferedWriter(Path.of(extraInfoFilePath),
+             StandardCharsets.UTF_8)) {
+      transactionWriter = tw;
+      extraInfoWriter = ew;
+      transactionWriter.write(HEADER);
+      transactionWriter.newLine();
+      while (rowsWritten < rowCount) {
+        int r = random.nextInt(totalWeight);
+        int i = 0;
+        while (cumulativeWeights.get(i) <= r) {
+          i++;
+        }
+        advanceTime();
+        updatePrices();
+        generateTransaction(operations.get(i));
+      }
+      writeYearEndInfo(year);
+    } finally {
+      transactionWriter = null;
+      extraInfoWriter = null;
+    }
+    logger.info("Generated {} transaction rows in {}", rowsWritten, transactionFilePath);
+    return rowsWritten;
+  }
+
+  private void initState(long rowCount) {
+    initialPrices.put("BTC", new BigDecimal("30000"));
+    initialPrices.put("ETH", new BigDecimal("2000"));
+    initialPrices.put("BNB", new BigDecimal("300"));
+    initialPrices.put("DOGE", new BigDecimal("0.1"));
+    initialPrices.put(FIAT, new BigDecimal("1.1"));
+    prices.clear();
+    prices.putAll(initialPrices);
+    spotBalances.clear();
+    earnBalances.clear();
+    time = startTime;
+    year = TimeConverter.getUtcYear(startTime);
+    double transactionCount = Math.max(1, rowCount / AVG_ROWS_PER_TRANSACTION);
+    meanStepMs = Math.max(MIN_MEAN_STEP_MS,
+        (long) (TIME_SPAN_MS / transactionCount) / SECOND_MS * SECOND_MS);
+    rowsWritten = 0;
+    autoInvestStarted = false;
+  }
+
+  /**
+   * Move the time forward to the next unused second. The year-end moments are skipped, the
+   * extra info stored there belongs to the year-end report.
+   */
+  private void advanceTime() throws IOException {
+    long maxSteps = 2 * meanStepMs / SECOND_MS - 1;
+    time += (1 + (long) (random.nextDouble() * maxSteps)) * SECOND_MS;
+    skipYearEnd();
+  }
+
+  private void skipYearEnd() throws IOException {
+    if (time == TimeConverter.getYearEndTimestamp(TimeConverter.getUtcYear(time))) {
+      time += SECOND_MS;
+    }
+    int currentYear = TimeConverter.getUtcYear(time);
+    while (year < currentYear) {
+      writeYearEndInfo(year);
+      year++;
+    }
+  }
+
+  private void updatePrices() {
+    for (Map.Entry<String, BigDecimal> entry : prices.entrySet()) {
+      BigDecimal initial = initialPrices.get(entry.getKey());
+      double change = 1 + (random.nextDouble() - 0.5) / 100;
+      BigDecimal price = entry.getValue().multiply(BigDecimal.valueOf(change));
+      // Keep the price within reasonable bounds
+      if (price.compareTo(initial.multiply(BigDecimal.valueOf(5))) > 0
+          || price.compareTo(initial.divide(BigDecimal.valueOf(5), SCALE, RoundingMode.DOWN))
+          < 0) {
+        price = entry.getValue();
+      }
+      entry.setValue(price.setScale(SCALE, RoundingMode.HALF_UP));
+    }
+  }
+
+  private void generateTransaction(Operation operation) throws IOException {
+    boolean generated = switch (operation) {
+      case BUY -> generateBuy(false);
+      case SELL -> generateSell(false);
+      case FEE -> random.nextBoolean() ? generateBuy(true) : generateSell(true);
+      case DEPOSIT -> generateDeposit();
+      case WITHDRAW -> generateWithdrawal();
+      case DISTRIBUTION -> generateFreeCoins("Distribution", pick(COINS), "10");
+      case SAVINGS_DISTRIBUTION -> generateSavingsSubscription(true);
+      case BNB_VAULT_REWARDS -> generateFreeCoins("BNB Vault Rewards", "BNB", "0.01");
+      case BUY_CRYPTO -> generateCardPurchase();
+      case CASHBACK_VOUCHER -> generateFreeCoins("Cashback Voucher", "BNB", "0.05");
+      case COMMISSION_REBATE -> generateFreeCoins("Commission Rebate", "USDT", "0.5");
+      case FIAT_DEPOSIT -> generateFiatDeposit();
+      case EARN_SUBSCRIPTION -> generateSavingsSubscription(false);
+      case EARN_REDEMPTION -> generateSavingsRedemption();
+      case EARN_INTEREST -> generateSavingsInterest();
+      case SMALL_ASSETS_EXCHANGE_BNB -> generateDustCollection();
+      case AUTO_INVEST -> generateAutoInvest();
+      case CONVERT -> generateConversion();
+    };
+    if (!generated) {
+      generateUsdtDeposit();
+    }
+  }
+
+  private boolean generateBuy(boolean bnbFee) throws IOException {
+    String coin = pick(COINS);
+    BigDecimal spend = randomAmount(10, 200, 2);
+    BigDecimal price = prices.get(coin);
+    BigDecimal feeRate = TRADE_FEE;
+    String feeAsset = "USDT";
+    if (bnbFee && !coin.equals("BNB")) {
+      feeRate = BNB_TRADE_FEE.divide(prices.get("BNB"), SCALE + 4, RoundingMode.HALF_UP);
+      feeAsset = "BNB";
+    }
+    int fillCount = 1 + random.nextInt(3);
+    BigDecimal[] fillSpends = split(spend, fillCount);
+    BigDecimal[] fillAmounts = new BigDecimal[fillCount];
+    BigDecimal[] fillFees = new BigDecimal[fillCount];
+    BigDecimal totalFee = BigDecimal.ZERO;
+    for (int i = 0; i < fillCount; ++i) {
+      fillAmounts[i] = fillSpends[i].divide(price, SCALE, RoundingMode.DOWN);
+      fillFees[i] = fillSpends[i].multiply(feeRate).setScale(SCALE, RoundingMode.HALF_UP)
+          .max(SMALLEST_AMOUNT);
+      totalFee = totalFee.add(fillFees[i]);
+      if (fillAmounts[i].signum() <= 0) {
+        return false;
+      }
+    }
+    boolean usdtFee = feeAsset.equals("USDT");
+    BigDecimal neededUsdt = usdtFee ? spend.add(totalFee) : spend;
+    if (getSpotBalance("USDT").compareTo(neededUsdt) < 0
+        || (!usdtFee && getSpotBalance(feeAsset).compareTo(totalFee) < 0)) {
+      return false;
+    }
+    for (int i = 0; i < fillCount; ++i) {
+      writeSpotRow("Transaction Buy", coin, fillAmounts[i]);
+      writeSpotRow("Transaction Spend", "USDT", fillSpends[i].negate());
+      writeSpotRow("Transaction Fee", feeAsset, fillFees[i].negate());
+    }
+    return true;
+  }
+
+  private boolean generateSell(boolean bnbFee) throws IOException {
+    String coin = pick(COINS);
+    BigDecimal balance = getSpotBalance(coin);
+    BigDecimal amount = balance.multiply(BigDecimal.valueOf(0.1 + random.nextDouble() * 0.9))
+        .setScale(SCALE, RoundingMode.DOWN);
+    BigDecimal price = prices.get(coin);
+    if (amount.multiply(price).compareTo(BigDecimal.ONE) < 0) {
+      return false;
+    }
+    String feeAsset = bnbFee && !coin.equals("BNB") ? "BNB" : "USDT";
+    int fillCount = 1 + random.nextInt(3);
+    BigDecimal[] fillAmounts = split(amount, fillCount);
+    BigDecimal[] fillRevenues = new BigDecimal[fillCount];
+    BigDecimal[] fillFees = new BigDecimal[fillCount];
+    BigDecimal totalFee = BigDecimal.ZERO;
+    for (int i = 0; i < fillCount; ++i) {
+      fillRevenues[i] = fillAmounts[i].multiply(price).setScale(SCALE, RoundingMode.DOWN);
+      if (feeAsset.equals("USDT")) {
+        fillFees[i] = fillRevenues[i].multiply(TRADE_FEE).setScale(SCALE, RoundingMode.HALF_UP);
+      } else {
+        fillFees[i] = fillRevenues[i].multiply(BNB_TRADE_FEE)
+            .divide(prices.get("BNB"), SCALE, RoundingMode.HALF_UP);
+      }
+      fillFees[i] = fillFees[i].max(SMALLEST_AMOUNT);
+      totalFee = totalFee.add(fillFees[i]);
+      if (fillAmounts[i].signum() <= 0 || fillRevenues[i].signum() <= 0) {
+        return false;
+      }
+    }
+    if (feeAsset.equals("BNB") && getSpotBalance("BNB").compareTo(totalFee) < 0) {
+      return false;
+    }
+    for (int i = 0; i < fillCount; ++i) {
+      writeSpotRow("Transaction Sold", coin, fillAmounts[i].negate());
+      writeSpotRow("Transaction Revenue", "USDT", fillRevenues[i]);
+      writeSpotRow("Transaction Fee", feeAsset, fillFees[i].negate());
+    }
+    return true;
+  }
+
+  private boolean generateDeposit() throws IOException {
+    if (random.nextInt(10) < 7) {
+      generateUsdtDeposit();
+    } else {
+      String coin = pick(COINS);
+      BigDecimal value = randomAmount(100, 2000, 2);
+      BigDecimal price = prices.get(coin);
+      writeAssetPrice(time, coin, price);
+      writeSpotRow("Deposit", coin, value.divide(price, SCALE, RoundingMode.DOWN));
+    }
+    return true;
+  }
+
+  private void generateUsdtDeposit() throws IOException {
+    writeSpotRow("Deposit", "USDT", randomAmount(100, 2000, 2));
+  }
+
+  private boolean generateWithdrawal() throws IOException {
+    String asset = random.nextBoolean() ? "USDT" : pick(COINS);
+    BigDecimal amount = getSpotBalance(asset).multiply(BigDecimal.valueOf(random.nextDouble() / 2))
+        .setScale(SCALE, RoundingMode.DOWN);
+    if (amount.signum() <= 0) {
+      return false;
+    }
+    if (!asset.equals("USDT")) {
+      writeAssetPrice(time, asset, prices.get(asset));
+    }
+    writeSpotRow("Withdraw", asset, amount.negate());
+    return true;
+  }
+
+  private boolean generateFreeCoins(String operation, String asset, String maxValueUsd)
+      throws IOException {
+    BigDecimal value = new BigDecimal(maxValueUsd)
+        .multiply(BigDecimal.valueOf(0.01 + random.nextDouble()));
+    BigDecimal amount = asset.equals("USDT") ? value.setScale(SCALE, RoundingMode.DOWN)
+        : value.divide(prices.get(asset), SCALE, RoundingMode.DOWN);
+    if (amount.signum() <= 0) {
+      return false;
+    }
+    writeSpotRow(operation, asset, amount);
+    return true;
+  }
+
+  private boolean generateCardPurchase() throws IOException {
+    String coin = pick(COINS);
+    BigDecimal fiatAmount = randomAmount(20, 500, 2);
+    BigDecimal coinAmount = fiatAmount.multiply(prices.get(FIAT))
+        .divide(prices.get(coin), SCALE, RoundingMode.DOWN);
+    if (coinAmount.signum() <= 0) {
+      return false;
+    }
+    writeAssetPrice(time, FIAT, prices.get(FIAT));
+    writeSpotRow("Buy Crypto", FIAT, fiatAmount);
+    writeSpotRow("Buy Crypto", FIAT, fiatAmount.negate());
+    writeSpotRow("Buy Crypto", coin, coinAmount);
+    return true;
+  }
+
+  private boolean generateFiatDeposit() throws IOException {
+    writeAssetPrice(time, FIAT, prices.get(FIAT));
+    writeSpotRow("Fiat Deposit", FIAT, randomAmount(50, 1000, 2));
+    return true;
+  }
+
+  private boolean generateSavingsSubscription(boolean legacyFormat) throws IOException {
+    String asset = pick(EARN_ASSETS);
+    BigDecimal amount = getSpotBalance(asset)
+        .multiply(BigDecimal.valueOf(0.1 + random.nextDouble() * 0.5))
+        .setScale(SCALE, RoundingMode.DOWN);
+    if (amount.signum() <= 0) {
+      return false;
+    }
+    writeSpotRow("Simple Earn Flexible Subscription", asset, amount.negate());
+    String operation = legacyFormat ? "Savings Distribution" : "Simple Earn Flexible Subscription";
+    writeEarnRow(operation, asset, amount);
+    return true;
+  }
+
+  private boolean generateSavingsRedemption() throws IOException {
+    String asset = pick(EARN_ASSETS);
+    BigDecimal amount = getEarnBalance(asset)
+        .multiply(BigDecimal.valueOf(0.1 + random.nextDouble() * 0.9))
+        .setScale(SCALE, RoundingMode.DOWN);
+    if (amount.signum() <= 0) {
+      return false;
+    }
+    writeEarnRow("Simple Earn Flexible Redemption", asset, amount.negate());
+    writeSpotRow("Simple Earn Flexible Redemption", asset, amount);
+    return true;
+  }
+
+  private boolean generateSavingsInterest() throws IOException {
+    String asset = pick(EARN_ASSETS);
+    BigDecimal interest = getEarnBalance(asset).multiply(new BigDecimal("0.0001"))
+        .setScale(SCALE, RoundingMode.DOWN);
+    if (interest.signum() <= 0) {
+      return false;
+    }
+    writeEarnRow("Simple Earn Flexible Interest", asset, interest);
+    return true;
+  }
+
+  private boolean generateDustCollection() throws IOException {
+    List<String> dustCoins = new ArrayList<>();
+    for (String coin : DUST_COINS) {
+      if (getSpotBalance(coin).signum() > 0 && (dustCoins.isEmpty() || random.nextBoolean())) {
+        dustCoins.add(coin);
+      }
+    }
+    if (dustCoins.isEmpty()) {
+      return false;
+    }
+    for (String coin : dustCoins) {
+      BigDecimal dustValue = BigDecimal.valueOf(0.01 + random.nextDouble() * 5);
+      BigDecimal amount = dustValue.divide(prices.get(coin), SCALE, RoundingMode.DOWN)
+          .min(getSpotBalance(coin));
+      BigDecimal bnbAmount = amount.multiply(prices.get(coin))
+          .divide(prices.get("BNB"), SCALE, RoundingMode.DOWN).max(SMALLEST_AMOUNT);
+      writeSpotRow("Small Assets Exchange BNB", coin, amount.negate());
+      writeSpotRow("Small Assets Exchange BNB", "BNB", bnbAmount);
+    }
+    return true;
+  }
+
+  /**
+   * Generate one auto-invest round: the USDT spending, followed by the acquisition of each coin
+   * of the subscription, each one second later.
+   */
+  private boolean generateAutoInvest() throws IOException {
+    if (getSpotBalance("USDT").compareTo(AUTO_INVEST_AMOUNT) < 0) {
+      return false;
+    }
+    if (!autoInvestStarted) {
+      String proportion = BigDecimal.ONE.divide(BigDecimal.valueOf(AUTO_INVEST_COINS.length),
+          SCALE, RoundingMode.DOWN).stripTrailingZeros().toPlainString();
+      writeExtraInfo(time, ExtraInfoType.AUTO_INVEST_PROPORTIONS,
+          String.join("|", AUTO_INVEST_COINS),
+          String.join("|", Collections.nCopies(AUTO_INVEST_COINS.length, proportion)));
+      autoInvestStarted = true;
+    }
+    writeSpotRow("Auto-Invest Transaction", "USDT", AUTO_INVEST_AMOUNT.negate());
+    BigDecimal coinSpend = AUTO_INVEST_AMOUNT.divide(
+        BigDecimal.valueOf(AUTO_INVEST_COINS.length), SCALE, RoundingMode.DOWN);
+    for (String coin : AUTO_INVEST_COINS) {
+      time += SECOND_MS;
+      skipYearEnd();
+      writeSpotRow("Auto-Invest Transaction", coin,
+          coinSpend.divide(prices.get(coin), SCALE, RoundingMode.DOWN));
+    }
+    return true;
+  }
+
+  private boolean generateConversion() throws IOException {
+    String coin = pick(COINS);
+    BigDecimal spend = randomAmount(10, 100, 2);
+    if (getSpotBalance("USDT").compareTo(spend) < 0) {
+      return false;
+    }
+    writeSpotRow("Binance Convert", "USDT", spend.negate());
+    writeSpotRow("Binance Convert", coin, spend.divide(prices.get(coin), SCALE,
+        RoundingMode.DOWN));
+    return true;
+  }
+
+  /**
+   * Write the year-end extra info: the USD/HC exchange rate and the prices of all the assets
+   * which may be in the wallet. The exchange rate must be the first entry at that timestamp.
+   */
+  private void writeYearEndInfo(int endingYear) throws IOException {
+    long yearEnd = TimeConverter.getYearEndTimestamp(endingYear);
+    writeExtraInfo(yearEnd, ExtraInfoType.ASSET_PRICE, HOME_CURRENCY, "0.1");
+    for (String coin : COINS) {
+      writeAssetPrice(yearEnd, coin, prices.get(coin));
+    }
+    writeAssetPrice(yearEnd, FIAT, prices.get(FIAT));
+  }
+
+  private void writeAssetPrice(long timestamp, String asset, BigDecimal price)
+      throws IOException {
+    writeExtraInfo(timestamp, ExtraInfoType.ASSET_PRICE, asset, toPlainString(price));
+  }
+
+  private void writeExtraInfo(long timestamp, ExtraInfoType type, String asset, String value)
+      throws IOException {
+    extraInfoWriter.write(timestamp + "," + TimeConverter.utcTimeToString(timestamp) + ","
+        + type + "," + asset + "," + value);
+    extraInfoWriter.newLine();
+  }
+
+  private void writeSpotRow(String operation, String asset, BigDecimal amount)
+      throws IOException {
+    spotBalances.merge(asset, amount, BigDecimal::add);
+    writeRow(SPOT, operation, asset, amount);
+  }
+
+  private void writeEarnRow(String operation, String asset, BigDecimal amount)
+      throws IOException {
+    earnBalances.merge(asset, amount, BigDecimal::add);
+    writeRow(EARN, operation, "LD" + asset, amount);
+  }
+
+  private void writeRow(String account, String operation, String asset, BigDecimal amount)
+      throws IOException {
+    row.setLength(0);
+    row.append(USER_ID).append(',').append(TimeConverter.utcTimeToString(time)).append(',')
+        .append(account).append(',').append(operation).append(',').append(asset).append(',')
+        .append(toPlainString(amount)).append(",\"\"");
+    transactionWriter.write(row.toString());
+    transactionWriter.newLine();
+    rowsWritten++;
+  }
+
+  private BigDecimal getSpotBalance(String asset) {
+    return spotBalances.getOrDefault(asset, BigDecimal.ZERO);
+  }
+
+  private BigDecimal getEarnBalance(String asset) {
+    return earnBalances.getOrDefault(asset, BigDecimal.ZERO);
+  }
+
+  private String pick(String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  private BigDecimal randomAmount(int min, int max, int scale) {
+    return BigDecimal.valueOf(min + random.nextDouble() * (max - min))
+        .setScale(scale, RoundingMode.DOWN);
+  }
+
+  /**
+   * Split an amount in random parts, the sum of the parts is equal to the amount.
+   */
+  private BigDecimal[] split(BigDecimal amount, int partCount) {
+    BigDecimal[] parts = new BigDecimal[partCount];
+    BigDecimal rest = amount;
+    for (int i = 0; i < partCount - 1; ++i) {
+      parts[i] = amount.multiply(BigDecimal.valueOf(0.1 + random.nextDouble() * 0.8 / partCount))
+          .setScale(amount.scale(), RoundingMode.DOWN);
+      rest = rest.subtract(parts[i]);
+    }
+    parts[partCount - 1] = rest;
+    return parts;
+  }
+
+  private static String toPlainString(BigDecimal value) {
+    return value.stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   * Generate a synthetic export from the command line.
+   *
+   * @param args Command line arguments: path to the transaction CSV file, path to the extra
+   *             info CSV file, the number of rows, optionally the seed (default: 1) and the
+   *             operation mix (for example "BUY=10,SELL=5,AUTO_INVEST=0")
+   */
+  public static void main(String[] args) {
+    if (args.length < 3) {
+      logger.error("Usage: TransactionExportGenerator <transaction file> <extra info file>"
+          + " <row count> [seed] [operation mix]");
+      return;
+    }
+    try {
+      long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+      TransactionExportGenerator generator = new TransactionExportGenerator(seed);
+      if (args.length > 4) {
+        generator.setWeights(args[4]);
+      }
+      generator.generate(args[0], args[1], Long.parseLong(args[2]));
+    } catch (IOException | IllegalArgumentException e) {
+      logger.error("Export generation failed: {}", e.getMessage());
+    }
+  }
+}
@@ -31,6 +31,9 @@ public class Transaction {
   private static final Set<String> fiatCurrencies = new HashSet<>();
   private static final Set<String> usdCurrencies = new HashSet<>();
   private static final Logger log = LogManager.getLogger(Transaction.class);
+  private static final int BUY_SELL_MASK = (1 << Operation.BUY.ordinal())
+      | (1 << Operation.SELL.ordinal());
+  private static final int BUY_SELL_FEE_MASK = BUY_SELL_MASK | (1 << Operation.FEE.ordinal());
 
   Map<Operation, List<RawAccountChange>> atomicAccountChanges = new EnumMap<>(Operation.class);
   protected final long utcTime;
@@ -89,98 +92,45 @@ public class Transaction {
    * @return A transaction with specific type, with the same atomic operations
    */
   public final Transaction clarifyTransactionType() {
-    if (consistsOfMultipleBuySellOperations()) {
+    long signature = TransactionTypeTable.getSignature(atomicAccountChanges);
+    if (isMultipleBuySellSignature(signature)) {
       mergeRawChangesByType();
+      signature = TransactionTypeTable.getSignature(
+          TransactionTypeTable.getSignatureMask(signature), 1);
     }
 
-    Transaction t = convertToBuyOrSell();
-    if (t == null) {
-      t = convertToDepositOrWithdraw();
-    }
-    if (t == null) {
-      t = convertToSavingsRelated();
-    }
-    if (t == null) {
-      t = convertToAutoInvest();
-    }
-    if (t == null) {
-      t = convertToCardPurchase();
-    }
-    if (t == null) {
-      t = convertToCurrencyExchange();
-    }
-    return t;
-  }
-
-  private boolean consistsOfMultipleBuySellOperations() {
-    return consistsOfMultiple(Operation.BUY, Operation.SELL, Operation.FEE)
-        || consistsOfMultiple(Operation.BUY, Operation.SELL);
-  }
-
-  private Transaction convertToSavingsRelated() {
-    Transaction t = null;
-    if (consistsOf(Operation.EARN_SUBSCRIPTION, Operation.SAVINGS_DISTRIBUTION)
-        || consistsOf(Operation.SAVINGS_DISTRIBUTION)
-        || consistsOf(Operation.EARN_SUBSCRIPTION)
-        || consistsOfMultiple(Operation.EARN_SUBSCRIPTION)) {
-      t = new SavingsSubscriptionTransaction(this);
-    } else if (consistsOf(Operation.EARN_REDEMPTION)
-        || consistsOfMultiple(Operation.EARN_REDEMPTION)) {
-      t = new SavingsRedemptionTransaction(this);
-    } else if (consistsOf(Operation.EARN_INTEREST)) {
-      t = new SavingsInterestTransaction(this);
-    } else if (consistsOf(Operation.CASHBACK_VOUCHER) || consistsOf(Operation.BNB_VAULT_REWARDS)) {
-      t = new RewardTransaction(this);
-    } else if (consistsOf(Operation.COMMISSION_REBATE)) {
-      t = new CommissionTransaction(this);
-    } else if (consistsOf(Operation.DISTRIBUTION)) {
-      t = new DistributionTransaction(this);
-    } else if (consistsOfMultiple(Operation.SMALL_ASSETS_EXCHANGE_BNB)) {
-      t = new DustCollectionTransaction(this);
-    }
-    return t;
-  }
-
-  private Transaction convertToBuyOrSell() {
-    RawAccountChange buy = getFirstBuyTypeChange();
-    RawAccountChange sell = getFirstSellTypeChange();
-    boolean hasFee = getFirstChangeOfType(Operation.FEE) != null;
-    int expectedOpCount = hasFee ? 3 : 2;
-    if (getTotalOperationCount() != expectedOpCount) {
-      return null;
-    }
-
-    Transaction t = null;
-    if (buy != null && sell != null) {
-      if (isSell()) {
-        t = new SellTransaction(this);
-      } else if (isBuyWithUsd()) {
-        t = new BuyTransaction(this);
-      } else if (isCoinToCoinBuy()) {
-        t = new CoinToCoinTransaction(this);
-      } else {
-        throw new IllegalArgumentException("Neither buy nor sell? " + this);
-      }
+    TransactionTypeTable.TransactionFactory factory = TransactionTypeTable.findFactory(signature);
+    Transaction t = factory != null ? factory.create(this) : null;
+    if (t == null && this instanceof AutoInvestTransaction) {
+      t = this;
     }
     return t;
   }
 
-  private AutoInvestTransaction convertToAutoInvest() {
-    return this instanceof AutoInvestTransaction invest ? invest : null;
+  private static boolean isMultipleBuySellSignature(long signature) {
+    int mask = TransactionTypeTable.getSignatureMask(signature);
+    return TransactionTypeTable.getSignatureCount(signature) > 1
+        && (mask == BUY_SELL_MASK || mask == BUY_SELL_FEE_MASK);
   }
 
-  private CardPurchaseTransaction convertToCardPurchase() {
-    CardPurchaseTransaction t = null;
-    if (consistsOfMultiple(Operation.BUY_CRYPTO)) {
-      t = new CardPurchaseTransaction(this);
-    }
-    return t;
-  }
-
-  private CurrencyExchangeTransaction convertToCurrencyExchange() {
-    CurrencyExchangeTransaction t = null;
-    if (consistsOfTwoConversions()) {
-      t = new CurrencyExchangeTransaction(this);
+  /**
+   * Create a buy, sell or coin-to-coin transaction, depending on the traded assets.
+   * The transaction must consist of one buy, one sell and optionally one fee operation.
+   *
+   * @return The transaction of the specific type
+   * @throws IllegalArgumentException When neither of the traded assets is USDT and the
+   *                                  transaction is not a coin-to-coin trade either
+   */
+  Transaction convertToBuyOrSell() throws IllegalArgumentException {
+    Transaction t;
+    if (isSell()) {
+      t = new SellTransaction(this);
+    } else if (isBuyWithUsd()) {
+      t = new BuyTransaction(this);
+    } else if (isCoinToCoinBuy()) {
+      t = new CoinToCoinTransaction(this);
+    } else {
+      throw new IllegalArgumentException("Neither buy nor sell? " + this);
     }
     return t;
   }
@@ -198,16 +148,6 @@ public class Transaction {
     return count;
   }
 
-  private Transaction convertToDepositOrWithdraw() {
-    Transaction t = null;
-    if (consistsOf(Operation.DEPOSIT) || consistsOf(Operation.FIAT_DEPOSIT)) {
-      t = new DepositTransaction(this);
-    } else if (consistsOf(Operation.WITHDRAW)) {
-      t = new WithdrawTransaction(this);
-    }
-    return t;
-  }
-
   private boolean isSell() {
     RawAccountChange bought = getFirstBuyTypeChange();
     return bought != null && bought.getAsset().equals("USDT");
@@ -226,41 +166,6 @@ public class Transaction {
         && !sold.getAsset().equals("USDT");
   }
 
-  /**
-   * Returns true if this transaction consists ONLY of the given operations, one of each type.
-   *
-   * @param operations The expected operations
-   * @return True if this transaction consists ONLY of the given change operations
-   */
-  private boolean consistsOf(Operation... operations) {
-    return getOperationMultiSet().equals(new OperationMultiSet(operations));
-  }
-
-  /**
-   * Returns true if this transaction consists ONLY of the given operations, N of each type.
-   * N must be equal for all operation types, and N must be greater than 1.
-   * N is detected automatically.
-   *
-   * @param operations The expected operations
-   * @return True if this transaction consists ONLY of the given change operations
-   */
-  private boolean consistsOfMultiple(Operation... operations) {
-    int n = getCountOfOperationsWithType(operations[0]);
-    return n > 1 && getOperationMultiSet().equals(new OperationMultiSet(n, operations));
-  }
-
-  private boolean consistsOfTwoConversions() {
-    int n = getCountOfOperationsWithType(Operation.CONVERT);
-    return n == 2 && consistsOfMultiple(Operation.CONVERT);
-  }
-
-
-  private int getCountOfOperationsWithType(Operation operation) {
-    List<RawAccountChange> changes = atomicAccountChanges.get(operation);
-    return changes != null ? changes.size() : 0;
-  }
-
-
   /**
    * Get multiset containing the count of each operation type (not the operation itself).
    *
@@ -0,0 +1,178 @@
+package no.strazdins.transaction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import no.strazdins.data.Operation;
+import no.strazdins.data.RawAccountChange;
+
+/**
+ * Lookup table from operation signatures to transaction factories, used for detecting the type
+ * of raw transactions. A signature describes which operations a transaction consists of:
+ * the set of operation types (a bit mask) and the count of each type, when all the types have
+ * the same count. A pattern matches either an exact count, or any count greater than one
+ * ("multiple"). Transactions with different counts of different operation types do not match
+ * any pattern.
+ *
+ * <p>Each transaction type registers the patterns it consists of, see the static initializer.
+ * A pattern can be registered only once, hence the order of registration does not matter.</p>
+ */
+public class TransactionTypeTable {
+  // Signatures of the exact-count patterns
+  private static final Map<Long, TransactionFactory> exactPatterns = new ConcurrentHashMap<>();
+  // Operation masks of the multiple-count patterns
+  private static final Map<Integer, TransactionFactory> multiplePatterns =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Creates a transaction of a specific type from a raw transaction.
+   */
+  @FunctionalInterface
+  public interface TransactionFactory {
+    /**
+     * Create a transaction of a specific type.
+     *
+     * @param rawTransaction The raw transaction, with the atomic account changes
+     * @return The transaction of the specific type, or null when the changes don't
+     *     correspond to the type after all
+     */
+    Transaction create(Transaction rawTransaction);
+  }
+
+  static {
+    if (Operation.values().length > Integer.SIZE) {
+      throw new IllegalStateException("Operation signatures support up to " + Integer.SIZE
+          + " operation types");
+    }
+    register(Transaction::convertToBuyOrSell, 1, Operation.BUY, Operation.SELL, Operation.FEE);
+    register(Transaction::convertToBuyOrSell, 1, Operation.BUY, Operation.SELL);
+    register(DepositTransaction::new, 1, Operation.DEPOSIT);
+    register(DepositTransaction::new, 1, Operation.FIAT_DEPOSIT);
+    register(WithdrawTransaction::new, 1, Operation.WITHDRAW);
+    register(SavingsSubscriptionTransaction::new, 1,
+        Operation.EARN_SUBSCRIPTION, Operation.SAVINGS_DISTRIBUTION);
+    register(SavingsSubscriptionTransaction::new, 1, Operation.SAVINGS_DISTRIBUTION);
+    register(SavingsSubscriptionTransaction::new, 1, Operation.EARN_SUBSCRIPTION);
+    registerMultiple(SavingsSubscriptionTransaction::new, Operation.EARN_SUBSCRIPTION);
+    register(SavingsRedemptionTransaction::new, 1, Operation.EARN_REDEMPTION);
+    registerMultiple(SavingsRedemptionTransaction::new, Operation.EARN_REDEMPTION);
+    register(SavingsInterestTransaction::new, 1, Operation.EARN_INTEREST);
+    register(RewardTransaction::new, 1, Operation.CASHBACK_VOUCHER);
+    register(RewardTransaction::new, 1, Operation.BNB_VAULT_REWARDS);
+    register(CommissionTransaction::new, 1, Operation.COMMISSION_REBATE);
+    register(DistributionTransaction::new, 1, Operation.DISTRIBUTION);
+    registerMultiple(DustCollectionTransaction::new, Operation.SMALL_ASSETS_EXCHANGE_BNB);
+    registerMultiple(CardPurchaseTransaction::new, Operation.BUY_CRYPTO);
+    register(CurrencyExchangeTransaction::new, 2, Operation.CONVERT);
+  }
+
+  /**
+   * Not allowed to create instances of this class.
+   */
+  private TransactionTypeTable() {
+
+  }
+
+  /**
+   * Register a transaction type which consists of the given operations, exactly count
+   * operations of each type.
+   *
+   * @param factory    The factory creating the transaction of the specific type
+   * @param count      The number of operations of each type
+   * @param operations The operation types
+   * @throws IllegalArgumentException When the pattern is already registered or invalid
+   */
+  public static void register(TransactionFactory factory, int count, Operation... operations)
+      throws IllegalArgumentException {
+    if (count < 1 || operations.length == 0) {
+      throw new IllegalArgumentException("A pattern must contain at least one operation");
+    }
+    long signature = getSignature(getMask(operations), count);
+    if (exactPatterns.putIfAbsent(signature, factory) != null) {
+      throw new IllegalArgumentException("Pattern already registered: " + count + " x "
+          + List.of(operations));
+    }
+  }
+
+  /**
+   * Register a transaction type which consists of the given operations, N operations of each
+   * type, where N is greater than one. Exact-count patterns take precedence.
+   *
+   * @param factory    The factory creating the transaction of the specific type
+   * @param operations The operation types
+   * @throws IllegalArgumentException When the pattern is already registered or invalid
+   */
+  public static void registerMultiple(TransactionFactory factory, Operation... operations)
+      throws IllegalArgumentException {
+    if (operations.length == 0) {
+      throw new IllegalArgumentException("A pattern must contain at least one operation");
+    }
+    if (multiplePatterns.putIfAbsent(getMask(operations), factory) != null) {
+      throw new IllegalArgumentException("Pattern already registered: N x "
+          + List.of(operations));
+    }
+  }
+
+  /**
+   * Find the factory for the transaction type matching the signature.
+   *
+   * @param signature The operation signature of a raw transaction, see getSignature()
+   * @return The factory, or null if no pattern matches the signature
+   */
+  static TransactionFactory findFactory(long signature) {
+    TransactionFactory factory = exactPatterns.get(signature);
+    if (factory == null && getSignatureCount(signature) > 1) {
+      factory = multiplePatterns.get(getSignatureMask(signature));
+    }
+    return factory;
+  }
+
+  /**
+   * Calculate the operation signature of a transaction.
+   *
+   * @param changes The atomic account changes of the transaction, grouped by operation
+   * @return The signature
+   */
+  static long getSignature(Map<Operation, List<RawAccountChange>> changes) {
+    int mask = 0;
+    int count = 0;
+    boolean sameCount = true;
+    for (Map.Entry<Operation, List<RawAccountChange>> entry : changes.entrySet()) {
+      int n = entry.getValue().size();
+      if (n > 0) {
+        mask |= 1 << entry.getKey().ordinal();
+        sameCount &= count == 0 || count == n;
+        count = n;
+      }
+    }
+    return getSignature(mask, sameCount ? count : 0);
+  }
+
+  /**
+   * Get the signature of a transaction with the given operation types.
+   *
+   * @param mask  Bit mask of the operation types, bit i is set for the operation with
+   *              ordinal i
+   * @param count The count of each operation type, or 0 when the counts are different
+   * @return The signature
+   */
+  static long getSignature(int mask, int count) {
+    return (long) count << Integer.SIZE | (mask & 0xFFFFFFFFL);
+  }
+
+  private static int getMask(Operation... operations) {
+    int mask = 0;
+    for (Operation operation : operations) {
+      mask |= 1 << operation.ordinal();
+    }
+    return mask;
+  }
+
+  static int getSignatureMask(long signature) {
+    return (int) signature;
+  }
+
+  static int getSignatureCount(long signature) {
+    return (int) (signature >>> Integer.SIZE);
+  }
+}
@@ -0,0 +1,90 @@
+package no.strazdins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import no.strazdins.BatchRunner.Job;
+import no.strazdins.BatchRunner.JobResult;
+import no.strazdins.process.ReportGenerator;
+import no.strazdins.tool.TransactionExportGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRunnerTest {
+  private static final String HOME_CURRENCY = TransactionExportGenerator.HOME_CURRENCY;
+  private static final String[] OUTPUT_FILES = {"transactions.csv", "balances.csv", "profits.csv"};
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testDirectoryJobs() throws IOException {
+    createJobDirectory("client2", 2);
+    createJobDirectory("client1", 1);
+    Files.createDirectories(tempDir.resolve("not-a-job"));
+
+    List<Job> jobs = BatchRunner.findJobs(tempDir, HOME_CURRENCY);
+    assertEquals(2, jobs.size());
+    assertEquals("client1", jobs.get(0).name());
+    assertEquals("client2", jobs.get(1).name());
+
+    List<JobResult> results = BatchRunner.runJobs(jobs, new ReportGenerator(), 2);
+    assertEquals(2, results.size());
+    for (JobResult result : results) {
+      assertTrue(result.isSuccessful(), result.error());
+    }
+
+    // Same output as when each report is generated alone
+    for (Job job : jobs) {
+      Path expectedDirectory = Files.createDirectories(tempDir.resolve("expected-" + job.name()));
+      Runner.createAndWriteReport(new ReportGenerator(), job.inputFilePath(), HOME_CURRENCY,
+          job.extraFilePath(), expectedDirectory, null);
+      for (String file : OUTPUT_FILES) {
+        assertEquals(Files.readAllLines(expectedDirectory.resolve(file)),
+            Files.readAllLines(job.outputDirectory().resolve(file)));
+      }
+    }
+  }
+
+  @Test
+  void testManifestWithFailedJob() throws IOException {
+    Path jobDirectory = createJobDirectory("client", 3);
+    Path manifest = tempDir.resolve("manifest.csv");
+    Files.writeString(manifest, "# input,extra,currency,output\n"
+        + "client/input.csv,client/extra.csv,NOK,out/ok\n"
+        + "missing.csv,client/extra.csv,NOK,out/failed\n");
+
+    List<Job> jobs = BatchRunner.readManifest(manifest.toString());
+    assertEquals(2, jobs.size());
+    assertEquals(jobDirectory.resolve("input.csv").toAbsolutePath().toString(),
+        jobs.get(0).inputFilePath());
+    assertEquals(tempDir.resolve("out/ok").toAbsolutePath(), jobs.get(0).outputDirectory());
+
+    List<JobResult> results = BatchRunner.runJobs(jobs, new ReportGenerator(), 4);
+    assertTrue(results.get(0).isSuccessful(), results.get(0).error());
+    assertFalse(results.get(1).isSuccessful());
+    for (String file : OUTPUT_FILES) {
+      assertTrue(Files.exists(tempDir.resolve("out/ok").resolve(file)));
+    }
+
+    Path summary = tempDir.resolve(BatchRunner.SUMMARY_CSV_FILE);
+    BatchRunner.writeSummary(results, summary.toString());
+    List<String> lines = Files.readAllLines(summary);
+    assertEquals(3, lines.size());
+    assertTrue(lines.get(1).startsWith("out/ok,OK,"));
+    assertTrue(lines.get(2).startsWith("out/failed,FAILED,"));
+  }
+
+  private Path createJobDirectory(String name, long seed) throws IOException {
+    Path directory = Files.createDirectories(tempDir.resolve(name));
+    new TransactionExportGenerator(seed).generate(
+        directory.resolve(BatchRunner.JOB_INPUT_FILE).toString(),
+        directory.resolve(BatchRunner.JOB_EXTRA_FILE).toString(), 2000);
+    return directory;
+  }
+}
@@ -0,0 +1,224 @@
+package no.strazdins;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import no.strazdins.process.ReportGenerator;
+import no.strazdins.tool.TimeConverter;
+import no.strazdins.tool.TransactionExportGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportServerTest {
+  private static final String BOUNDARY = "test-boundary-123";
+
+  @TempDir
+  Path tempDir;
+
+  private ReportServer server;
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = new ReportServer(0, 2, new ReportGenerator());
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void testReport() throws Exception {
+    Path inputFile = tempDir.resolve("input.csv");
+    Path extraFile = tempDir.resolve("extra.csv");
+    new TransactionExportGenerator(1).generate(inputFile.toString(), extraFile.toString(), 2000);
+    Path expectedDirectory = Files.createDirectories(tempDir.resolve("expected"));
+    Runner.createAndWriteReport(new ReportGenerator(), inputFile.toString(),
+        TransactionExportGenerator.HOME_CURRENCY, extraFile.toString(), expectedDirectory, null);
+
+    // Several requests, the server stays warm
+    for (int i = 0; i < 3; ++i) {
+      HttpResponse<byte[]> response = post(createForm(Files.readAllBytes(inputFile),
+          Files.readAllBytes(extraFile), TransactionExportGenerator.HOME_CURRENCY));
+      assertEquals(200, response.statusCode());
+      Map<String, byte[]> files = unzip(response.body());
+      assertEquals(4, files.size());
+      for (String file : new String[]{"transactions.csv", "balances.csv", "profits.csv"}) {
+        assertArrayEquals(Files.readAllBytes(expectedDirectory.resolve(file)), files.get(file));
+      }
+    }
+  }
+
+  @Test
+  void testInvalidRequests() throws Exception {
+    byte[] noCurrency = createForm("2022-03-01 10:00:00".getBytes(StandardCharsets.UTF_8),
+        new byte[0], null);
+    assertEquals(400, post(noCurrency).statusCode());
+
+    byte[] invalidInput = createForm("Not a Binance export".getBytes(StandardCharsets.UTF_8),
+        new byte[0], "NOK");
+    assertEquals(400, post(invalidInput).statusCode());
+
+    HttpRequest get = HttpRequest.newBuilder(getReportUri()).GET().build();
+    assertEquals(405, client.send(get, HttpResponse.BodyHandlers.ofByteArray()).statusCode());
+  }
+
+  @Test
+  void testMissingExtraInfo() throws Exception {
+    Path inputFile = tempDir.resolve("input.csv");
+    Path extraFile = tempDir.resolve("extra.csv");
+    new TransactionExportGenerator(3).generate(inputFile.toString(), extraFile.toString(), 500);
+    HttpResponse<byte[]> response = post(createForm(Files.readAllBytes(inputFile), new byte[0],
+        TransactionExportGenerator.HOME_CURRENCY));
+    assertEquals(422, response.statusCode());
+    List<String> lines = new String(response.body(), StandardCharsets.UTF_8).lines().toList();
+    assertTrue(lines.size() > 1);
+    // The required entries are listed in the extra info file format
+    List<String> requiredLines = lines.subList(1, lines.size());
+    for (String line : requiredLines) {
+      String[] cells = line.split(",");
+      assertEquals(5, cells.length);
+      assertEquals(TimeConverter.utcTimeToString(Long.parseLong(cells[0])), cells[1]);
+    }
+    // The generated extra info file has the exchange rates the user would provide
+    String providedInfo = Files.readString(extraFile);
+    assertTrue(requiredLines.stream().anyMatch(
+        line -> providedInfo.contains(line.substring(0, line.lastIndexOf(',')))));
+  }
+
+  @Test
+  void testParseMultipartForm() throws IOException {
+    String body = "preamble\r\n--b\r\n"
+        + "Content-Disposition: form-data; name=\"first\"\r\n\r\n"
+        + "line 1\r\nline 2\r\n"
+        + "--b\r\n"
+        + "Content-Disposition: form-data; name=\"second\"; filename=\"a.csv\"\r\n"
+        + "Content-Type: text/csv\r\n\r\n"
+        + "\r\n"
+        + "--b--\r\n";
+    Map<String, byte[]> fields = parse(body.getBytes(StandardCharsets.UTF_8), "b",
+        Long.MAX_VALUE);
+    assertEquals(2, fields.size());
+    assertEquals("line 1\r\nline 2", new String(fields.get("first"), StandardCharsets.UTF_8));
+    assertEquals("", new String(fields.get("second"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testParseLargeMultipartForm() throws IOException {
+    // Partial delimiters all over the content, also across the read buffer boundaries
+    byte[] content = new byte[300_000];
+    Random random = new Random(7);
+    byte[] pieces = "\r\n--".getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < content.length; ++i) {
+      content[i] = random.nextInt(4) == 0 ? (byte) 'x' : pieces[random.nextInt(pieces.length)];
+    }
+    ByteArrayOutputStream form = new ByteArrayOutputStream();
+    addFormField(form, "transactions", content);
+    form.write(("--" + BOUNDARY + "--").getBytes(StandardCharsets.UTF_8));
+    byte[] body = form.toByteArray();
+    Map<String, byte[]> fields = parse(body, BOUNDARY, body.length);
+    assertEquals(1, fields.size());
+    assertArrayEquals(content, fields.get("transactions"));
+
+    assertThrows(IllegalArgumentException.class, () -> parse(body, BOUNDARY, body.length - 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> parse(Arrays.copyOf(body, body.length - 2), BOUNDARY, body.length));
+    assertThrows(IllegalArgumentException.class, () -> parse(content, BOUNDARY, body.length));
+  }
+
+  @Test
+  void testRequestSizeLimit() throws Exception {
+    ReportServer limitedServer = new ReportServer(0, 1, 1000, new ReportGenerator());
+    limitedServer.start();
+    try {
+      byte[] form = createForm(new byte[2000], new byte[0], "NOK");
+      HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:"
+              + limitedServer.getPort() + ReportServer.REPORT_PATH))
+          .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+          .POST(HttpRequest.BodyPublishers.ofByteArray(form))
+          .build();
+      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(413, response.statusCode());
+      assertEquals("The request is too large, the limit is 1000 bytes\n", response.body());
+    } finally {
+      limitedServer.stop(0);
+    }
+  }
+
+  private Map<String, byte[]> parse(byte[] body, String boundary, long maxSize)
+      throws IOException {
+    Path directory = Files.createTempDirectory(tempDir, "form");
+    Map<String, byte[]> fields = new HashMap<>();
+    for (Map.Entry<String, Path> field : ReportServer.parseMultipartForm(
+        new ByteArrayInputStream(body), boundary, directory, maxSize).entrySet()) {
+      fields.put(field.getKey(), Files.readAllBytes(field.getValue()));
+    }
+    return fields;
+  }
+
+  private URI getReportUri() {
+    return URI.create("http://localhost:" + server.getPort() + ReportServer.REPORT_PATH);
+  }
+
+  private HttpResponse<byte[]> post(byte[] form) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(getReportUri())
+        .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+        .POST(HttpRequest.BodyPublishers.ofByteArray(form))
+        .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  private static byte[] createForm(byte[] transactions, byte[] extra, String currency)
+      throws IOException {
+    ByteArrayOutputStream form = new ByteArrayOutputStream();
+    addFormField(form, "transactions", transactions);
+    addFormField(form, "extra", extra);
+    if (currency != null) {
+      addFormField(form, "currency", currency.getBytes(StandardCharsets.UTF_8));
+    }
+    form.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+    return form.toByteArray();
+  }
+
+  private static void addFormField(ByteArrayOutputStream form, String name, byte[] content)
+      throws IOException {
+    form.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name
+        + "\"; filename=\"" + name + ".csv\"\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+    form.write(content);
+    form.write("\r\n".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Map<String, byte[]> unzip(byte[] archive) throws IOException {
+    Map<String, byte[]> files = new HashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        files.put(entry.getName(), zip.readAllBytes());
+      }
+    }
+    return files;
+  }
+}
@@ -0,0 +1,68 @@
+package no.strazdins.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class AssetRegistryTest {
+  @Test
+  void testIds() {
+    AssetRegistry registry = new AssetRegistry();
+    int btc = registry.getId("BTC");
+    int eth = registry.getId("ETH");
+    assertEquals(0, btc);
+    assertEquals(1, eth);
+    assertEquals(btc, registry.getId("BTC"));
+    assertEquals(btc, registry.findId("BTC"));
+    assertEquals("BTC", registry.getName(btc));
+    assertEquals("ETH", registry.getName(eth));
+    assertEquals(2, registry.getAssetCount());
+  }
+
+  @Test
+  void testUnknownAsset() {
+    AssetRegistry registry = new AssetRegistry();
+    assertEquals(-1, registry.findId("UNKNOWN-ASSET-NOT-REGISTERED"));
+    assertEquals(-1, registry.findId(null));
+    assertThrows(IllegalArgumentException.class, () -> registry.getName(-1));
+    assertThrows(IllegalArgumentException.class,
+        () -> registry.getName(registry.getAssetCount()));
+    assertThrows(IllegalArgumentException.class, () -> registry.getId(null));
+  }
+
+  @Test
+  void testConcurrentRegistration() throws Exception {
+    final int threadCount = 4;
+    final int assetCount = 500;
+    AssetRegistry registry = new AssetRegistry();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<int[]>> results = new ArrayList<>();
+      for (int t = 0; t < threadCount; ++t) {
+        results.add(executor.submit(() -> {
+          int[] ids = new int[assetCount];
+          for (int i = 0; i < assetCount; ++i) {
+            ids[i] = registry.getId("CONCURRENT" + i);
+          }
+          return ids;
+        }));
+      }
+      int[] expectedIds = results.get(0).get();
+      for (Future<int[]> result : results) {
+        int[] ids = result.get();
+        for (int i = 0; i < assetCount; ++i) {
+          assertEquals(expectedIds[i], ids[i]);
+          assertEquals("CONCURRENT" + i, registry.getName(ids[i]));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
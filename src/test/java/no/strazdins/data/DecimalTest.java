@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -22,12 +23,29 @@ class DecimalTest {
     assertEquals("1213", new Decimal("1213.0").getNiceString());
   }
 
+  @Test
+  void testEngineSelectedByProperty() {
+    // The tests run with both engines, see the surefire executions in pom.xml
+    boolean longEngine = "long".equals(System.getProperty(Decimal.ENGINE_PROPERTY));
+    Decimal value = new Decimal("1.5");
+    assertEquals(longEngine, value.toCompactForm() == value);
+  }
+
   @Test
   void testCreateFromInvalidString() {
     assertThrows(NumberFormatException.class, () -> new Decimal(""));
     assertThrows(NumberFormatException.class, () -> new Decimal("abc"));
   }
 
+  @Test
+  void testUnits() {
+    assertEquals(121363895888L, new Decimal("1213.63895888").toUnits());
+    assertEquals(-1L, new Decimal("-0.00000001").toUnits());
+    assertEquals("-1213.63895888", Decimal.fromUnits(-121363895888L).getNiceString());
+    assertEquals(Long.MIN_VALUE, Decimal.fromUnits(Long.MIN_VALUE).toUnits());
+    assertThrows(ArithmeticException.class, () -> new Decimal("999999999999").toUnits());
+  }
+
   @Test
   void testPositive() {
     assertFalse(new Decimal("0").isPositive());
@@ -235,4 +253,66 @@ class DecimalTest {
     assertEquals(new Decimal("0.000007"), new Decimal("7E-6"));
     assertEquals(new Decimal("0.000005"), new Decimal("5E-6"));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testCompactFormMatchesBigDecimal() {
+    String[] values = new String[]{"0", "1", "-1", "0.00000001", "-0.00000001", "0.5",
+        "24000", "13.63895858", "8912.25365379", "-0.99999999", "0.00000005", "3",
+        "92233720368.54775807", "-92233720368.54775807", "99999999999.99999999",
+        "123456789.12345678", "0.33333333", "7"};
+    for (String a : values) {
+      for (String b : values) {
+        expectSameResults(new Decimal(a), new Decimal(b));
+      }
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; ++i) {
+      expectSameResults(createRandomDecimal(random), createRandomDecimal(random));
+    }
+  }
+
+  @Test
+  void testCompactFormRounding() {
+    assertEquals("0.00000001", new Decimal("0.000000005").toCompactForm().getNiceString());
+    assertEquals("-0.00000001", new Decimal("-0.000000005").toCompactForm().getNiceString());
+    Decimal third = Decimal.ONE.toCompactForm().divide(new Decimal("3").toCompactForm());
+    assertEquals("0.33333333", third.getNiceString());
+    Decimal twoThirds = new Decimal("2").toCompactForm().divide(new Decimal("3").toCompactForm());
+    assertEquals("0.66666667", twoThirds.getNiceString());
+    assertEquals(new Decimal("0.00000001"),
+        new Decimal("0.000012").toCompactForm().multiply(new Decimal("0.001").toCompactForm()));
+  }
+
+  private static Decimal createRandomDecimal(Random random) {
+    int integerDigits = random.nextInt(12);
+    long integerPart = integerDigits > 0
+        ? (long) (random.nextDouble() * Math.pow(10, integerDigits)) : 0;
+    long fraction = random.nextInt(100_000_000);
+    String sign = random.nextBoolean() ? "-" : "";
+    return new Decimal(sign + integerPart + "." + String.format("%08d", fraction));
+  }
+
+  private static void expectSameResults(Decimal a, Decimal b) {
+    Decimal ca = a.toCompactForm();
+    Decimal cb = b.toCompactForm();
+    String message = a + " and " + b;
+    expectSame(a.add(b), ca.add(cb), message);
+    expectSame(a.subtract(b), ca.subtract(cb), message);
+    expectSame(a.multiply(b), ca.multiply(cb), message);
+    expectSame(a.negate(), ca.negate(), message);
+    if (!b.isZero()) {
+      expectSame(a.divide(b), ca.divide(cb), message);
+    }
+    assertEquals(a.compareTo(b), ca.compareTo(cb), message);
+    assertEquals(a.getNiceString(), ca.getNiceString(), message);
+    assertEquals(a.toString(), ca.toString(), message);
+    assertEquals(a.isZero(), ca.isZero(), message);
+    assertEquals(a.isPositive(), ca.isPositive(), message);
+  }
+
+  private static void expectSame(Decimal expected, Decimal actual, String message) {
+    assertEquals(expected, actual, message);
+    assertEquals(expected.hashCode(), actual.hashCode(), message);
+    assertEquals(expected.getNiceString(), actual.getNiceString(), message);
+  }
+}
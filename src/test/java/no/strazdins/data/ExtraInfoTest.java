@@ -0,0 +1,54 @@
+package no.strazdins.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ExtraInfoTest {
+  @Test
+  void testContainsIgnoresAsset() {
+    ExtraInfo extraInfo = new ExtraInfo();
+    extraInfo.add(new ExtraInfoEntry(1000, ExtraInfoType.ASSET_PRICE, "BTC", "20000"));
+    assertTrue(extraInfo.contains(
+        new ExtraInfoEntry(1000, ExtraInfoType.ASSET_PRICE, "ETH", "<hint>")));
+    assertFalse(extraInfo.contains(
+        new ExtraInfoEntry(1000, ExtraInfoType.AUTO_INVEST_PROPORTIONS, "BTC", "1")));
+    assertFalse(extraInfo.contains(
+        new ExtraInfoEntry(1001, ExtraInfoType.ASSET_PRICE, "BTC", "20000")));
+  }
+
+  @Test
+  void testAssetPrice() {
+    ExtraInfo extraInfo = new ExtraInfo();
+    extraInfo.add(new ExtraInfoEntry(1000, ExtraInfoType.ASSET_PRICE, "BTC", "20000"));
+    extraInfo.add(new ExtraInfoEntry(1000, ExtraInfoType.ASSET_PRICE, "ETH", "1500"));
+    extraInfo.add(new ExtraInfoEntry(2000, ExtraInfoType.AUTO_INVEST_PROPORTIONS, "BTC", "1"));
+    assertEquals(new Decimal("20000"), extraInfo.getAssetPriceAtTime(1000, "BTC"));
+    assertEquals(new Decimal("1500"), extraInfo.getAssetPriceAtTime(1000, "ETH"));
+    assertNull(extraInfo.getAssetPriceAtTime(1000, "LTC"));
+    assertNull(extraInfo.getAssetPriceAtTime(2000, "BTC"));
+    assertNull(extraInfo.getAssetPriceAtTime(3000, "BTC"));
+
+    extraInfo.add(new ExtraInfoEntry(1000, ExtraInfoType.ASSET_PRICE, "BTC", "21000"));
+    assertThrows(IllegalStateException.class, () -> extraInfo.getAssetPriceAtTime(1000, "BTC"));
+  }
+
+  @Test
+  void testOrderPreserved() {
+    ExtraInfo extraInfo = new ExtraInfo();
+    ExtraInfoEntry e1 = new ExtraInfoEntry(3000, ExtraInfoType.ASSET_PRICE, "BTC", "1");
+    ExtraInfoEntry e2 = new ExtraInfoEntry(1000, ExtraInfoType.ASSET_PRICE, "ETH", "2");
+    ExtraInfoEntry e3 = new ExtraInfoEntry(3000, ExtraInfoType.ASSET_PRICE, "NOK", "3");
+    extraInfo.add(e1);
+    extraInfo.add(e2);
+    extraInfo.add(e3);
+    assertEquals(List.of(e1, e2, e3), extraInfo.getAllEntries());
+    assertEquals(e1, extraInfo.getAtTime(3000));
+    assertNull(extraInfo.getAtTime(2000));
+  }
+}
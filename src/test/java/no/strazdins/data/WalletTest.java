@@ -2,7 +2,19 @@ package no.strazdins.data;
 
 import static no.strazdins.testtools.TestTools.createWalletWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 class WalletTest {
@@ -26,6 +38,87 @@ class WalletTest {
     assertEquals("3", w2.getAssetAmount("LTC").getNiceString());
   }
 
+  @Test
+  void testOriginalChangedAfterCloning() {
+    Wallet w1 = createWalletWith(
+        "1", "BTC", "24000",
+        "10", "LTC", "80"
+    );
+    Wallet w2 = new Wallet(w1);
+    Wallet w3 = new Wallet(w2);
+
+    w1.decreaseAsset("BTC", new Decimal("0.4"));
+    w1.decreaseAsset("LTC", new Decimal("10"));
+    w1.addAsset("BNB", new Decimal("2"), new Decimal("300"));
+    w3.addAsset("LTC", new Decimal("10"), new Decimal("100"));
+
+    assertEquals(createWalletWith("0.6", "BTC", "24000", "2", "BNB", "300"), w1);
+    assertEquals(createWalletWith("1", "BTC", "24000", "10", "LTC", "80"), w2);
+    assertEquals(createWalletWith("1", "BTC", "24000", "20", "LTC", "90"), w3);
+  }
+
+  @Test
+  void testUntouchedBalancesShared() {
+    Wallet w1 = createWalletWith("1", "BTC", "24000", "10", "LTC", "80", "2", "BNB", "300");
+    Wallet w2 = new Wallet(w1);
+    w2.addAsset("BTC", Decimal.ONE, new Decimal("30000"));
+    w2.decreaseAsset("BNB", Decimal.ONE);
+    Wallet w3 = new Wallet(w2);
+    w3.decreaseAsset("BNB", Decimal.ONE);
+
+    assertSame(w1.getBalance("LTC"), w2.getBalance("LTC"));
+    assertSame(w1.getBalance("LTC"), w3.getBalance("LTC"));
+    assertSame(w2.getBalance("BTC"), w3.getBalance("BTC"));
+    assertNotSame(w1.getBalance("BTC"), w2.getBalance("BTC"));
+    assertNull(w3.getBalance("BNB"));
+    assertEquals(new Decimal("2"), w1.getAssetAmount("BNB"));
+    assertEquals(Decimal.ONE, w2.getAssetAmount("BNB"));
+  }
+
+  @Test
+  void testManySnapshotsOfManyAssets() {
+    // Enough assets for a trie of three levels, the balances are checked against a map
+    Random random = new Random(42);
+    Wallet wallet = new Wallet();
+    Map<String, Decimal> expectedAmounts = new LinkedHashMap<>();
+    List<Wallet> snapshots = new ArrayList<>();
+    List<Map<String, Decimal>> expectedSnapshots = new ArrayList<>();
+    for (int i = 0; i < 5000; ++i) {
+      String asset = "A" + random.nextInt(1500);
+      Decimal amount = expectedAmounts.get(asset);
+      if (amount != null && random.nextBoolean()) {
+        wallet.decreaseAsset(asset, amount);
+        expectedAmounts.remove(asset);
+      } else {
+        wallet.addAsset(asset, Decimal.ONE, Decimal.ONE);
+        expectedAmounts.put(asset, amount != null ? amount.add(Decimal.ONE) : Decimal.ONE);
+      }
+      if (i % 100 == 0) {
+        snapshots.add(wallet);
+        expectedSnapshots.add(new HashMap<>(expectedAmounts));
+        Wallet previous = wallet;
+        wallet = new Wallet(wallet);
+        assertEquals(previous, wallet);
+      }
+    }
+    for (int i = 0; i < snapshots.size(); ++i) {
+      Wallet snapshot = snapshots.get(i);
+      Map<String, Decimal> expected = expectedSnapshots.get(i);
+      assertEquals(expected.size(), snapshot.getAssetCount());
+      for (String asset : snapshot) {
+        assertEquals(expected.get(asset), snapshot.getAssetAmount(asset));
+      }
+      if (i > 0) {
+        WalletDiff expectedDiff = new WalletDiff();
+        expected.forEach(expectedDiff::add);
+        expectedSnapshots.get(i - 1).forEach((asset, amount) ->
+            expectedDiff.add(asset, amount.negate()));
+        assertEquals(expectedDiff, snapshot.getDiffFrom(snapshots.get(i - 1)));
+        assertNotEquals(snapshots.get(i - 1), snapshot);
+      }
+    }
+  }
+
   @Test
   void testAddDecrease() {
     Wallet w = new Wallet();
@@ -48,6 +141,48 @@ class WalletTest {
     assertEquals(Decimal.ZERO, w.getAvgObtainPrice("BTC"));
   }
 
+  @Test
+  void testIterationAndEquality() {
+    Wallet w1 = createWalletWith("1", "BTC", "24000");
+    // An asset registered after w1 was created does not make the wallets different
+    Wallet w2 = createWalletWith("1", "BTC", "24000", "1", "ITERATION-TEST-ASSET", "2");
+    w2.decreaseAsset("ITERATION-TEST-ASSET", Decimal.ONE);
+    assertEquals(w1, w2);
+    assertEquals(w1.hashCode(), w2.hashCode());
+
+    Wallet w3 = createWalletWith("1", "BTC", "24000", "5", "LTC", "80");
+    List<String> assets = new ArrayList<>();
+    for (String asset : w3) {
+      assets.add(asset);
+    }
+    assertEquals(List.of("BTC", "LTC"), assets);
+  }
+
+  @Test
+  void testIterationInFirstSeenOrder() {
+    Wallet w1 = createWalletWith("1", "LTC", "80", "1", "BTC", "24000");
+    Wallet w2 = new Wallet(w1);
+    w2.decreaseAsset("LTC", Decimal.ONE);
+    w2.addAsset("ETH", Decimal.ONE, new Decimal("1600"));
+    w2.addAsset("LTC", Decimal.ONE, new Decimal("90"));
+    List<String> assets = new ArrayList<>();
+    w2.forEach(assets::add);
+    // The order of the report where the wallet comes from, not of any other wallets
+    assertEquals(List.of("LTC", "BTC", "ETH"), assets);
+  }
+
+  @Test
+  void testEqualityOfSeparateReports() {
+    Wallet w1 = createWalletWith("1", "BTC", "24000", "5", "LTC", "80");
+    Wallet w2 = createWalletWith("5", "LTC", "80", "1", "BTC", "24000");
+    assertEquals(w1, w2);
+    assertEquals(w1.hashCode(), w2.hashCode());
+    assertEquals(new WalletDiff(), w2.getDiffFrom(w1));
+    w2.addAsset("LTC", Decimal.ONE, new Decimal("80"));
+    assertNotEquals(w1, w2);
+    assertEquals(new WalletDiff().add("LTC", Decimal.ONE), w2.getDiffFrom(w1));
+  }
+
   @Test
   void testDiffEmpty() {
     assertEquals(new WalletDiff(), new Wallet().getDiffFrom(new Wallet()));
@@ -88,4 +223,63 @@ class WalletTest {
         .add("SLP", new Decimal("400"));
     assertEquals(expectedDiff, w2.getDiffFrom(w1));
   }
+
+  @Test
+  void testJournalDiff() {
+    Wallet w1 = createWalletWith(
+        "1", "BTC", "10000",
+        "20", "LTC", "100",
+        "2", "BNB", "10"
+    );
+    Wallet w2 = new Wallet(w1);
+    assertFalse(w2.hasJournal());
+    assertThrows(IllegalStateException.class, w2::getJournalDiff);
+
+    w2.startJournal();
+    w2.addAsset("BTC", new Decimal("0.5"), new Decimal("20000"));
+    w2.decreaseAsset("BNB", new Decimal("2"));
+    w2.addAsset("XRP", new Decimal("15"), new Decimal("3"));
+    w2.addAsset("LTC", new Decimal("1"), new Decimal("100"));
+    w2.decreaseAsset("LTC", new Decimal("1"));
+    w2.addAsset("LTC", new Decimal("0"), new Decimal("120"));
+
+    WalletDiff expectedDiff = new WalletDiff()
+        .add("BTC", new Decimal("0.5"))
+        .add("BNB", new Decimal("-2"))
+        .add("XRP", new Decimal("15"));
+    assertEquals(expectedDiff, w2.getJournalDiff());
+    assertEquals(w2.getDiffFrom(w1), w2.getJournalDiff());
+
+    w2.endJournal();
+    assertFalse(w2.hasJournal());
+  }
+
+  @Test
+  void testChangedAssets() {
+    Wallet w1 = createWalletWith(
+        "1", "BTC", "10000",
+        "20", "LTC", "100",
+        "2", "BNB", "10",
+        "5", "ETH", "1000"
+    );
+    Wallet w2 = new Wallet(w1);
+    assertEquals(List.of(), w2.getChangedAssets(w1));
+
+    w2.addAsset("BTC", new Decimal("0.5"), new Decimal("20000"));
+    w2.decreaseAsset("BNB", new Decimal("2"));
+    w2.addAsset("XRP", new Decimal("15"), new Decimal("3"));
+    // Changed and changed back - a new balance object, but the same balance
+    w2.addAsset("LTC", new Decimal("1"), new Decimal("100"));
+    w2.decreaseAsset("LTC", new Decimal("1"));
+    // The same amount, a different obtain price
+    w2.addAsset("ETH", new Decimal("5"), new Decimal("2000"));
+    w2.decreaseAsset("ETH", new Decimal("5"));
+    assertEquals(List.of("BTC", "BNB", "ETH", "XRP"), w2.getChangedAssets(w1));
+
+    Wallet w3 = createWalletWith(
+        "20", "LTC", "100",
+        "15", "XRP", "3"
+    );
+    assertEquals(List.of("XRP", "BTC", "BNB", "ETH"), w3.getChangedAssets(w1));
+  }
 }
@@ -0,0 +1,131 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import no.strazdins.data.Wallet;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.Checkpoint;
+import no.strazdins.process.Report;
+import no.strazdins.process.ReportGenerator;
+import no.strazdins.tool.TransactionExportGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BalanceLogReaderTest {
+  private static final String HOME_CURRENCY = TransactionExportGenerator.HOME_CURRENCY;
+
+  @TempDir
+  Path tempDir;
+
+  private Path transactionFile;
+  private Path extraFile;
+
+  @BeforeEach
+  void generateTransactions() throws IOException {
+    transactionFile = tempDir.resolve("input.csv");
+    extraFile = tempDir.resolve("extra.csv");
+    new TransactionExportGenerator(5).generate(transactionFile.toString(), extraFile.toString(),
+        2000);
+  }
+
+  @Test
+  void testReconstructBalances() throws IOException {
+    Report report = new ReportGenerator().createReport(transactionFile.toString(),
+        extraFile.toString(), HOME_CURRENCY);
+    String deltaLog = tempDir.resolve("balances-delta.csv").toString();
+    String fullLog = tempDir.resolve("balances.csv").toString();
+    ReportFileWriter.writeBalanceDeltaLogToFile(report, deltaLog, 50);
+    ReportFileWriter.writeBalanceLogToFile(report, fullLog);
+    assertTrue(Files.size(Path.of(deltaLog)) < Files.size(Path.of(fullLog)) / 2);
+
+    expectSameBalances(getWalletsByTime(report), new BalanceLogReader(deltaLog));
+  }
+
+  @Test
+  void testBeforeFirstRow() throws IOException {
+    Report report = new ReportGenerator().createReport(transactionFile.toString(),
+        extraFile.toString(), HOME_CURRENCY);
+    String deltaLog = tempDir.resolve("balances-delta.csv").toString();
+    ReportFileWriter.writeBalanceDeltaLogToFile(report, deltaLog, 10);
+    long firstTimestamp = report.iterator().next().getTimestamp();
+    Wallet wallet = new BalanceLogReader(deltaLog).getBalancesAt(firstTimestamp - 1);
+    assertEquals(0, wallet.getAssetCount());
+  }
+
+  @Test
+  void testWithoutIndex() throws IOException {
+    Report report = new ReportGenerator().createReport(transactionFile.toString(),
+        extraFile.toString(), HOME_CURRENCY);
+    String deltaLog = tempDir.resolve("balances-delta.csv").toString();
+    ReportFileWriter.writeBalanceDeltaLogToFile(report, deltaLog, 100);
+    Files.delete(Path.of(deltaLog + BalanceLogIndex.FILE_SUFFIX));
+    expectSameBalances(getWalletsByTime(report), new BalanceLogReader(deltaLog));
+  }
+
+  @Test
+  void testAppendFromCheckpoint() throws IOException {
+    List<String> lines = Files.readAllLines(transactionFile);
+    String deltaLog = tempDir.resolve("balances-delta.csv").toString();
+    String checkpointFile = tempDir.resolve("checkpoint.csv").toString();
+    Report lastReport = null;
+    for (int split : new int[]{500, 1200, lines.size()}) {
+      while (split < lines.size() && getTime(lines.get(split)).equals(
+          getTime(lines.get(split - 1)))) {
+        split++;
+      }
+      Path part = tempDir.resolve("part.csv");
+      Files.write(part, lines.subList(0, split));
+      Checkpoint start = CheckpointFile.read(checkpointFile);
+      lastReport = new ReportGenerator().createReportFromCheckpoint(part.toString(),
+          extraFile.toString(), HOME_CURRENCY, start);
+      Checkpoint end = lastReport.getCheckpoint();
+      long position = ReportFileWriter.appendBalanceDeltaLogToFile(lastReport, deltaLog,
+          start.balanceLogPosition(), end.resumeTime(), 30);
+      CheckpointFile.write(end.withLogPositions(-1, position), checkpointFile);
+    }
+    Report fullReport = new ReportGenerator().createReport(transactionFile.toString(),
+        extraFile.toString(), HOME_CURRENCY);
+    expectSameBalances(getWalletsByTime(fullReport), new BalanceLogReader(deltaLog));
+  }
+
+  private static String getTime(String row) {
+    return row.split(",")[1];
+  }
+
+  /**
+   * Get the wallet after the last transaction at each time moment.
+   */
+  private static Map<Long, Wallet> getWalletsByTime(Report report) {
+    Map<Long, Wallet> wallets = new LinkedHashMap<>();
+    for (WalletSnapshot snapshot : report) {
+      wallets.put(snapshot.getTimestamp(), snapshot.getWallet());
+    }
+    return wallets;
+  }
+
+  private static void expectSameBalances(Map<Long, Wallet> expectedWallets,
+                                         BalanceLogReader reader) throws IOException {
+    List<Long> timestamps = new ArrayList<>(expectedWallets.keySet());
+    assertTrue(timestamps.size() > 100);
+    for (long timestamp : timestamps) {
+      Wallet expected = expectedWallets.get(timestamp);
+      Wallet actual = reader.getBalancesAt(timestamp);
+      assertEquals(expected.getAssetCount(), actual.getAssetCount(), "Time " + timestamp);
+      for (String asset : expected) {
+        assertEquals(expected.getAssetAmount(asset).getNiceString(),
+            actual.getAssetAmount(asset).getNiceString(), asset + " at " + timestamp);
+        assertEquals(expected.getAvgObtainPrice(asset).getNiceString(),
+            actual.getAvgObtainPrice(asset).getNiceString(), asset + " at " + timestamp);
+      }
+    }
+  }
+}
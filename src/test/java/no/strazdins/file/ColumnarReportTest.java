@@ -0,0 +1,163 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.Wallet;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.Report;
+import no.strazdins.process.ReportGenerator;
+import no.strazdins.tool.TransactionExportGenerator;
+import no.strazdins.transaction.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ColumnarReportTest {
+  @TempDir
+  Path tempDir;
+
+  private Report report;
+  private String reportFile;
+
+  @BeforeEach
+  void createReport() throws IOException {
+    Path transactionFile = tempDir.resolve("input.csv");
+    Path extraFile = tempDir.resolve("extra.csv");
+    new TransactionExportGenerator(7).generate(transactionFile.toString(), extraFile.toString(),
+        2000);
+    report = new ReportGenerator().createReport(transactionFile.toString(), extraFile.toString(),
+        TransactionExportGenerator.HOME_CURRENCY);
+    reportFile = tempDir.resolve("report.pnlc").toString();
+    ColumnarReportWriter.writeToFile(report, reportFile);
+  }
+
+  @Test
+  void testAllRowsStored() throws IOException {
+    expectAllRows(new ColumnarReportReader(reportFile));
+  }
+
+  @Test
+  void testLookupByTime() throws IOException {
+    expectLookups(new ColumnarReportReader(reportFile));
+  }
+
+  @Test
+  void testKeyframeIntervals() throws IOException {
+    long previousSize = Long.MAX_VALUE;
+    for (int interval : new int[]{1, 2, 13, 100}) {
+      String file = tempDir.resolve("report-" + interval + ".pnlc").toString();
+      ColumnarReportWriter.writeToFile(report, file, interval);
+      ColumnarReportReader reader = new ColumnarReportReader(file);
+      expectAllRows(reader);
+      expectLookups(reader);
+      // Fewer keyframes, fewer wallet entries
+      long size = Files.size(Path.of(file));
+      assertTrue(size < previousSize);
+      previousSize = size;
+    }
+    assertThrows(IOException.class, () -> ColumnarReportWriter.writeToFile(report,
+        tempDir.resolve("invalid.pnlc").toString(), 0));
+  }
+
+  private void expectAllRows(ColumnarReportReader reader) {
+    int row = 0;
+    for (WalletSnapshot snapshot : report) {
+      Transaction t = snapshot.getTransaction();
+      assertEquals(snapshot.getTimestamp(), reader.getTimestamp(row));
+      assertEquals(t.getType(), reader.getTransactionType(row));
+      assertEquals(t.getBaseCurrency(), reader.getAsset(row));
+      expectEqual(t.getBaseCurrencyAmount(), reader.getAmount(row));
+      expectEqual(t.getAvgPriceInUsdt(), reader.getPrice(row));
+      expectEqual(t.getPnl(), reader.getPnl(row));
+      expectEqual(snapshot.getPnl(), reader.getRunningPnl(row));
+      expectEqualWallets(snapshot.getWallet(), reader.getWallet(row));
+      row++;
+    }
+    assertTrue(row > 100);
+    assertEquals(row, reader.getRowCount());
+  }
+
+  private void expectLookups(ColumnarReportReader reader) {
+    WalletSnapshot first = report.iterator().next();
+    assertEquals(-1, reader.findRow(first.getTimestamp() - 1));
+    assertEquals(0, reader.getBalancesAt(first.getTimestamp() - 1).getAssetCount());
+    assertEquals(Decimal.ZERO, reader.getBalanceAt("USDT", first.getTimestamp() - 1));
+
+    WalletSnapshot previous = null;
+    for (WalletSnapshot snapshot : report) {
+      if (previous != null && previous.getTimestamp() != snapshot.getTimestamp()) {
+        // The wallet after the last transaction at that time
+        expectEqualWallets(previous.getWallet(),
+            reader.getBalancesAt(snapshot.getTimestamp() - 1));
+        for (String asset : previous.getWallet()) {
+          expectEqual(previous.getWallet().getAssetAmount(asset),
+              reader.getBalanceAt(asset, snapshot.getTimestamp() - 1));
+        }
+      }
+      previous = snapshot;
+    }
+    assertEquals(reader.getRowCount() - 1, reader.findRow(Long.MAX_VALUE));
+    assertEquals(Decimal.ZERO, reader.getBalanceAt("UNKNOWN", Long.MAX_VALUE));
+  }
+
+  @Test
+  void testInvalidFile() throws IOException {
+    Path file = tempDir.resolve("invalid.pnlc");
+    Files.writeString(file, "Unix timestamp,UTC time");
+    assertThrows(IOException.class, () -> new ColumnarReportReader(file.toString()));
+    byte[] content = Files.readAllBytes(Path.of(reportFile));
+    Files.write(file, Arrays.copyOf(content, content.length - 4));
+    assertThrows(IOException.class, () -> new ColumnarReportReader(file.toString()));
+  }
+
+  @Test
+  void testRemovedAssets() throws IOException {
+    // BNB leaves the wallet in a delta row
+    Path transactionFile = tempDir.resolve("removed.csv");
+    Files.writeString(transactionFile, String.join("\n",
+        "User_ID,UTC_Time,Account,Operation,Coin,Change,Remark",
+        "1,2022-01-01 10:00:00,Spot,Deposit,USDT,1000,\"\"",
+        "1,2022-01-02 10:00:00,Spot,Transaction Buy,BNB,2,\"\"",
+        "1,2022-01-02 10:00:00,Spot,Transaction Spend,USDT,-800,\"\"",
+        "1,2022-01-03 10:00:00,Spot,Transaction Sold,BNB,-2,\"\"",
+        "1,2022-01-03 10:00:00,Spot,Transaction Revenue,USDT,900,\"\"",
+        "1,2022-01-04 10:00:00,Spot,Transaction Buy,BNB,1,\"\"",
+        "1,2022-01-04 10:00:00,Spot,Transaction Spend,USDT,-500,\"\"",
+        ""));
+    Path extraFile = tempDir.resolve("removed-extra.csv");
+    Files.writeString(extraFile,
+        "1672531199000,2022-12-31 23:59:59,ASSET_PRICE,USDT,1\n");
+    Report removedReport = new ReportGenerator().createReport(transactionFile.toString(),
+        extraFile.toString(), "USDT");
+    String file = tempDir.resolve("removed.pnlc").toString();
+    ColumnarReportWriter.writeToFile(removedReport, file);
+    ColumnarReportReader reader = new ColumnarReportReader(file);
+    assertEquals(4, reader.getRowCount());
+    assertEquals(2, reader.getWallet(1).getAssetCount());
+    assertEquals(1, reader.getWallet(2).getAssetCount());
+    assertFalse(reader.getWallet(2).containsAsset("BNB"));
+    assertEquals(Decimal.ZERO, reader.getBalanceAt("BNB", reader.getTimestamp(2)));
+    expectEqual(new Decimal("1"), reader.getWallet(3).getAssetAmount("BNB"));
+    expectEqual(new Decimal("600"), reader.getBalanceAt("USDT", Long.MAX_VALUE));
+  }
+
+  private static void expectEqual(Decimal expected, Decimal actual) {
+    assertEquals(expected.getNiceString(), actual.getNiceString());
+  }
+
+  private static void expectEqualWallets(Wallet expected, Wallet actual) {
+    assertEquals(expected.getAssetCount(), actual.getAssetCount());
+    for (String asset : expected) {
+      expectEqual(expected.getAssetAmount(asset), actual.getAssetAmount(asset));
+      expectEqual(expected.getAvgObtainPrice(asset), actual.getAvgObtainPrice(asset));
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConcurrentFileWriterTest {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testFilesWrittenConcurrently() throws IOException {
+    // Both jobs wait for each other, would time out when run one after another
+    CountDownLatch started = new CountDownLatch(2);
+    ConcurrentFileWriter writer = new ConcurrentFileWriter(2);
+    for (String fileName : new String[]{"a.csv", "b.csv"}) {
+      Path file = tempDir.resolve(fileName);
+      writer.add(file.toString(), () -> {
+        started.countDown();
+        awaitLatch(started);
+        Files.writeString(file, fileName);
+      });
+    }
+    writer.writeAll();
+    assertEquals("a.csv", Files.readString(tempDir.resolve("a.csv")));
+    assertEquals("b.csv", Files.readString(tempDir.resolve("b.csv")));
+  }
+
+  @Test
+  void testSingleThreadKeepsOrder() throws IOException {
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    ConcurrentFileWriter writer = new ConcurrentFileWriter(1);
+    for (String fileName : new String[]{"c.csv", "a.csv", "b.csv"}) {
+      writer.add(fileName, () -> order.add(fileName));
+    }
+    writer.writeAll();
+    assertEquals(List.of("c.csv", "a.csv", "b.csv"), order);
+  }
+
+  @Test
+  void testPrerequisiteFinishesFirst() throws IOException {
+    Path first = tempDir.resolve("first.csv");
+    Path second = tempDir.resolve("second.csv");
+    ConcurrentFileWriter writer = new ConcurrentFileWriter(4);
+    writer.add(first.toString(), () -> {
+      sleep();
+      Files.writeString(first, "1");
+    });
+    writer.addAfter(second.toString(), first.toString(),
+        () -> Files.writeString(second, Files.readString(first) + "2"));
+    writer.writeAll();
+    assertEquals("12", Files.readString(second));
+  }
+
+  @Test
+  void testFailuresReportedPerFile() {
+    List<String> written = Collections.synchronizedList(new ArrayList<>());
+    ConcurrentFileWriter writer = new ConcurrentFileWriter(4);
+    writer.add("ok.csv", () -> written.add("ok.csv"));
+    writer.add("broken.csv", () -> {
+      throw new IOException("Disk full");
+    });
+    writer.addAfter("dependent.csv", "broken.csv", () -> written.add("dependent.csv"));
+    writer.add("invalid.csv", () -> {
+      throw new IllegalStateException("Invalid data");
+    });
+    IOException e = assertThrows(IOException.class, writer::writeAll);
+    assertEquals("Failed to write files: broken.csv, dependent.csv, invalid.csv",
+        e.getMessage());
+    assertEquals(List.of("ok.csv"), written);
+  }
+
+  @Test
+  void testInvalidJobs() {
+    ConcurrentFileWriter writer = new ConcurrentFileWriter(2);
+    writer.add("a.csv", () -> {
+    });
+    assertThrows(IllegalArgumentException.class, () -> writer.add("a.csv", () -> {
+    }));
+    assertThrows(IllegalArgumentException.class, () -> writer.addAfter("b.csv", "c.csv", () -> {
+    }));
+  }
+
+  private static void awaitLatch(CountDownLatch latch) throws IOException {
+    try {
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted");
+    }
+  }
+
+  private static void sleep() throws IOException {
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted");
+    }
+  }
+}
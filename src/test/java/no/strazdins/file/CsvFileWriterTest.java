@@ -0,0 +1,118 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvFileWriterTest {
+  private static final String[] HEADER = {"Time", "Asset", "Amount"};
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testDecimalCommaOnlyInNumericCells() throws IOException {
+    Path file = tempDir.resolve("comma.csv");
+    CsvFileWriter writer = new CsvFileWriter(file.toString(), HEADER, -1, true);
+    writer.writeRow(new String[]{"2022-01-01 10:00:00", "LD.ETH", "-1.25"});
+    writer.writeCell("12.5.1");
+    writer.writeCell("0.1|0.9");
+    writer.writeCell("3.");
+    writer.endRow();
+    writer.close();
+    assertEquals(List.of("Time;Asset;Amount", "2022-01-01 10:00:00;LD.ETH;-1,25",
+        "12.5.1;0.1|0.9;3,"), Files.readAllLines(file));
+  }
+
+  @Test
+  void testDecimalPoint() throws IOException {
+    Path file = tempDir.resolve("point.csv");
+    CsvFileWriter writer = new CsvFileWriter(file.toString(), HEADER, -1, false);
+    writer.writeCell(1640995200000L);
+    writer.writeCell("BTC");
+    writer.writeCell("0.001");
+    writer.endRow();
+    writer.close();
+    assertEquals(List.of("Time,Asset,Amount", "1640995200000,BTC,0.001"),
+        Files.readAllLines(file));
+  }
+
+  @Test
+  void testLongCells() throws IOException {
+    Path file = tempDir.resolve("long.csv");
+    CsvFileWriter writer = new CsvFileWriter(file.toString(), null, -1, false);
+    long[] values = {0, 7, -7, 10, -100, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long value : values) {
+      writer.writeCell(value);
+    }
+    writer.endRow();
+    writer.close();
+    assertEquals(List.of("0,7,-7,10,-100,9223372036854775807,-9223372036854775808"),
+        Files.readAllLines(file));
+  }
+
+  @Test
+  void testRowsLargerThanBuffer() throws IOException {
+    Path file = tempDir.resolve("large.csv");
+    String longCell = "1.5".repeat(50_000);
+    CsvFileWriter writer = new CsvFileWriter(file.toString(), null, -1, false);
+    for (int i = 0; i < 1000; ++i) {
+      writer.writeCell(i);
+      writer.writeCell(longCell.substring(0, i * 100));
+      writer.endRow();
+    }
+    writer.close();
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(1000, lines.size());
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(i + "," + longCell.substring(0, i * 100), lines.get(i));
+    }
+  }
+
+  @Test
+  void testColumnCountChecked() throws IOException {
+    Path file = tempDir.resolve("columns.csv");
+    CsvFileWriter writer = new CsvFileWriter(file.toString(), HEADER, -1, false);
+    assertThrows(IllegalArgumentException.class,
+        () -> writer.writeRow(new String[]{"1", "BTC"}));
+    writer.writeCell("1");
+    assertThrows(IllegalArgumentException.class, writer::endRow);
+    writer.close();
+  }
+
+  @Test
+  void testAppendAtPosition() throws IOException {
+    Path file = tempDir.resolve("append.csv");
+    CsvFileWriter writer = new CsvFileWriter(file.toString(), HEADER, -1, false);
+    writer.writeRow(new String[]{"1", "BTC", "0.5"});
+    long position = writer.getPosition();
+    writer.writeRow(new String[]{"2", "ETH", "1"});
+    writer.close();
+
+    writer = new CsvFileWriter(file.toString(), HEADER, position, false);
+    writer.writeRow(new String[]{"3", "BNB", "2"});
+    writer.close();
+    assertEquals(List.of("Time,Asset,Amount", "1,BTC,0.5", "3,BNB,2"), Files.readAllLines(file));
+  }
+
+  @Test
+  void testDecimalNumberDetection() {
+    assertTrue(CsvFileWriter.isDecimalNumber("0"));
+    assertTrue(CsvFileWriter.isDecimalNumber("-12.345"));
+    assertTrue(CsvFileWriter.isDecimalNumber(".5"));
+    assertFalse(CsvFileWriter.isDecimalNumber(""));
+    assertFalse(CsvFileWriter.isDecimalNumber("-"));
+    assertFalse(CsvFileWriter.isDecimalNumber("."));
+    assertFalse(CsvFileWriter.isDecimalNumber("1.2.3"));
+    assertFalse(CsvFileWriter.isDecimalNumber("1e5"));
+    assertFalse(CsvFileWriter.isDecimalNumber("BTC"));
+  }
+}
@@ -0,0 +1,43 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedColumnTest {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testValuesAcrossWindows() throws IOException {
+    Path file = tempDir.resolve("columns.bin");
+    int count = 1000;
+    long intOffset = 8 + count * 8L;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      FileChannel.MapMode mode = FileChannel.MapMode.READ_WRITE;
+      // Small windows: each column is split in many mappings, the last one partial
+      MappedColumn longs = new MappedColumn(channel, mode, 8, count, Long.BYTES, 64);
+      MappedColumn ints = new MappedColumn(channel, mode, intOffset, count, Integer.BYTES, 16);
+      for (int i = 0; i < count; ++i) {
+        longs.putLong(i, Long.MIN_VALUE + i * 3L);
+        ints.putInt(i, -i);
+      }
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      assertEquals(intOffset + count * 4L, channel.size());
+      FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+      MappedColumn longs = new MappedColumn(channel, mode, 8, count, Long.BYTES, 128);
+      MappedColumn ints = ColumnarReportLayout.mapInts(channel, mode, intOffset, count);
+      for (int i = count - 1; i >= 0; --i) {
+        assertEquals(Long.MIN_VALUE + i * 3L, longs.getLong(i));
+        assertEquals(-i, ints.getInt(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedCsvFileParserTest {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testSameAsCsvFileParser() throws IOException {
+    String file = writeFile("User_ID,UTC_Time,Account,Operation,Coin,Change,Remark\n"
+        + "123,2022-03-01 10:00:00,Spot,Deposit,USDT,1000,\"\"\n"
+        + "#123,2022-03-01 10:00:00,Spot,Deposit,USDT,1000,\"\"\n"
+        + "123,2022-03-02 10:00:00,Spot,Transaction Buy,BTC,0.01,\"\"\r\n"
+        + "\n"
+        + "123,2022-03-02 10:00:00,Spot,Transaction Spend,USDT,-400,\"\"");
+    List<String[]> expected = readAll(new CsvFileParser(file));
+    assertEquals(5, expected.size());
+    expectRows(expected, readAll(new MappedCsvFileParser(file)));
+  }
+
+  @Test
+  void testQuotedCells() throws IOException {
+    String file = writeFile("a,\"b,c\",\"say \"\"hi\"\"\",\"\",d\nx,,y,\n");
+    List<String[]> rows = readAll(new MappedCsvFileParser(file));
+    assertEquals(2, rows.size());
+    assertArrayEquals(new String[] {"a", "b,c", "say \"hi\"", "", "d"}, rows.get(0));
+    assertArrayEquals(new String[] {"x", "", "y", ""}, rows.get(1));
+    expectRows(rows, readAll(new CsvFileParser(file)));
+  }
+
+  @Test
+  void testSmallWindow() throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      content.append(i).append(",\"asset ").append(i % 7).append("\",").append(i * 3).append('\n');
+    }
+    String file = writeFile(content.toString());
+    List<String[]> expected = readAll(new MappedCsvFileParser(file));
+    assertEquals(100, expected.size());
+    expectRows(expected, readAll(new MappedCsvFileParser(file, 20)));
+  }
+
+  @Test
+  void testRowLongerThanWindow() throws IOException {
+    String file = writeFile("short\nthis row is longer than the window\n");
+    try (MappedCsvFileParser parser = new MappedCsvFileParser(file, 16)) {
+      assertEquals("short", parser.readNextCsvRow().get(0));
+      assertThrows(IOException.class, parser::readNextCsvRow);
+    }
+  }
+
+  @Test
+  void testPooledValues() throws IOException {
+    String file = writeFile("BTC,1\nBTC,2\n");
+    try (MappedCsvFileParser parser = new MappedCsvFileParser(file)) {
+      String first = parser.readNextCsvRow().getPooled(0);
+      String second = parser.readNextCsvRow().getPooled(0);
+      assertEquals("BTC", first);
+      assertSame(first, second);
+      assertFalse(parser.hasMoreRows());
+      assertNull(parser.readNextCsvRow());
+    }
+  }
+
+  @Test
+  void testEmptyFile() throws IOException {
+    String file = writeFile("");
+    try (MappedCsvFileParser parser = new MappedCsvFileParser(file)) {
+      assertFalse(parser.hasMoreRows());
+    }
+  }
+
+  private String writeFile(String content) throws IOException {
+    Path file = tempDir.resolve("test.csv");
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+    return file.toString();
+  }
+
+  private static List<String[]> readAll(CsvRowReader parser) throws IOException {
+    List<String[]> rows = new ArrayList<>();
+    try (parser) {
+      while (parser.hasMoreRows()) {
+        rows.add(parser.readNextCsvRow().toArray());
+      }
+    }
+    return rows;
+  }
+
+  private static void expectRows(List<String[]> expected, List<String[]> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertArrayEquals(expected.get(i), actual.get(i), "Row " + i);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package no.strazdins.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import no.strazdins.data.RawAccountChange;
+import no.strazdins.tool.TimeConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionFileReaderTest {
+  private static final String HEADER = "User_ID,UTC_Time,Account,Operation,Coin,Change,Remark";
+  private static final long START_TIME = 1640995200000L;
+  private static final int ROW_COUNT = 2000;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testParallelSameAsSequential() throws IOException {
+    List<String> rows = createRows();
+    String file = writeFile(rows);
+    List<RawAccountChange> expected = TransactionFileReader.readAccountChanges(file);
+    assertEquals(ROW_COUNT, expected.size());
+    for (int threads = 2; threads <= 5; ++threads) {
+      assertEquals(expected, readInParallel(file, threads));
+    }
+  }
+
+  @Test
+  void testQuotedCellsSameInAllReaders() throws IOException {
+    List<String> rows = createRows();
+    for (int i = 0; i < ROW_COUNT; i += 10) {
+      rows.set(i, rows.get(i).replace(",\"\"", ",\"Remark, with \"\"quotes\"\"\""));
+    }
+    rows.set(1, rows.get(1).replace(",\"\"", ","));
+    String file = writeFile(rows);
+    List<RawAccountChange> expected = TransactionFileReader.readAccountChanges(file);
+    assertEquals(ROW_COUNT, expected.size());
+    assertTrue(expected.get(0).toString().contains("remark='Remark, with \"quotes\"'"));
+    assertTrue(expected.get(1).toString().contains("remark=''"));
+    assertEquals(expected, readInParallel(file, 3));
+    System.setProperty(TransactionFileReader.MAPPED_PARSER_PROPERTY, "true");
+    try {
+      assertEquals(expected, TransactionFileReader.readAccountChanges(file));
+    } finally {
+      System.clearProperty(TransactionFileReader.MAPPED_PARSER_PROPERTY);
+    }
+  }
+
+  @Test
+  void testParallelReportsFirstError() throws IOException {
+    List<String> rows = createRows();
+    // A decreasing timestamp, and an invalid row later in the file
+    rows.set(700, createRow(1, "Deposit", "USDT", "1"));
+    rows.set(1500, "invalid row");
+    expectSameError(rows);
+
+    rows = createRows();
+    rows.set(1500, "invalid row");
+    expectSameError(rows);
+
+    // Decreasing timestamp at different positions, some of them on chunk boundaries
+    for (int i = 4; i < ROW_COUNT; i += 97) {
+      rows = createRows();
+      rows.set(i, createRow(0, "Deposit", "USDT", "1"));
+      expectSameError(rows);
+    }
+  }
+
+  private void expectSameError(List<String> rows) throws IOException {
+    String file = writeFile(rows);
+    IOException expected = assertThrows(IOException.class,
+        () -> TransactionFileReader.readAccountChanges(file));
+    IOException actual = assertThrows(IOException.class, () -> readInParallel(file, 4));
+    assertEquals(expected.getMessage(), actual.getMessage());
+  }
+
+  private static List<RawAccountChange> readInParallel(String file, int threads)
+      throws IOException {
+    List<RawAccountChange> changes = new ArrayList<>();
+    TransactionFileReader.readAccountChanges(file, threads, 1000, changes::add);
+    return changes;
+  }
+
+  private static List<String> createRows() {
+    List<String> rows = new ArrayList<>();
+    for (int i = 0; i < ROW_COUNT; ++i) {
+      // Several changes share the same timestamp
+      int second = i / 3 * 60;
+      rows.add(switch (i % 3) {
+        case 0 -> createRow(second, "Transaction Buy", "BTC", "0.001");
+        case 1 -> createRow(second, "Transaction Spend", "USDT", "-" + (i % 50 + 1));
+        default -> createRow(second, "Transaction Fee", "BNB", "-0.0001");
+      });
+    }
+    return rows;
+  }
+
+  private static String createRow(int seconds, String operation, String asset, String amount) {
+    String time = TimeConverter.utcTimeToString(START_TIME + seconds * 1000L);
+    return "123," + time + ",Spot," + operation + "," + asset + "," + amount + ",\"\"";
+  }
+
+  private String writeFile(List<String> rows) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    lines.addAll(rows);
+    Path file = tempDir.resolve("transactions.csv");
+    Files.write(file, lines);
+    return file.toString();
+  }
+}
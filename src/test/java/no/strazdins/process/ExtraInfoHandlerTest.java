@@ -3,13 +3,23 @@ package no.strazdins.process;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import no.strazdins.data.ExtraInfo;
+import no.strazdins.data.ExtraInfoEntry;
+import no.strazdins.tool.TimeConverter;
 import no.strazdins.transaction.Transaction;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ExtraInfoHandlerTest {
+  @TempDir
+  Path tempDir;
+
   @Test
   void testTransactionYears() {
     List<Transaction> transactions = new LinkedList<>();
@@ -22,4 +32,33 @@ class ExtraInfoHandlerTest {
     assertTrue(years.contains(2022));
     assertTrue(years.contains(2023));
   }
+
+  @Test
+  void testPeriodEndExchangeRates() throws IOException {
+    String extraFile = Files.writeString(tempDir.resolve("extra.csv"), "").toString();
+    List<Transaction> transactions = List.of(
+        new Transaction(TimeConverter.stringToUtcTimestamp("2022-01-10 10:00:00")),
+        new Transaction(TimeConverter.stringToUtcTimestamp("2022-12-10 10:00:00"))
+    );
+    ExtraInfo yearEndInfo = new ExtraInfoHandler(extraFile, "NOK")
+        .detectMissingInfo(transactions);
+    assertEquals(List.of("2022-12-31 23:59:59"), getTimes(yearEndInfo));
+
+    System.setProperty("pnl.periodReports", "true");
+    try {
+      ExtraInfo periodEndInfo = new ExtraInfoHandler(extraFile, "NOK")
+          .detectMissingInfo(transactions);
+      assertEquals(List.of("2022-01-31 23:59:59", "2022-03-31 23:59:59", "2022-12-31 23:59:59"),
+          getTimes(periodEndInfo));
+    } finally {
+      System.clearProperty("pnl.periodReports");
+    }
+  }
+
+  private static List<String> getTimes(ExtraInfo extraInfo) {
+    return extraInfo.getAllEntries().stream()
+        .map(ExtraInfoEntry::utcTimestamp)
+        .map(TimeConverter::utcTimeToString)
+        .toList();
+  }
 }
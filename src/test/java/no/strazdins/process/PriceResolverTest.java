@@ -0,0 +1,93 @@
+package no.strazdins.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import no.strazdins.data.Decimal;
+import no.strazdins.process.PriceResolver.PriceRequest;
+import no.strazdins.tool.BinanceApiClient;
+import no.strazdins.tool.PriceCache;
+import no.strazdins.tool.RateLimiter;
+import no.strazdins.tool.TimeConverter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PriceResolverTest {
+  private static final long DAY_MS = 24 * 3600 * 1000L;
+
+  private HttpServer server;
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/api/v3/klines", exchange -> {
+      requestCount.incrementAndGet();
+      String query = exchange.getRequestURI().getQuery();
+      long startTime = Long.parseLong(query.substring(query.indexOf("startTime=") + 10));
+      String symbol = query.substring(query.indexOf("symbol=") + 7, query.indexOf('&'));
+      byte[] response = createCandleResponse(symbol, startTime).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("x-mbx-used-weight-1m", "10");
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(response);
+      }
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  /**
+   * Create 400 daily candles, the close price is symbol length + day number.
+   */
+  private static String createCandleResponse(String symbol, long startTime) {
+    List<String> candles = new ArrayList<>();
+    for (int i = 0; i < 400; ++i) {
+      long openTime = startTime + i * DAY_MS;
+      String close = (symbol.length() * 100000L + openTime / DAY_MS) + ".0";
+      candles.add("[" + openTime + ",\"1\",\"2\",\"0.5\",\"" + close + "\",\"100\","
+          + (openTime + DAY_MS - 1) + ",\"1000\",10,\"50\",\"500\",\"0\"]");
+    }
+    return "[" + String.join(",", candles) + "]";
+  }
+
+  private static Decimal expectedPrice(String asset, long timestamp) {
+    String symbol = asset + "USDC";
+    return new Decimal(symbol.length() * 100000L + timestamp / DAY_MS + ".0");
+  }
+
+  @Test
+  void testConcurrentFetch() {
+    String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/api/v3";
+    BinanceApiClient client = new BinanceApiClient(baseUrl, new RateLimiter(100000),
+        new PriceCache());
+    List<PriceRequest> requests = new ArrayList<>();
+    String[] assets = {"BTC", "ETH", "LINK", "DOGE", "AVAX", "XRP"};
+    for (int year = 2021; year >= 2020; --year) {
+      for (String asset : assets) {
+        requests.add(new PriceRequest(asset, TimeConverter.getYearEndTimestamp(year)));
+      }
+    }
+
+    Map<PriceRequest, Decimal> prices = new PriceResolver(client, 4).fetchPrices(requests);
+    assertEquals(requests.size(), prices.size());
+    for (PriceRequest request : requests) {
+      assertEquals(expectedPrice(request.asset(), request.timestamp()), prices.get(request));
+    }
+    // One bulk request per asset is enough, because earlier time moments are fetched first
+    assertEquals(assets.length, requestCount.get());
+  }
+}
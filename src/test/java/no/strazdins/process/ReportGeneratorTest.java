@@ -0,0 +1,327 @@
+package no.strazdins.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.file.CheckpointFile;
+import no.strazdins.file.FileWriteException;
+import no.strazdins.file.ReportFileWriter;
+import no.strazdins.tool.ReportPeriod;
+import no.strazdins.tool.TimeConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportGeneratorTest {
+  private static final String HEADER = "User_ID,UTC_Time,Account,Operation,Coin,Change,Remark";
+  private static final String[] TRANSACTION_ROWS = {
+      "2022-03-01 10:00:00,Spot,Deposit,USDT,1000",
+      "2022-03-02 10:00:00,Spot,Transaction Buy,BTC,0.01",
+      "2022-03-02 10:00:00,Spot,Transaction Spend,USDT,-400",
+      "2022-03-02 10:00:00,Spot,Transaction Fee,USDT,-0.4",
+      "2022-03-03 10:00:00,Spot,Transaction Sold,BTC,-0.005",
+      "2022-03-03 10:00:00,Spot,Transaction Revenue,USDT,210",
+      "2022-03-03 10:00:00,Spot,Transaction Fee,USDT,-0.21",
+      "2022-04-01 10:00:00,Spot,Deposit,ETH,2",
+      "2022-06-01 10:00:00,Spot,Auto-Invest Transaction,USDT,-20",
+      "2022-06-01 10:05:00,Spot,Auto-Invest Transaction,BTC,0.0005",
+      "2022-06-01 10:06:00,Spot,Auto-Invest Transaction,ETH,0.005",
+      "2022-06-02 12:00:00,Spot,Deposit,USDT,100",
+      "2022-06-08 10:00:00,Spot,Auto-Invest Transaction,USDT,-20",
+      "2022-06-08 10:05:00,Spot,Auto-Invest Transaction,BTC,0.0004",
+      "2022-06-08 10:06:00,Spot,Auto-Invest Transaction,ETH,0.006",
+      "2022-06-15 10:00:00,Spot,Auto-Invest Transaction,USDT,-30",
+      "2022-06-15 10:05:00,Spot,Auto-Invest Transaction,BTC,0.001",
+      "2022-06-20 12:00:00,Spot,Deposit,USDT,50",
+      "2022-06-22 10:00:00,Spot,Auto-Invest Transaction,USDT,-30",
+      "2022-06-22 10:05:00,Spot,Auto-Invest Transaction,BTC,0.0011",
+      "2023-02-01 10:00:00,Spot,Transaction Sold,ETH,-1",
+      "2023-02-01 10:00:00,Spot,Transaction Revenue,USDT,1500",
+      "2023-02-01 10:00:00,Spot,Transaction Fee,USDT,-1.5"
+  };
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testStreamingSameAsBatch() throws IOException {
+    String inputFile = writeTransactionFile(TRANSACTION_ROWS);
+    String extraFile = writeExtraInfoFile(createExtraInfoRows());
+
+    ReportGenerator generator = new ReportGenerator();
+    Report batchReport = generator.createReport(inputFile, extraFile, "NOK");
+    Report streamedReport = generator.createReportStreaming(inputFile, extraFile, "NOK");
+    expectSameSnapshots(batchReport, streamedReport);
+  }
+
+  @Test
+  void testStreamingDetectsMissingInfo() throws IOException {
+    String inputFile = writeTransactionFile(
+        "2022-03-01 10:00:00,Spot,Deposit,USDT,1000",
+        "2022-04-01 10:00:00,Spot,Deposit,ETH,2",
+        "2022-05-01 10:00:00,Spot,Deposit,BTC,1"
+    );
+    String extraFile = writeExtraInfoFile(yearEndRow(2022));
+    ReportGenerator generator = new ReportGenerator();
+    assertThrows(IOException.class,
+        () -> generator.createReportStreaming(inputFile, extraFile, "NOK"));
+  }
+
+  @Test
+  void testBoundedMemorySameAsBatch() throws IOException {
+    String inputFile = writeTransactionFile(TRANSACTION_ROWS);
+    String extraFile = writeExtraInfoFile(createExtraInfoRows());
+    ReportGenerator generator = new ReportGenerator();
+    Report batchReport = generator.createReport(inputFile, extraFile, "NOK");
+    String expectedTransactionLog = tempDir.resolve("expected-transactions.csv").toString();
+    String expectedBalanceLog = tempDir.resolve("expected-balances.csv").toString();
+    ReportFileWriter.writeTransactionLogToFile(batchReport, expectedTransactionLog);
+    ReportFileWriter.writeBalanceLogToFile(batchReport, expectedBalanceLog);
+
+    String transactionLog = tempDir.resolve("transactions.csv").toString();
+    String balanceLog = tempDir.resolve("balances.csv").toString();
+    List<WalletSnapshot> received = new ArrayList<>();
+    Report boundedReport = generator.createReportStreaming(inputFile, extraFile, "NOK", List.of(
+        ReportFileWriter.createTransactionLogSink(transactionLog),
+        ReportFileWriter.createBalanceLogSink(balanceLog),
+        new CollectingSink(received)));
+
+    assertEquals(Files.readAllLines(Path.of(expectedTransactionLog)),
+        Files.readAllLines(Path.of(transactionLog)));
+    assertEquals(Files.readAllLines(Path.of(expectedBalanceLog)),
+        Files.readAllLines(Path.of(balanceLog)));
+    Iterator<WalletSnapshot> receivedIterator = received.iterator();
+    for (WalletSnapshot expectedSnapshot : batchReport) {
+      WalletSnapshot receivedSnapshot = receivedIterator.next();
+      assertEquals(expectedSnapshot.getTransaction().toString(),
+          receivedSnapshot.getTransaction().toString());
+      assertEquals(expectedSnapshot.getWallet(), receivedSnapshot.getWallet());
+    }
+    assertFalse(receivedIterator.hasNext());
+    assertEquals(batchReport.createAnnualReports(), boundedReport.createAnnualReports());
+    assertThrows(IllegalStateException.class, boundedReport::iterator);
+  }
+
+  @Test
+  void testBoundedMemorySinkFailure() throws IOException {
+    String inputFile = writeTransactionFile(TRANSACTION_ROWS);
+    String extraFile = writeExtraInfoFile(createExtraInfoRows());
+    List<WalletSnapshot> received = new ArrayList<>();
+    CollectingSink collectingSink = new CollectingSink(received);
+    SnapshotSink failingSink = new SnapshotSink() {
+      @Override
+      public void accept(WalletSnapshot snapshot) throws IOException {
+        throw new IOException("Disk full");
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    ReportGenerator generator = new ReportGenerator();
+    IOException e = assertThrows(IOException.class, () -> generator.createReportStreaming(
+        inputFile, extraFile, "NOK", List.of(collectingSink, failingSink)));
+    assertEquals("Disk full", e.getMessage());
+    // A failure of the output, not of the input
+    assertInstanceOf(FileWriteException.class, e);
+    assertEquals(1, received.size());
+    assertTrue(collectingSink.closed);
+  }
+
+  /**
+   * A sink which collects the received snapshots in a list.
+   */
+  private static class CollectingSink implements SnapshotSink {
+    private final List<WalletSnapshot> snapshots;
+    private boolean closed = false;
+
+    CollectingSink(List<WalletSnapshot> snapshots) {
+      this.snapshots = snapshots;
+    }
+
+    @Override
+    public void accept(WalletSnapshot snapshot) {
+      snapshots.add(snapshot);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private void expectSameSnapshots(Report expected, Report actual) {
+    Iterator<WalletSnapshot> actualIterator = actual.iterator();
+    int count = 0;
+    for (WalletSnapshot expectedSnapshot : expected) {
+      WalletSnapshot actualSnapshot = actualIterator.next();
+      String transaction = expectedSnapshot.getTransaction().toString();
+      assertEquals(transaction, actualSnapshot.getTransaction().toString());
+      assertEquals(expectedSnapshot.getWallet(), actualSnapshot.getWallet(), transaction);
+      assertEquals(expectedSnapshot.getPnl(), actualSnapshot.getPnl(), transaction);
+      count++;
+    }
+    assertFalse(actualIterator.hasNext());
+    assertEquals(17, count);
+  }
+
+  @Test
+  void testContinueFromCheckpoint() throws IOException {
+    String extraFile = writeExtraInfoFile(createExtraInfoRows());
+    String inputFile = writeTransactionFile(TRANSACTION_ROWS);
+    ReportGenerator generator = new ReportGenerator();
+    Report fullReport = generator.createReport(inputFile, extraFile, "NOK");
+    String expectedTransactionLog = tempDir.resolve("expected-transactions.csv").toString();
+    String expectedBalanceLog = tempDir.resolve("expected-balances.csv").toString();
+    ReportFileWriter.writeTransactionLogToFile(fullReport, expectedTransactionLog);
+    ReportFileWriter.writeBalanceLogToFile(fullReport, expectedBalanceLog);
+    List<PeriodReport> expectedAnnualReports = fullReport.createAnnualReports();
+
+    for (int split = 1; split < TRANSACTION_ROWS.length; ++split) {
+      if (getRowTime(split) == getRowTime(split - 1)) {
+        continue; // An export never splits a transaction
+      }
+      String transactionLog = tempDir.resolve("transactions-" + split + ".csv").toString();
+      String balanceLog = tempDir.resolve("balances-" + split + ".csv").toString();
+      String checkpointFile = tempDir.resolve("checkpoint-" + split + ".csv").toString();
+      String[] firstRows = Arrays.copyOf(TRANSACTION_ROWS, split);
+      runFromCheckpoint(writeTransactionFile(firstRows), extraFile, checkpointFile,
+          transactionLog, balanceLog);
+      Report report = runFromCheckpoint(inputFile, extraFile, checkpointFile,
+          transactionLog, balanceLog);
+
+      assertEquals(Files.readAllLines(Path.of(expectedTransactionLog)),
+          Files.readAllLines(Path.of(transactionLog)), "Split at row " + split);
+      assertEquals(Files.readAllLines(Path.of(expectedBalanceLog)),
+          Files.readAllLines(Path.of(balanceLog)), "Split at row " + split);
+      assertEquals(expectedAnnualReports, report.createAnnualReports(), "Split at row " + split);
+    }
+  }
+
+  @Test
+  void testCheckpointRequiresPendingTransactions() throws IOException {
+    String extraFile = writeExtraInfoFile(createExtraInfoRows());
+    String checkpointFile = tempDir.resolve("checkpoint.csv").toString();
+    String transactionLog = tempDir.resolve("transactions-out.csv").toString();
+    String balanceLog = tempDir.resolve("balances-out.csv").toString();
+    // The checkpoint ends with a pending auto-invest round starting at row 18
+    runFromCheckpoint(writeTransactionFile(Arrays.copyOf(TRANSACTION_ROWS, 20)), extraFile,
+        checkpointFile, transactionLog, balanceLog);
+    Checkpoint checkpoint = CheckpointFile.read(checkpointFile);
+    assertEquals(getRowTime(18), checkpoint.resumeTime());
+
+    String[] laterRows = Arrays.copyOfRange(TRANSACTION_ROWS, 20, TRANSACTION_ROWS.length);
+    String laterInputFile = writeTransactionFile(laterRows);
+    ReportGenerator generator = new ReportGenerator();
+    assertThrows(IOException.class, () -> generator.createReportFromCheckpoint(
+        laterInputFile, extraFile, "NOK", checkpoint));
+  }
+
+  @Test
+  void testQuarterlyReports() throws IOException {
+    String inputFile = writeTransactionFile(TRANSACTION_ROWS);
+    List<String> extraRows = new ArrayList<>(List.of(createExtraInfoRows()));
+    extraRows.add(extraInfoRow("2022-03-31 23:59:59", "ASSET_PRICE", "NOK", "0.1"));
+    extraRows.add(extraInfoRow("2022-03-31 23:59:59", "ASSET_PRICE", "BTC", "45000"));
+    extraRows.add(extraInfoRow("2022-06-30 23:59:59", "ASSET_PRICE", "NOK", "0.1"));
+    extraRows.add(extraInfoRow("2022-06-30 23:59:59", "ASSET_PRICE", "BTC", "20000"));
+    extraRows.add(extraInfoRow("2022-06-30 23:59:59", "ASSET_PRICE", "ETH", "1000"));
+    extraRows.add(extraInfoRow("2023-03-31 23:59:59", "ASSET_PRICE", "NOK", "0.1"));
+    extraRows.add(extraInfoRow("2023-03-31 23:59:59", "ASSET_PRICE", "BTC", "28000"));
+    extraRows.add(extraInfoRow("2023-03-31 23:59:59", "ASSET_PRICE", "ETH", "1800"));
+    String extraFile = writeExtraInfoFile(extraRows.toArray(new String[0]));
+
+    ReportGenerator generator = new ReportGenerator();
+    Report batchReport = generator.createReport(inputFile, extraFile, "NOK");
+    List<PeriodReport> quarterlyReports = batchReport.createPeriodReports(ReportPeriod.QUARTER);
+    assertEquals(3, quarterlyReports.size());
+    assertEquals(TimeConverter.stringToUtcTimestamp("2022-03-31 23:59:59"),
+        quarterlyReports.get(0).timestamp());
+    assertEquals(TimeConverter.stringToUtcTimestamp("2022-06-30 23:59:59"),
+        quarterlyReports.get(1).timestamp());
+    assertEquals(TimeConverter.stringToUtcTimestamp("2023-03-31 23:59:59"),
+        quarterlyReports.get(2).timestamp());
+    // 809.39 USDT + 0.005 BTC
+    assertEquals("1034.39", quarterlyReports.get(0).walletValueUsd().getNiceString());
+    assertEquals(batchReport.createAnnualReports().get(1).pnlUsd(),
+        quarterlyReports.get(2).pnlUsd());
+
+    Report boundedReport = generator.createReportStreaming(inputFile, extraFile, "NOK",
+        List.of());
+    assertEquals(quarterlyReports, boundedReport.createPeriodReports(ReportPeriod.QUARTER));
+    // The month-end exchange rates are not provided
+    assertThrows(IllegalStateException.class,
+        () -> batchReport.createPeriodReports(ReportPeriod.MONTH));
+  }
+
+  private static Report runFromCheckpoint(String inputFile, String extraFile,
+                                          String checkpointFile, String transactionLog,
+                                          String balanceLog) throws IOException {
+    Checkpoint start = CheckpointFile.read(checkpointFile);
+    Report report = new ReportGenerator().createReportFromCheckpoint(inputFile, extraFile,
+        "NOK", start);
+    Checkpoint end = report.getCheckpoint();
+    long transactionLogPosition = ReportFileWriter.appendTransactionLogToFile(report,
+        transactionLog, start.transactionLogPosition(), end.resumeTime());
+    long balanceLogPosition = ReportFileWriter.appendBalanceLogToFile(report, balanceLog,
+        start.balanceLogPosition(), end.resumeTime());
+    CheckpointFile.write(end.withLogPositions(transactionLogPosition, balanceLogPosition),
+        checkpointFile);
+    return report;
+  }
+
+  private static long getRowTime(int rowIndex) {
+    String time = TRANSACTION_ROWS[rowIndex].substring(0, TRANSACTION_ROWS[rowIndex].indexOf(','));
+    return TimeConverter.stringToUtcTimestamp(time);
+  }
+
+  private String writeTransactionFile(String... rows) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    for (String row : rows) {
+      lines.add("1," + row + ",\"\"");
+    }
+    Path file = Files.createTempFile(tempDir, "input", ".csv");
+    Files.write(file, lines);
+    return file.toString();
+  }
+
+  private static String[] createExtraInfoRows() {
+    return new String[]{
+        extraInfoRow("2022-04-01 10:00:00", "ASSET_PRICE", "ETH", "3000"),
+        extraInfoRow("2022-06-01 10:00:00", "AUTO_INVEST_PROPORTIONS", "BTC|ETH", "0.5|0.5"),
+        extraInfoRow("2022-06-15 10:00:00", "AUTO_INVEST_PROPORTIONS", "BTC", "1"),
+        yearEndRow(2022),
+        extraInfoRow("2022-12-31 23:59:59", "ASSET_PRICE", "BTC", "16000"),
+        extraInfoRow("2022-12-31 23:59:59", "ASSET_PRICE", "ETH", "1200"),
+        yearEndRow(2023),
+        extraInfoRow("2023-12-31 23:59:59", "ASSET_PRICE", "BTC", "42000"),
+        extraInfoRow("2023-12-31 23:59:59", "ASSET_PRICE", "ETH", "2300")
+    };
+  }
+
+  private String writeExtraInfoFile(String... rows) throws IOException {
+    Path file = tempDir.resolve("extra.csv");
+    Files.write(file, List.of(rows));
+    return file.toString();
+  }
+
+  private static String extraInfoRow(String time, String type, String asset, String value) {
+    long timestamp = TimeConverter.stringToUtcTimestamp(time);
+    return timestamp + "," + time + "," + type + "," + asset + "," + value;
+  }
+
+  private static String yearEndRow(int year) {
+    return extraInfoRow(year + "-12-31 23:59:59", "ASSET_PRICE", "NOK", "0.1");
+  }
+}
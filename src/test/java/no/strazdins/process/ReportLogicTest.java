@@ -1,10 +1,16 @@
 package no.strazdins.process;
 
 import static no.strazdins.testtools.TestTools.createChanges;
+import static no.strazdins.testtools.TestTools.createSpotAccountChanges;
+import static no.strazdins.testtools.TestTools.expectNotSameSubscription;
+import static no.strazdins.testtools.TestTools.expectSameSubscription;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import no.strazdins.data.RawAccountChange;
+import no.strazdins.transaction.Transaction;
 import org.junit.jupiter.api.Test;
 
 class ReportLogicTest {
@@ -24,6 +30,36 @@ class ReportLogicTest {
     expectChangeAssets(changes, "USDT", "USDT", "USDT", "BTC", "USDT", "BTC");
   }
 
+  @Test
+  void testAutoInvestSpendAndAcquireWithSameTimestamp() {
+    List<RawAccountChange> changes = new LinkedList<>();
+    changes.addAll(createAutoInvestRound(1000, "-5"));
+    changes.addAll(createAutoInvestRound(2000, "-5"));
+    changes.addAll(createAutoInvestRound(3000, "-5"));
+    changes.addAll(createAutoInvestRound(4000, "-8"));
+    changes.addAll(createAutoInvestRound(5000, "-8"));
+    ReportLogic logic = new ReportLogic();
+    List<Transaction> transactions = logic.groupTransactionsByTimestamp(changes);
+    assertEquals(5, transactions.size());
+    // The coins of a round are compared at the next spend, after all its changes are grouped
+    expectSameSubscription(transactions.subList(0, 3));
+    expectNotSameSubscription(transactions.get(2), transactions.get(3));
+    expectSameSubscription(transactions.subList(3, 5));
+    assertEquals(Set.of("-8 USDT"), logic.getPreviousAutoInvestCoins());
+  }
+
+  /**
+   * Create the changes of one auto-invest round where the spend and the acquisitions have
+   * the same timestamp.
+   */
+  private static List<RawAccountChange> createAutoInvestRound(long timestamp, String spent) {
+    return createSpotAccountChanges(timestamp,
+        "Auto-Invest Transaction", spent, "USDT",
+        "Auto-Invest Transaction", "0.0001", "BTC",
+        "Auto-Invest Transaction", "0.002", "ETH"
+    );
+  }
+
   private void expectChangeAssets(List<RawAccountChange> changes, String... assets) {
     assertEquals(changes.size(), assets.length, "Expected " + assets.length + " changes");
     for (int i = 0; i < assets.length; ++i) {
@@ -0,0 +1,98 @@
+package no.strazdins.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import no.strazdins.data.Decimal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BinanceApiClientTest {
+  private static final long DAY_MS = 24 * 3600 * 1000L;
+  private static final long FIRST_DAY = 1672358400000L; // 2022-12-30 00:00:00
+
+  @TempDir
+  Path tempDir;
+
+  private HttpServer server;
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/api/v3/klines", exchange -> {
+      requestCount.incrementAndGet();
+      byte[] response = createCandleResponse().getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(response);
+      }
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  private static String createCandleResponse() {
+    StringBuilder json = new StringBuilder("[");
+    for (int day = 0; day < 3; ++day) {
+      long openTime = FIRST_DAY + day * DAY_MS;
+      long closeTime = openTime + DAY_MS - 1;
+      String close = "1" + day + "000.5";
+      if (day > 0) {
+        json.append(',');
+      }
+      json.append('[').append(openTime).append(",\"1\",\"2\",\"0.5\",\"").append(close)
+          .append("\",\"100\",").append(closeTime).append(",\"1000\",10,\"50\",\"500\",\"0\"]");
+    }
+    return json.append(']').toString();
+  }
+
+  private BinanceApiClient createClient(PriceCache cache) {
+    String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/api/v3";
+    return new BinanceApiClient(baseUrl, new RateLimiter(100000), cache);
+  }
+
+  @Test
+  void testBulkFetchFillsCache() throws IOException {
+    String cacheFile = tempDir.resolve("prices.csv").toString();
+    BinanceApiClient client = createClient(new PriceCache(cacheFile));
+    long yearEnd = TimeConverter.getYearEndTimestamp(2022);
+    assertEquals(new Decimal("11000.5"), client.getDailyClosePrice("BTC", yearEnd));
+    assertEquals(1, requestCount.get());
+    assertEquals(new Decimal("12000.5"), client.getDailyClosePrice("BTC", yearEnd + 1000));
+    assertEquals(new Decimal("10000.5"), client.getDailyClosePrice("BTC", FIRST_DAY));
+    assertEquals(1, requestCount.get());
+    assertTrue(Files.size(Path.of(cacheFile)) > 0);
+
+    // Another run uses the cache file, no requests necessary
+    BinanceApiClient secondClient = createClient(new PriceCache(cacheFile));
+    assertEquals(new Decimal("11000.5"), secondClient.getDailyClosePrice("BTC", yearEnd));
+    assertEquals(1, requestCount.get());
+
+    // A different symbol is not in the cache
+    assertEquals(new Decimal("11000.5"), secondClient.getDailyClosePrice("ETH", yearEnd));
+    assertEquals(2, requestCount.get());
+  }
+
+  @Test
+  void testMissingDay() {
+    BinanceApiClient client = createClient(new PriceCache());
+    assertEquals(Decimal.ZERO, client.getDailyClosePrice("BTC", FIRST_DAY + 10 * DAY_MS));
+    assertEquals(new Decimal("10000.5"), client.getDailyClosePrice("BTC", FIRST_DAY));
+    assertEquals(1, requestCount.get());
+  }
+}
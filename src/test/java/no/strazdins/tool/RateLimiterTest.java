@@ -0,0 +1,37 @@
+package no.strazdins.tool;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+  @Test
+  void testWaitWhenBucketEmpty() throws InterruptedException {
+    // 1000 weight per second
+    RateLimiter limiter = new RateLimiter(60000);
+    long start = System.nanoTime();
+    limiter.acquire(60000);
+    assertTrue(elapsedMs(start) < 50, "A full bucket must not block");
+    limiter.acquire(100);
+    assertTrue(elapsedMs(start) >= 90, "Must wait for the bucket to refill");
+  }
+
+  @Test
+  void testServerReportedWeight() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(60000);
+    limiter.updateUsedWeight(60000);
+    long start = System.nanoTime();
+    limiter.acquire(100);
+    assertTrue(elapsedMs(start) >= 90, "Must wait when the server reports all weight used");
+  }
+
+  @Test
+  void testInvalidWeight() {
+    assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0));
+  }
+
+  private static long elapsedMs(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+}
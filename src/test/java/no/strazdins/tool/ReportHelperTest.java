@@ -25,6 +25,18 @@ class ReportHelperTest {
     }
   }
 
+  @Test
+  void testQuarterEndFiltering() {
+    List<WalletSnapshot> snapshots = new LinkedList<>();
+    addSnapshots(snapshots, new String[]{"2021-12-10", "2022-01-05", "2022-03-31",
+        "2022-04-01", "2022-09-30", "2022-10-01", "2023-02-08"});
+    List<WalletSnapshot> expectedSnapshots = new LinkedList<>();
+    addSnapshots(expectedSnapshots, new String[]{"2021-12-10", "2022-03-31", "2022-04-01",
+        "2022-09-30", "2022-10-01", "2023-02-08"});
+    assertEquals(expectedSnapshots,
+        ReportHelper.filterPeriodEndSnapshots(snapshots, ReportPeriod.QUARTER));
+  }
+
   private void addSnapshots(List<WalletSnapshot> snapshots, String[] dates) {
     for (String date : dates) {
       snapshots.add(new WalletSnapshot(new Transaction(createTimestamp(date)), Decimal.ZERO));
@@ -0,0 +1,44 @@
+package no.strazdins.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ReportPeriodTest {
+  @Test
+  void testPeriodBounds() {
+    long time = TimeConverter.stringToUtcTimestamp("2023-05-17 10:20:30");
+    expectBounds(ReportPeriod.MONTH, time, "2023-05-01 00:00:00", "2023-05-31 23:59:59");
+    expectBounds(ReportPeriod.QUARTER, time, "2023-04-01 00:00:00", "2023-06-30 23:59:59");
+    expectBounds(ReportPeriod.YEAR, time, "2023-01-01 00:00:00", "2023-12-31 23:59:59");
+    long leapTime = TimeConverter.stringToUtcTimestamp("2024-02-29 23:59:59");
+    expectBounds(ReportPeriod.MONTH, leapTime, "2024-02-01 00:00:00", "2024-02-29 23:59:59");
+    expectBounds(ReportPeriod.QUARTER, leapTime, "2024-01-01 00:00:00", "2024-03-31 23:59:59");
+  }
+
+  @Test
+  void testConsecutiveIndices() {
+    for (ReportPeriod period : ReportPeriod.values()) {
+      int index = period.getIndex(TimeConverter.stringToUtcTimestamp("2022-12-31 23:59:59"));
+      long nextStart = period.getStartTimestamp(index + 1);
+      assertEquals(TimeConverter.stringToUtcTimestamp("2023-01-01 00:00:00"), nextStart);
+      assertEquals(index + 1, period.getIndex(nextStart));
+      assertEquals(index, period.getIndex(nextStart - 1));
+    }
+  }
+
+  @Test
+  void testYearEndSameAsTimeConverter() {
+    for (int year = 1970; year < 2200; ++year) {
+      int index = ReportPeriod.YEAR.getIndex(TimeConverter.getYearEndTimestamp(year));
+      assertEquals(TimeConverter.getYearEndTimestamp(year),
+          ReportPeriod.YEAR.getEndTimestamp(index));
+    }
+  }
+
+  private static void expectBounds(ReportPeriod period, long time, String start, String end) {
+    int index = period.getIndex(time);
+    assertEquals(start, TimeConverter.utcTimeToString(period.getStartTimestamp(index)));
+    assertEquals(end, TimeConverter.utcTimeToString(period.getEndTimestamp(index)));
+  }
+}
@@ -0,0 +1,123 @@
+package no.strazdins.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.process.Report;
+import no.strazdins.process.ReportGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RunMetricsTest {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testDisabled() {
+    RunMetrics metrics = RunMetrics.disabled();
+    assertFalse(metrics.isEnabled());
+    metrics.addStageTime(RunMetrics.Stage.READ, metrics.startTimer());
+    metrics.addStageItems(RunMetrics.Stage.READ, 5);
+    metrics.increment(RunMetrics.API_CALLS);
+    metrics.addWrittenFile("file.csv", 10);
+    Map<String, Object> summary = metrics.createSummary();
+    assertEquals(Map.of(), summary.get("counters"));
+    assertEquals(Map.of(), summary.get("stages"));
+    assertEquals(Map.of(), summary.get("files"));
+  }
+
+  @Test
+  void testStageTimes() {
+    RunMetrics metrics = new RunMetrics();
+    long startTime = metrics.startTimer();
+    metrics.addStageTime(RunMetrics.Stage.READ, startTime);
+    metrics.addStageItems(RunMetrics.Stage.READ, 5);
+    metrics.addStageTime(RunMetrics.Stage.READ, metrics.startTimer());
+    metrics.addStageItems(RunMetrics.Stage.READ, 2);
+    metrics.increment(RunMetrics.API_CALLS);
+    metrics.increment(RunMetrics.API_CALLS);
+    metrics.addWrittenFile("a.csv", 100);
+    metrics.addWrittenFile("b.csv", 20);
+    Map<String, Object> summary = metrics.createSummary();
+    Map<?, ?> stages = (Map<?, ?>) summary.get("stages");
+    assertEquals(7L, ((Map<?, ?>) stages.get("read")).get("items"));
+    assertEquals(120L, ((Map<?, ?>) stages.get("write")).get("items"));
+    assertFalse(stages.containsKey("process"));
+    assertEquals(Map.of(RunMetrics.API_CALLS, 2L), summary.get("counters"));
+    assertEquals(120L, summary.get("bytesWritten"));
+  }
+
+  @Test
+  void testSummaryJson() throws IOException {
+    RunMetrics metrics = new RunMetrics();
+    String fileName = "C:\\reports\\\"quoted\"\tname.csv";
+    metrics.addWrittenFile(fileName, 42);
+    metrics.addStageItems(RunMetrics.Stage.PRICES, 3);
+    Path summaryFile = tempDir.resolve("summary.json");
+    metrics.writeSummary(summaryFile.toString());
+
+    JsonObject summary = JsonParser.parseString(Files.readString(summaryFile))
+        .getAsJsonObject();
+    assertEquals(42, summary.getAsJsonObject("files").getAsJsonObject(fileName).get("bytes")
+        .getAsLong());
+    assertEquals(3, summary.getAsJsonObject("stages").getAsJsonObject("prices").get("items")
+        .getAsLong());
+    assertEquals(0, summary.getAsJsonObject("counters").size());
+    assertEquals(metrics.createSummary().get("startTime"), summary.get("startTime").getAsString());
+  }
+
+  @Test
+  void testReportRunSummary() throws IOException {
+    Path transactionFile = tempDir.resolve("input.csv");
+    Path extraFile = tempDir.resolve("extra.csv");
+    long rowCount = new TransactionExportGenerator(1).generate(transactionFile.toString(),
+        extraFile.toString(), 2000);
+    RunMetrics metrics = new RunMetrics();
+    RunMetrics streamingMetrics = new RunMetrics();
+    Report report = new ReportGenerator(null, metrics).createReport(transactionFile.toString(),
+        extraFile.toString(), TransactionExportGenerator.HOME_CURRENCY);
+    new ReportGenerator(null, streamingMetrics).createReportStreaming(transactionFile.toString(),
+        extraFile.toString(), TransactionExportGenerator.HOME_CURRENCY);
+    Path summaryFile = tempDir.resolve("summary.json");
+    metrics.writeSummary(summaryFile.toString());
+
+    JsonObject summary = JsonParser.parseString(Files.readString(summaryFile))
+        .getAsJsonObject();
+    JsonObject stages = summary.getAsJsonObject("stages");
+    assertEquals(rowCount, stages.getAsJsonObject("read").get("items").getAsLong());
+    assertEquals(rowCount, stages.getAsJsonObject("group").get("items").getAsLong());
+    assertFalse(stages.has("stream"));
+    long transactionCount = 0;
+    for (WalletSnapshot ignored : report) {
+      transactionCount++;
+    }
+    assertEquals(transactionCount,
+        stages.getAsJsonObject("process").get("items").getAsLong());
+    assertEquals(transactionCount,
+        stages.getAsJsonObject("clarify").get("items").getAsLong());
+    // The extra info is handled in its own stage, in both modes
+    long extraInfoEntries = stages.getAsJsonObject("extras").get("items").getAsLong();
+    assertTrue(extraInfoEntries > 0);
+    long countedTransactions = summary.getAsJsonObject("transactions").entrySet().stream()
+        .mapToLong(e -> e.getValue().getAsLong()).sum();
+    assertEquals(transactionCount, countedTransactions);
+    assertTrue(summary.getAsJsonObject("transactions").has("AutoInvestTransaction"));
+
+    // Each run has its own metrics
+    Map<?, ?> streamingStages = (Map<?, ?>) streamingMetrics.createSummary().get("stages");
+    assertEquals(rowCount, ((Map<?, ?>) streamingStages.get("stream")).get("items"));
+    assertFalse(streamingStages.containsKey("process"));
+    assertEquals(extraInfoEntries, ((Map<?, ?>) streamingStages.get("extras")).get("items"));
+    assertEquals(summary.getAsJsonObject("transactions").get("AutoInvestTransaction").getAsLong(),
+        ((Map<?, ?>) streamingMetrics.createSummary().get("transactions"))
+            .get("AutoInvestTransaction"));
+  }
+}
@@ -1,7 +1,13 @@
 package no.strazdins.tool;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
 import org.junit.jupiter.api.Test;
 
 class TimeConverterTest {
@@ -36,4 +42,59 @@ class TimeConverterTest {
     long expectedTimestamp = TimeConverter.stringToUtcTimestamp(day + " 00:00:00");
     assertEquals(expectedTimestamp, TimeConverter.getDayStart(originalTimestamp));
   }
+
+  @Test
+  void testSameAsSimpleDateFormat() throws ParseException {
+    SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+    SimpleDateFormat referenceDate = new SimpleDateFormat("yyyy-MM-dd");
+    referenceDate.setTimeZone(TimeZone.getTimeZone("UTC"));
+    Random random = new Random(42);
+    long min = -20000000000000L;
+    long max = 300000000000000L;
+    for (int i = 0; i < 20000; ++i) {
+      long timestamp = (min + (long) (random.nextDouble() * (max - min))) / 1000 * 1000;
+      String expected = reference.format(new Date(timestamp));
+      assertEquals(expected, TimeConverter.utcTimeToString(timestamp));
+      assertEquals(referenceDate.format(new Date(timestamp)),
+          TimeConverter.utcTimeToDateString(timestamp));
+      assertEquals(timestamp, TimeConverter.stringToUtcTimestamp(expected));
+    }
+    String[] nonStandard = {"2023-02-29 10:00:00", "2023-13-01 00:00:00", "2023-4-6 1:2:3",
+        "2020-02-29 24:00:00", "1500-06-01 12:00:00", "2023-04-16 10:36:32 extra"};
+    for (String s : nonStandard) {
+      assertEquals(reference.parse(s).getTime(), TimeConverter.stringToUtcTimestamp(s), s);
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> TimeConverter.stringToUtcTimestamp("not a time"));
+  }
+
+  @Test
+  void testYearEnd() {
+    for (int year = 1970; year < 2200; ++year) {
+      assertEquals(TimeConverter.stringToUtcTimestamp(year + "-12-31 23:59:59"),
+          TimeConverter.getYearEndTimestamp(year));
+    }
+    assertEquals(1704067199000L, TimeConverter.getYearEndTimestamp(2023));
+  }
+
+  @Test
+  void testMonthStart() {
+    for (int year = 1970; year < 2200; ++year) {
+      for (int month = 1; month <= 12; ++month) {
+        long monthStart = TimeConverter.getMonthStartTimestamp(year, month);
+        assertEquals(TimeConverter.stringToUtcTimestamp(
+            String.format("%d-%02d-01 00:00:00", year, month)), monthStart);
+        assertEquals(year * 12 + month - 1, TimeConverter.getUtcMonthIndex(monthStart));
+        assertEquals(year * 12 + month - 2, TimeConverter.getUtcMonthIndex(monthStart - 1));
+      }
+    }
+  }
+
+  @Test
+  void testDayStartBeforeEpoch() {
+    dayStartTest("1969-12-31 23:59:59");
+    dayStartTest("1969-12-31 00:00:00");
+    dayStartTest("1700-03-01 10:00:00");
+  }
 }
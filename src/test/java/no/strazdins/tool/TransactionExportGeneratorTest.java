@@ -0,0 +1,111 @@
+package no.strazdins.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import no.strazdins.data.Operation;
+import no.strazdins.data.RawAccountChange;
+import no.strazdins.data.WalletSnapshot;
+import no.strazdins.file.TransactionFileReader;
+import no.strazdins.process.PeriodReport;
+import no.strazdins.process.Report;
+import no.strazdins.process.ReportGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionExportGeneratorTest {
+  private static final int ROW_COUNT = 5000;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testSameSeedSameFiles() throws IOException {
+    Path first = generate(1, "first", null);
+    Path second = generate(1, "second", null);
+    Path third = generate(2, "third", null);
+    assertEquals(Files.readAllLines(first), Files.readAllLines(second));
+    assertEquals(Files.readAllLines(extraFile(first)), Files.readAllLines(extraFile(second)));
+    assertNotEquals(Files.readAllLines(first), Files.readAllLines(third));
+  }
+
+  @Test
+  void testAllSupportedOperationsGenerated() throws IOException {
+    Path file = generate(1, "all", null);
+    List<RawAccountChange> changes = TransactionFileReader.readAccountChanges(file.toString());
+    assertTrue(changes.size() >= ROW_COUNT);
+    Set<Operation> operations = EnumSet.noneOf(Operation.class);
+    for (RawAccountChange change : changes) {
+      operations.add(change.getOperation());
+    }
+    assertEquals(EnumSet.complementOf(EnumSet.of(Operation.CONVERT)), operations);
+  }
+
+  @Test
+  void testReplay() throws IOException {
+    Path file = generate(3, "replay", null);
+    ReportGenerator generator = new ReportGenerator();
+    String homeCurrency = TransactionExportGenerator.HOME_CURRENCY;
+    Report report = generator.createReport(file.toString(), extraFile(file).toString(),
+        homeCurrency);
+    Report streamedReport = generator.createReportStreaming(file.toString(),
+        extraFile(file).toString(), homeCurrency);
+
+    Iterator<WalletSnapshot> streamedIterator = streamedReport.iterator();
+    for (WalletSnapshot snapshot : report) {
+      WalletSnapshot streamedSnapshot = streamedIterator.next();
+      assertEquals(snapshot.getWallet(), streamedSnapshot.getWallet());
+      assertEquals(snapshot.getPnl(), streamedSnapshot.getPnl());
+    }
+    assertFalse(streamedIterator.hasNext());
+
+    List<PeriodReport> annualReports = report.createAnnualReports();
+    assertFalse(annualReports.isEmpty());
+    assertFalse(report.isExtraInfoUpdated(), "All the prices must be in the extra info");
+  }
+
+  @Test
+  void testCustomMix() throws IOException {
+    Path file = generate(1, "mix", "BUY=1,SELL=0,FEE=0,EARN_INTEREST=0,AUTO_INVEST=0");
+    Set<Operation> operations = EnumSet.noneOf(Operation.class);
+    for (RawAccountChange change : TransactionFileReader.readAccountChanges(file.toString())) {
+      operations.add(change.getOperation());
+    }
+    assertTrue(operations.contains(Operation.BUY));
+    assertFalse(operations.contains(Operation.EARN_INTEREST));
+    assertFalse(operations.contains(Operation.AUTO_INVEST));
+  }
+
+  @Test
+  void testInvalidMix() {
+    TransactionExportGenerator generator = new TransactionExportGenerator(1);
+    assertThrows(IllegalArgumentException.class, () -> generator.setWeights("BUY"));
+    assertThrows(IllegalArgumentException.class, () -> generator.setWeights("BUY=-1"));
+    assertThrows(IllegalArgumentException.class, () -> generator.setWeights("TRADE=1"));
+  }
+
+  private Path generate(long seed, String name, String mix) throws IOException {
+    TransactionExportGenerator generator = new TransactionExportGenerator(seed);
+    if (mix != null) {
+      generator.setWeights(mix);
+    }
+    Path file = tempDir.resolve(name + ".csv");
+    long rows = generator.generate(file.toString(), extraFile(file).toString(), ROW_COUNT);
+    assertEquals(rows + 1, Files.readAllLines(file).size());
+    return file;
+  }
+
+  private static Path extraFile(Path transactionFile) {
+    return transactionFile.resolveSibling("extra-" + transactionFile.getFileName());
+  }
+}
@@ -0,0 +1,190 @@
+package no.strazdins.transaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import no.strazdins.data.AccountType;
+import no.strazdins.data.Decimal;
+import no.strazdins.data.Operation;
+import no.strazdins.data.OperationMultiSet;
+import no.strazdins.data.RawAccountChange;
+import org.junit.jupiter.api.Test;
+
+class TransactionTypeTableTest {
+  private static final long TIME = 1_650_000_000_000L;
+  private static final String[] ASSETS = {"USDT", "BTC", "ETH"};
+
+  @Test
+  void testSameAsSequentialMatching() {
+    Operation[] all = Operation.values();
+    List<Operation[]> combinations = new ArrayList<>();
+    for (Operation a : all) {
+      combinations.add(new Operation[]{a});
+      for (Operation b : all) {
+        if (b.ordinal() > a.ordinal()) {
+          combinations.add(new Operation[]{a, b});
+        }
+      }
+    }
+    combinations.add(new Operation[]{Operation.BUY, Operation.SELL, Operation.FEE});
+    Random random = new Random(19);
+    for (Operation[] operations : combinations) {
+      for (int count = 1; count <= 3; ++count) {
+        int[] counts = new int[operations.length];
+        Arrays.fill(counts, count);
+        expectSameType(operations, counts, random);
+      }
+      if (operations.length > 1) {
+        int[] counts = new int[operations.length];
+        Arrays.fill(counts, 1);
+        counts[0] = 2;
+        expectSameType(operations, counts, random);
+      }
+    }
+  }
+
+  @Test
+  void testMergedBuySell() {
+    Transaction raw = new Transaction(TIME);
+    for (int i = 0; i < 2; ++i) {
+      append(raw, Operation.BUY, "BTC", "0.01");
+      append(raw, Operation.SELL, "USDT", "-400");
+      append(raw, Operation.FEE, "BNB", "-0.001");
+    }
+    long signature = TransactionTypeTable.getSignature(raw.atomicAccountChanges);
+    assertEquals(2, TransactionTypeTable.getSignatureCount(signature));
+    Transaction t = raw.clarifyTransactionType();
+    assertInstanceOf(BuyTransaction.class, t);
+    assertEquals(3, t.getTotalOperationCount());
+  }
+
+  @Test
+  void testRegisterTwice() {
+    assertThrows(IllegalArgumentException.class, () -> TransactionTypeTable.register(
+        DepositTransaction::new, 1, Operation.DEPOSIT));
+    assertThrows(IllegalArgumentException.class, () -> TransactionTypeTable.registerMultiple(
+        CardPurchaseTransaction::new, Operation.BUY_CRYPTO));
+    assertThrows(IllegalArgumentException.class, () -> TransactionTypeTable.register(
+        DepositTransaction::new, 0, Operation.DEPOSIT));
+  }
+
+  @Test
+  void testDifferentCountsDoNotMatch() {
+    Transaction t = new Transaction(TIME);
+    append(t, Operation.EARN_SUBSCRIPTION, "USDT", "-10");
+    append(t, Operation.EARN_SUBSCRIPTION, "USDT", "-10");
+    append(t, Operation.SAVINGS_DISTRIBUTION, "USDT", "20");
+    assertNull(t.clarifyTransactionType());
+
+    t = new Transaction(TIME);
+    append(t, Operation.CONVERT, "EUR", "-10");
+    append(t, Operation.CONVERT, "USDT", "11");
+    assertInstanceOf(CurrencyExchangeTransaction.class, t.clarifyTransactionType());
+    append(t, Operation.CONVERT, "USDT", "1");
+    assertNull(t.clarifyTransactionType());
+  }
+
+  private static void append(Transaction t, Operation operation, String asset, String amount) {
+    t.append(new RawAccountChange(TIME, AccountType.SPOT, operation, asset, new Decimal(amount),
+        ""));
+  }
+
+  private static void expectSameType(Operation[] operations, int[] counts, Random random) {
+    long seed = random.nextLong();
+    String expected = describe(() -> classifySequentially(
+        createTransaction(operations, counts, new Random(seed))));
+    String actual = describe(() -> createTransaction(operations, counts, new Random(seed))
+        .clarifyTransactionType());
+    assertEquals(expected, actual, Arrays.toString(operations) + " x "
+        + Arrays.toString(counts));
+  }
+
+  private static String describe(Supplier<Transaction> classification) {
+    try {
+      Transaction t = classification.get();
+      return t != null ? t.getClass().getSimpleName() : "null";
+    } catch (RuntimeException e) {
+      return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+  }
+
+  private static Transaction createTransaction(Operation[] operations, int[] counts,
+                                               Random random) {
+    Transaction t = new Transaction(TIME);
+    for (int i = 0; i < operations.length; ++i) {
+      for (int j = 0; j < counts[i]; ++j) {
+        String amount = (operations[i] == Operation.SELL || operations[i] == Operation.FEE
+            ? "-" : "") + (1 + random.nextInt(100));
+        t.append(new RawAccountChange(TIME, AccountType.SPOT, operations[i],
+            ASSETS[random.nextInt(ASSETS.length)], new Decimal(amount), ""));
+      }
+    }
+    return t;
+  }
+
+  /**
+   * The classification before the lookup table was introduced: the patterns are checked one
+   * by one.
+   */
+  private static Transaction classifySequentially(Transaction raw) {
+    if (consistsOfMultiple(raw, Operation.BUY, Operation.SELL, Operation.FEE)
+        || consistsOfMultiple(raw, Operation.BUY, Operation.SELL)) {
+      Transaction merged = new Transaction(raw.getUtcTime());
+      for (List<RawAccountChange> changes : raw.atomicAccountChanges.values()) {
+        merged.append(RawAccountChange.merge(changes));
+      }
+      raw = merged;
+    }
+    boolean hasFee = raw.getFirstChangeOfType(Operation.FEE) != null;
+    if (raw.getTotalOperationCount() == (hasFee ? 3 : 2)
+        && raw.getFirstBuyTypeChange() != null && raw.getFirstSellTypeChange() != null) {
+      return raw.convertToBuyOrSell();
+    }
+    Transaction t = null;
+    if (consistsOf(raw, Operation.DEPOSIT) || consistsOf(raw, Operation.FIAT_DEPOSIT)) {
+      t = new DepositTransaction(raw);
+    } else if (consistsOf(raw, Operation.WITHDRAW)) {
+      t = new WithdrawTransaction(raw);
+    } else if (consistsOf(raw, Operation.EARN_SUBSCRIPTION, Operation.SAVINGS_DISTRIBUTION)
+        || consistsOf(raw, Operation.SAVINGS_DISTRIBUTION)
+        || consistsOf(raw, Operation.EARN_SUBSCRIPTION)
+        || consistsOfMultiple(raw, Operation.EARN_SUBSCRIPTION)) {
+      t = new SavingsSubscriptionTransaction(raw);
+    } else if (consistsOf(raw, Operation.EARN_REDEMPTION)
+        || consistsOfMultiple(raw, Operation.EARN_REDEMPTION)) {
+      t = new SavingsRedemptionTransaction(raw);
+    } else if (consistsOf(raw, Operation.EARN_INTEREST)) {
+      t = new SavingsInterestTransaction(raw);
+    } else if (consistsOf(raw, Operation.CASHBACK_VOUCHER)
+        || consistsOf(raw, Operation.BNB_VAULT_REWARDS)) {
+      t = new RewardTransaction(raw);
+    } else if (consistsOf(raw, Operation.COMMISSION_REBATE)) {
+      t = new CommissionTransaction(raw);
+    } else if (consistsOf(raw, Operation.DISTRIBUTION)) {
+      t = new DistributionTransaction(raw);
+    } else if (consistsOfMultiple(raw, Operation.SMALL_ASSETS_EXCHANGE_BNB)) {
+      t = new DustCollectionTransaction(raw);
+    } else if (consistsOfMultiple(raw, Operation.BUY_CRYPTO)) {
+      t = new CardPurchaseTransaction(raw);
+    } else if (raw.getOperationMultiSet().equals(new OperationMultiSet(2, Operation.CONVERT))) {
+      t = new CurrencyExchangeTransaction(raw);
+    }
+    return t;
+  }
+
+  private static boolean consistsOf(Transaction t, Operation... operations) {
+    return t.getOperationMultiSet().equals(new OperationMultiSet(operations));
+  }
+
+  private static boolean consistsOfMultiple(Transaction t, Operation... operations) {
+    int n = t.getOperationMultiSet().getOperationCount(operations[0]);
+    return n > 1 && t.getOperationMultiSet().equals(new OperationMultiSet(n, operations));
+  }
+}